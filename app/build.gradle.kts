@@ -36,6 +36,17 @@ android {
     buildFeatures {
         viewBinding = true
     }
+    testOptions {
+        unitTests {
+            isIncludeAndroidResources = true
+            // Forward -Pbenchmark.* and -Pstress.* flags to the opt-in JVM suites
+            all { test ->
+                project.properties
+                    .filterKeys { it.startsWith("benchmark.") || it.startsWith("stress.") }
+                    .forEach { (k, v) -> test.systemProperty(k, v.toString()) }
+            }
+        }
+    }
 }
 
 dependencies {
@@ -45,6 +56,8 @@ dependencies {
     implementation(libs.navigation.fragment)
     implementation(libs.navigation.ui)
     testImplementation(libs.junit)
+    testImplementation(libs.robolectric)
+    testImplementation(libs.androidx.test.core)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
     implementation(libs.room.runtime)
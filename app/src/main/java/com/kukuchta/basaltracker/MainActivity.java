@@ -1,21 +1,47 @@
 package com.kukuchta.basaltracker;
 
+import android.Manifest;
+import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Bundle;
 
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
 import androidx.fragment.app.FragmentTransaction;
 
 import com.kukuchta.basaltracker.ui.list.ProfileListFragment;
+import com.kukuchta.basaltracker.ui.widget.CurrentRateScheduler;
 
 public class MainActivity extends AppCompatActivity {
+    private static final int REQUEST_NOTIFICATIONS = 1;
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        FragmentTransaction ft = getSupportFragmentManager().beginTransaction();
-        ft.replace(android.R.id.content, new ProfileListFragment());
-        ft.commit();
+        // On recreation the fragment manager restores the back stack itself
+        if (savedInstanceState == null) {
+            FragmentTransaction ft = getSupportFragmentManager().beginTransaction();
+            ft.replace(android.R.id.content, new ProfileListFragment());
+            ft.commit();
+
+            requestNotificationPermission();
+            CurrentRateScheduler.get(this).refresh(null);
+        }
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode == REQUEST_NOTIFICATIONS) CurrentRateScheduler.get(this).refresh(null);
+    }
+
+    private void requestNotificationPermission() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU) return;
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS)
+                != PackageManager.PERMISSION_GRANTED) {
+            requestPermissions(new String[]{Manifest.permission.POST_NOTIFICATIONS}, REQUEST_NOTIFICATIONS);
+        }
     }
-}
\ No newline at end of file
+}
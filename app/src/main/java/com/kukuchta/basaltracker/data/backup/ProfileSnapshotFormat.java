@@ -0,0 +1,91 @@
+package com.kukuchta.basaltracker.data.backup;
+
+import com.kukuchta.basaltracker.data.db.BasalProfileDao;
+
+/**
+ * Binary library snapshot, version 3. All numbers little-endian.
+ *
+ * File:
+ *   header (HEADER_SIZE bytes) | block 0 | block 1 | ... | index | assignments | revisions
+ *
+ * Header:
+ *   0  int  MAGIC            4  int  VERSION
+ *   8  int  profileCount     12 int  blockCount
+ *   16 int  blockRows        20 int  reserved (0)
+ *   24 long createdAt        32 long indexOffset
+ *   40 int  CRC32 of index   44 int  assignmentCount
+ *   48 long assignmentsOffset               56 int CRC32 of assignments
+ *   60 int  revisionCount    64 long revisionsOffset
+ *   72 int  revisionsLength  76 int  CRC32 of revisions
+ *   80 int  CRC32 of header bytes 0..79
+ *
+ * Index: blockCount entries of INDEX_ENTRY_SIZE bytes: long offset, int length, int rows, int CRC32.
+ *
+ * Block of n rows, columns packed one after another so each is a single strided read:
+ *   long id[n] | long baseProfileId[n] (0 = none) | long createdAt[n] | long contentHash[n]
+ *   | double accuracy[n] | int units[n * 24] (row-major) | byte originOrdinal[n]
+ *   | byte resolutionMinutes[n]
+ *   | per row: name, metadataJson, metadataSearchText (int byteLength or -1 for null, UTF-8),
+ *     changePoints (int byteLength or -1, raw)
+ *
+ * Assignments (profile_assignments), ASSIGNMENT_ROW_BYTES per row in id order:
+ *   long id, long profileId, long validFrom, long validTo, long createdAt
+ *
+ * Revisions (basal_profile_revisions), in id order:
+ *   long id, long profileId, long createdAt, double accuracy, int revision, int changedMask,
+ *   byte keyframe, byte resolutionMinutes, packedUnits and changePoints (each int byteLength
+ *   or -1, raw)
+ *
+ * Both cascade with their profiles, so a restore replaces them together with the library.
+ * Temporary overrides are not tied to profiles and are left alone.
+ */
+final class ProfileSnapshotFormat {
+    static final int MAGIC = 0x4E535442; // "BTSN"
+    static final int VERSION = 3;
+    static final int HEADER_SIZE = 84;
+    static final int HEADER_CRC_AT = 80;
+    static final int INDEX_ENTRY_SIZE = 20;
+    static final int BLOCK_ROWS = 4096;
+    static final int HOURS = 24;
+
+    /** Fixed-width bytes per row before the string section. */
+    static final int FIXED_ROW_BYTES = 5 * 8 + HOURS * 4 + 2;
+
+    static final int NULL_LENGTH = -1;
+
+    static final int ASSIGNMENT_ROW_BYTES = 5 * 8;
+    /** Fixed-width bytes of a revision row before its packedUnits length. */
+    static final int REVISION_FIXED_BYTES = 4 * 8 + 2 * 4 + 2;
+
+    // Column offsets inside a block of n rows
+    static int baseIdAt(int n)       { return 8 * n; }
+    static int createdAtAt(int n)    { return 16 * n; }
+    static int contentHashAt(int n)  { return 24 * n; }
+    static int accuracyAt(int n)     { return 32 * n; }
+    static int unitsAt(int n)        { return 40 * n; }
+    static int originAt(int n)       { return 40 * n + HOURS * 4 * n; }
+    static int resolutionAt(int n)   { return originAt(n) + n; }
+    static int stringsAt(int n)      { return resolutionAt(n) + n; }
+
+    /** Bind order used by the restore statement: 11 columns, then the 24 hourly units. */
+    static final String INSERT_SQL = "INSERT INTO basal_profiles (id, name, accuracy, origin, "
+            + "baseProfileId, metadataJson, metadataSearchText, contentHash, createdAt, "
+            + "resolutionMinutes, changePoints, " + BasalProfileDao.GRID_COLUMNS + ") VALUES ("
+            + placeholders(11 + HOURS) + ")";
+    static final int FIRST_UNITS_ARG = 12;
+
+    static final String INSERT_ASSIGNMENT_SQL = "INSERT INTO profile_assignments "
+            + "(id, profileId, validFrom, validTo, createdAt) VALUES (" + placeholders(5) + ")";
+
+    static final String INSERT_REVISION_SQL = "INSERT INTO basal_profile_revisions "
+            + "(id, profileId, createdAt, accuracy, revision, changedMask, keyframe, "
+            + "resolutionMinutes, packedUnits, changePoints) VALUES (" + placeholders(10) + ")";
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder(count * 3);
+        for (int i = 0; i < count; i++) sb.append(i == 0 ? "?" : ", ?");
+        return sb.toString();
+    }
+
+    private ProfileSnapshotFormat() {}
+}
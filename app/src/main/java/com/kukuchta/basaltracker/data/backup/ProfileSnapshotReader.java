@@ -0,0 +1,316 @@
+package com.kukuchta.basaltracker.data.backup;
+
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import com.kukuchta.basaltracker.domain.ProfileOrigin;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped reader for snapshots written by {@link ProfileSnapshotWriter}.
+ *
+ * Usage: open, {@link #verify()} (header, index, every block and both sections, before
+ * anything is written), then {@link #insertAll}, {@link #insertAssignments} and
+ * {@link #insertRevisions} inside one transaction. Rows are bound straight from the mapping
+ * into compiled statements; the only per-row objects are the strings and blobs SQLite needs.
+ */
+public final class ProfileSnapshotReader implements Closeable {
+    /** Statement to compile for {@link #insertAll}. */
+    public static final String INSERT_SQL = ProfileSnapshotFormat.INSERT_SQL;
+    /** Statement to compile for {@link #insertAssignments}. */
+    public static final String INSERT_ASSIGNMENT_SQL = ProfileSnapshotFormat.INSERT_ASSIGNMENT_SQL;
+    /** Statement to compile for {@link #insertRevisions}. */
+    public static final String INSERT_REVISION_SQL = ProfileSnapshotFormat.INSERT_REVISION_SQL;
+
+    private static final int HOURS = ProfileSnapshotFormat.HOURS;
+    private static final String[] ORIGIN_NAMES = originNames();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int profileCount;
+    private final int blockCount;
+    private final long createdAt;
+    private final int indexOffset;
+    private final int indexCrc;
+    private final int assignmentCount;
+    private final int assignmentsOffset;
+    private final int assignmentsCrc;
+    private final int revisionCount;
+    private final int revisionsOffset;
+    private final int revisionsLength;
+    private final int revisionsCrc;
+
+    private final CRC32 crc = new CRC32();
+    private byte[] scratch = new byte[256];
+
+    private ProfileSnapshotReader(FileChannel channel, MappedByteBuffer map) throws IOException {
+        this.channel = channel;
+        this.map = map;
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        if (map.capacity() < ProfileSnapshotFormat.HEADER_SIZE
+                || map.getInt(0) != ProfileSnapshotFormat.MAGIC) {
+            throw new IOException("Not a profile snapshot");
+        }
+        if (map.getInt(4) != ProfileSnapshotFormat.VERSION) {
+            throw new IOException("Unsupported snapshot version " + map.getInt(4));
+        }
+        crc.update(slice(0, ProfileSnapshotFormat.HEADER_CRC_AT));
+        if ((int) crc.getValue() != map.getInt(ProfileSnapshotFormat.HEADER_CRC_AT)) {
+            throw new IOException("Snapshot header checksum mismatch");
+        }
+        profileCount = map.getInt(8);
+        blockCount = map.getInt(12);
+        createdAt = map.getLong(24);
+        long indexAt = map.getLong(32);
+        indexCrc = map.getInt(40);
+        long indexEnd = indexAt + (long) blockCount * ProfileSnapshotFormat.INDEX_ENTRY_SIZE;
+        if (profileCount < 0 || blockCount < 0 || indexAt < ProfileSnapshotFormat.HEADER_SIZE
+                || indexEnd > map.capacity()) {
+            throw new IOException("Snapshot index out of bounds");
+        }
+        indexOffset = (int) indexAt;
+
+        assignmentCount = map.getInt(44);
+        long assignmentsAt = map.getLong(48);
+        assignmentsCrc = map.getInt(56);
+        revisionCount = map.getInt(60);
+        long revisionsAt = map.getLong(64);
+        revisionsLength = map.getInt(72);
+        revisionsCrc = map.getInt(76);
+        long assignmentsEnd = assignmentsAt + (long) assignmentCount * ProfileSnapshotFormat.ASSIGNMENT_ROW_BYTES;
+        if (assignmentCount < 0 || assignmentsAt < indexEnd || assignmentsEnd > map.capacity()
+                || revisionCount < 0 || revisionsLength < 0 || revisionsAt < assignmentsEnd
+                || revisionsAt + revisionsLength > map.capacity()) {
+            throw new IOException("Snapshot sections out of bounds");
+        }
+        assignmentsOffset = (int) assignmentsAt;
+        revisionsOffset = (int) revisionsAt;
+    }
+
+    public static ProfileSnapshotReader open(File file) throws IOException {
+        FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Snapshot too large to map");
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new ProfileSnapshotReader(ch, map);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    public int profileCount() { return profileCount; }
+    public int assignmentCount() { return assignmentCount; }
+    public int revisionCount() { return revisionCount; }
+    public long createdAt() { return createdAt; }
+
+    /** Checks the index, every block and both sections against their CRC32s and the header's counts. */
+    public void verify() throws IOException {
+        crc.reset();
+        crc.update(slice(indexOffset, blockCount * ProfileSnapshotFormat.INDEX_ENTRY_SIZE));
+        if ((int) crc.getValue() != indexCrc) throw new IOException("Snapshot index checksum mismatch");
+
+        long rows = 0;
+        for (int b = 0; b < blockCount; b++) {
+            ByteBuffer block = block(b);
+            int n = blockRows(b);
+            if (n <= 0 || block.capacity() < (long) n * ProfileSnapshotFormat.FIXED_ROW_BYTES) {
+                throw new IOException("Snapshot block " + b + " is malformed");
+            }
+            crc.reset();
+            crc.update(block);
+            if ((int) crc.getValue() != map.getInt(indexEntry(b) + 16)) {
+                throw new IOException("Snapshot block " + b + " checksum mismatch");
+            }
+            rows += n;
+        }
+        if (rows != profileCount) throw new IOException("Snapshot row count mismatch");
+
+        crc.reset();
+        crc.update(assignments());
+        if ((int) crc.getValue() != assignmentsCrc) throw new IOException("Snapshot assignments checksum mismatch");
+        crc.reset();
+        crc.update(revisions());
+        if ((int) crc.getValue() != revisionsCrc) throw new IOException("Snapshot revisions checksum mismatch");
+        // Walks the variable-length rows, so a truncated revision is caught before the restore
+        int pos = 0;
+        ByteBuffer rev = revisions();
+        for (int r = 0; r < revisionCount; r++) {
+            if (pos + ProfileSnapshotFormat.REVISION_FIXED_BYTES > rev.limit()) {
+                throw new IOException("Snapshot revisions truncated");
+            }
+            pos += ProfileSnapshotFormat.REVISION_FIXED_BYTES;
+            for (int blob = 0; blob < 2; blob++) pos += 4 + Math.max(length(rev, pos), 0);
+        }
+        if (pos != rev.limit()) throw new IOException("Snapshot revisions length mismatch");
+    }
+
+    /**
+     * Executes {@code insert} (compiled from {@link ProfileSnapshotFormat#INSERT_SQL}) once
+     * per stored profile, in id order. Returns the number of rows inserted.
+     */
+    public int insertAll(SupportSQLiteStatement insert) throws IOException {
+        int inserted = 0;
+        for (int b = 0; b < blockCount; b++) {
+            ByteBuffer block = block(b);
+            int n = blockRows(b);
+            int baseIdAt = ProfileSnapshotFormat.baseIdAt(n);
+            int createdAtAt = ProfileSnapshotFormat.createdAtAt(n);
+            int hashAt = ProfileSnapshotFormat.contentHashAt(n);
+            int accuracyAt = ProfileSnapshotFormat.accuracyAt(n);
+            int unitsAt = ProfileSnapshotFormat.unitsAt(n);
+            int originAt = ProfileSnapshotFormat.originAt(n);
+            int resolutionAt = ProfileSnapshotFormat.resolutionAt(n);
+            int pos = ProfileSnapshotFormat.stringsAt(n);
+
+            for (int r = 0; r < n; r++) {
+                insert.clearBindings();
+                insert.bindLong(1, block.getLong(r * 8));
+                pos = bindString(insert, 2, block, pos);
+                insert.bindDouble(3, block.getDouble(accuracyAt + r * 8));
+                int origin = block.get(originAt + r);
+                if (origin < 0 || origin >= ORIGIN_NAMES.length) {
+                    throw new IOException("Snapshot block " + b + " has an unknown origin");
+                }
+                insert.bindString(4, ORIGIN_NAMES[origin]);
+                long baseId = block.getLong(baseIdAt + r * 8);
+                if (baseId == 0) insert.bindNull(5); else insert.bindLong(5, baseId);
+                pos = bindString(insert, 6, block, pos);
+                pos = bindString(insert, 7, block, pos);
+                insert.bindLong(8, block.getLong(hashAt + r * 8));
+                insert.bindLong(9, block.getLong(createdAtAt + r * 8));
+                insert.bindLong(10, block.get(resolutionAt + r));
+                pos = bindBlob(insert, 11, block, pos);
+                int u = unitsAt + r * HOURS * 4;
+                for (int h = 0; h < HOURS; h++) {
+                    insert.bindLong(ProfileSnapshotFormat.FIRST_UNITS_ARG + h, block.getInt(u + h * 4));
+                }
+                insert.executeInsert();
+                inserted++;
+            }
+        }
+        return inserted;
+    }
+
+    /** Executes {@code insert} ({@link #INSERT_ASSIGNMENT_SQL}) per stored assignment; after {@link #insertAll}. */
+    public int insertAssignments(SupportSQLiteStatement insert) {
+        ByteBuffer a = assignments();
+        for (int r = 0; r < assignmentCount; r++) {
+            int at = r * ProfileSnapshotFormat.ASSIGNMENT_ROW_BYTES;
+            insert.clearBindings();
+            for (int c = 0; c < 5; c++) insert.bindLong(c + 1, a.getLong(at + c * 8));
+            insert.executeInsert();
+        }
+        return assignmentCount;
+    }
+
+    /** Executes {@code insert} ({@link #INSERT_REVISION_SQL}) per stored revision; after {@link #insertAll}. */
+    public int insertRevisions(SupportSQLiteStatement insert) throws IOException {
+        ByteBuffer rev = revisions();
+        int pos = 0;
+        for (int r = 0; r < revisionCount; r++) {
+            insert.clearBindings();
+            insert.bindLong(1, rev.getLong(pos));
+            insert.bindLong(2, rev.getLong(pos + 8));
+            insert.bindLong(3, rev.getLong(pos + 16));
+            insert.bindDouble(4, rev.getDouble(pos + 24));
+            insert.bindLong(5, rev.getInt(pos + 32));
+            insert.bindLong(6, rev.getInt(pos + 36));
+            insert.bindLong(7, rev.get(pos + 40));
+            insert.bindLong(8, rev.get(pos + 41));
+            pos = bindBlob(insert, 9, rev, pos + ProfileSnapshotFormat.REVISION_FIXED_BYTES);
+            pos = bindBlob(insert, 10, rev, pos);
+            insert.executeInsert();
+        }
+        return revisionCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int bindString(SupportSQLiteStatement st, int arg, ByteBuffer block, int pos) throws IOException {
+        int len = length(block, pos);
+        if (len == ProfileSnapshotFormat.NULL_LENGTH) {
+            st.bindNull(arg);
+            return pos + 4;
+        }
+        if (scratch.length < len) scratch = new byte[Math.max(len, scratch.length * 2)];
+        block.position(pos + 4);
+        block.get(scratch, 0, len);
+        st.bindString(arg, new String(scratch, 0, len, StandardCharsets.UTF_8));
+        return pos + 4 + len;
+    }
+
+    private int bindBlob(SupportSQLiteStatement st, int arg, ByteBuffer block, int pos) throws IOException {
+        int len = length(block, pos);
+        if (len == ProfileSnapshotFormat.NULL_LENGTH) {
+            st.bindNull(arg);
+            return pos + 4;
+        }
+        byte[] bytes = new byte[len];
+        block.position(pos + 4);
+        block.get(bytes);
+        st.bindBlob(arg, bytes);
+        return pos + 4 + len;
+    }
+
+    private static int length(ByteBuffer block, int pos) throws IOException {
+        if (pos + 4 > block.limit()) throw new IOException("Snapshot string section truncated");
+        int len = block.getInt(pos);
+        if (len < ProfileSnapshotFormat.NULL_LENGTH || (long) pos + 4 + Math.max(len, 0) > block.limit()) {
+            throw new IOException("Snapshot string section truncated");
+        }
+        return len;
+    }
+
+    private int indexEntry(int b) {
+        return indexOffset + b * ProfileSnapshotFormat.INDEX_ENTRY_SIZE;
+    }
+
+    private int blockRows(int b) {
+        return map.getInt(indexEntry(b) + 12);
+    }
+
+    private ByteBuffer block(int b) throws IOException {
+        long offset = map.getLong(indexEntry(b));
+        int length = map.getInt(indexEntry(b) + 8);
+        if (offset < ProfileSnapshotFormat.HEADER_SIZE || length < 0 || offset + length > indexOffset) {
+            throw new IOException("Snapshot block " + b + " out of bounds");
+        }
+        return slice((int) offset, length);
+    }
+
+    private ByteBuffer assignments() {
+        return slice(assignmentsOffset, assignmentCount * ProfileSnapshotFormat.ASSIGNMENT_ROW_BYTES);
+    }
+
+    private ByteBuffer revisions() {
+        return slice(revisionsOffset, revisionsLength);
+    }
+
+    /** Independent little-endian view of [offset, offset + length). */
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer d = map.duplicate();
+        d.position(offset).limit(offset + length);
+        return d.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static String[] originNames() {
+        ProfileOrigin[] values = ProfileOrigin.values();
+        String[] names = new String[values.length];
+        for (int i = 0; i < values.length; i++) names[i] = values[i].name();
+        return names;
+    }
+}
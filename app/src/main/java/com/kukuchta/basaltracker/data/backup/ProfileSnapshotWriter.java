@@ -0,0 +1,318 @@
+package com.kukuchta.basaltracker.data.backup;
+
+import android.database.Cursor;
+
+import com.kukuchta.basaltracker.domain.ProfileOrigin;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Streams basal_profiles rows from a cursor into the snapshot format, one block of
+ * {@link ProfileSnapshotFormat#BLOCK_ROWS} rows at a time, then the schedule assignments and
+ * revisions as two checksummed sections. Column arrays and buffers are reused across blocks;
+ * the file is written front to back, the header last at position 0.
+ */
+public final class ProfileSnapshotWriter {
+    private static final int HOURS = ProfileSnapshotFormat.HOURS;
+    private static final int BLOCK_ROWS = ProfileSnapshotFormat.BLOCK_ROWS;
+
+    private final FileChannel out;
+    private final CRC32 crc = new CRC32();
+
+    // One block of columns, reused
+    private final long[] ids = new long[BLOCK_ROWS];
+    private final long[] baseIds = new long[BLOCK_ROWS];
+    private final long[] createdAt = new long[BLOCK_ROWS];
+    private final long[] contentHash = new long[BLOCK_ROWS];
+    private final double[] accuracy = new double[BLOCK_ROWS];
+    private final int[] units = new int[BLOCK_ROWS * HOURS];
+    private final byte[] origin = new byte[BLOCK_ROWS];
+    private final byte[] resolution = new byte[BLOCK_ROWS];
+    private ByteBuffer strings = newBuffer(256 * 1024);
+    private ByteBuffer block = newBuffer(BLOCK_ROWS * ProfileSnapshotFormat.FIXED_ROW_BYTES + 256 * 1024);
+    private ByteBuffer index = newBuffer(64 * ProfileSnapshotFormat.INDEX_ENTRY_SIZE);
+    private ByteBuffer section = newBuffer(256 * 1024);
+
+    // Rows of the section being written; its CRC accumulates in crc
+    private int sectionRows;
+
+    private ProfileSnapshotWriter(FileChannel out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes every row of the three cursors (SELECT * over basal_profiles, profile_assignments
+     * and basal_profile_revisions, each ordered by id) to {@code out}, which must be empty and
+     * positioned at 0. Returns the number of profiles. Does not close the cursors or the channel.
+     */
+    public static int write(Cursor profiles, Cursor assignments, Cursor revisions, FileChannel out,
+                            long createdAtMillis) throws IOException {
+        return new ProfileSnapshotWriter(out).writeAll(profiles, assignments, revisions, createdAtMillis);
+    }
+
+    private int writeAll(Cursor c, Cursor assignments, Cursor revisions, long createdAtMillis)
+            throws IOException {
+        Columns col = new Columns(c);
+        out.position(ProfileSnapshotFormat.HEADER_SIZE);
+
+        int total = 0;
+        int blocks = 0;
+        int n = 0;
+        while (c.moveToNext()) {
+            readRow(c, col, n++);
+            if (n == BLOCK_ROWS) {
+                writeBlock(n);
+                total += n;
+                blocks++;
+                n = 0;
+            }
+        }
+        if (n > 0) {
+            writeBlock(n);
+            total += n;
+            blocks++;
+        }
+
+        long indexOffset = out.position();
+        index.flip();
+        crc.reset();
+        crc.update(index.duplicate());
+        int indexCrc = (int) crc.getValue();
+        writeFully(index, -1);
+
+        long assignmentsOffset = beginSection();
+        writeAssignments(assignments);
+        int assignmentCount = sectionRows;
+        int assignmentsCrc = endSection();
+
+        long revisionsOffset = beginSection();
+        writeRevisions(revisions);
+        int revisionCount = sectionRows;
+        int revisionsCrc = endSection();
+        long revisionsLength = out.position() - revisionsOffset;
+        if (revisionsLength > Integer.MAX_VALUE) throw new IOException("Revision history too large");
+
+        ByteBuffer header = newBuffer(ProfileSnapshotFormat.HEADER_SIZE);
+        header.putInt(ProfileSnapshotFormat.MAGIC)
+                .putInt(ProfileSnapshotFormat.VERSION)
+                .putInt(total)
+                .putInt(blocks)
+                .putInt(BLOCK_ROWS)
+                .putInt(0)
+                .putLong(createdAtMillis)
+                .putLong(indexOffset)
+                .putInt(indexCrc)
+                .putInt(assignmentCount)
+                .putLong(assignmentsOffset)
+                .putInt(assignmentsCrc)
+                .putInt(revisionCount)
+                .putLong(revisionsOffset)
+                .putInt((int) revisionsLength)
+                .putInt(revisionsCrc);
+        crc.reset();
+        crc.update(header.array(), 0, header.position());
+        header.putInt((int) crc.getValue());
+        header.flip();
+        writeFully(header, 0);
+        return total;
+    }
+
+    private void readRow(Cursor c, Columns col, int r) {
+        ids[r] = c.getLong(col.id);
+        baseIds[r] = c.isNull(col.baseProfileId) ? 0L : c.getLong(col.baseProfileId);
+        createdAt[r] = c.getLong(col.createdAt);
+        contentHash[r] = c.getLong(col.contentHash);
+        accuracy[r] = c.getDouble(col.accuracy);
+        for (int h = 0; h < HOURS; h++) units[r * HOURS + h] = c.getInt(col.units[h]);
+        origin[r] = (byte) originOrdinal(c.getString(col.origin));
+        resolution[r] = (byte) c.getInt(col.resolutionMinutes);
+        putString(c.isNull(col.name) ? null : c.getString(col.name));
+        putString(c.isNull(col.metadataJson) ? null : c.getString(col.metadataJson));
+        putString(c.isNull(col.metadataSearchText) ? null : c.getString(col.metadataSearchText));
+        putBytes(c.isNull(col.changePoints) ? null : c.getBlob(col.changePoints));
+    }
+
+    private void writeBlock(int n) throws IOException {
+        strings.flip();
+        int length = n * ProfileSnapshotFormat.FIXED_ROW_BYTES + strings.remaining();
+        if (block.capacity() < length) block = newBuffer(length + length / 2);
+        block.clear();
+        for (int r = 0; r < n; r++) block.putLong(ids[r]);
+        for (int r = 0; r < n; r++) block.putLong(baseIds[r]);
+        for (int r = 0; r < n; r++) block.putLong(createdAt[r]);
+        for (int r = 0; r < n; r++) block.putLong(contentHash[r]);
+        for (int r = 0; r < n; r++) block.putDouble(accuracy[r]);
+        block.asIntBuffer().put(units, 0, n * HOURS);
+        block.position(block.position() + n * HOURS * 4);
+        block.put(origin, 0, n);
+        block.put(resolution, 0, n);
+        block.put(strings);
+        strings.clear();
+        block.flip();
+
+        crc.reset();
+        crc.update(block.array(), 0, block.limit());
+        long offset = out.position();
+        if (index.remaining() < ProfileSnapshotFormat.INDEX_ENTRY_SIZE) index = grow(index, index.capacity());
+        index.putLong(offset).putInt(length).putInt(n).putInt((int) crc.getValue());
+        writeFully(block, -1);
+    }
+
+    private void writeAssignments(Cursor c) throws IOException {
+        int id = c.getColumnIndexOrThrow("id");
+        int profileId = c.getColumnIndexOrThrow("profileId");
+        int validFrom = c.getColumnIndexOrThrow("validFrom");
+        int validTo = c.getColumnIndexOrThrow("validTo");
+        int created = c.getColumnIndexOrThrow("createdAt");
+        while (c.moveToNext()) {
+            reserveSection(ProfileSnapshotFormat.ASSIGNMENT_ROW_BYTES);
+            section.putLong(c.getLong(id))
+                    .putLong(c.getLong(profileId))
+                    .putLong(c.getLong(validFrom))
+                    .putLong(c.getLong(validTo))
+                    .putLong(c.getLong(created));
+            sectionRows++;
+        }
+    }
+
+    private void writeRevisions(Cursor c) throws IOException {
+        int id = c.getColumnIndexOrThrow("id");
+        int profileId = c.getColumnIndexOrThrow("profileId");
+        int created = c.getColumnIndexOrThrow("createdAt");
+        int acc = c.getColumnIndexOrThrow("accuracy");
+        int revision = c.getColumnIndexOrThrow("revision");
+        int mask = c.getColumnIndexOrThrow("changedMask");
+        int keyframe = c.getColumnIndexOrThrow("keyframe");
+        int resolution = c.getColumnIndexOrThrow("resolutionMinutes");
+        int packed = c.getColumnIndexOrThrow("packedUnits");
+        int points = c.getColumnIndexOrThrow("changePoints");
+        while (c.moveToNext()) {
+            byte[] units = c.isNull(packed) ? null : c.getBlob(packed);
+            byte[] changePoints = c.isNull(points) ? null : c.getBlob(points);
+            reserveSection(ProfileSnapshotFormat.REVISION_FIXED_BYTES + 8
+                    + (units == null ? 0 : units.length)
+                    + (changePoints == null ? 0 : changePoints.length));
+            section.putLong(c.getLong(id))
+                    .putLong(c.getLong(profileId))
+                    .putLong(c.getLong(created))
+                    .putDouble(c.getDouble(acc))
+                    .putInt(c.getInt(revision))
+                    .putInt(c.getInt(mask))
+                    .put((byte) (c.getInt(keyframe) != 0 ? 1 : 0))
+                    .put((byte) c.getInt(resolution));
+            putSectionBytes(units);
+            putSectionBytes(changePoints);
+            sectionRows++;
+        }
+    }
+
+    /** Length-prefixed bytes into the section; space must already be reserved. */
+    private void putSectionBytes(byte[] bytes) {
+        if (bytes == null) {
+            section.putInt(ProfileSnapshotFormat.NULL_LENGTH);
+        } else {
+            section.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    /** Starts a section at the channel's position; returns its offset. */
+    private long beginSection() throws IOException {
+        sectionRows = 0;
+        section.clear();
+        crc.reset();
+        return out.position();
+    }
+
+    /** Makes room for {@code bytes} in the section buffer, flushing it to the file if needed. */
+    private void reserveSection(int bytes) throws IOException {
+        if (section.remaining() >= bytes) return;
+        flushSection();
+        if (section.capacity() < bytes) section = newBuffer(bytes);
+    }
+
+    private void flushSection() throws IOException {
+        section.flip();
+        crc.update(section.array(), 0, section.limit());
+        writeFully(section, -1);
+        section.clear();
+    }
+
+    /** Flushes the rest of the section; returns its CRC32. */
+    private int endSection() throws IOException {
+        flushSection();
+        return (int) crc.getValue();
+    }
+
+    private void putString(String s) {
+        putBytes(s == null ? null : s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void putBytes(byte[] bytes) {
+        int len = (bytes == null) ? 0 : bytes.length;
+        if (strings.remaining() < 4 + len) strings = grow(strings, 4 + len);
+        if (bytes == null) {
+            strings.putInt(ProfileSnapshotFormat.NULL_LENGTH);
+        } else {
+            strings.putInt(len).put(bytes);
+        }
+    }
+
+    /** position < 0: append at the channel's current position. */
+    private void writeFully(ByteBuffer buf, long position) throws IOException {
+        long at = position;
+        while (buf.hasRemaining()) {
+            if (at < 0) {
+                out.write(buf);
+            } else {
+                at += out.write(buf, at);
+            }
+        }
+    }
+
+    private static int originOrdinal(String name) {
+        for (ProfileOrigin o : ProfileOrigin.values()) {
+            if (o.name().equals(name)) return o.ordinal();
+        }
+        throw new IllegalStateException("Unknown profile origin: " + name);
+    }
+
+    private static ByteBuffer grow(ByteBuffer buf, int extra) {
+        ByteBuffer bigger = newBuffer(Math.max(buf.capacity() * 2, buf.position() + extra));
+        buf.flip();
+        bigger.put(buf);
+        return bigger;
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** Column indices resolved once per cursor. */
+    private static final class Columns {
+        final int id, name, accuracy, origin, baseProfileId, metadataJson, metadataSearchText,
+                contentHash, createdAt, resolutionMinutes, changePoints;
+        final int[] units = new int[HOURS];
+
+        Columns(Cursor c) {
+            id = c.getColumnIndexOrThrow("id");
+            name = c.getColumnIndexOrThrow("name");
+            accuracy = c.getColumnIndexOrThrow("accuracy");
+            origin = c.getColumnIndexOrThrow("origin");
+            baseProfileId = c.getColumnIndexOrThrow("baseProfileId");
+            metadataJson = c.getColumnIndexOrThrow("metadataJson");
+            metadataSearchText = c.getColumnIndexOrThrow("metadataSearchText");
+            contentHash = c.getColumnIndexOrThrow("contentHash");
+            createdAt = c.getColumnIndexOrThrow("createdAt");
+            resolutionMinutes = c.getColumnIndexOrThrow("resolutionMinutes");
+            changePoints = c.getColumnIndexOrThrow("changePoints");
+            for (int h = 0; h < HOURS; h++) {
+                units[h] = c.getColumnIndexOrThrow(h < 10 ? "units_h0" + h : "units_h" + h);
+            }
+        }
+    }
+}
@@ -2,14 +2,44 @@ package com.kukuchta.basaltracker.data.db;
 
 import androidx.room.Database;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
 
+import com.kukuchta.basaltracker.data.db.entities.BasalOverrideEntity;
 import com.kukuchta.basaltracker.data.db.entities.BasalProfileEntity;
+import com.kukuchta.basaltracker.data.db.entities.BasalProfileFtsEntity;
+import com.kukuchta.basaltracker.data.db.entities.BasalProfileRevisionEntity;
+import com.kukuchta.basaltracker.data.db.entities.ProfileAssignmentEntity;
 
 @Database(
-        entities = { BasalProfileEntity.class },
-        version = 1,
+        entities = {
+                BasalProfileEntity.class,
+                BasalProfileFtsEntity.class,
+                BasalProfileRevisionEntity.class,
+                ProfileAssignmentEntity.class,
+                BasalOverrideEntity.class
+        },
+        version = 10,
         exportSchema = false
 )
 public abstract class AppDatabase extends RoomDatabase {
+    static final Migration MIGRATION_8_9 = new HourMeanColumnsMigration();
+    static final Migration MIGRATION_9_10 = new RevisionChangePointsMigration();
+
+    /** Upgrade paths from every earlier schema; version 1 is the first release. */
+    static final Migration[] MIGRATIONS = {
+            new LibraryCatchUpMigration(1),
+            new LibraryCatchUpMigration(2),
+            new LibraryCatchUpMigration(3),
+            new LibraryCatchUpMigration(4),
+            new LibraryCatchUpMigration(5),
+            new LibraryCatchUpMigration(6),
+            new LibraryCatchUpMigration(7),
+            MIGRATION_8_9,
+            MIGRATION_9_10
+    };
+
     public abstract BasalProfileDao basalProfileDao();
+    public abstract BasalProfileRevisionDao basalProfileRevisionDao();
+    public abstract ProfileAssignmentDao profileAssignmentDao();
+    public abstract BasalOverrideDao basalOverrideDao();
 }
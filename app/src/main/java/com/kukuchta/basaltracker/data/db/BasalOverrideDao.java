@@ -0,0 +1,28 @@
+package com.kukuchta.basaltracker.data.db;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import com.kukuchta.basaltracker.data.db.entities.BasalOverrideEntity;
+
+import java.util.List;
+
+@Dao
+public interface BasalOverrideDao {
+
+    /** All overrides overlapping [:from, :to), ordered by start. */
+    @Query("SELECT * FROM basal_overrides WHERE startsAt < :to AND endsAt > :from " +
+            "ORDER BY startsAt, id")
+    List<BasalOverrideEntity> getOverlapping(long from, long to);
+
+    @Insert
+    long insertOverride(BasalOverrideEntity override);
+
+    @Query("DELETE FROM basal_overrides WHERE id = :id")
+    void deleteOverride(long id);
+
+    /** Housekeeping: overrides that ended before :t no longer affect anything. */
+    @Query("DELETE FROM basal_overrides WHERE endsAt <= :t")
+    int deleteEndedBefore(long t);
+}
@@ -1,8 +1,11 @@
 package com.kukuchta.basaltracker.data.db;
 
+import android.database.Cursor;
+
 import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import androidx.room.Update;
 
 import com.kukuchta.basaltracker.data.db.entities.BasalProfileEntity;
@@ -12,12 +15,110 @@ import java.util.List;
 @Dao
 public interface BasalProfileDao {
 
+    int MAX_LINEAGE_DEPTH = 64;
+
+    String GRID_COLUMNS =
+            "units_h00, units_h01, units_h02, units_h03, units_h04, units_h05, " +
+            "units_h06, units_h07, units_h08, units_h09, units_h10, units_h11, " +
+            "units_h12, units_h13, units_h14, units_h15, units_h16, units_h17, " +
+            "units_h18, units_h19, units_h20, units_h21, units_h22, units_h23";
+
     @Query("SELECT * FROM basal_profiles ORDER BY createdAt DESC")
     List<BasalProfileEntity> getAllProfiles();
 
+    /** Newest first, at most :limit rows: the unfiltered list. */
+    @Query("SELECT * FROM basal_profiles ORDER BY createdAt DESC LIMIT :limit")
+    List<BasalProfileEntity> getRecentProfiles(int limit);
+
     @Query("SELECT * FROM basal_profiles WHERE id = :id")
     BasalProfileEntity getProfile(long id);
 
+    /**
+     * Full-text search over names and metadata values.
+     * @param match FTS4 MATCH expression, e.g. "wee* noc*" (implicit AND of prefix terms)
+     */
+    @Query("SELECT basal_profiles.* FROM basal_profiles " +
+            "JOIN basal_profiles_fts ON basal_profiles.id = basal_profiles_fts.rowid " +
+            "WHERE basal_profiles_fts MATCH :match " +
+            "ORDER BY basal_profiles.createdAt DESC LIMIT :limit")
+    List<BasalProfileEntity> searchProfiles(String match, int limit);
+
+    /**
+     * Whole lineage tree of a profile in one query: walk up baseProfileId to the oldest
+     * surviving ancestor, then fan out to all its descendants. Depth 0 is the root.
+     * Both walks are capped at MAX_LINEAGE_DEPTH hops as a guard against corrupt cycles.
+     */
+    @Query("WITH RECURSIVE " +
+            "ancestors(id, baseProfileId, hops) AS (" +
+            "  SELECT id, baseProfileId, 0 FROM basal_profiles WHERE id = :id " +
+            "  UNION ALL " +
+            "  SELECT p.id, p.baseProfileId, a.hops + 1 FROM basal_profiles p " +
+            "  JOIN ancestors a ON p.id = a.baseProfileId WHERE a.hops < " + MAX_LINEAGE_DEPTH +
+            "), " +
+            "root(id) AS (SELECT id FROM ancestors ORDER BY hops DESC LIMIT 1), " +
+            "tree(id, depth) AS (" +
+            "  SELECT id, 0 FROM root " +
+            "  UNION ALL " +
+            "  SELECT c.id, t.depth + 1 FROM basal_profiles c " +
+            "  JOIN tree t ON c.baseProfileId = t.id WHERE t.depth < " + MAX_LINEAGE_DEPTH +
+            ") " +
+            "SELECT basal_profiles.*, tree.depth AS depth FROM tree " +
+            "JOIN basal_profiles ON basal_profiles.id = tree.id " +
+            "ORDER BY tree.depth, basal_profiles.id")
+    List<LineageRow> getLineage(long id);
+
+    /** Points every child of :id at :id's own base (grandparent, or null for roots). */
+    @Query("UPDATE basal_profiles " +
+            "SET baseProfileId = (SELECT baseProfileId FROM basal_profiles WHERE id = :id) " +
+            "WHERE baseProfileId = :id")
+    void reparentChildren(long id);
+
+    /** Candidate exact duplicates (same content hash); confirm with ProfileContentHash.sameContent. */
+    @Query("SELECT * FROM basal_profiles WHERE contentHash = :hash ORDER BY id")
+    List<BasalProfileEntity> getByContentHash(long hash);
+
+    /** Hashes shared by more than one row, answered from the contentHash index. */
+    @Query("SELECT contentHash FROM basal_profiles GROUP BY contentHash HAVING COUNT(*) > 1")
+    List<Long> getSharedContentHashes();
+
+    /** Moves all children of :fromId (except :keepId itself) under :keepId. */
+    @Query("UPDATE basal_profiles SET baseProfileId = :keepId " +
+            "WHERE baseProfileId = :fromId AND id != :keepId")
+    void moveChildren(long fromId, long keepId);
+
+    @Query("UPDATE basal_profiles SET baseProfileId = :baseProfileId WHERE id = :id")
+    void setBaseProfileId(long id, Long baseProfileId);
+
+    /** Keyset-paged grid scan in id order: pass the last id of the previous chunk (0 to start). */
+    @Query("SELECT id, accuracy, " + GRID_COLUMNS + " FROM basal_profiles " +
+            "WHERE id > :afterId ORDER BY id LIMIT :limit")
+    List<ProfileGridRow> getGridChunk(long afterId, int limit);
+
+    /** As {@link #getGridChunk}, restricted to one origin (enum name). */
+    @Query("SELECT id, accuracy, " + GRID_COLUMNS + " FROM basal_profiles " +
+            "WHERE origin = :origin AND id > :afterId ORDER BY id LIMIT :limit")
+    List<ProfileGridRow> getGridChunkByOrigin(String origin, long afterId, int limit);
+
+    /** Keyset-paged full rows in id order, for bulk rewrites that must keep every column. */
+    @Query("SELECT * FROM basal_profiles WHERE id > :afterId ORDER BY id LIMIT :limit")
+    List<BasalProfileEntity> getProfileChunk(long afterId, int limit);
+
+    /** Existing rows among :ids, in id order; keep :ids well under SQLite's variable limit. */
+    @Query("SELECT * FROM basal_profiles WHERE id IN (:ids) ORDER BY id")
+    List<BasalProfileEntity> getProfilesByIds(List<Long> ids);
+
+    /** Full rows in id order for ProfileSnapshotWriter; caller must close the cursor. */
+    @Query("SELECT * FROM basal_profiles ORDER BY id")
+    Cursor queryAllForSnapshot();
+
+    /** Snapshot restore only: revisions and assignments go with their profiles (CASCADE). */
+    @Query("DELETE FROM basal_profiles")
+    void deleteAllProfiles();
+
+    /** Columnar scan source for ProfileTableReader; caller must close the cursor. */
+    @Query("SELECT id, name, accuracy, origin, " + GRID_COLUMNS + " FROM basal_profiles ORDER BY id")
+    Cursor queryProfileTable();
+
     @Insert
     long insertProfile(BasalProfileEntity profile);
 
@@ -26,4 +127,11 @@ public interface BasalProfileDao {
 
     @Query("DELETE FROM basal_profiles WHERE id = :id")
     void deleteProfile(long id);
+
+    /** Delete without leaving dangling baseProfileId links behind. */
+    @Transaction
+    default void deleteProfileReparentingChildren(long id) {
+        reparentChildren(id);
+        deleteProfile(id);
+    }
 }
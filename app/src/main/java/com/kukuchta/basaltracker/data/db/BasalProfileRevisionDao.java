@@ -0,0 +1,40 @@
+package com.kukuchta.basaltracker.data.db;
+
+import android.database.Cursor;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import com.kukuchta.basaltracker.data.db.entities.BasalProfileRevisionEntity;
+
+import java.util.List;
+
+@Dao
+public interface BasalProfileRevisionDao {
+
+    @Insert
+    long insertRevision(BasalProfileRevisionEntity revision);
+
+    @Query("SELECT MAX(revision) FROM basal_profile_revisions WHERE profileId = :profileId")
+    Integer getLatestRevision(long profileId);
+
+    @Query("SELECT MAX(revision) FROM basal_profile_revisions " +
+            "WHERE profileId = :profileId AND keyframe = 1 AND revision <= :revision")
+    Integer getKeyframeAtOrBefore(long profileId, int revision);
+
+    /** Inclusive range, oldest first. */
+    @Query("SELECT * FROM basal_profile_revisions " +
+            "WHERE profileId = :profileId AND revision BETWEEN :fromRevision AND :toRevision " +
+            "ORDER BY revision")
+    List<BasalProfileRevisionEntity> getRevisions(long profileId, int fromRevision, int toRevision);
+
+    /** Newest first; never touches packedUnits. */
+    @Query("SELECT revision, keyframe, accuracy, changedMask, createdAt FROM basal_profile_revisions " +
+            "WHERE profileId = :profileId ORDER BY revision DESC")
+    List<RevisionSummaryRow> getHistory(long profileId);
+
+    /** All rows in id order for ProfileSnapshotWriter; caller must close the cursor. */
+    @Query("SELECT * FROM basal_profile_revisions ORDER BY id")
+    Cursor queryAllForSnapshot();
+}
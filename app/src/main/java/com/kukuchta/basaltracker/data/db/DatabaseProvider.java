@@ -18,7 +18,9 @@ public final class DatabaseProvider {
                                     AppDatabase.class,
                                     "basal-db"
                             )
-                            .fallbackToDestructiveMigration(true)
+                            .addMigrations(AppDatabase.MIGRATIONS)
+                            // Upgrades always migrate; only a downgrade (older app) starts over
+                            .fallbackToDestructiveMigrationOnDowngrade(true)
                             .build();
                 }
             }
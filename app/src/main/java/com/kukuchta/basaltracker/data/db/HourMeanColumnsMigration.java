@@ -0,0 +1,55 @@
+package com.kukuchta.basaltracker.data.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.annotation.NonNull;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.kukuchta.basaltracker.data.db.entities.BasalProfileEntity;
+import com.kukuchta.basaltracker.data.mapper.BasalProfileMapper;
+
+import java.util.Locale;
+
+/**
+ * 8 -> 9: no schema change. The hour columns of sub-hour rows held the units at each hour
+ * start; they are rewritten to the dose-preserving hourly means that the mapper now stores,
+ * so existing rows agree with new ones for every hour-grid consumer.
+ */
+final class HourMeanColumnsMigration extends Migration {
+
+    HourMeanColumnsMigration() {
+        super(8, 9);
+    }
+
+    @Override
+    public void migrate(@NonNull SupportSQLiteDatabase db) {
+        rewriteHourColumns(db);
+    }
+
+    /** Rewrites the hour columns of every sub-hour row; also run by {@link LibraryCatchUpMigration}. */
+    static void rewriteHourColumns(SupportSQLiteDatabase db) {
+        try (Cursor c = db.query("SELECT id, name, accuracy, origin, resolutionMinutes, changePoints " +
+                "FROM basal_profiles WHERE changePoints IS NOT NULL")) {
+            ContentValues values = new ContentValues(24);
+            while (c.moveToNext()) {
+                BasalProfileEntity e = new BasalProfileEntity();
+                e.id = c.getLong(0);
+                e.name = c.getString(1);
+                e.accuracy = c.getDouble(2);
+                e.origin = c.getString(3);
+                e.resolutionMinutes = c.getInt(4);
+                e.changePoints = c.getBlob(5);
+                int[] units = BasalProfileMapper.toChangePointProfile(e).hourMeanUnits();
+                values.clear();
+                for (int h = 0; h < 24; h++) {
+                    values.put(String.format(Locale.ROOT, "units_h%02d", h), units[h]);
+                }
+                db.update("basal_profiles", SQLiteDatabase.CONFLICT_NONE, values,
+                        "id = ?", new Object[] { e.id });
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.kukuchta.basaltracker.data.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.annotation.NonNull;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.kukuchta.basaltracker.data.mapper.BasalProfileMapper;
+import com.kukuchta.basaltracker.data.mapper.RevisionCodec;
+import com.kukuchta.basaltracker.domain.ProfileContentHash;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * {@code from} (1..7) -> 9 in one step. Every schema change since the first release was
+ * additive, so the migration inspects what is already there and adds only what is missing;
+ * no row is dropped:
+ * - basal_profiles: metadataSearchText and contentHash (both backfilled from the row),
+ *   resolutionMinutes (60) and changePoints, plus the baseProfileId and contentHash indices;
+ * - basal_profile_revisions, profile_assignments and basal_overrides with their indices;
+ *   profiles without history get revision 0 as a keyframe of their current grid;
+ * - basal_profiles_fts is recreated and rebuilt from the content table.
+ * Statements mirror the ones Room generates for the entities, so schema validation passes.
+ */
+final class LibraryCatchUpMigration extends Migration {
+    private static final String PROFILES = "basal_profiles";
+    private static final String FTS = "basal_profiles_fts";
+
+    LibraryCatchUpMigration(int from) {
+        super(from, 9);
+    }
+
+    @Override
+    public void migrate(@NonNull SupportSQLiteDatabase db) {
+        Set<String> columns = columnsOf(db, PROFILES);
+        boolean backfillSearchText = !columns.contains("metadataSearchText");
+        boolean backfillHash = !columns.contains("contentHash");
+        if (backfillSearchText) db.execSQL("ALTER TABLE `basal_profiles` ADD COLUMN `metadataSearchText` TEXT");
+        if (backfillHash) db.execSQL("ALTER TABLE `basal_profiles` ADD COLUMN `contentHash` INTEGER NOT NULL DEFAULT 0");
+        if (!columns.contains("resolutionMinutes")) {
+            db.execSQL("ALTER TABLE `basal_profiles` ADD COLUMN `resolutionMinutes` INTEGER NOT NULL DEFAULT 60");
+        }
+        if (!columns.contains("changePoints")) db.execSQL("ALTER TABLE `basal_profiles` ADD COLUMN `changePoints` BLOB");
+        db.execSQL("CREATE INDEX IF NOT EXISTS `index_basal_profiles_baseProfileId` ON `basal_profiles` (`baseProfileId`)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS `index_basal_profiles_contentHash` ON `basal_profiles` (`contentHash`)");
+
+        db.execSQL("CREATE TABLE IF NOT EXISTS `basal_profile_revisions` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                + "`profileId` INTEGER NOT NULL, `revision` INTEGER NOT NULL, `keyframe` INTEGER NOT NULL, "
+                + "`accuracy` REAL NOT NULL, `changedMask` INTEGER NOT NULL, `packedUnits` BLOB, "
+                + "`createdAt` INTEGER NOT NULL, FOREIGN KEY(`profileId`) REFERENCES `basal_profiles`(`id`) "
+                + "ON UPDATE NO ACTION ON DELETE CASCADE )");
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_basal_profile_revisions_profileId_revision` "
+                + "ON `basal_profile_revisions` (`profileId`, `revision`)");
+        db.execSQL("CREATE TABLE IF NOT EXISTS `profile_assignments` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                + "`profileId` INTEGER NOT NULL, `validFrom` INTEGER NOT NULL, `validTo` INTEGER NOT NULL, "
+                + "`createdAt` INTEGER NOT NULL, FOREIGN KEY(`profileId`) REFERENCES `basal_profiles`(`id`) "
+                + "ON UPDATE NO ACTION ON DELETE CASCADE )");
+        db.execSQL("CREATE INDEX IF NOT EXISTS `index_profile_assignments_profileId` ON `profile_assignments` (`profileId`)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS `index_profile_assignments_validFrom_validTo` "
+                + "ON `profile_assignments` (`validFrom`, `validTo`)");
+        db.execSQL("CREATE TABLE IF NOT EXISTS `basal_overrides` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                + "`kind` TEXT, `value` REAL NOT NULL, `startsAt` INTEGER NOT NULL, `endsAt` INTEGER NOT NULL, "
+                + "`createdAt` INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS `index_basal_overrides_startsAt_endsAt` ON `basal_overrides` (`startsAt`, `endsAt`)");
+
+        // Before the FTS table exists, so the row updates below fire no sync triggers
+        dropFts(db);
+        if (backfillSearchText || backfillHash) backfill(db, backfillSearchText, backfillHash);
+        HourMeanColumnsMigration.rewriteHourColumns(db); // no-op unless sub-hour rows exist (7)
+        recordFirstRevisions(db);
+
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `basal_profiles_fts` USING FTS4("
+                + "`name` TEXT, `metadataSearchText` TEXT, tokenize=unicode61, content=`basal_profiles`)");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_basal_profiles_fts_BEFORE_UPDATE "
+                + "BEFORE UPDATE ON `basal_profiles` BEGIN DELETE FROM `basal_profiles_fts` WHERE `docid`=OLD.`rowid`; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_basal_profiles_fts_BEFORE_DELETE "
+                + "BEFORE DELETE ON `basal_profiles` BEGIN DELETE FROM `basal_profiles_fts` WHERE `docid`=OLD.`rowid`; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_basal_profiles_fts_AFTER_UPDATE "
+                + "AFTER UPDATE ON `basal_profiles` BEGIN INSERT INTO `basal_profiles_fts`(`docid`, `name`, "
+                + "`metadataSearchText`) VALUES (NEW.`rowid`, NEW.`name`, NEW.`metadataSearchText`); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_basal_profiles_fts_AFTER_INSERT "
+                + "AFTER INSERT ON `basal_profiles` BEGIN INSERT INTO `basal_profiles_fts`(`docid`, `name`, "
+                + "`metadataSearchText`) VALUES (NEW.`rowid`, NEW.`name`, NEW.`metadataSearchText`); END");
+        db.execSQL("INSERT INTO `basal_profiles_fts`(`basal_profiles_fts`) VALUES('rebuild')");
+    }
+
+    private static Set<String> columnsOf(SupportSQLiteDatabase db, String table) {
+        Set<String> out = new HashSet<>();
+        try (Cursor c = db.query("PRAGMA table_info(`" + table + "`)")) {
+            int name = c.getColumnIndexOrThrow("name");
+            while (c.moveToNext()) out.add(c.getString(name));
+        }
+        return out;
+    }
+
+    private static void dropFts(SupportSQLiteDatabase db) {
+        for (String when : new String[] { "BEFORE_UPDATE", "BEFORE_DELETE", "AFTER_UPDATE", "AFTER_INSERT" }) {
+            db.execSQL("DROP TRIGGER IF EXISTS room_fts_content_sync_" + FTS + "_" + when);
+        }
+        db.execSQL("DROP TABLE IF EXISTS `" + FTS + "`");
+    }
+
+    /** Search text from the stored metadata, content hash from accuracy and the hour columns. */
+    private static void backfill(SupportSQLiteDatabase db, boolean searchText, boolean hash) {
+        try (Cursor c = db.query("SELECT id, metadataJson, accuracy, " + hourColumns() + " FROM basal_profiles")) {
+            ContentValues values = new ContentValues(2);
+            int[] units = new int[24];
+            while (c.moveToNext()) {
+                values.clear();
+                if (searchText) values.put("metadataSearchText", BasalProfileMapper.searchTextOf(c.getString(1)));
+                if (hash) {
+                    for (int h = 0; h < 24; h++) units[h] = c.getInt(3 + h);
+                    values.put("contentHash", ProfileContentHash.of(c.getDouble(2), units));
+                }
+                db.update(PROFILES, SQLiteDatabase.CONFLICT_NONE, values, "id = ?", new Object[] { c.getLong(0) });
+            }
+        }
+    }
+
+    /** Revision 0 (keyframe of the current grid) for every profile that has no history yet. */
+    private static void recordFirstRevisions(SupportSQLiteDatabase db) {
+        try (Cursor c = db.query("SELECT id, accuracy, createdAt, " + hourColumns() + " FROM basal_profiles p "
+                + "WHERE NOT EXISTS (SELECT 1 FROM basal_profile_revisions r WHERE r.profileId = p.id)")) {
+            ContentValues values = new ContentValues(7);
+            int[] units = new int[24];
+            while (c.moveToNext()) {
+                for (int h = 0; h < 24; h++) units[h] = c.getInt(3 + h);
+                values.clear();
+                values.put("profileId", c.getLong(0));
+                values.put("revision", 0);
+                values.put("keyframe", 1);
+                values.put("accuracy", c.getDouble(1));
+                values.put("changedMask", RevisionCodec.ALL_HOURS);
+                values.put("packedUnits", RevisionCodec.encode(units, RevisionCodec.ALL_HOURS));
+                values.put("createdAt", c.getLong(2));
+                db.insert("basal_profile_revisions", SQLiteDatabase.CONFLICT_ABORT, values);
+            }
+        }
+    }
+
+    private static String hourColumns() {
+        StringBuilder sb = new StringBuilder();
+        for (int h = 0; h < 24; h++) {
+            if (h > 0) sb.append(", ");
+            sb.append(String.format(Locale.ROOT, "units_h%02d", h));
+        }
+        return sb.toString();
+    }
+}
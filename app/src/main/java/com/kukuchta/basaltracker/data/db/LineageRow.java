@@ -0,0 +1,13 @@
+package com.kukuchta.basaltracker.data.db;
+
+import androidx.room.Embedded;
+
+import com.kukuchta.basaltracker.data.db.entities.BasalProfileEntity;
+
+/** Row of {@link BasalProfileDao#getLineage}: a profile and its distance from the lineage root. */
+public class LineageRow {
+    @Embedded
+    public BasalProfileEntity profile;
+
+    public int depth;
+}
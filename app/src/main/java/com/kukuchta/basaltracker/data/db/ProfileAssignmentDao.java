@@ -0,0 +1,42 @@
+package com.kukuchta.basaltracker.data.db;
+
+import android.database.Cursor;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import com.kukuchta.basaltracker.data.db.entities.ProfileAssignmentEntity;
+
+import java.util.List;
+
+@Dao
+public interface ProfileAssignmentDao {
+
+    @Query("SELECT * FROM profile_assignments ORDER BY validFrom, id")
+    List<ProfileAssignmentEntity> getAllAssignments();
+
+    /** Winning assignment at instant :t (newest first), or null. */
+    @Query("SELECT * FROM profile_assignments WHERE validFrom <= :t AND validTo > :t " +
+            "ORDER BY id DESC LIMIT 1")
+    ProfileAssignmentEntity getActiveAt(long t);
+
+    /** All assignments overlapping [:from, :to). */
+    @Query("SELECT * FROM profile_assignments WHERE validFrom < :to AND validTo > :from " +
+            "ORDER BY validFrom, id")
+    List<ProfileAssignmentEntity> getOverlapping(long from, long to);
+
+    /** All rows in id order for ProfileSnapshotWriter; caller must close the cursor. */
+    @Query("SELECT * FROM profile_assignments ORDER BY id")
+    Cursor queryAllForSnapshot();
+
+    @Insert
+    long insertAssignment(ProfileAssignmentEntity assignment);
+
+    /** Re-points every assignment of :fromProfileId at :toProfileId (e.g. before a dedupe delete). */
+    @Query("UPDATE profile_assignments SET profileId = :toProfileId WHERE profileId = :fromProfileId")
+    void moveAssignments(long fromProfileId, long toProfileId);
+
+    @Query("DELETE FROM profile_assignments WHERE id = :id")
+    void deleteAssignment(long id);
+}
@@ -0,0 +1,45 @@
+package com.kukuchta.basaltracker.data.db;
+
+/**
+ * Projection of basal_profiles with only the numeric grid (no name / metadata strings),
+ * for bulk scans that never need the full entity.
+ */
+public class ProfileGridRow {
+    public long id;
+    public double accuracy;
+
+    public int units_h00;
+    public int units_h01;
+    public int units_h02;
+    public int units_h03;
+    public int units_h04;
+    public int units_h05;
+    public int units_h06;
+    public int units_h07;
+    public int units_h08;
+    public int units_h09;
+    public int units_h10;
+    public int units_h11;
+    public int units_h12;
+    public int units_h13;
+    public int units_h14;
+    public int units_h15;
+    public int units_h16;
+    public int units_h17;
+    public int units_h18;
+    public int units_h19;
+    public int units_h20;
+    public int units_h21;
+    public int units_h22;
+    public int units_h23;
+
+    /** Copies the 24 unit columns into {@code out[offset..offset+24)} without allocating. */
+    public void copyUnitsTo(int[] out, int offset) {
+        out[offset + 0] = units_h00;  out[offset + 1] = units_h01;  out[offset + 2] = units_h02;  out[offset + 3] = units_h03;
+        out[offset + 4] = units_h04;  out[offset + 5] = units_h05;  out[offset + 6] = units_h06;  out[offset + 7] = units_h07;
+        out[offset + 8] = units_h08;  out[offset + 9] = units_h09;  out[offset + 10] = units_h10; out[offset + 11] = units_h11;
+        out[offset + 12] = units_h12; out[offset + 13] = units_h13; out[offset + 14] = units_h14; out[offset + 15] = units_h15;
+        out[offset + 16] = units_h16; out[offset + 17] = units_h17; out[offset + 18] = units_h18; out[offset + 19] = units_h19;
+        out[offset + 20] = units_h20; out[offset + 21] = units_h21; out[offset + 22] = units_h22; out[offset + 23] = units_h23;
+    }
+}
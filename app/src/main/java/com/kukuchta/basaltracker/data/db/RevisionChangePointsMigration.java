@@ -0,0 +1,32 @@
+package com.kukuchta.basaltracker.data.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * 9 -> 10: revisions keep the resolution and change points of sub-hour profiles. Older
+ * revisions have no change points to recover; the newest one of each profile gets the row's
+ * current ones, since it always matches the stored profile, so the next unchanged save is
+ * still recognised as one.
+ */
+final class RevisionChangePointsMigration extends Migration {
+
+    RevisionChangePointsMigration() {
+        super(9, 10);
+    }
+
+    @Override
+    public void migrate(@NonNull SupportSQLiteDatabase db) {
+        db.execSQL("ALTER TABLE `basal_profile_revisions` "
+                + "ADD COLUMN `resolutionMinutes` INTEGER NOT NULL DEFAULT 60");
+        db.execSQL("ALTER TABLE `basal_profile_revisions` ADD COLUMN `changePoints` BLOB");
+        db.execSQL("UPDATE basal_profile_revisions SET "
+                + "resolutionMinutes = (SELECT p.resolutionMinutes FROM basal_profiles p "
+                + "WHERE p.id = basal_profile_revisions.profileId), "
+                + "changePoints = (SELECT p.changePoints FROM basal_profiles p "
+                + "WHERE p.id = basal_profile_revisions.profileId) "
+                + "WHERE revision = (SELECT MAX(r.revision) FROM basal_profile_revisions r "
+                + "WHERE r.profileId = basal_profile_revisions.profileId)");
+    }
+}
@@ -0,0 +1,10 @@
+package com.kukuchta.basaltracker.data.db;
+
+/** History listing projection: everything except the packed units, so nothing is decoded. */
+public class RevisionSummaryRow {
+    public int revision;
+    public boolean keyframe;
+    public double accuracy;
+    public int changedMask;
+    public long createdAt;
+}
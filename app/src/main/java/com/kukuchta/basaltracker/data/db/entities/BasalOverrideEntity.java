@@ -0,0 +1,33 @@
+package com.kukuchta.basaltracker.data.db.entities;
+
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Temporary basal override over [startsAt, endsAt), layered over the profile in effect.
+ * Overlaps are allowed; the newest override (highest id) wins.
+ */
+@Entity(
+        tableName = "basal_overrides",
+        indices = { @Index({ "startsAt", "endsAt" }) }
+)
+public class BasalOverrideEntity {
+    @PrimaryKey(autoGenerate = true)
+    public long id;
+
+    /** Enum name: PERCENT, ABSOLUTE */
+    public String kind;
+
+    /** Percent of the base rate (PERCENT) or U/h (ABSOLUTE) */
+    public double value;
+
+    /** Inclusive start (epoch millis) */
+    public long startsAt;
+
+    /** Exclusive end (epoch millis) */
+    public long endsAt;
+
+    /** Creation timestamp (epoch millis) */
+    public long createdAt;
+}
@@ -1,9 +1,13 @@
 package com.kukuchta.basaltracker.data.db.entities;
 
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
-@Entity(tableName = "basal_profiles")
+@Entity(
+        tableName = "basal_profiles",
+        indices = { @Index("baseProfileId"), @Index("contentHash") }
+)
 public class BasalProfileEntity {
     @PrimaryKey(autoGenerate = true)
     public long id;
@@ -16,16 +20,35 @@ public class BasalProfileEntity {
     /** Enum name: GENERATED, USER_MODIFIED, IMPORTED */
     public String origin;
 
-    /** Nullable link to base profile */
+    /** Nullable link to base profile; indexed for lineage walks */
     public Long baseProfileId;
 
     /** Serialized metadata map (e.g., JSON) */
     public String metadataJson;
 
+    /** Space-joined metadata values, indexed by basal_profiles_fts */
+    public String metadataSearchText;
+
+    /** ProfileContentHash of (accuracy, units); indexed for duplicate detection */
+    public long contentHash;
+
     /** Creation timestamp (epoch millis) */
     public long createdAt;
 
-    /** Hour-grid storage: units for each hour 0..23 (non-negative integers) */
+    /** Change-point grid in minutes: 60 = hour grid, 30 / 15 = sub-hour profile */
+    public int resolutionMinutes = 60;
+
+    /**
+     * Sub-hour profiles only (resolutionMinutes < 60): varint pairs (start slot, units),
+     * authoritative. Null for hour-grid profiles.
+     */
+    public byte[] changePoints;
+
+    /**
+     * Hour-grid storage: units for each hour 0..23 (non-negative integers).
+     * For sub-hour profiles: each hour's mean units, rounded so the daily dose is kept, for
+     * hour-grid consumers (ChangePointProfile.hourMeanUnits).
+     */
     public int units_h00;
     public int units_h01;
     public int units_h02;
@@ -0,0 +1,19 @@
+package com.kukuchta.basaltracker.data.db.entities;
+
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+
+/**
+ * External-content FTS4 index over {@link BasalProfileEntity}.
+ * Room generates the triggers that keep it in sync with basal_profiles; rowid == profile id.
+ * unicode61 so Polish diacritics fold and match case-insensitively.
+ */
+@Fts4(contentEntity = BasalProfileEntity.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "basal_profiles_fts")
+public class BasalProfileFtsEntity {
+    public String name;
+
+    /** Metadata values only (keys and JSON syntax are not searchable) */
+    public String metadataSearchText;
+}
@@ -0,0 +1,56 @@
+package com.kukuchta.basaltracker.data.db.entities;
+
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * One saved version of a profile's grid.
+ *
+ * - changedMask marks the hours that differ from the previous revision (bit h = hour h).
+ * - Delta rows pack only those hours; keyframe rows pack all 24, so reconstruction never has
+ *   to look further back than the nearest keyframe.
+ * - Unit values are varint-packed into packedUnits in ascending hour order (RevisionCodec).
+ * - Sub-hour profiles also keep their full change points per revision; the hour units are only
+ *   their hourly means, so sub-hour edits that keep every mean would otherwise be lost.
+ * - Rows are removed together with their profile (ON DELETE CASCADE).
+ */
+@Entity(
+        tableName = "basal_profile_revisions",
+        foreignKeys = @ForeignKey(
+                entity = BasalProfileEntity.class,
+                parentColumns = "id",
+                childColumns = "profileId",
+                onDelete = ForeignKey.CASCADE
+        ),
+        indices = { @Index(value = { "profileId", "revision" }, unique = true) }
+)
+public class BasalProfileRevisionEntity {
+    @PrimaryKey(autoGenerate = true)
+    public long id;
+
+    public long profileId;
+
+    /** 0-based, consecutive per profile */
+    public int revision;
+
+    public boolean keyframe;
+
+    /** Quantization step in U/h at this revision */
+    public double accuracy;
+
+    /** Bit h set => hour h changed vs the previous revision */
+    public int changedMask;
+
+    public byte[] packedUnits;
+
+    /** Profile resolution at this revision (60 = hour grid) */
+    public int resolutionMinutes = 60;
+
+    /** Sub-hour revisions only: the profile's changePoints blob as saved, never delta-coded */
+    public byte[] changePoints;
+
+    /** Save timestamp (epoch millis) */
+    public long createdAt;
+}
@@ -0,0 +1,40 @@
+package com.kukuchta.basaltracker.data.db.entities;
+
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Date-based schedule entry: profileId is active over [validFrom, validTo).
+ * Overlaps are allowed; the newest assignment (highest id) wins, so a sick-day entry
+ * layered over a weekly default takes precedence without splitting it.
+ */
+@Entity(
+        tableName = "profile_assignments",
+        foreignKeys = @ForeignKey(
+                entity = BasalProfileEntity.class,
+                parentColumns = "id",
+                childColumns = "profileId",
+                onDelete = ForeignKey.CASCADE
+        ),
+        indices = {
+                @Index("profileId"),
+                @Index({ "validFrom", "validTo" })
+        }
+)
+public class ProfileAssignmentEntity {
+    @PrimaryKey(autoGenerate = true)
+    public long id;
+
+    public long profileId;
+
+    /** Inclusive start (epoch millis) */
+    public long validFrom;
+
+    /** Exclusive end (epoch millis); Long.MAX_VALUE for open-ended */
+    public long validTo;
+
+    /** Creation timestamp (epoch millis) */
+    public long createdAt;
+}
@@ -0,0 +1,158 @@
+package com.kukuchta.basaltracker.data.importer;
+
+import com.kukuchta.basaltracker.domain.HourlyHistory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * One streaming pass over a pump history CSV ({@link PumpLogScanner} format) into
+ * {@link HourlyHistory}: delivered basal, boluses, glucose level and fasting glucose drift
+ * per hour of day.
+ *
+ * Line-aligned chunks are spread over one worker per thread; each worker reuses one read
+ * buffer and folds into its own 24-slot accumulators, which are summed at the end. Basal spans
+ * crossing a chunk boundary are stitched from each chunk's first and last BASAL record, as in
+ * {@link PumpLogImporter}. Glucose pairs and bolus state are not carried across chunks: each
+ * chunk loses one glucose pair and treats its first {@link #BOLUS_EFFECT_MS} as possibly
+ * bolus-affected unless it sees a bolus earlier, a few hours per {@code chunkBytes} of log.
+ */
+public final class HistoryStatsCollector {
+    /** Readings this long after a bolus are not fasting. */
+    public static final long BOLUS_EFFECT_MS = 4 * 3_600_000L;
+    /** Consecutive readings further apart than this are not a drift sample (sensor gap). */
+    public static final long MAX_READING_GAP_MS = 20 * 60_000L;
+
+    private final int threads;
+    private final long chunkBytes;
+
+    public HistoryStatsCollector(int threads) {
+        this(threads, PumpLogImporter.CHUNK_BYTES);
+    }
+
+    HistoryStatsCollector(int threads, long chunkBytes) {
+        if (threads <= 0) throw new IllegalArgumentException("threads must be > 0");
+        this.threads = threads;
+        this.chunkBytes = chunkBytes;
+    }
+
+    public HourlyHistory collect(FileChannel ch) throws IOException {
+        long[] bounds = PumpLogChunks.split(ch, chunkBytes);
+        int chunks = bounds.length - 1;
+        int workers = Math.min(threads, Math.max(1, chunks));
+
+        // Per-chunk BASAL endpoints for stitching; firstT = -1 when the chunk has none
+        long[] firstT = new long[chunks];
+        long[] lastT = new long[chunks];
+        long[] lastRate = new long[chunks];
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<HourlyHistory>> parts = new ArrayList<>(workers);
+        try {
+            for (int w = 0; w < workers; w++) {
+                int first = w;
+                parts.add(pool.submit(() -> {
+                    Worker worker = new Worker();
+                    for (int c = first; c < chunks; c += workers) {
+                        worker.parse(ch, bounds[c], bounds[c + 1]);
+                        firstT[c] = worker.firstBasalT;
+                        lastT[c] = worker.lastBasalT;
+                        lastRate[c] = worker.lastBasalRate;
+                    }
+                    return worker.history;
+                }));
+            }
+            HourlyHistory total = new HourlyHistory();
+            for (Future<HourlyHistory> f : parts) total.addAll(get(f));
+
+            long prevT = -1, prevRate = 0;
+            for (int c = 0; c < chunks; c++) {
+                if (firstT[c] < 0) continue;
+                if (prevT >= 0 && firstT[c] >= prevT && firstT[c] - prevT <= PumpLogImporter.MAX_SPAN_MS) {
+                    total.addBasal(prevT, firstT[c], prevRate);
+                }
+                prevT = lastT[c];
+                prevRate = lastRate[c];
+            }
+            return total;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static HourlyHistory get(Future<HourlyHistory> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Collection interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Chunk parsing failed", e.getCause());
+        }
+    }
+
+    /** One thread's reused buffer and accumulators; chain state is reset per chunk. */
+    private static final class Worker implements PumpLogScanner.RecordSink {
+        final HourlyHistory history = new HourlyHistory();
+        final PumpLogScanner.Counts counts = new PumpLogScanner.Counts();
+        byte[] buffer;
+
+        long firstBasalT, lastBasalT, lastBasalRate;
+        long chunkStartT, lastBolusT;
+        long prevGlucoseT, prevGlucose;
+
+        void parse(FileChannel ch, long from, long to) throws IOException {
+            firstBasalT = -1;
+            chunkStartT = -1;
+            lastBolusT = -1;
+            prevGlucoseT = -1;
+            counts.reset();
+            buffer = PumpLogChunks.read(ch, from, to, buffer);
+            PumpLogScanner.scan(buffer, 0, (int) (to - from), this, counts);
+        }
+
+        @Override
+        public void onRecord(long t, int kind, long value) {
+            if (chunkStartT < 0) chunkStartT = t;
+            switch (kind) {
+                case PumpLogScanner.KIND_BASAL:
+                    if (firstBasalT < 0) {
+                        firstBasalT = t;
+                    } else if (t >= lastBasalT && t - lastBasalT <= PumpLogImporter.MAX_SPAN_MS) {
+                        history.addBasal(lastBasalT, t, lastBasalRate);
+                    }
+                    lastBasalT = t;
+                    lastBasalRate = value;
+                    break;
+                case PumpLogScanner.KIND_BOLUS:
+                    history.addBolus(t, value);
+                    lastBolusT = t;
+                    break;
+                case PumpLogScanner.KIND_GLUCOSE:
+                    history.addGlucose(t, value);
+                    if (prevGlucoseT >= 0 && t > prevGlucoseT && t - prevGlucoseT <= MAX_READING_GAP_MS
+                            && isFasting(prevGlucoseT)) {
+                        history.addDrift(prevGlucoseT, t, value - prevGlucose);
+                    }
+                    prevGlucoseT = t;
+                    prevGlucose = value;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /** No bolus within BOLUS_EFFECT_MS before t, as far as this chunk can tell. */
+        private boolean isFasting(long t) {
+            if (lastBolusT >= 0) return t - lastBolusT >= BOLUS_EFFECT_MS;
+            return t - chunkStartT >= BOLUS_EFFECT_MS;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.kukuchta.basaltracker.data.importer;
+
+import java.util.Arrays;
+
+/**
+ * Per-day, per-hour integrals of a piecewise-constant rate over consecutive local days,
+ * in primitive arrays: for day d (relative to {@link #firstDay()}) and hour h,
+ * weighted[d * 24 + h] = sum of rate * ms and covered[...] = sum of ms.
+ *
+ * Days can be dropped from the front once complete, so a sliding window over a long log
+ * stays small.
+ */
+final class HourGrid {
+    private static final long MS_PER_HOUR = 3_600_000L;
+    private static final long MS_PER_DAY = PumpLogScanner.MS_PER_DAY;
+
+    private long firstDay = Long.MIN_VALUE; // unset until the first span
+    private int days;
+    private long[] weighted = new long[24 * 8];
+    private long[] covered = new long[24 * 8];
+
+    long firstDay() { return firstDay; }
+    int days() { return days; }
+    long weighted(int day, int hour) { return weighted[day * 24 + hour]; }
+    long covered(int day, int hour) { return covered[day * 24 + hour]; }
+
+    void reset() {
+        firstDay = Long.MIN_VALUE;
+        days = 0;
+    }
+
+    /**
+     * Adds rate over local [t0, t1), split at hour boundaries. Parts before the first kept day
+     * (already dropped) are skipped.
+     * @return false if the span started before the window and was (partly) skipped
+     */
+    boolean add(long t0, long t1, long rate) {
+        boolean complete = true;
+        if (firstDay == Long.MIN_VALUE) firstDay = Math.floorDiv(t0, MS_PER_DAY);
+        long windowStart = firstDay * MS_PER_DAY;
+        if (t0 < windowStart) {
+            complete = false;
+            t0 = windowStart;
+        }
+        while (t0 < t1) {
+            long hourEnd = (Math.floorDiv(t0, MS_PER_HOUR) + 1) * MS_PER_HOUR;
+            long end = Math.min(t1, hourEnd);
+            int slot = slot(t0);
+            long ms = end - t0;
+            weighted[slot] += rate * ms;
+            covered[slot] += ms;
+            t0 = end;
+        }
+        return complete;
+    }
+
+    /** Adds every cell of {@code other}; days before this window are skipped. */
+    void addAll(HourGrid other) {
+        if (other.days == 0) return;
+        if (firstDay == Long.MIN_VALUE) firstDay = other.firstDay;
+        for (int d = 0; d < other.days; d++) {
+            long day = other.firstDay + d;
+            if (day < firstDay) continue;
+            int base = slot(day * MS_PER_DAY);
+            int src = d * 24;
+            for (int h = 0; h < 24; h++) {
+                weighted[base + h] += other.weighted[src + h];
+                covered[base + h] += other.covered[src + h];
+            }
+        }
+    }
+
+    /** Drops the first {@code n} days; the window then starts at firstDay + n. */
+    void dropFront(int n) {
+        if (n <= 0) return;
+        if (n >= days) {
+            firstDay += n;
+            days = 0;
+            return;
+        }
+        int keep = (days - n) * 24;
+        System.arraycopy(weighted, n * 24, weighted, 0, keep);
+        System.arraycopy(covered, n * 24, covered, 0, keep);
+        firstDay += n;
+        days -= n;
+    }
+
+    /** Cell index for local instant t (t >= window start), growing the window as needed. */
+    private int slot(long t) {
+        int day = (int) (Math.floorDiv(t, MS_PER_DAY) - firstDay);
+        if (day >= days) {
+            int need = (day + 1) * 24;
+            if (need > weighted.length) {
+                int cap = Math.max(need, weighted.length * 2);
+                weighted = Arrays.copyOf(weighted, cap);
+                covered = Arrays.copyOf(covered, cap);
+            }
+            Arrays.fill(weighted, days * 24, need, 0L);
+            Arrays.fill(covered, days * 24, need, 0L);
+            days = day + 1;
+        }
+        return day * 24 + (int) (Math.floorMod(t, MS_PER_DAY) / MS_PER_HOUR);
+    }
+}
@@ -0,0 +1,71 @@
+package com.kukuchta.basaltracker.data.importer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Line-aligned chunking of a log file, so chunks can be parsed independently and in parallel.
+ * Only the boundaries are computed up front; chunk bytes are read on demand into buffers the
+ * caller reuses, so memory does not grow with the file.
+ */
+public final class PumpLogChunks {
+    private static final int PROBE = 4096;
+
+    private PumpLogChunks() {}
+
+    /**
+     * Offsets [0, b1, ..., size]: each nominal boundary every {@code chunkBytes} is moved just
+     * past the next '\n'. Chunk i is [bounds[i], bounds[i + 1]).
+     */
+    public static long[] split(FileChannel ch, long chunkBytes) throws IOException {
+        if (chunkBytes <= 0) throw new IllegalArgumentException("chunkBytes must be > 0");
+        long size = ch.size();
+        long[] bounds = new long[(int) (size / chunkBytes) + 2];
+        int n = 0;
+        bounds[n++] = 0;
+        ByteBuffer probe = ByteBuffer.allocate(PROBE);
+        long pos = chunkBytes;
+        while (pos < size) {
+            long cut = nextLineStart(ch, pos, size, probe);
+            if (cut > bounds[n - 1] && cut < size) bounds[n++] = cut;
+            if (cut >= size) break;
+            pos = cut + chunkBytes;
+        }
+        bounds[n++] = size;
+        return Arrays.copyOf(bounds, n);
+    }
+
+    /**
+     * Reads [from, to) into {@code reuse} (grown when too small) and returns the buffer holding
+     * the bytes at [0, to - from).
+     */
+    public static byte[] read(FileChannel ch, long from, long to, byte[] reuse) throws IOException {
+        int len = (int) (to - from);
+        byte[] buf = (reuse != null && reuse.length >= len) ? reuse : new byte[len];
+        ByteBuffer bb = ByteBuffer.wrap(buf, 0, len);
+        long pos = from;
+        while (bb.hasRemaining()) {
+            int r = ch.read(bb, pos); // positional: safe from several threads at once
+            if (r < 0) throw new IOException("Unexpected end of file at " + pos);
+            pos += r;
+        }
+        return buf;
+    }
+
+    private static long nextLineStart(FileChannel ch, long pos, long size, ByteBuffer probe)
+            throws IOException {
+        while (pos < size) {
+            probe.clear();
+            int r = ch.read(probe, pos);
+            if (r <= 0) return size;
+            byte[] a = probe.array();
+            for (int i = 0; i < r; i++) {
+                if (a[i] == '\n') return pos + i + 1;
+            }
+            pos += r;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,242 @@
+package com.kukuchta.basaltracker.data.importer;
+
+import com.kukuchta.basaltracker.data.db.entities.BasalProfileEntity;
+import com.kukuchta.basaltracker.data.mapper.BasalProfileMapper;
+import com.kukuchta.basaltracker.domain.BasalProfile;
+import com.kukuchta.basaltracker.domain.ProfileOrigin;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Derives one hourly basal profile per logged day from the BASAL records of a pump history
+ * CSV ({@link PumpLogScanner} format) and hands them out in batches as IMPORTED rows.
+ *
+ * Pipeline, with memory bounded by the thread count and chunk size, not the file size:
+ * - the file is cut into line-aligned chunks ({@link PumpLogChunks}) and read in waves of one
+ *   chunk per thread, each into that thread's reused buffer;
+ * - every chunk is parsed in parallel into its own {@link HourGrid}: the rate of each BASAL
+ *   record holds until the next one, integrated per local hour;
+ * - chunk results are merged in file order, stitching the span from one chunk's last record
+ *   to the next chunk's first;
+ * - days before the last merged record are complete: they are turned into profiles, dropped
+ *   from the window and written once a batch is full.
+ *
+ * The log must be chronological (pump exports are); records going back in time are counted
+ * and start a new chain. A rate is never extended over more than {@link #MAX_SPAN_MS}, and a
+ * day is only imported if every hour is covered for at least {@link #MIN_HOUR_COVERAGE_MS}.
+ * Not thread-safe; one run per instance.
+ */
+public final class PumpLogImporter {
+    public static final long MAX_SPAN_MS = 25 * 3_600_000L;
+    public static final long MIN_HOUR_COVERAGE_MS = 30 * 60_000L;
+
+    static final long CHUNK_BYTES = 8L << 20;
+    static final int BATCH_SIZE = 256;
+
+    /** Writes one batch of new rows (id == 0), e.g. in a single transaction. */
+    public interface BatchWriter {
+        void write(List<BasalProfileEntity> batch);
+    }
+
+    /** Outcome of a run. */
+    public static final class Report {
+        public long lines;
+        public long basalRecords;
+        public long ignoredLines;
+        public long malformedLines;
+        public long unorderedRecords;
+        public int daysImported;
+        public int daysIncomplete;
+    }
+
+    private final double accuracy;
+    private final String sourceName;
+    private final int threads;
+    private final long chunkBytes;
+
+    public PumpLogImporter(double accuracy, String sourceName, int threads) {
+        this(accuracy, sourceName, threads, CHUNK_BYTES);
+    }
+
+    PumpLogImporter(double accuracy, String sourceName, int threads, long chunkBytes) {
+        if (accuracy <= 0.0) throw new IllegalArgumentException("accuracy must be > 0");
+        if (threads <= 0) throw new IllegalArgumentException("threads must be > 0");
+        this.accuracy = accuracy;
+        this.sourceName = sourceName;
+        this.threads = threads;
+        this.chunkBytes = chunkBytes;
+    }
+
+    public Report run(FileChannel ch, BatchWriter writer) throws IOException {
+        long[] bounds = PumpLogChunks.split(ch, chunkBytes);
+        int chunks = bounds.length - 1;
+        Report report = new Report();
+        BasalChunk[] slots = new BasalChunk[Math.min(threads, Math.max(1, chunks))];
+        for (int i = 0; i < slots.length; i++) slots[i] = new BasalChunk();
+
+        HourGrid window = new HourGrid();
+        List<BasalProfileEntity> batch = new ArrayList<>(BATCH_SIZE);
+        long prevT = -1, prevRate = 0;
+
+        ExecutorService pool = Executors.newFixedThreadPool(slots.length);
+        try {
+            List<Callable<BasalChunk>> wave = new ArrayList<>(slots.length);
+            for (int first = 0; first < chunks; first += slots.length) {
+                wave.clear();
+                int waveSize = Math.min(slots.length, chunks - first);
+                for (int i = 0; i < waveSize; i++) {
+                    BasalChunk slot = slots[i];
+                    long from = bounds[first + i], to = bounds[first + i + 1];
+                    wave.add(() -> slot.parse(ch, from, to));
+                }
+                List<Future<BasalChunk>> done = pool.invokeAll(wave);
+
+                // Merge in file order
+                for (Future<BasalChunk> f : done) {
+                    BasalChunk c = get(f);
+                    report.lines += c.counts.lines;
+                    report.basalRecords += c.basalRecords;
+                    report.ignoredLines += c.counts.ignored;
+                    report.malformedLines += c.counts.malformed;
+                    report.unorderedRecords += c.unordered;
+                    if (c.firstT < 0) continue;
+                    if (prevT >= 0) {
+                        if (c.firstT < prevT) {
+                            report.unorderedRecords++;
+                        } else if (c.firstT - prevT <= MAX_SPAN_MS) {
+                            window.add(prevT, c.firstT, prevRate);
+                        }
+                    }
+                    window.addAll(c.grid);
+                    prevT = c.lastT;
+                    prevRate = c.lastRate;
+                }
+
+                // Days before the last record's day can no longer change
+                if (window.days() > 0) {
+                    long openDay = Math.floorDiv(prevT, PumpLogScanner.MS_PER_DAY);
+                    flushDays(window, (int) Math.max(0, openDay - window.firstDay()), batch, writer, report);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // The last record's rate has no known end, so the trailing day keeps only what is covered
+        flushDays(window, window.days(), batch, writer, report);
+        if (!batch.isEmpty()) writer.write(batch);
+        return report;
+    }
+
+    private static BasalChunk get(Future<BasalChunk> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Chunk parsing failed", e.getCause());
+        }
+    }
+
+    /** Converts the first {@code n} window days into rows, then drops them from the window. */
+    private void flushDays(HourGrid window, int n, List<BasalProfileEntity> batch,
+                           BatchWriter writer, Report report) {
+        n = Math.min(n, window.days());
+        int[] units = new int[24];
+        for (int d = 0; d < n; d++) {
+            long coveredMs = 0;
+            boolean complete = true;
+            for (int h = 0; h < 24; h++) {
+                long covered = window.covered(d, h);
+                if (covered < MIN_HOUR_COVERAGE_MS) {
+                    complete = false;
+                    break;
+                }
+                coveredMs += covered;
+                double rateUh = window.weighted(d, h) / (double) covered / 1000.0;
+                units[h] = (int) Math.round(rateUh / accuracy);
+            }
+            if (!complete) {
+                if (hasAnyCoverage(window, d)) report.daysIncomplete++;
+                continue;
+            }
+            LocalDate date = LocalDate.ofEpochDay(window.firstDay() + d);
+            batch.add(BasalProfileMapper.toEntity(toProfile(date, units, coveredMs)));
+            report.daysImported++;
+            if (batch.size() >= BATCH_SIZE) {
+                writer.write(new ArrayList<>(batch));
+                batch.clear();
+            }
+        }
+        window.dropFront(n);
+    }
+
+    private static boolean hasAnyCoverage(HourGrid window, int d) {
+        for (int h = 0; h < 24; h++) if (window.covered(d, h) > 0) return true;
+        return false;
+    }
+
+    private BasalProfile toProfile(LocalDate date, int[] units, long coveredMs) {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("source", "pump_csv");
+        if (sourceName != null) metadata.put("file", sourceName);
+        metadata.put("date", date.toString());
+        metadata.put("coverage", String.format(Locale.ROOT, "%.1f%%",
+                100.0 * coveredMs / PumpLogScanner.MS_PER_DAY));
+        return new BasalProfile(0, "Import " + date, accuracy, ProfileOrigin.IMPORTED, null,
+                metadata, units.clone());
+    }
+
+    /** One worker's state: read buffer, parse tallies and the chunk-local hour grid. Reused per wave. */
+    private static final class BasalChunk implements PumpLogScanner.RecordSink {
+        final PumpLogScanner.Counts counts = new PumpLogScanner.Counts();
+        final HourGrid grid = new HourGrid();
+        byte[] buffer;
+        long basalRecords;
+        long unordered;
+        long firstT, lastT, lastRate;
+
+        BasalChunk parse(FileChannel ch, long from, long to) throws IOException {
+            counts.reset();
+            grid.reset();
+            basalRecords = 0;
+            unordered = 0;
+            firstT = -1;
+            buffer = PumpLogChunks.read(ch, from, to, buffer);
+            PumpLogScanner.scan(buffer, 0, (int) (to - from), this, counts);
+            return this;
+        }
+
+        @Override
+        public void onRecord(long localMs, int kind, long valueMilli) {
+            if (kind != PumpLogScanner.KIND_BASAL) return;
+            basalRecords++;
+            if (firstT < 0) {
+                firstT = localMs;
+            } else if (localMs < lastT) {
+                unordered++;
+            } else if (localMs - lastT <= MAX_SPAN_MS) {
+                grid.add(lastT, localMs, lastRate);
+            }
+            lastT = localMs;
+            lastRate = valueMilli;
+        }
+    }
+}
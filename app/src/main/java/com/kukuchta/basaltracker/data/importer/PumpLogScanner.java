@@ -0,0 +1,214 @@
+package com.kukuchta.basaltracker.data.importer;
+
+/**
+ * Byte-level parser for pump history CSV exports. Works directly on a byte range, with no
+ * String, split or decimal object per field.
+ *
+ * Expected records, one per line (further columns are ignored):
+ * <pre>
+ *   timestamp,kind,value
+ *   2024-03-01 06:00:00,BASAL,0.850
+ *   2024-03-01 06:12,GLUCOSE,142
+ *   2024-03-01T07:30:00,BOLUS,4.5
+ * </pre>
+ * - timestamp: yyyy-MM-dd, then ' ' or 'T', then HH:mm[:ss[.fraction]]; the pump's local wall
+ *   clock, returned as "local millis" (epoch day * 86 400 000 + time of day, no zone applied)
+ * - delimiter: ',' ';' or tab, taken from the first one after the timestamp; fields may be
+ *   wrapped in double quotes
+ * - kind: BASAL (rate in U/h), BOLUS (U), GLUCOSE (mg/dL), case-insensitive; other kinds are
+ *   counted as ignored
+ * - value: non-negative decimal with '.' (or ',' when the delimiter is not ','), kept to
+ *   three decimals as a long in thousandths
+ * Lines not starting with a digit (header, comments) are ignored; lines starting with a digit
+ * that do not parse are counted as malformed.
+ */
+public final class PumpLogScanner {
+    public static final int KIND_BASAL = 1;
+    public static final int KIND_BOLUS = 2;
+    public static final int KIND_GLUCOSE = 3;
+
+    public static final long MS_PER_DAY = 86_400_000L;
+
+    private static final byte[] BASAL = { 'B', 'A', 'S', 'A', 'L' };
+    private static final byte[] BOLUS = { 'B', 'O', 'L', 'U', 'S' };
+    private static final byte[] GLUCOSE = { 'G', 'L', 'U', 'C', 'O', 'S', 'E' };
+
+    private PumpLogScanner() {}
+
+    /** Receives every parsed record of a known kind, in file order. */
+    public interface RecordSink {
+        void onRecord(long localMs, int kind, long valueMilli);
+    }
+
+    /** Per-scan tallies; reset by the owner, reused between chunks. */
+    public static final class Counts {
+        public long lines;
+        public long records;
+        public long ignored;
+        public long malformed;
+
+        public void reset() {
+            lines = records = ignored = malformed = 0;
+        }
+
+        public void add(Counts other) {
+            lines += other.lines;
+            records += other.records;
+            ignored += other.ignored;
+            malformed += other.malformed;
+        }
+    }
+
+    /** Parses every line of buf[from, to); a last line without '\n' is parsed too. */
+    public static void scan(byte[] buf, int from, int to, RecordSink sink, Counts counts) {
+        int p = from;
+        while (p < to) {
+            int eol = p;
+            while (eol < to && buf[eol] != '\n') eol++;
+            int end = eol;
+            if (end > p && buf[end - 1] == '\r') end--;
+            if (end > p) {
+                counts.lines++;
+                parseLine(buf, p, end, sink, counts);
+            }
+            p = eol + 1;
+        }
+    }
+
+    /** One line without its terminator; helpers return -1 for malformed input. */
+    private static void parseLine(byte[] b, int p, int end, RecordSink sink, Counts counts) {
+        if (b[p] == '"') p++;
+        if (p >= end || !isDigit(b[p])) {
+            counts.ignored++;
+            return;
+        }
+        long localMs = parseTimestamp(b, p, end);
+        if (localMs < 0) {
+            counts.malformed++;
+            return;
+        }
+        // Skip the rest of the timestamp field (seconds fraction, closing quote)
+        int q = p + 16;
+        while (q < end && b[q] != ',' && b[q] != ';' && b[q] != '\t') q++;
+        if (q >= end) {
+            counts.malformed++;
+            return;
+        }
+        byte delim = b[q++];
+
+        int kindStart = q;
+        while (q < end && b[q] != delim) q++;
+        int kind = kindOf(b, kindStart, q);
+        if (kind == 0) {
+            counts.ignored++;
+            return;
+        }
+        if (q >= end) {
+            counts.malformed++;
+            return;
+        }
+        long value = parseMilli(b, q + 1, end, delim);
+        if (value < 0) {
+            counts.malformed++;
+            return;
+        }
+        counts.records++;
+        sink.onRecord(localMs, kind, value);
+    }
+
+    /** yyyy-MM-dd[ T]HH:mm[:ss] at p, as local millis; -1 if malformed. */
+    private static long parseTimestamp(byte[] b, int p, int end) {
+        if (end - p < 16) return -1;
+        int year = digits(b, p, 4);
+        int month = digits(b, p + 5, 2);
+        int day = digits(b, p + 8, 2);
+        int hour = digits(b, p + 11, 2);
+        int minute = digits(b, p + 14, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59) return -1;
+        if (b[p + 4] != '-' || b[p + 7] != '-' || (b[p + 10] != ' ' && b[p + 10] != 'T')
+                || b[p + 13] != ':') return -1;
+        int second = 0;
+        if (end - p >= 19 && b[p + 16] == ':') {
+            second = digits(b, p + 17, 2);
+            if (second < 0 || second > 59) return -1;
+        }
+        return epochDay(year, month, day) * MS_PER_DAY
+                + hour * 3_600_000L + minute * 60_000L + second * 1000L;
+    }
+
+    /** Days since 1970-01-01 for a proleptic Gregorian date (H. Hinnant's days_from_civil). */
+    static long epochDay(int year, int month, int day) {
+        int y = (month <= 2) ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yoe = y - era * 400;
+        int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146_097L + doe - 719_468L;
+    }
+
+    private static int kindOf(byte[] b, int from, int to) {
+        if (from < to && b[from] == '"') from++;
+        if (to > from && b[to - 1] == '"') to--;
+        while (from < to && b[from] == ' ') from++;
+        while (to > from && b[to - 1] == ' ') to--;
+        if (matches(b, from, to, BASAL)) return KIND_BASAL;
+        if (matches(b, from, to, BOLUS)) return KIND_BOLUS;
+        if (matches(b, from, to, GLUCOSE)) return KIND_GLUCOSE;
+        return 0;
+    }
+
+    private static boolean matches(byte[] b, int from, int to, byte[] upper) {
+        if (to - from != upper.length) return false;
+        for (int i = 0; i < upper.length; i++) {
+            int c = b[from + i];
+            if (c >= 'a' && c <= 'z') c -= 'a' - 'A';
+            if (c != upper[i]) return false;
+        }
+        return true;
+    }
+
+    /** Non-negative decimal at p up to the delimiter or end, in thousandths; -1 if malformed. */
+    private static long parseMilli(byte[] b, int p, int end, byte delim) {
+        if (p < end && b[p] == '"') p++;
+        while (p < end && b[p] == ' ') p++;
+        long whole = 0;
+        int digits = 0;
+        while (p < end && isDigit(b[p])) {
+            whole = whole * 10 + (b[p++] - '0');
+            if (++digits > 12) return -1;
+        }
+        long frac = 0;
+        int scale = 1000;
+        if (p < end && (b[p] == '.' || (b[p] == ',' && delim != ','))) {
+            p++;
+            while (p < end && isDigit(b[p])) {
+                if (scale > 1) {
+                    scale /= 10;
+                    frac += (b[p] - '0') * (long) scale;
+                }
+                digits++;
+                p++;
+            }
+        }
+        if (digits == 0) return -1;
+        if (p < end && b[p] == '"') p++;
+        while (p < end && b[p] == ' ') p++;
+        if (p < end && b[p] != delim) return -1;
+        return whole * 1000 + frac;
+    }
+
+    private static int digits(byte[] b, int p, int n) {
+        int v = 0;
+        for (int i = 0; i < n; i++) {
+            byte c = b[p + i];
+            if (!isDigit(c)) return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+}
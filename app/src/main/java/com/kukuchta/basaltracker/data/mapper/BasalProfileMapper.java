@@ -5,9 +5,13 @@ import com.google.gson.reflect.TypeToken;
 
 import com.kukuchta.basaltracker.data.db.entities.BasalProfileEntity;
 import com.kukuchta.basaltracker.domain.BasalProfile;
+import com.kukuchta.basaltracker.domain.ChangePointProfile;
+import com.kukuchta.basaltracker.domain.ProfileContentHash;
 import com.kukuchta.basaltracker.domain.ProfileOrigin;
 
+import java.io.ByteArrayOutputStream;
 import java.lang.reflect.Type;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -20,12 +24,7 @@ public final class BasalProfileMapper {
 
     public static BasalProfile toDomain(BasalProfileEntity e) {
         Map<String, String> metadata = parseMetadata(e.metadataJson);
-        int[] units = new int[] {
-                e.units_h00, e.units_h01, e.units_h02, e.units_h03, e.units_h04, e.units_h05,
-                e.units_h06, e.units_h07, e.units_h08, e.units_h09, e.units_h10, e.units_h11,
-                e.units_h12, e.units_h13, e.units_h14, e.units_h15, e.units_h16, e.units_h17,
-                e.units_h18, e.units_h19, e.units_h20, e.units_h21, e.units_h22, e.units_h23
-        };
+        int[] units = unitsOf(e);
 
         return new BasalProfile(
                 e.id,
@@ -38,6 +37,16 @@ public final class BasalProfileMapper {
         );
     }
 
+    /** Hour-grid columns of an entity as a fresh 24-length array. */
+    public static int[] unitsOf(BasalProfileEntity e) {
+        return new int[] {
+                e.units_h00, e.units_h01, e.units_h02, e.units_h03, e.units_h04, e.units_h05,
+                e.units_h06, e.units_h07, e.units_h08, e.units_h09, e.units_h10, e.units_h11,
+                e.units_h12, e.units_h13, e.units_h14, e.units_h15, e.units_h16, e.units_h17,
+                e.units_h18, e.units_h19, e.units_h20, e.units_h21, e.units_h22, e.units_h23
+        };
+    }
+
     public static BasalProfileEntity toEntity(BasalProfile d) {
         BasalProfileEntity e = new BasalProfileEntity();
         e.id = d.getId();
@@ -46,6 +55,7 @@ public final class BasalProfileMapper {
         e.origin = d.getOrigin().name();
         e.baseProfileId = d.getBaseProfileId();
         e.metadataJson = gson.toJson(d.getMetadata());
+        e.metadataSearchText = toSearchText(d.getMetadata());
         e.createdAt = System.currentTimeMillis();
 
         int[] u = d.copyUnitsByHour();
@@ -55,10 +65,106 @@ public final class BasalProfileMapper {
         e.units_h12 = u[12]; e.units_h13 = u[13]; e.units_h14 = u[14]; e.units_h15 = u[15];
         e.units_h16 = u[16]; e.units_h17 = u[17]; e.units_h18 = u[18]; e.units_h19 = u[19];
         e.units_h20 = u[20]; e.units_h21 = u[21]; e.units_h22 = u[22]; e.units_h23 = u[23];
+        e.contentHash = ProfileContentHash.of(e.accuracy, u);
 
         return e;
     }
 
+    /** FTS text of a stored metadata map ({@link BasalProfileEntity#metadataJson}); for backfills. */
+    public static String searchTextOf(String metadataJson) {
+        return toSearchText(parseMetadata(metadataJson));
+    }
+
+    /** Metadata values joined for the FTS index; keys are deliberately left out. */
+    private static String toSearchText(Map<String, String> metadata) {
+        if (metadata.isEmpty()) return null;
+        StringBuilder sb = new StringBuilder();
+        for (String v : metadata.values()) {
+            if (v == null || v.isEmpty()) continue;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(v);
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    /**
+     * Any row as a change-point profile: sub-hour rows decode their change points, hour-grid
+     * rows are lifted losslessly from the 24 columns.
+     */
+    public static ChangePointProfile toChangePointProfile(BasalProfileEntity e) {
+        if (e.changePoints == null) {
+            return ChangePointProfile.fromHourGrid(toDomain(e));
+        }
+        int[] starts = new int[24];
+        int[] units = new int[24];
+        int n = 0;
+        int[] pos = { 0 };
+        while (pos[0] < e.changePoints.length) {
+            if (n == starts.length) {
+                starts = Arrays.copyOf(starts, n * 2);
+                units = Arrays.copyOf(units, n * 2);
+            }
+            starts[n] = readVarint(e.changePoints, pos) * e.resolutionMinutes;
+            units[n++] = readVarint(e.changePoints, pos);
+        }
+        return new ChangePointProfile(
+                e.id,
+                e.name,
+                e.accuracy,
+                e.resolutionMinutes,
+                ProfileOrigin.valueOf(e.origin),
+                e.baseProfileId,
+                parseMetadata(e.metadataJson),
+                Arrays.copyOf(starts, n),
+                Arrays.copyOf(units, n)
+        );
+    }
+
+    /**
+     * Hour-resolution profiles are stored exactly like a BasalProfile; sub-hour ones add the
+     * change-point blob and keep each hour's dose-preserving mean in the hour columns
+     * ({@link ChangePointProfile#hourMeanUnits()}).
+     */
+    public static BasalProfileEntity toEntity(ChangePointProfile d) {
+        int[] hourUnits = d.hourMeanUnits();
+        BasalProfileEntity e = toEntity(new BasalProfile(
+                d.getId(), d.getName(), d.getAccuracy(), d.getOrigin(),
+                d.getBaseProfileId(), d.getMetadata(), hourUnits));
+        if (d.getResolutionMinutes() < 60) {
+            int[] starts = d.copyStartMinutes();
+            int[] units = d.copyUnits();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(starts.length * 3);
+            for (int i = 0; i < starts.length; i++) {
+                writeVarint(out, starts[i] / d.getResolutionMinutes());
+                writeVarint(out, units[i]);
+            }
+            e.resolutionMinutes = d.getResolutionMinutes();
+            e.changePoints = out.toByteArray();
+            e.contentHash = ProfileContentHash.of(d);
+        }
+        return e;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static int readVarint(byte[] in, int[] pos) {
+        int v = 0, shift = 0;
+        while (true) {
+            if (pos[0] >= in.length) throw new IllegalStateException("Truncated change points");
+            int b = in[pos[0]++] & 0xFF;
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+            shift += 7;
+            if (shift > 28) throw new IllegalStateException("Corrupt change points");
+        }
+    }
+
     private static Map<String, String> parseMetadata(String json) {
         if (json == null || json.isEmpty()) return new HashMap<>();
         Map<String, String> m = gson.fromJson(json, MAP_STRING_STRING);
@@ -0,0 +1,45 @@
+package com.kukuchta.basaltracker.data.mapper;
+
+import android.database.Cursor;
+
+import com.kukuchta.basaltracker.domain.ProfileOrigin;
+import com.kukuchta.basaltracker.domain.ProfileTable;
+
+/** Fills a {@link ProfileTable} straight from a DAO cursor, column by column, no entities. */
+public final class ProfileTableReader {
+    private ProfileTableReader() {}
+
+    /**
+     * Expects columns id, name, accuracy, origin, units_h00..units_h23 in id order
+     * (BasalProfileDao#queryProfileTable). Does not close the cursor.
+     */
+    public static ProfileTable read(Cursor c) {
+        int idCol = c.getColumnIndexOrThrow("id");
+        int nameCol = c.getColumnIndexOrThrow("name");
+        int accCol = c.getColumnIndexOrThrow("accuracy");
+        int originCol = c.getColumnIndexOrThrow("origin");
+        int[] unitCols = new int[ProfileTable.HOURS];
+        for (int h = 0; h < ProfileTable.HOURS; h++) {
+            unitCols[h] = c.getColumnIndexOrThrow(h < 10 ? "units_h0" + h : "units_h" + h);
+        }
+
+        ProfileOrigin[] origins = ProfileOrigin.values();
+        ProfileTable.Builder b = new ProfileTable.Builder(c.getCount());
+        while (c.moveToNext()) {
+            ProfileOrigin origin = parseOrigin(origins, c.getString(originCol));
+            int offset = b.appendRow(c.getLong(idCol), c.getString(nameCol), c.getDouble(accCol), origin);
+            for (int h = 0; h < ProfileTable.HOURS; h++) {
+                b.setUnits(offset, h, c.getInt(unitCols[h]));
+            }
+        }
+        return b.build();
+    }
+
+    /** Linear scan over 3 constants; avoids valueOf's exception path and map lookups. */
+    private static ProfileOrigin parseOrigin(ProfileOrigin[] origins, String name) {
+        for (ProfileOrigin o : origins) {
+            if (o.name().equals(name)) return o;
+        }
+        throw new IllegalStateException("Nieznane pochodzenie profilu: " + name);
+    }
+}
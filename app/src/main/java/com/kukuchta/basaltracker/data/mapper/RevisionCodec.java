@@ -0,0 +1,56 @@
+package com.kukuchta.basaltracker.data.mapper;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Packs the hours selected by a 24-bit mask as unsigned LEB128 varints, ascending hour order.
+ * Typical unit values (< 128) take one byte, so a one-hour edit costs one byte of payload.
+ */
+public final class RevisionCodec {
+    public static final int ALL_HOURS = (1 << 24) - 1;
+
+    private RevisionCodec() {}
+
+    /** Bit h set where a[h] != b[h]. */
+    public static int diffMask(int[] a, int[] b) {
+        int mask = 0;
+        for (int h = 0; h < 24; h++) {
+            if (a[h] != b[h]) mask |= 1 << h;
+        }
+        return mask;
+    }
+
+    public static byte[] encode(int[] unitsByHour, int mask) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Integer.bitCount(mask) + 4);
+        for (int h = 0; h < 24; h++) {
+            if ((mask & (1 << h)) == 0) continue;
+            int v = unitsByHour[h];
+            if (v < 0) throw new IllegalArgumentException("rate units must be >= 0");
+            while ((v & ~0x7F) != 0) {
+                out.write((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            out.write(v);
+        }
+        return out.toByteArray();
+    }
+
+    /** Overwrites the masked hours of {@code target} with the packed values. */
+    public static void applyTo(int[] target, int mask, byte[] packed) {
+        int pos = 0;
+        for (int h = 0; h < 24; h++) {
+            if ((mask & (1 << h)) == 0) continue;
+            int v = 0, shift = 0;
+            while (true) {
+                if (pos >= packed.length) throw new IllegalStateException("Truncated revision payload");
+                int b = packed[pos++] & 0xFF;
+                v |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) break;
+                shift += 7;
+                if (shift > 28) throw new IllegalStateException("Corrupt revision payload");
+            }
+            target[h] = v;
+        }
+        if (pos != packed.length) throw new IllegalStateException("Trailing bytes in revision payload");
+    }
+}
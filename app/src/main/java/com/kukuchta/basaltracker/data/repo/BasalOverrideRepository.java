@@ -0,0 +1,79 @@
+package com.kukuchta.basaltracker.data.repo;
+
+import android.app.Application;
+
+import com.kukuchta.basaltracker.data.db.AppDatabase;
+import com.kukuchta.basaltracker.data.db.BasalOverrideDao;
+import com.kukuchta.basaltracker.data.db.DatabaseProvider;
+import com.kukuchta.basaltracker.data.db.entities.BasalOverrideEntity;
+import com.kukuchta.basaltracker.domain.BasalOverride;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Temporary basal overrides (percent or absolute, over a time window). Stored rows only;
+ * combining them with a profile is {@link com.kukuchta.basaltracker.domain.EffectiveBasalSchedule}'s job.
+ */
+public class BasalOverrideRepository {
+    private final BasalOverrideDao dao;
+    private final ExecutorService io = Executors.newSingleThreadExecutor();
+
+    public BasalOverrideRepository(Application app) {
+        this(DatabaseProvider.getDatabase(app));
+    }
+
+    public BasalOverrideRepository(AppDatabase db) {
+        this.dao = db.basalOverrideDao();
+    }
+
+    public interface OverrideListCallback { void onResult(List<BasalOverride> overrides); }
+
+    /** Adds an override over [startsAt, endsAt); it wins over older overlapping ones. */
+    public void addOverride(BasalOverride.Kind kind, double value, long startsAt, long endsAt,
+                            BasalProfileRepository.IdCallback cb) {
+        // Validates before touching the database
+        new BasalOverride(0, kind, value, startsAt, endsAt);
+        io.execute(() -> {
+            BasalOverrideEntity e = new BasalOverrideEntity();
+            e.kind = kind.name();
+            e.value = value;
+            e.startsAt = startsAt;
+            e.endsAt = endsAt;
+            e.createdAt = System.currentTimeMillis();
+            cb.onResult(dao.insertOverride(e));
+        });
+    }
+
+    public void removeOverride(long id, BasalProfileRepository.VoidCallback cb) {
+        io.execute(() -> {
+            dao.deleteOverride(id);
+            cb.onDone();
+        });
+    }
+
+    /** Overrides overlapping [from, to), ordered by start. */
+    public void getOverrides(long from, long to, OverrideListCallback cb) {
+        io.execute(() -> {
+            List<BasalOverrideEntity> rows = dao.getOverlapping(from, to);
+            List<BasalOverride> result = new ArrayList<>(rows.size());
+            for (BasalOverrideEntity r : rows) {
+                result.add(new BasalOverride(r.id, BasalOverride.Kind.valueOf(r.kind),
+                        r.value, r.startsAt, r.endsAt));
+            }
+            cb.onResult(result);
+        });
+    }
+
+    /** Drops overrides that ended before {@code epochMs}; reports how many. */
+    public void purgeEnded(long epochMs, BasalProfileRepository.CountCallback cb) {
+        io.execute(() -> cb.onResult(dao.deleteEndedBefore(epochMs)));
+    }
+
+    /** Stops accepting work; writes already queued still finish. Owners call this when they go away. */
+    public void close() {
+        io.shutdown();
+    }
+}
@@ -1,37 +1,135 @@
 package com.kukuchta.basaltracker.data.repo;
 
 import android.app.Application;
+import android.database.Cursor;
 
-import androidx.room.Room;
+import androidx.sqlite.db.SupportSQLiteStatement;
 
+import com.kukuchta.basaltracker.data.backup.ProfileSnapshotReader;
+import com.kukuchta.basaltracker.data.backup.ProfileSnapshotWriter;
 import com.kukuchta.basaltracker.data.db.AppDatabase;
 import com.kukuchta.basaltracker.data.db.BasalProfileDao;
 import com.kukuchta.basaltracker.data.db.DatabaseProvider;
+import com.kukuchta.basaltracker.data.db.LineageRow;
+import com.kukuchta.basaltracker.data.db.ProfileAssignmentDao;
+import com.kukuchta.basaltracker.data.db.ProfileGridRow;
 import com.kukuchta.basaltracker.data.db.entities.BasalProfileEntity;
+import com.kukuchta.basaltracker.data.importer.HistoryStatsCollector;
+import com.kukuchta.basaltracker.data.importer.PumpLogImporter;
 import com.kukuchta.basaltracker.data.mapper.BasalProfileMapper;
+import com.kukuchta.basaltracker.data.mapper.ProfileTableReader;
 import com.kukuchta.basaltracker.domain.BasalProfile;
+import com.kukuchta.basaltracker.domain.ChangePointProfile;
+import com.kukuchta.basaltracker.domain.DistanceMetric;
+import com.kukuchta.basaltracker.domain.HourlyHistory;
+import com.kukuchta.basaltracker.domain.LibraryStatistics;
+import com.kukuchta.basaltracker.domain.LibraryStatisticsEngine;
+import com.kukuchta.basaltracker.domain.LineageNode;
+import com.kukuchta.basaltracker.domain.ProfileContentHash;
+import com.kukuchta.basaltracker.domain.ProfileGenerator;
 import com.kukuchta.basaltracker.domain.ProfileOrigin;
+import com.kukuchta.basaltracker.domain.ProfileRequantizer;
+import com.kukuchta.basaltracker.domain.ProfileRevision;
+import com.kukuchta.basaltracker.domain.ProfileSimilarityIndex;
+import com.kukuchta.basaltracker.domain.ProfileTable;
+import com.kukuchta.basaltracker.domain.SimilarityMatch;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class BasalProfileRepository {
     private final AppDatabase db;
     private final BasalProfileDao dao;
+    private final ProfileAssignmentDao assignments;
+    private final ProfileRevisionStore revisions;
     private final ExecutorService io = Executors.newSingleThreadExecutor();
 
+    // Search has its own lane so keystrokes never queue behind writes
+    /** Most rows the list gets, with or without a query; more are reported as truncated. */
+    public static final int SEARCH_LIMIT = 200;
+    private final ExecutorService search = Executors.newSingleThreadExecutor();
+    private final AtomicLong searchGeneration = new AtomicLong();
+    private Future<?> pendingSearch;
+
+    // Bulk file jobs parse on their own lane and take the io lane only for each batch write,
+    // so edits and reads are not queued behind a long file
+    private final ExecutorService bulk = Executors.newSingleThreadExecutor();
+
+    // Library re-quantization: rows per read and write transaction, report size
+    private static final int REQUANTIZE_BATCH = 256;
+    private static final int REQUANTIZE_REPORT_LIMIT = 20;
+
+    // Loaded lazily on first similarity query; only touched on the io thread
+    private static final int GRID_CHUNK = 2000;
+    private ProfileSimilarityIndex similarityIndex;
+
+    // Statistics per filter key ("*" = whole library); dropped on every write
+    private final LibraryStatisticsEngine statisticsEngine = new LibraryStatisticsEngine();
+    private final Map<String, LibraryStatistics> statisticsCache = new ConcurrentHashMap<>();
+
     public BasalProfileRepository(Application app) {
-        db = DatabaseProvider.getDatabase(app);
-        dao = db.basalProfileDao();
+        this(DatabaseProvider.getDatabase(app));
+    }
+
+    /** Direct wiring, e.g. for an in-memory database in JVM tests and benchmarks. */
+    public BasalProfileRepository(AppDatabase db) {
+        this.db = db;
+        this.dao = db.basalProfileDao();
+        this.assignments = db.profileAssignmentDao();
+        this.revisions = new ProfileRevisionStore(db.basalProfileRevisionDao());
     }
 
     public interface ListCallback { void onResult(List<BasalProfile> profiles); }
+    /** {@code truncated}: the query matched more than {@link #SEARCH_LIMIT} rows, only the newest are listed. */
+    public interface SearchCallback { void onResult(List<BasalProfile> profiles, boolean truncated); }
     public interface ItemCallback { void onResult(BasalProfile profile); }
     public interface IdCallback   { void onResult(long id); }
     public interface VoidCallback { void onDone(); }
+    public interface LineageCallback { void onResult(List<LineageNode> lineage); }
+    public interface CountCallback { void onResult(int count); }
+    public interface SimilarityCallback { void onResult(List<SimilarityMatch> matches); }
+    public interface RevisionListCallback { void onResult(List<ProfileRevision> revisions); }
+    public interface StatisticsCallback { void onResult(LibraryStatistics statistics); }
+    public interface ChangePointCallback { void onResult(ChangePointProfile profile); }
+    public interface TableCallback { void onResult(ProfileTable table); }
+    public interface SnapshotCallback {
+        void onDone(int profileCount);
+        void onError(IOException error);
+    }
+    public interface ImportCallback {
+        void onDone(PumpLogImporter.Report report);
+        void onError(IOException error);
+    }
+    public interface RequantizeCallback {
+        void onResult(ProfileRequantizer.Report report);
+        /** A batch failed; the batches before it stay written. */
+        void onError(RuntimeException error);
+    }
+    public interface GenerateCallback {
+        /** Ids of the stored candidates; empty when the history is too short to propose any. */
+        void onDone(List<Long> profileIds);
+        void onError(IOException error);
+    }
 
     public void getAllProfiles(ListCallback cb) {
         io.execute(() -> {
@@ -44,6 +142,119 @@ public class BasalProfileRepository {
         });
     }
 
+    /**
+     * Search-as-you-type over names and metadata values (prefix match per word, all words required).
+     * Each call supersedes the previous one: a queued search is cancelled, and a running one
+     * has its result dropped. An empty query lists the newest profiles, a non-empty one the
+     * newest matches; either way at most {@link #SEARCH_LIMIT} rows, flagged as truncated when
+     * there are more.
+     */
+    public void searchProfiles(String query, SearchCallback cb) {
+        final String match = toFtsMatch(query);
+        final long generation;
+        synchronized (this) {
+            generation = searchGeneration.incrementAndGet();
+            if (pendingSearch != null) pendingSearch.cancel(false);
+            pendingSearch = search.submit(() -> {
+                if (generation != searchGeneration.get()) return;
+                // One extra row detects truncation
+                List<BasalProfileEntity> rows = (match == null)
+                        ? dao.getRecentProfiles(SEARCH_LIMIT + 1)
+                        : dao.searchProfiles(match, SEARCH_LIMIT + 1);
+                if (generation != searchGeneration.get()) return;
+                boolean truncated = rows.size() > SEARCH_LIMIT;
+                int n = truncated ? SEARCH_LIMIT : rows.size();
+                List<BasalProfile> result = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    result.add(BasalProfileMapper.toDomain(rows.get(i)));
+                }
+                if (generation != searchGeneration.get()) return;
+                cb.onResult(result, truncated);
+            });
+        }
+    }
+
+    /** User text -> FTS4 MATCH expression; only letters/digits survive, so no query syntax leaks in. */
+    static String toFtsMatch(String query) {
+        if (query == null) return null;
+        StringBuilder out = new StringBuilder();
+        StringBuilder token = new StringBuilder();
+        String q = query.toLowerCase(Locale.ROOT);
+        for (int i = 0; i <= q.length(); i++) {
+            char c = (i < q.length()) ? q.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c);
+            } else if (token.length() > 0) {
+                if (out.length() > 0) out.append(' ');
+                out.append(token).append('*');
+                token.setLength(0);
+            }
+        }
+        return out.length() == 0 ? null : out.toString();
+    }
+
+    // ---------- Cancellable reads ----------
+    //
+    // Futures complete on the io thread. cancel(...) removes a queued read from the io lane;
+    // a read already running skips mapping and never completes. After close() every read
+    // comes back already cancelled.
+
+    public CompletableFuture<BasalProfile> getProfileAsync(long id) {
+        return read(() -> dao.getProfile(id), BasalProfileMapper::toDomain);
+    }
+
+    public CompletableFuture<ChangePointProfile> getChangePointProfileAsync(long id) {
+        return read(() -> dao.getProfile(id), BasalProfileMapper::toChangePointProfile);
+    }
+
+    public CompletableFuture<List<BasalProfile>> getAllProfilesAsync() {
+        return read(dao::getAllProfiles, rows -> {
+            List<BasalProfile> result = new ArrayList<>(rows.size());
+            for (BasalProfileEntity r : rows) result.add(BasalProfileMapper.toDomain(r));
+            return result;
+        });
+    }
+
+    /** Query, then map unless cancelled in between; a null row maps to null. */
+    private <R, T> CompletableFuture<T> read(Supplier<R> query, Function<R, T> mapper) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        final Future<?> task;
+        try {
+            task = io.submit(() -> {
+                if (result.isDone()) return;
+                try {
+                    R row = query.get();
+                    if (result.isDone()) return; // stale: drop before mapping
+                    result.complete(row == null ? null : mapper.apply(row));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException closed) {
+            result.cancel(false);
+            return result;
+        }
+        result.whenComplete((v, t) -> {
+            if (result.isCancelled()) task.cancel(false);
+        });
+        return result;
+    }
+
+    /**
+     * Stops accepting work. Writes already queued still finish; pending searches are dropped
+     * and a running bulk job stops before its next batch (batches already written stay).
+     * Owners (the ViewModel) call this when they go away.
+     */
+    public void close() {
+        synchronized (this) {
+            searchGeneration.incrementAndGet();
+            if (pendingSearch != null) pendingSearch.cancel(false);
+        }
+        search.shutdown();
+        bulk.shutdownNow();
+        io.shutdown();
+    }
+
     public void getProfile(long id, ItemCallback cb) {
         io.execute(() -> {
             BasalProfileEntity row = dao.getProfile(id);
@@ -51,27 +262,591 @@ public class BasalProfileRepository {
         });
     }
 
+    /**
+     * Insert (id == 0) or update of an hour-grid edit. For a stored sub-hour profile the hour
+     * grid is the editor's view of it: only hours whose units differ from the stored hour
+     * columns are rewritten (flat over the hour), the other hours keep their change points.
+     */
     public void upsert(BasalProfile profile, IdCallback cb) {
         io.execute(() -> {
-            BasalProfileEntity e = BasalProfileMapper.toEntity(profile);
-            long id;
-            if (e.id == 0) {
-                id = dao.insertProfile(e);
-            } else {
-                dao.updateProfile(e);
-                id = e.id;
-            }
+            BasalProfileEntity stored = (profile.getId() == 0) ? null : dao.getProfile(profile.getId());
+            BasalProfileEntity e = (stored != null && stored.changePoints != null)
+                    ? BasalProfileMapper.toEntity(applyHourEdits(stored, profile))
+                    : BasalProfileMapper.toEntity(profile);
+            long id = writeProfile(e);
             cb.onResult(id);
         });
     }
 
+    /** The stored sub-hour profile with the edited hours (and name, lineage, metadata) of {@code edit}. */
+    private static ChangePointProfile applyHourEdits(BasalProfileEntity stored, BasalProfile edit) {
+        ChangePointProfile cp = BasalProfileMapper.toChangePointProfile(stored);
+        int[] before = BasalProfileMapper.unitsOf(stored);
+        if (Double.compare(cp.getAccuracy(), edit.getAccuracy()) != 0) {
+            // Re-quantized since the editor loaded it: compare in the editor's steps
+            cp = ProfileRequantizer.requantize(cp, edit.getAccuracy());
+            before = BasalProfileMapper.unitsOf(BasalProfileMapper.toEntity(cp));
+        }
+        for (int h = 0; h < 24; h++) {
+            int units = edit.getUnitsAtHour(h);
+            if (units != before[h]) cp.setUnitsInRange(h * 60, (h + 1) * 60, units);
+        }
+        return new ChangePointProfile(cp.getId(), edit.getName(), cp.getAccuracy(), cp.getResolutionMinutes(),
+                edit.getOrigin(), edit.getBaseProfileId(), edit.getMetadata(),
+                cp.copyStartMinutes(), cp.copyUnits());
+    }
+
+    /** Any profile, sub-hour or hour-grid, as change points. Null if missing. */
+    public void getChangePointProfile(long id, ChangePointCallback cb) {
+        io.execute(() -> {
+            BasalProfileEntity row = dao.getProfile(id);
+            cb.onResult(row == null ? null : BasalProfileMapper.toChangePointProfile(row));
+        });
+    }
+
+    /** Insert (id == 0) or update of a change-point profile; resolution 60 is stored as an hour grid. */
+    public void upsertChangePointProfile(ChangePointProfile profile, IdCallback cb) {
+        io.execute(() -> cb.onResult(writeProfile(BasalProfileMapper.toEntity(profile))));
+    }
+
     public void deleteProfile(long id, VoidCallback cb) {
         io.execute(() -> {
-            dao.deleteProfile(id);
+            dao.deleteProfileReparentingChildren(id);
+            onProfileDeleted(id);
             cb.onDone();
         });
     }
 
+    /** Ancestors and descendants of a profile, root first, ordered by depth then id. */
+    public void getLineage(long id, LineageCallback cb) {
+        io.execute(() -> {
+            List<LineageRow> rows = dao.getLineage(id);
+            List<LineageNode> result = new ArrayList<>(rows.size());
+            for (LineageRow r : rows) {
+                result.add(new LineageNode(BasalProfileMapper.toDomain(r.profile), r.depth));
+            }
+            cb.onResult(result);
+        });
+    }
+
+    /**
+     * Stored profiles with exactly the same grid (accuracy + 24 units) as {@code profile},
+     * excluding the profile itself. One contentHash index lookup plus an exact check.
+     */
+    public void findExactDuplicates(BasalProfile profile, ListCallback cb) {
+        final double accuracy = profile.getAccuracy();
+        final int[] units = profile.copyUnitsByHour();
+        final long selfId = profile.getId();
+        io.execute(() -> {
+            List<BasalProfile> result = new ArrayList<>();
+            for (BasalProfileEntity r : dao.getByContentHash(ProfileContentHash.of(accuracy, units))) {
+                if (r.id == selfId) continue;
+                if (r.changePoints == null
+                        && ProfileContentHash.sameContent(r.accuracy, BasalProfileMapper.unitsOf(r), accuracy, units)) {
+                    result.add(BasalProfileMapper.toDomain(r));
+                }
+            }
+            cb.onResult(result);
+        });
+    }
+
+    /**
+     * Library-wide dedupe in a single transaction: within each group of identical grids the
+     * oldest row (lowest id) survives, children and schedule assignments of removed rows are
+     * moved to it, and the rest are deleted. Reports the number of deleted rows.
+     */
+    public void collapseDuplicates(CountCallback cb) {
+        io.execute(() -> {
+            int[] removed = { 0 };
+            db.runInTransaction(() -> {
+                for (long hash : dao.getSharedContentHashes()) {
+                    removed[0] += collapseGroup(dao.getByContentHash(hash));
+                }
+            });
+            cb.onResult(removed[0]);
+        });
+    }
+
+    /** Rows share a hash; collapse each exact-content subgroup onto its lowest id. */
+    private int collapseGroup(List<BasalProfileEntity> rows) {
+        int removed = 0;
+        boolean[] done = new boolean[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            if (done[i]) continue;
+            BasalProfileEntity keep = rows.get(i); // rows are ordered by id
+            int[] keepUnits = BasalProfileMapper.unitsOf(keep);
+            for (int j = i + 1; j < rows.size(); j++) {
+                if (done[j]) continue;
+                BasalProfileEntity dup = rows.get(j);
+                if (!ProfileContentHash.sameContent(keep.accuracy, keepUnits,
+                        dup.accuracy, BasalProfileMapper.unitsOf(dup))) continue;
+                if (keep.resolutionMinutes != dup.resolutionMinutes
+                        || !Arrays.equals(keep.changePoints, dup.changePoints)) continue;
+                done[j] = true;
+                dao.moveChildren(dup.id, keep.id);
+                assignments.moveAssignments(dup.id, keep.id); // same content, so the schedule is unchanged
+                if (keep.baseProfileId != null && keep.baseProfileId == dup.id) {
+                    keep.baseProfileId = dup.baseProfileId;
+                    dao.setBaseProfileId(keep.id, keep.baseProfileId);
+                }
+                dao.deleteProfile(dup.id);
+                onProfileDeleted(dup.id);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * k stored profiles nearest to {@code reference} by hourly rate (U/h), nearest first.
+     * The reference itself is excluded. The first call loads the in-memory index.
+     */
+    public void findSimilar(BasalProfile reference, int k, DistanceMetric metric, SimilarityCallback cb) {
+        final double[] query = reference.toHourArray();
+        final long selfId = reference.getId();
+        io.execute(() -> cb.onResult(similarityIndex().nearest(query, k, metric, selfId)));
+    }
+
+    /**
+     * Aggregate statistics over the library, or over one origin when {@code origin} != null.
+     * Rows are streamed in id-ordered chunks straight into primitive arrays and reduced with
+     * fork/join. The result is cached until the next write; a cache hit calls back
+     * immediately on the calling thread.
+     */
+    public void getLibraryStatistics(ProfileOrigin origin, StatisticsCallback cb) {
+        final String key = (origin == null) ? "*" : origin.name();
+        LibraryStatistics cached = statisticsCache.get(key);
+        if (cached != null) {
+            cb.onResult(cached);
+            return;
+        }
+        io.execute(() -> {
+            LibraryStatistics stats = statisticsCache.get(key);
+            if (stats == null) {
+                stats = computeStatistics(origin);
+                statisticsCache.put(key, stats); // io is single-threaded: no write can interleave
+            }
+            cb.onResult(stats);
+        });
+    }
+
+    /** Columnar snapshot of the whole library for bulk scans, read in one cursor pass. */
+    public void loadProfileTable(TableCallback cb) {
+        io.execute(() -> {
+            ProfileTable table;
+            try (Cursor c = dao.queryProfileTable()) {
+                table = ProfileTableReader.read(c);
+            }
+            cb.onResult(table);
+        });
+    }
+
+    /**
+     * Writes the whole library, with its schedule assignments and revision history, to
+     * {@code target} as a binary snapshot. Rows are read inside one transaction, so the
+     * snapshot is consistent even while other writers are active. The file is written next to
+     * {@code target} and renamed into place only when complete.
+     */
+    public void exportSnapshot(File target, SnapshotCallback cb) {
+        io.execute(() -> {
+            File tmp = new File(target.getPath() + ".tmp");
+            int count;
+            try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                count = db.runInTransaction(() -> {
+                    try (Cursor c = dao.queryAllForSnapshot();
+                         Cursor a = assignments.queryAllForSnapshot();
+                         Cursor r = db.basalProfileRevisionDao().queryAllForSnapshot()) {
+                        return ProfileSnapshotWriter.write(c, a, r, ch, System.currentTimeMillis());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                ch.force(true);
+            } catch (IOException e) {
+                tmp.delete();
+                cb.onError(e);
+                return;
+            } catch (UncheckedIOException e) {
+                tmp.delete();
+                cb.onError(e.getCause());
+                return;
+            }
+            if (!tmp.renameTo(target)) {
+                tmp.delete();
+                cb.onError(new IOException("Cannot move snapshot to " + target));
+                return;
+            }
+            cb.onDone(count);
+        });
+    }
+
+    /**
+     * Replaces the library, its schedule assignments and revision history with the contents of
+     * a snapshot, keeping ids and lineage. The file is fully verified first; then every row goes
+     * through compiled INSERTs in a single transaction, so a failure leaves everything
+     * untouched. Temporary overrides are not part of a snapshot and are kept.
+     */
+    public void restoreSnapshot(File source, SnapshotCallback cb) {
+        io.execute(() -> {
+            int count;
+            try (ProfileSnapshotReader reader = ProfileSnapshotReader.open(source)) {
+                reader.verify();
+                count = db.runInTransaction(() -> {
+                    dao.deleteAllProfiles();
+                    try (SupportSQLiteStatement insert = db.compileStatement(ProfileSnapshotReader.INSERT_SQL);
+                         SupportSQLiteStatement insertAssignment =
+                                 db.compileStatement(ProfileSnapshotReader.INSERT_ASSIGNMENT_SQL);
+                         SupportSQLiteStatement insertRevision =
+                                 db.compileStatement(ProfileSnapshotReader.INSERT_REVISION_SQL)) {
+                        int profiles = reader.insertAll(insert);
+                        reader.insertAssignments(insertAssignment);
+                        reader.insertRevisions(insertRevision);
+                        return profiles;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (IOException e) {
+                cb.onError(e);
+                return;
+            } catch (UncheckedIOException e) {
+                cb.onError(e.getCause());
+                return;
+            }
+            onLibraryReplaced();
+            cb.onDone(count);
+        });
+    }
+
+    /**
+     * Imports a pump history CSV as one IMPORTED profile per fully logged day. Parsing runs on
+     * the bulk lane with a worker per core; rows are written in batches on the io lane, one
+     * transaction per batch, so other work interleaves with the import and a failure part-way
+     * keeps the days already written. Memory use does not depend on the file size. The
+     * callback runs on the io thread.
+     */
+    public void importPumpLog(File source, double accuracy, ImportCallback cb) {
+        if (accuracy <= 0.0) throw new IllegalArgumentException("accuracy must be > 0");
+        bulk.execute(() -> {
+            PumpLogImporter.Report report;
+            try (FileChannel ch = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+                PumpLogImporter importer = new PumpLogImporter(accuracy, source.getName(),
+                        Runtime.getRuntime().availableProcessors());
+                report = importer.run(ch, rows -> onIo(() -> insertBatch(rows)));
+            } catch (IOException e) {
+                finishBulk(() -> {
+                    onLibraryReplaced(); // earlier batches may already be in
+                    cb.onError(e);
+                });
+                return;
+            } catch (UncheckedIOException e) {
+                finishBulk(() -> {
+                    onLibraryReplaced();
+                    cb.onError(e.getCause());
+                });
+                return;
+            } catch (RejectedExecutionException closed) {
+                return; // closed mid-run: nobody left to tell
+            } catch (RuntimeException e) {
+                // A failed batch write; the lane must survive it
+                finishBulk(() -> {
+                    onLibraryReplaced();
+                    cb.onError(new IOException("Import failed", e));
+                });
+                return;
+            }
+            finishBulk(() -> {
+                onLibraryReplaced();
+                cb.onDone(report);
+            });
+        });
+    }
+
+    /**
+     * Proposes GENERATED profiles from a history CSV with glucose readings and delivered insulin
+     * ({@link ProfileGenerator}). The file is read once, in parallel, on the bulk lane; all
+     * candidates are then stored on the io lane in one transaction, with the file and generator
+     * settings in their metadata. The callback runs on the io thread.
+     */
+    public void generateProfiles(File source, ProfileGenerator.Settings settings, GenerateCallback cb) {
+        bulk.execute(() -> {
+            HourlyHistory history;
+            try (FileChannel ch = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+                history = new HistoryStatsCollector(Runtime.getRuntime().availableProcessors()).collect(ch);
+            } catch (IOException e) {
+                finishBulk(() -> cb.onError(e));
+                return;
+            }
+            List<BasalProfile> candidates = ProfileGenerator.generate(history, settings, source.getName());
+            List<BasalProfileEntity> rows = new ArrayList<>(candidates.size());
+            for (BasalProfile p : candidates) rows.add(BasalProfileMapper.toEntity(p));
+            finishBulk(() -> {
+                List<Long> ids = rows.isEmpty() ? new ArrayList<>() : insertBatch(rows);
+                onLibraryReplaced();
+                cb.onDone(ids);
+            });
+        });
+    }
+
+    /**
+     * Moves all profiles ({@code ids == null}) or the given ones to a new accuracy, keeping each
+     * daily dose ({@link ProfileRequantizer}); sub-hour profiles keep their change points.
+     * Rows are streamed in id order, {@link #REQUANTIZE_BATCH} at a time; each batch's updates
+     * and revisions go in one transaction, so a failure part-way keeps the batches already
+     * written and the error goes to {@link RequantizeCallback#onError}. Rows already on the new
+     * grid are not rewritten. The report lists the largest per-hour rate deviations.
+     */
+    public void requantizeProfiles(List<Long> ids, double accuracy, RequantizeCallback cb) {
+        if (accuracy <= 0.0) throw new IllegalArgumentException("accuracy must be > 0");
+        final long[] selected = (ids == null) ? null : sortedDistinct(ids);
+        io.execute(() -> {
+            ProfileRequantizer.Report report = new ProfileRequantizer.Report(accuracy, REQUANTIZE_REPORT_LIMIT);
+            List<BasalProfileEntity> changed = new ArrayList<>(REQUANTIZE_BATCH);
+            try {
+                long afterId = 0;
+                int next = 0;
+                List<BasalProfileEntity> chunk;
+                do {
+                    if (selected == null) {
+                        chunk = dao.getProfileChunk(afterId, REQUANTIZE_BATCH);
+                        if (!chunk.isEmpty()) afterId = chunk.get(chunk.size() - 1).id;
+                    } else {
+                        int end = Math.min(selected.length, next + REQUANTIZE_BATCH);
+                        List<Long> batchIds = new ArrayList<>(end - next);
+                        for (int i = next; i < end; i++) batchIds.add(selected[i]);
+                        next = end;
+                        chunk = batchIds.isEmpty() ? new ArrayList<>() : dao.getProfilesByIds(batchIds);
+                    }
+                    changed.clear();
+                    for (BasalProfileEntity row : chunk) {
+                        BasalProfileEntity e = requantizeRow(row, accuracy, report);
+                        if (e != null) changed.add(e);
+                    }
+                    if (!changed.isEmpty()) updateBatch(changed);
+                } while (selected == null ? chunk.size() == REQUANTIZE_BATCH : next < selected.length);
+            } catch (RuntimeException e) {
+                onLibraryReplaced(); // earlier batches may already be in
+                cb.onError(e);
+                return;
+            }
+            onLibraryReplaced();
+            cb.onResult(report);
+        });
+    }
+
+    /** Requantized copy of a row for update, or null if it is unchanged. */
+    private static BasalProfileEntity requantizeRow(BasalProfileEntity row, double accuracy,
+                                                    ProfileRequantizer.Report report) {
+        ChangePointProfile before = BasalProfileMapper.toChangePointProfile(row);
+        ChangePointProfile after = ProfileRequantizer.requantize(before, accuracy);
+        report.add(row.id, row.name, ProfileRequantizer.hourlyRates(before), ProfileRequantizer.hourlyRates(after));
+        if (Double.compare(row.accuracy, accuracy) == 0
+                && Arrays.equals(before.copyUnits(), after.copyUnits())) return null;
+        report.profilesChanged++;
+        return BasalProfileMapper.toEntity(after);
+    }
+
+    private static long[] sortedDistinct(List<Long> ids) {
+        long[] a = new long[ids.size()];
+        for (int i = 0; i < a.length; i++) a[i] = ids.get(i);
+        Arrays.sort(a);
+        int n = 0;
+        for (int i = 0; i < a.length; i++) if (n == 0 || a[i] != a[n - 1]) a[n++] = a[i];
+        return Arrays.copyOf(a, n);
+    }
+
+    /** Existing rows with their next revision, in one transaction; io thread. */
+    private void updateBatch(List<BasalProfileEntity> rows) {
+        db.runInTransaction(() -> {
+            for (BasalProfileEntity e : rows) {
+                dao.updateProfile(e);
+                revisions.record(e.id, e);
+            }
+        });
+    }
+
+    /**
+     * Bulk lane: runs {@code work} on the io lane and waits for it, so a bulk job's writes stay
+     * ordered with every other write. Throws RejectedExecutionException once closed.
+     */
+    private <T> T onIo(Supplier<T> work) {
+        try {
+            return io.submit(work::get).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Interrupted while writing"));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /** Bulk lane: the final write, cache resets and the callback run on the io thread. */
+    private void finishBulk(Runnable done) {
+        try {
+            io.execute(done);
+        } catch (RejectedExecutionException closed) {
+            // Owner is gone; batches already written stay
+        }
+    }
+
+    /** New rows (id == 0) with their first revision, in one transaction; io thread. */
+    private List<Long> insertBatch(List<BasalProfileEntity> rows) {
+        return db.runInTransaction(() -> {
+            List<Long> ids = new ArrayList<>(rows.size());
+            for (BasalProfileEntity e : rows) {
+                long id = dao.insertProfile(e);
+                revisions.record(id, e);
+                ids.add(id);
+            }
+            return ids;
+        });
+    }
+
+    private LibraryStatistics computeStatistics(ProfileOrigin origin) {
+        LibraryStatisticsEngine.Accumulator acc = statisticsEngine.newAccumulator(GRID_CHUNK);
+        double[] accuracy = new double[GRID_CHUNK];
+        int[] units = new int[GRID_CHUNK * 24];
+        long afterId = 0;
+        List<ProfileGridRow> chunk;
+        do {
+            chunk = (origin == null)
+                    ? dao.getGridChunk(afterId, GRID_CHUNK)
+                    : dao.getGridChunkByOrigin(origin.name(), afterId, GRID_CHUNK);
+            for (int i = 0; i < chunk.size(); i++) {
+                ProfileGridRow r = chunk.get(i);
+                accuracy[i] = r.accuracy;
+                r.copyUnitsTo(units, i * 24);
+                afterId = r.id;
+            }
+            acc.addChunk(accuracy, units, chunk.size());
+        } while (chunk.size() == GRID_CHUNK);
+        return acc.finish();
+    }
+
+    private ProfileSimilarityIndex similarityIndex() {
+        if (similarityIndex == null) {
+            ProfileSimilarityIndex index = new ProfileSimilarityIndex(GRID_CHUNK);
+            int[] units = new int[24];
+            long afterId = 0;
+            List<ProfileGridRow> chunk;
+            do {
+                chunk = dao.getGridChunk(afterId, GRID_CHUNK);
+                for (ProfileGridRow r : chunk) {
+                    r.copyUnitsTo(units, 0);
+                    index.put(r.id, r.accuracy, units);
+                    afterId = r.id;
+                }
+            } while (chunk.size() == GRID_CHUNK);
+            similarityIndex = index;
+        }
+        return similarityIndex;
+    }
+
+    /** Saved versions of a profile's grid, newest first. Listing decodes nothing. */
+    public void getRevisionHistory(long profileId, RevisionListCallback cb) {
+        io.execute(() -> cb.onResult(revisions.history(profileId)));
+    }
+
+    /**
+     * The profile as it was at {@code revision}: historical grid and accuracy, current name,
+     * origin, lineage and metadata. Keeps the profile id, so saving it restores that version.
+     * A sub-hour revision comes back as its hourly means; {@link #getChangePointProfileAtRevision}
+     * has its change points. Yields null if the profile or revision does not exist.
+     */
+    public void getProfileAtRevision(long profileId, int revision, ItemCallback cb) {
+        io.execute(() -> {
+            BasalProfileEntity row = dao.getProfile(profileId);
+            ProfileRevisionStore.Snapshot v = (row == null) ? null : revisions.versionAt(profileId, revision);
+            if (v == null) {
+                cb.onResult(null);
+                return;
+            }
+            cb.onResult(hourGridAt(row, v));
+        });
+    }
+
+    private static BasalProfile hourGridAt(BasalProfileEntity row, ProfileRevisionStore.Snapshot v) {
+        BasalProfile current = BasalProfileMapper.toDomain(row);
+        return new BasalProfile(
+                current.getId(),
+                current.getName(),
+                v.accuracy,
+                current.getOrigin(),
+                current.getBaseProfileId(),
+                current.getMetadata(),
+                v.units
+        );
+    }
+
+    /**
+     * Like {@link #getProfileAtRevision}, with the revision's change points; saving it through
+     * {@link #upsertChangePointProfile} restores a sub-hour version exactly.
+     */
+    public void getChangePointProfileAtRevision(long profileId, int revision, ChangePointCallback cb) {
+        io.execute(() -> {
+            BasalProfileEntity row = dao.getProfile(profileId);
+            ProfileRevisionStore.Snapshot v = (row == null) ? null : revisions.versionAt(profileId, revision);
+            if (v == null) {
+                cb.onResult(null);
+                return;
+            }
+            if (v.changePoints == null) {
+                cb.onResult(ChangePointProfile.fromHourGrid(hourGridAt(row, v)));
+                return;
+            }
+            // Sub-hour: the change points are the whole content, the hour columns are not read
+            BasalProfileEntity e = new BasalProfileEntity();
+            e.id = row.id;
+            e.name = row.name;
+            e.origin = row.origin;
+            e.baseProfileId = row.baseProfileId;
+            e.metadataJson = row.metadataJson;
+            e.accuracy = v.accuracy;
+            e.resolutionMinutes = v.resolutionMinutes;
+            e.changePoints = v.changePoints;
+            cb.onResult(BasalProfileMapper.toChangePointProfile(e));
+        });
+    }
+
+    // ---------- Write path (io thread) ----------
+
+    /** Insert (id == 0) or update, plus its revision, in one transaction. Returns the row id. */
+    private long writeProfile(BasalProfileEntity e) {
+        long id = db.runInTransaction(() -> {
+            long rowId;
+            if (e.id == 0) {
+                rowId = dao.insertProfile(e);
+            } else {
+                dao.updateProfile(e);
+                rowId = e.id;
+            }
+            revisions.record(rowId, e);
+            return rowId;
+        });
+        onProfileWritten(id, e);
+        return id;
+    }
+
+    private void onProfileWritten(long id, BasalProfileEntity e) {
+        statisticsCache.clear();
+        if (similarityIndex != null) {
+            similarityIndex.put(id, e.accuracy, BasalProfileMapper.unitsOf(e));
+        }
+    }
+
+    private void onLibraryReplaced() {
+        statisticsCache.clear();
+        similarityIndex = null; // rebuilt from the new rows on next use
+    }
+
+    private void onProfileDeleted(long id) {
+        statisticsCache.clear();
+        if (similarityIndex != null) similarityIndex.remove(id);
+    }
+
     public void createEmptyProfile(String name, double accuracy, IdCallback cb) {
         if (accuracy <= 0.0) throw new IllegalArgumentException("accuracy must be > 0");
         io.execute(() -> {
@@ -85,7 +860,7 @@ public class BasalProfileRepository {
                     new HashMap<>(),
                     zeroUnits
             );
-            long id = dao.insertProfile(BasalProfileMapper.toEntity(profile));
+            long id = writeProfile(BasalProfileMapper.toEntity(profile));
             cb.onResult(id);
         });
     }
@@ -95,22 +870,38 @@ public class BasalProfileRepository {
             BasalProfileEntity row = dao.getProfile(id);
             if (row == null) throw new IllegalArgumentException("Profil nie istnieje, id=" + id);
 
-            BasalProfile original = BasalProfileMapper.toDomain(row);
-
-            String newName = original.getName() +
+            String newName = row.name +
                     ((nameSuffix == null || nameSuffix.isEmpty()) ? " (kopia)" : nameSuffix);
 
-            BasalProfile duplicate = new BasalProfile(
-                    0,
-                    newName,
-                    original.getAccuracy(),
-                    ProfileOrigin.USER_MODIFIED,
-                    original.getId(),
-                    original.getMetadata(),
-                    original.copyUnitsByHour()
-            );
+            BasalProfileEntity copy;
+            if (row.changePoints != null) {
+                // Sub-hour: copy the change points, not the hour-column view
+                ChangePointProfile original = BasalProfileMapper.toChangePointProfile(row);
+                copy = BasalProfileMapper.toEntity(new ChangePointProfile(
+                        0,
+                        newName,
+                        original.getAccuracy(),
+                        original.getResolutionMinutes(),
+                        ProfileOrigin.USER_MODIFIED,
+                        original.getId(),
+                        original.getMetadata(),
+                        original.copyStartMinutes(),
+                        original.copyUnits()
+                ));
+            } else {
+                BasalProfile original = BasalProfileMapper.toDomain(row);
+                copy = BasalProfileMapper.toEntity(new BasalProfile(
+                        0,
+                        newName,
+                        original.getAccuracy(),
+                        ProfileOrigin.USER_MODIFIED,
+                        original.getId(),
+                        original.getMetadata(),
+                        original.copyUnitsByHour()
+                ));
+            }
 
-            long newId = dao.insertProfile(BasalProfileMapper.toEntity(duplicate));
+            long newId = writeProfile(copy);
             cb.onResult(newId);
         });
     }
@@ -0,0 +1,124 @@
+package com.kukuchta.basaltracker.data.repo;
+
+import com.kukuchta.basaltracker.data.db.BasalProfileRevisionDao;
+import com.kukuchta.basaltracker.data.db.RevisionSummaryRow;
+import com.kukuchta.basaltracker.data.db.entities.BasalProfileEntity;
+import com.kukuchta.basaltracker.data.db.entities.BasalProfileRevisionEntity;
+import com.kukuchta.basaltracker.data.mapper.BasalProfileMapper;
+import com.kukuchta.basaltracker.data.mapper.RevisionCodec;
+import com.kukuchta.basaltracker.domain.ProfileRevision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Delta-compressed grid history with periodic keyframes.
+ *
+ * - A revision is written per saved content change; unchanged saves (same units, accuracy,
+ *   resolution and change points) are skipped, so storage grows with edit size, not with the
+ *   number of saves.
+ * - Every KEYFRAME_INTERVAL-th revision, and any revision that changes accuracy, is a full
+ *   keyframe. Reconstructing any revision decodes one keyframe plus < KEYFRAME_INTERVAL deltas.
+ * - Sub-hour profiles store their change points whole in every revision: the hour units are
+ *   only their means, and the blob is a few dozen bytes.
+ * - Must be called inside the same transaction as the profile write it records.
+ */
+final class ProfileRevisionStore {
+    static final int KEYFRAME_INTERVAL = 16;
+
+    private final BasalProfileRevisionDao dao;
+
+    ProfileRevisionStore(BasalProfileRevisionDao dao) {
+        this.dao = dao;
+    }
+
+    /** Decoded content of one revision; changePoints is null for hour-grid revisions. */
+    static final class Snapshot {
+        final int revision;
+        final double accuracy;
+        final int[] units;
+        final int resolutionMinutes;
+        final byte[] changePoints;
+
+        Snapshot(int revision, double accuracy, int[] units, int resolutionMinutes, byte[] changePoints) {
+            this.revision = revision;
+            this.accuracy = accuracy;
+            this.units = units;
+            this.resolutionMinutes = resolutionMinutes;
+            this.changePoints = changePoints;
+        }
+    }
+
+    /** Records the content of row {@code e} as the next revision of the profile, if anything changed. */
+    void record(long profileId, BasalProfileEntity e) {
+        double accuracy = e.accuracy;
+        int[] units = BasalProfileMapper.unitsOf(e);
+        Integer latest = dao.getLatestRevision(profileId);
+        Snapshot prev = (latest == null) ? null : versionAt(profileId, latest);
+
+        int mask;
+        boolean keyframe;
+        int revision;
+        if (prev == null) {
+            revision = 0;
+            mask = RevisionCodec.ALL_HOURS;
+            keyframe = true;
+        } else {
+            mask = RevisionCodec.diffMask(prev.units, units);
+            boolean accuracyChanged = Double.compare(prev.accuracy, accuracy) != 0;
+            if (mask == 0 && !accuracyChanged
+                    && prev.resolutionMinutes == e.resolutionMinutes
+                    && Arrays.equals(prev.changePoints, e.changePoints)) return;
+            revision = prev.revision + 1;
+            keyframe = accuracyChanged || revision % KEYFRAME_INTERVAL == 0;
+        }
+
+        BasalProfileRevisionEntity r = new BasalProfileRevisionEntity();
+        r.profileId = profileId;
+        r.revision = revision;
+        r.keyframe = keyframe;
+        r.accuracy = accuracy;
+        r.changedMask = mask;
+        r.packedUnits = RevisionCodec.encode(units, keyframe ? RevisionCodec.ALL_HOURS : mask);
+        r.resolutionMinutes = e.resolutionMinutes;
+        r.changePoints = e.changePoints;
+        r.createdAt = e.createdAt;
+        dao.insertRevision(r);
+    }
+
+    List<ProfileRevision> history(long profileId) {
+        List<RevisionSummaryRow> rows = dao.getHistory(profileId);
+        List<ProfileRevision> out = new ArrayList<>(rows.size());
+        for (RevisionSummaryRow r : rows) {
+            out.add(new ProfileRevision(profileId, r.revision, r.createdAt, r.accuracy,
+                    Integer.bitCount(r.changedMask), r.keyframe));
+        }
+        return out;
+    }
+
+    /**
+     * Content of the given revision, or null if it does not exist: the nearest keyframe at or
+     * before {@code revision}, then its deltas up to {@code revision}.
+     */
+    Snapshot versionAt(long profileId, int revision) {
+        Integer keyframe = dao.getKeyframeAtOrBefore(profileId, revision);
+        if (keyframe == null) return null;
+        List<BasalProfileRevisionEntity> chain = dao.getRevisions(profileId, keyframe, revision);
+        if (chain.isEmpty() || chain.get(chain.size() - 1).revision != revision) return null;
+
+        int[] units = new int[24];
+        double accuracy = 0.0;
+        BasalProfileRevisionEntity last = null;
+        int expected = keyframe;
+        for (BasalProfileRevisionEntity r : chain) {
+            if (r.revision != expected++) {
+                throw new IllegalStateException("Luka w historii profilu " + profileId + " przy rewizji " + r.revision);
+            }
+            RevisionCodec.applyTo(units, r.keyframe ? RevisionCodec.ALL_HOURS : r.changedMask, r.packedUnits);
+            accuracy = r.accuracy;
+            last = r;
+        }
+        return new Snapshot(revision, accuracy, units, last.resolutionMinutes, last.changePoints);
+    }
+}
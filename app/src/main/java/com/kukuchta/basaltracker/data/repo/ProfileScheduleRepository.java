@@ -0,0 +1,125 @@
+package com.kukuchta.basaltracker.data.repo;
+
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import com.kukuchta.basaltracker.data.db.AppDatabase;
+import com.kukuchta.basaltracker.data.db.BasalProfileDao;
+import com.kukuchta.basaltracker.data.db.DatabaseProvider;
+import com.kukuchta.basaltracker.data.db.ProfileAssignmentDao;
+import com.kukuchta.basaltracker.data.db.entities.BasalProfileEntity;
+import com.kukuchta.basaltracker.data.db.entities.ProfileAssignmentEntity;
+import com.kukuchta.basaltracker.data.mapper.BasalProfileMapper;
+import com.kukuchta.basaltracker.domain.BasalProfile;
+import com.kukuchta.basaltracker.domain.ProfileAssignment;
+import com.kukuchta.basaltracker.domain.ProfileScheduleIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Date-based profile schedule (weekends, sick days, travel).
+ * Reads go through an in-memory {@link ProfileScheduleIndex}; it is rebuilt lazily after any
+ * change to profile_assignments, including cascades from deleted profiles.
+ */
+public class ProfileScheduleRepository {
+    private final BasalProfileDao profileDao;
+    private final ProfileAssignmentDao dao;
+    private final ExecutorService io = Executors.newSingleThreadExecutor();
+
+    // Only touched on the io thread, except the invalidation flag
+    private ProfileScheduleIndex index;
+    private volatile boolean indexStale = true;
+
+    private final InvalidationTracker tracker;
+    private final InvalidationTracker.Observer assignmentsChanged =
+            new InvalidationTracker.Observer("profile_assignments") {
+                @Override
+                public void onInvalidated(@NonNull Set<String> tables) {
+                    indexStale = true;
+                }
+            };
+
+    public ProfileScheduleRepository(Application app) {
+        this(DatabaseProvider.getDatabase(app));
+    }
+
+    public ProfileScheduleRepository(AppDatabase db) {
+        this.profileDao = db.basalProfileDao();
+        this.dao = db.profileAssignmentDao();
+        this.tracker = db.getInvalidationTracker();
+        tracker.addObserver(assignmentsChanged);
+    }
+
+    public interface AssignmentCallback { void onResult(ProfileAssignment assignment); }
+    public interface AssignmentListCallback { void onResult(List<ProfileAssignment> assignments); }
+
+    /** Schedules {@code profileId} over [validFrom, validTo); use ProfileAssignment.OPEN_END for no end. */
+    public void assign(long profileId, long validFrom, long validTo, BasalProfileRepository.IdCallback cb) {
+        if (validTo <= validFrom) throw new IllegalArgumentException("Koniec musi być po początku.");
+        io.execute(() -> {
+            ProfileAssignmentEntity e = new ProfileAssignmentEntity();
+            e.profileId = profileId;
+            e.validFrom = validFrom;
+            e.validTo = validTo;
+            e.createdAt = System.currentTimeMillis();
+            long id = dao.insertAssignment(e);
+            indexStale = true;
+            cb.onResult(id);
+        });
+    }
+
+    public void removeAssignment(long id, BasalProfileRepository.VoidCallback cb) {
+        io.execute(() -> {
+            dao.deleteAssignment(id);
+            indexStale = true;
+            cb.onDone();
+        });
+    }
+
+    /** Winning assignment at {@code epochMs}, or null. O(log n) once the index is loaded. */
+    public void getActiveAssignment(long epochMs, AssignmentCallback cb) {
+        io.execute(() -> cb.onResult(index().activeAt(epochMs)));
+    }
+
+    /** The profile scheduled at {@code epochMs}, or null when nothing is scheduled. */
+    public void getActiveProfile(long epochMs, BasalProfileRepository.ItemCallback cb) {
+        io.execute(() -> {
+            ProfileAssignment a = index().activeAt(epochMs);
+            BasalProfileEntity row = (a == null) ? null : profileDao.getProfile(a.profileId);
+            cb.onResult(row == null ? null : BasalProfileMapper.toDomain(row));
+        });
+    }
+
+    /** All assignments overlapping [from, to), ordered by start. O(log n + k). */
+    public void getAssignments(long from, long to, AssignmentListCallback cb) {
+        io.execute(() -> cb.onResult(index().overlapping(from, to)));
+    }
+
+    /**
+     * Stops accepting work and unhooks from the database's invalidation tracker, which would
+     * otherwise keep this repository alive. Writes already queued still finish.
+     */
+    public void close() {
+        tracker.removeObserver(assignmentsChanged);
+        io.shutdown();
+    }
+
+    private ProfileScheduleIndex index() {
+        if (indexStale || index == null) {
+            indexStale = false; // cleared first: a write racing with the load marks it stale again
+            List<ProfileAssignmentEntity> rows = dao.getAllAssignments();
+            List<ProfileAssignment> list = new ArrayList<>(rows.size());
+            for (ProfileAssignmentEntity r : rows) {
+                list.add(new ProfileAssignment(r.id, r.profileId, r.validFrom, r.validTo));
+            }
+            index = new ProfileScheduleIndex(list);
+        }
+        return index;
+    }
+}
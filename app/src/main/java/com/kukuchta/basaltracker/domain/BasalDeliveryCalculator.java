@@ -0,0 +1,127 @@
+package com.kukuchta.basaltracker.domain;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * Scheduled basal insulin between two instants, for reconciliation against pump logs.
+ *
+ * Model:
+ * - The profile repeats every local day; hour h of the local wall clock runs at units[h].
+ * - prefix[h] = units[0] + ... + units[h-1], so the cumulative delivery up to a local
+ *   timestamp x is F(x) = days(x) * prefix[24] + prefix[h(x)] (whole hours) + units[h(x)] * rem(x).
+ * - A range inside one UTC-offset period is F(end + off) - F(start + off): O(1).
+ *   Ranges crossing DST transitions add one O(1) step per transition.
+ *
+ * Exactness:
+ * - The core result is an exact integer in unit-milliseconds (units * ms). Insulin in U is
+ *   unitMillis * accuracy / 3 600 000; the BigDecimal view rounds that to 1e-6 U.
+ *
+ * Not thread-safe: the UTC-offset period of the last lookup is cached, so batches stay
+ * allocation-free. Use one instance per thread.
+ */
+public final class BasalDeliveryCalculator {
+    public static final long MS_PER_HOUR = 3_600_000L;
+    public static final long MS_PER_DAY = 24 * MS_PER_HOUR;
+    private static final BigDecimal MS_PER_HOUR_BD = BigDecimal.valueOf(MS_PER_HOUR);
+    private static final int INSULIN_SCALE = 6;
+
+    private final BigDecimal accuracy;
+    private final long[] units = new long[24];
+    private final long[] prefix = new long[25];   // unit-hours before hour h
+    private final ZoneRules rules;
+
+    // Cached UTC-offset period: [periodStart, periodEnd) has a constant offset of offsetMs
+    private long periodStart = Long.MAX_VALUE;
+    private long periodEnd = Long.MIN_VALUE;
+    private long offsetMs;
+
+    public BasalDeliveryCalculator(BasalProfile profile, ZoneId zone) {
+        this.accuracy = BigDecimal.valueOf(profile.getAccuracy());
+        this.rules = zone.getRules();
+        int[] u = profile.copyUnitsByHour();
+        for (int h = 0; h < 24; h++) {
+            units[h] = u[h];
+            prefix[h + 1] = prefix[h] + u[h];
+        }
+    }
+
+    /** Units scheduled per day (sum of hourly units); times accuracy gives the TDD in U. */
+    public long unitsPerDay() { return prefix[24]; }
+
+    /**
+     * Exact scheduled delivery over [startEpochMs, endEpochMs) in unit-milliseconds.
+     * @throws IllegalArgumentException if end < start
+     */
+    public long deliveredUnitMillis(long startEpochMs, long endEpochMs) {
+        if (endEpochMs < startEpochMs) throw new IllegalArgumentException("end must be >= start");
+        long total = 0;
+        long t = startEpochMs;
+        while (t < endEpochMs) {
+            ensurePeriod(t);
+            long segmentEnd = Math.min(endEpochMs, periodEnd);
+            total += cumulative(segmentEnd + offsetMs) - cumulative(t + offsetMs);
+            t = segmentEnd;
+        }
+        return total;
+    }
+
+    /** Scheduled insulin in U over [startEpochMs, endEpochMs), rounded to 1e-6 U. */
+    public BigDecimal deliveredInsulin(long startEpochMs, long endEpochMs) {
+        return toInsulin(deliveredUnitMillis(startEpochMs, endEpochMs));
+    }
+
+    /**
+     * Batch form without per-query allocation: out[i] = delivered unit-ms over [starts[i], ends[i]).
+     * Sorting the batch by start keeps the offset cache hot.
+     */
+    public void deliveredUnitMillis(long[] starts, long[] ends, long[] out, int count) {
+        if (starts.length < count || ends.length < count || out.length < count)
+            throw new IllegalArgumentException("arrays shorter than count");
+        for (int i = 0; i < count; i++) {
+            out[i] = deliveredUnitMillis(starts[i], ends[i]);
+        }
+    }
+
+    /** unit-ms -> U, rounded half-even to 1e-6 U. */
+    public BigDecimal toInsulin(long unitMillis) {
+        return BigDecimal.valueOf(unitMillis)
+                .multiply(accuracy)
+                .divide(MS_PER_HOUR_BD, INSULIN_SCALE, RoundingMode.HALF_EVEN);
+    }
+
+    // ---------- Helpers ----------
+
+    /** Cumulative unit-ms from the local epoch to local wall-clock millis {@code x}. */
+    private long cumulative(long x) {
+        long day = Math.floorDiv(x, MS_PER_DAY);
+        long msOfDay = x - day * MS_PER_DAY;
+        int hour = (int) (msOfDay / MS_PER_HOUR);
+        long msOfHour = msOfDay - hour * MS_PER_HOUR;
+        return (day * prefix[24] + prefix[hour]) * MS_PER_HOUR + units[hour] * msOfHour;
+    }
+
+    private void ensurePeriod(long t) {
+        if (t >= periodStart && t < periodEnd) return;
+        Instant instant = Instant.ofEpochMilli(t);
+        ZoneOffset offset = rules.getOffset(instant);
+        offsetMs = offset.getTotalSeconds() * 1000L;
+
+        ZoneOffsetTransition next = rules.nextTransition(instant);
+        periodEnd = (next == null) ? Long.MAX_VALUE : next.toEpochSecond() * 1000L;
+
+        ZoneOffsetTransition prev = rules.previousTransition(instant);
+        if (prev == null) {
+            periodStart = Long.MIN_VALUE;
+        } else if (prev.getOffsetAfter().equals(offset)) {
+            periodStart = prev.toEpochSecond() * 1000L;
+        } else {
+            periodStart = t; // t sits exactly on a transition; only cache forward
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.kukuchta.basaltracker.domain;
+
+/**
+ * Temporary basal adjustment over [startsAt, endsAt) (epoch millis), layered over whatever
+ * profile is in effect. Overlaps are allowed; the newest override (highest id) wins.
+ */
+public final class BasalOverride {
+    public enum Kind {
+        /** value = percent of the base rate (100 = unchanged, 0 = suspend) */
+        PERCENT,
+        /** value = rate in U/h, replacing the base rate */
+        ABSOLUTE
+    }
+
+    public final long id;
+    public final Kind kind;
+    public final double value;
+    public final long startsAt;
+    public final long endsAt;
+
+    public BasalOverride(long id, Kind kind, double value, long startsAt, long endsAt) {
+        if (kind == null) throw new IllegalArgumentException("kind required");
+        if (!(value >= 0)) throw new IllegalArgumentException("value must be >= 0");
+        if (endsAt <= startsAt) throw new IllegalArgumentException("endsAt must be > startsAt");
+        this.id = id;
+        this.kind = kind;
+        this.value = value;
+        this.startsAt = startsAt;
+        this.endsAt = endsAt;
+    }
+
+    /** Effective U/h given the base profile's rate at the same instant. */
+    public double apply(double baseRateUh) {
+        return (kind == Kind.PERCENT) ? baseRateUh * value / 100.0 : value;
+    }
+}
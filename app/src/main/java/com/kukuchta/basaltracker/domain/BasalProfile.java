@@ -101,6 +101,12 @@ public final class BasalProfile {
         return toRate(unitsByHour[hour]);
     }
 
+    /** Integer units for hour h (rate = units * accuracy). */
+    public int getUnitsAtHour(int hour) {
+        validateHour(hour);
+        return unitsByHour[hour];
+    }
+
     /**
      * Chart helper: U/h samples for each hour 0..23.
      * @return array of length 24 with hourly U/h values
@@ -0,0 +1,230 @@
+package com.kukuchta.basaltracker.domain;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * ChangePointProfile (sub-hour resolution, run-length encoded)
+ *
+ * Model overview:
+ * - Sorted change points (startMinutes[i], units[i]); each rate holds until the next change
+ *   point or 24:00. rate = units * accuracy, as in {@link BasalProfile}.
+ * - Change points lie on a grid of resolutionMinutes (15, 30 or 60), matching pump menus.
+ * - Memory is proportional to the number of rate changes, not to 96 or 1440 slots.
+ *
+ * Invariants:
+ * - accuracy > 0, resolutionMinutes in {15, 30, 60}
+ * - startMinutes[0] == 0, strictly increasing, each < 1440 and a multiple of resolutionMinutes
+ * - units[i] >= 0 and units[i] != units[i + 1] (adjacent equal runs are merged: safe normalization)
+ *
+ * Public behavior:
+ * - getBasalRateAtMinute(m): binary search over the change points, O(log k).
+ * - getTotalDailyDose(): exact; the minimum duration is 15 min = 1/4 h, so the sum is a
+ *   terminating decimal.
+ *
+ * Mutability:
+ * - setUnitsInRange rewrites [from, to) in place and re-normalizes (same stance as BasalProfile).
+ */
+public final class ChangePointProfile {
+    public static final int MINUTES_PER_DAY = 1440;
+    private static final int[] ALLOWED_RESOLUTIONS = { 15, 30, 60 };
+
+    private final long id;
+    private final String name;
+    private final double accuracy;
+    private final int resolutionMinutes;
+    private final ProfileOrigin origin;
+    private final Long baseProfileId;
+    private final Map<String, String> metadata;
+
+    private int[] startMinutes;
+    private int[] units;
+
+    /**
+     * @param startMinutes change point starts (defensively copied, validated, adjacent equal runs merged)
+     * @param units        units per change point, same length as startMinutes
+     */
+    public ChangePointProfile(
+            long id,
+            String name,
+            double accuracy,
+            int resolutionMinutes,
+            ProfileOrigin origin,
+            Long baseProfileId,
+            Map<String, String> metadata,
+            int[] startMinutes,
+            int[] units
+    ) {
+        this.id = id;
+        this.name = Objects.requireNonNull(name, "name");
+        if (accuracy <= 0.0) throw new IllegalArgumentException("accuracy must be > 0");
+        this.accuracy = accuracy;
+        if (Arrays.binarySearch(ALLOWED_RESOLUTIONS, resolutionMinutes) < 0)
+            throw new IllegalArgumentException("resolutionMinutes must be 15, 30 or 60");
+        this.resolutionMinutes = resolutionMinutes;
+        this.origin = (origin == null) ? ProfileOrigin.USER_MODIFIED : origin;
+        this.baseProfileId = baseProfileId;
+        this.metadata = (metadata != null) ? new HashMap<>(metadata) : new HashMap<>();
+
+        if (startMinutes == null || units == null || startMinutes.length != units.length || startMinutes.length == 0)
+            throw new IllegalArgumentException("startMinutes and units must be non-empty and of equal length");
+        normalizeAndValidate(Arrays.copyOf(startMinutes, startMinutes.length), Arrays.copyOf(units, units.length));
+    }
+
+    /** Lossless lift of an hour-grid profile (resolution 60). */
+    public static ChangePointProfile fromHourGrid(BasalProfile p) {
+        int[] hourUnits = p.copyUnitsByHour();
+        int[] starts = new int[24];
+        for (int h = 0; h < 24; h++) starts[h] = h * 60;
+        return new ChangePointProfile(p.getId(), p.getName(), p.getAccuracy(), 60, p.getOrigin(),
+                p.getBaseProfileId(), p.getMetadata(), starts, hourUnits);
+    }
+
+    // ---------- Accessors ----------
+
+    public long getId() { return id; }
+    public String getName() { return name; }
+    public double getAccuracy() { return accuracy; }
+    public int getResolutionMinutes() { return resolutionMinutes; }
+    public ProfileOrigin getOrigin() { return origin; }
+    public Long getBaseProfileId() { return baseProfileId; }
+    public Map<String, String> getMetadata() { return Collections.unmodifiableMap(metadata); }
+
+    public int getChangePointCount() { return startMinutes.length; }
+    public int[] copyStartMinutes() { return Arrays.copyOf(startMinutes, startMinutes.length); }
+    public int[] copyUnits() { return Arrays.copyOf(units, units.length); }
+
+    /** Units in effect at minute m (0..1439). */
+    public int getUnitsAtMinute(int minute) {
+        validateMinute(minute);
+        return units[indexAt(minute)];
+    }
+
+    /** Rate in U/h in effect at minute m (0..1439). */
+    public double getBasalRateAtMinute(int minute) {
+        return getUnitsAtMinute(minute) * accuracy;
+    }
+
+    /** Exact total daily dose in U: sum(units_i * duration_i) * accuracy / 60. */
+    public BigDecimal getTotalDailyDose() {
+        long quarterHourUnits = 0; // units * (duration / 15 min)
+        for (int i = 0; i < startMinutes.length; i++) {
+            quarterHourUnits += (long) units[i] * ((endOf(i) - startMinutes[i]) / 15);
+        }
+        return BigDecimal.valueOf(quarterHourUnits)
+                .multiply(BigDecimal.valueOf(accuracy))
+                .divide(BigDecimal.valueOf(4));
+    }
+
+    /** True when every change point is on a full hour, i.e. the profile fits a BasalProfile. */
+    public boolean isHourAligned() {
+        for (int s : startMinutes) if (s % 60 != 0) return false;
+        return true;
+    }
+
+    /**
+     * Hour-grid view for consumers that only know 24 hourly rates (list TDD, statistics,
+     * similarity, revisions, timeline, IOB): each hour's mean units, rounded so the daily dose
+     * is kept (every hour within one step of its mean, the day within half a step-hour).
+     * Lossless iff {@link #isHourAligned()}.
+     */
+    public int[] hourMeanUnits() {
+        double[] mean = new double[24];
+        for (int i = 0; i < startMinutes.length; i++) {
+            for (int m = startMinutes[i], end = endOf(i); m < end; ) {
+                int hourEnd = Math.min(end, (m / 60 + 1) * 60);
+                mean[m / 60] += units[i] * (hourEnd - m) / 60.0;
+                m = hourEnd;
+            }
+        }
+        return ProfileRequantizer.roundKeepingTotal(mean);
+    }
+
+    /**
+     * Units in effect at the start of each hour. Lossless iff {@link #isHourAligned()};
+     * otherwise a point sample (see {@link #hourMeanUnits()} for a dose-preserving view).
+     */
+    public int[] sampleHourStarts() {
+        int[] out = new int[24];
+        int i = 0;
+        for (int h = 0; h < 24; h++) {
+            int m = h * 60;
+            while (i + 1 < startMinutes.length && startMinutes[i + 1] <= m) i++;
+            out[h] = units[i];
+        }
+        return out;
+    }
+
+    // ---------- Editing (mutates in place) ----------
+
+    /**
+     * Sets [fromMinute, toMinuteExclusive) to {@code newUnits}; the rest of the day is kept.
+     * Both bounds must be on the resolution grid; toMinuteExclusive may be 1440.
+     */
+    public void setUnitsInRange(int fromMinute, int toMinuteExclusive, int newUnits) {
+        if (fromMinute < 0 || toMinuteExclusive > MINUTES_PER_DAY || toMinuteExclusive <= fromMinute)
+            throw new IllegalArgumentException("range must satisfy 0 <= from < to <= 1440");
+        if (fromMinute % resolutionMinutes != 0 || toMinuteExclusive % resolutionMinutes != 0)
+            throw new IllegalArgumentException("range must be on the " + resolutionMinutes + "-minute grid");
+        if (newUnits < 0) throw new IllegalArgumentException("rate units must be >= 0");
+
+        int[] s = new int[startMinutes.length + 2];
+        int[] u = new int[startMinutes.length + 2];
+        int n = 0;
+        for (int i = 0; i < startMinutes.length && startMinutes[i] < fromMinute; i++) {
+            s[n] = startMinutes[i]; u[n++] = units[i];
+        }
+        s[n] = fromMinute; u[n++] = newUnits;
+        if (toMinuteExclusive < MINUTES_PER_DAY) {
+            s[n] = toMinuteExclusive; u[n++] = units[indexAt(toMinuteExclusive)];
+            for (int i = 0; i < startMinutes.length; i++) {
+                if (startMinutes[i] > toMinuteExclusive) { s[n] = startMinutes[i]; u[n++] = units[i]; }
+            }
+        }
+        normalizeAndValidate(Arrays.copyOf(s, n), Arrays.copyOf(u, n));
+    }
+
+    // ---------- Helpers ----------
+
+    /** End minute (exclusive) of run i. */
+    public int endOf(int i) {
+        return (i + 1 < startMinutes.length) ? startMinutes[i + 1] : MINUTES_PER_DAY;
+    }
+
+    /** Index of the run containing minute m: last i with startMinutes[i] <= m. */
+    private int indexAt(int minute) {
+        int lo = 0, hi = startMinutes.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (startMinutes[mid] <= minute) lo = mid; else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    private void normalizeAndValidate(int[] s, int[] u) {
+        if (s[0] != 0) throw new IllegalArgumentException("first change point must be at 0");
+        int n = 0;
+        for (int i = 0; i < s.length; i++) {
+            if (s[i] < 0 || s[i] >= MINUTES_PER_DAY)
+                throw new IllegalArgumentException("change point must be in 0..1439");
+            if (s[i] % resolutionMinutes != 0)
+                throw new IllegalArgumentException("change point must be on the " + resolutionMinutes + "-minute grid");
+            if (i > 0 && s[i] <= s[i - 1])
+                throw new IllegalArgumentException("change points must be strictly increasing");
+            if (u[i] < 0) throw new IllegalArgumentException("rate units must be >= 0");
+            if (n > 0 && u[n - 1] == u[i]) continue; // merge equal neighbours
+            s[n] = s[i];
+            u[n++] = u[i];
+        }
+        this.startMinutes = Arrays.copyOf(s, n);
+        this.units = Arrays.copyOf(u, n);
+    }
+
+    private static void validateMinute(int minute) {
+        if (minute < 0 || minute >= MINUTES_PER_DAY) throw new IllegalArgumentException("minute 0..1439");
+    }
+}
@@ -0,0 +1,128 @@
+package com.kukuchta.basaltracker.domain;
+
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scheduled basal rate over a multi-day range as a step function: rate rates[k] is in effect
+ * from times[k] until times[k + 1] (or {@link #to} for the last point). Consecutive equal
+ * rates are merged.
+ *
+ * Built from the date-based schedule (newest assignment wins, as in {@link ProfileScheduleIndex})
+ * with overrides layered over each profile through {@link EffectiveBasalSchedule}. Instants
+ * with no scheduled profile are 0 U/h; overrides do not apply there.
+ */
+public final class DeliveryTimeline {
+    public final long from;
+    public final long to;
+    private final long[] times;
+    private final double[] rates;
+    private final int count;
+
+    private DeliveryTimeline(long from, long to, long[] times, double[] rates, int count) {
+        this.from = from;
+        this.to = to;
+        this.times = times;
+        this.rates = rates;
+        this.count = count;
+    }
+
+    public int size() { return count; }
+    public long timeAt(int k) { return times[k]; }
+    public double rateAt(int k) { return rates[k]; }
+
+    /** Index of the step in effect at {@code t} (clamped to the first step before {@link #from}). */
+    public int indexAt(long t) {
+        int lo = 0, hi = count - 1, found = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] <= t) { found = mid; lo = mid + 1; } else hi = mid - 1;
+        }
+        return found;
+    }
+
+    /**
+     * @param profiles by id; assignments whose profile is missing count as unscheduled
+     * @throws IllegalArgumentException if to <= from
+     */
+    public static DeliveryTimeline build(List<ProfileAssignment> assignments, Map<Long, BasalProfile> profiles,
+                                         List<BasalOverride> overrides, ZoneId zone, long from, long to) {
+        if (to <= from) throw new IllegalArgumentException("to must be > from");
+        ProfileScheduleIndex index = new ProfileScheduleIndex(assignments);
+
+        // Elementary intervals between assignment edges; each has one winner
+        long[] edges = new long[2 * assignments.size() + 2];
+        int e = 0;
+        edges[e++] = from;
+        edges[e++] = to;
+        for (ProfileAssignment a : assignments) {
+            if (a.validFrom > from && a.validFrom < to) edges[e++] = a.validFrom;
+            if (a.validTo > from && a.validTo < to) edges[e++] = a.validTo;
+        }
+        Arrays.sort(edges, 0, e);
+
+        Builder out = new Builder(256);
+        Map<Long, EffectiveBasalSchedule> schedules = new HashMap<>();
+        long[] stepTimes = new long[64];
+        double[] stepRates = new double[64];
+
+        for (int k = 0; k + 1 < e; k++) {
+            long a = edges[k], b = edges[k + 1];
+            if (a == b) continue;
+            ProfileAssignment winner = index.activeAt(a);
+            BasalProfile profile = (winner == null) ? null : profiles.get(winner.profileId);
+            if (profile == null) {
+                out.add(a, 0.0);
+                continue;
+            }
+            EffectiveBasalSchedule s = schedules.get(profile.getId());
+            if (s == null) {
+                s = new EffectiveBasalSchedule(profile, overrides, zone);
+                schedules.put(profile.getId(), s);
+            }
+            // stepCurve fills at most the buffer; continue from the last point until b
+            long t = a;
+            while (t < b) {
+                int n = s.stepCurve(t, b, stepTimes, stepRates);
+                for (int i = 0; i < n; i++) out.add(stepTimes[i], stepRates[i]);
+                if (n < stepTimes.length) break;
+                t = stepTimes[n - 1]; // re-emitted by the next chunk and merged
+            }
+        }
+        return out.build(from, to);
+    }
+
+    /** Growable primitive arrays; merges a point whose rate equals the previous one. */
+    private static final class Builder {
+        long[] times;
+        double[] rates;
+        int n;
+
+        Builder(int capacity) {
+            times = new long[capacity];
+            rates = new double[capacity];
+        }
+
+        void add(long t, double rate) {
+            if (n > 0 && rates[n - 1] == rate) return;
+            if (n > 0 && times[n - 1] == t) {
+                rates[n - 1] = rate;
+                return;
+            }
+            if (n == times.length) {
+                times = Arrays.copyOf(times, n * 2);
+                rates = Arrays.copyOf(rates, n * 2);
+            }
+            times[n] = t;
+            rates[n] = rate;
+            n++;
+        }
+
+        DeliveryTimeline build(long from, long to) {
+            return new DeliveryTimeline(from, to, times, rates, n);
+        }
+    }
+}
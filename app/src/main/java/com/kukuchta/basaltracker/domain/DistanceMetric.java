@@ -0,0 +1,9 @@
+package com.kukuchta.basaltracker.domain;
+
+/** Distance between two 24-hour rate vectors (U/h), used by similarity search. */
+public enum DistanceMetric {
+    /** Sum of absolute hourly differences = absolute daily dose difference, hour by hour. */
+    L1,
+    /** Euclidean distance; penalizes a single large deviation more than many small ones. */
+    L2
+}
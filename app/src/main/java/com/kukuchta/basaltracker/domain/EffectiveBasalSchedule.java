@@ -0,0 +1,185 @@
+package com.kukuchta.basaltracker.domain;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Base hour grid plus temporary overrides, combined lazily: nothing is materialised per day.
+ *
+ * - Overlapping overrides are resolved once at construction into a flat, sorted timeline of
+ *   disjoint segments (newest override wins), so the override in effect at T is one binary
+ *   search, O(log n).
+ * - The base rate at T is the profile's hour under the local wall clock, O(1) with the
+ *   UTC-offset period cached as in {@link BasalDeliveryCalculator}.
+ * - {@link #stepCurve} walks only the change points (hour boundaries and override edges) in a
+ *   range, for charts.
+ *
+ * Not thread-safe (offset cache); the base grid is copied, so later edits of the profile are
+ * not seen. Build a new instance when the profile or the override set changes.
+ */
+public final class EffectiveBasalSchedule {
+    private static final long MS_PER_HOUR = BasalDeliveryCalculator.MS_PER_HOUR;
+
+    private final double accuracy;
+    private final int[] units;
+    private final ZoneRules rules;
+
+    // Resolved timeline: segment i covers [segStart[i], segEnd[i]) with winner segOwner[i]
+    private final long[] segStart;
+    private final long[] segEnd;
+    private final BasalOverride[] segOwner;
+
+    // Cached UTC-offset period: [periodStart, periodEnd) has a constant offset of offsetMs
+    private long periodStart = Long.MAX_VALUE;
+    private long periodEnd = Long.MIN_VALUE;
+    private long offsetMs;
+
+    public EffectiveBasalSchedule(BasalProfile base, List<BasalOverride> overrides, ZoneId zone) {
+        this.accuracy = base.getAccuracy();
+        this.units = base.copyUnitsByHour();
+        this.rules = zone.getRules();
+
+        List<long[]> segments = new ArrayList<>();
+        BasalOverride[] sorted = overrides.toArray(new BasalOverride[0]);
+        Arrays.sort(sorted, Comparator.comparingLong((BasalOverride o) -> o.startsAt));
+        List<BasalOverride> owners = resolve(sorted, segments);
+        int m = segments.size();
+        segStart = new long[m];
+        segEnd = new long[m];
+        segOwner = owners.toArray(new BasalOverride[0]);
+        for (int i = 0; i < m; i++) {
+            segStart[i] = segments.get(i)[0];
+            segEnd[i] = segments.get(i)[1];
+        }
+    }
+
+    public boolean hasOverrides() { return segStart.length > 0; }
+
+    /** Effective U/h at {@code epochMs}. */
+    public double rateAt(long epochMs) {
+        double base = baseRateAt(epochMs);
+        BasalOverride o = overrideAt(epochMs);
+        return (o == null) ? base : o.apply(base);
+    }
+
+    /** Profile rate at {@code epochMs}, ignoring overrides. */
+    public double baseRateAt(long epochMs) {
+        ensurePeriod(epochMs);
+        long local = epochMs + offsetMs;
+        int hour = (int) (Math.floorMod(local, BasalDeliveryCalculator.MS_PER_DAY) / MS_PER_HOUR);
+        return units[hour] * accuracy;
+    }
+
+    /** The winning override at {@code epochMs}, or null. */
+    public BasalOverride overrideAt(long epochMs) {
+        int i = segmentAtOrBefore(epochMs);
+        return (i >= 0 && epochMs < segEnd[i]) ? segOwner[i] : null;
+    }
+
+    /**
+     * Change points of the effective rate over [from, to): times[k] is where rate rates[k]
+     * starts, consecutive equal rates merged. Returns the number of points written, at most
+     * the array length.
+     */
+    public int stepCurve(long from, long to, long[] times, double[] rates) {
+        int n = 0;
+        long t = from;
+        while (t < to && n < times.length) {
+            double rate = rateAt(t);
+            if (n == 0 || rates[n - 1] != rate) {
+                times[n] = t;
+                rates[n] = rate;
+                n++;
+            }
+            t = Math.min(to, nextChange(t));
+        }
+        return n;
+    }
+
+    // ---------- Helpers ----------
+
+    /** Next instant after t where either the base hour or the override may change. */
+    private long nextChange(long t) {
+        ensurePeriod(t);
+        long local = t + offsetMs;
+        long nextHour = (Math.floorDiv(local, MS_PER_HOUR) + 1) * MS_PER_HOUR - offsetMs;
+        long next = Math.min(nextHour, periodEnd);
+
+        int i = segmentAtOrBefore(t);
+        if (i >= 0 && t < segEnd[i]) next = Math.min(next, segEnd[i]);
+        if (i + 1 < segStart.length) next = Math.min(next, segStart[i + 1]);
+        return next;
+    }
+
+    private int segmentAtOrBefore(long t) {
+        int lo = 0, hi = segStart.length - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (segStart[mid] <= t) { found = mid; lo = mid + 1; } else hi = mid - 1;
+        }
+        return found;
+    }
+
+    /**
+     * Sweep over all start/end boundaries with a max-heap by id; the heap top is the winner of
+     * each elementary interval. Adjacent intervals with the same winner are merged. O(n log n).
+     */
+    private static List<BasalOverride> resolve(BasalOverride[] byStart, List<long[]> out) {
+        List<BasalOverride> owners = new ArrayList<>();
+        int n = byStart.length;
+        long[] bounds = new long[2 * n];
+        for (int i = 0; i < n; i++) {
+            bounds[2 * i] = byStart[i].startsAt;
+            bounds[2 * i + 1] = byStart[i].endsAt;
+        }
+        Arrays.sort(bounds);
+
+        PriorityQueue<BasalOverride> active = new PriorityQueue<>(
+                Math.max(1, n), (a, b) -> Long.compare(b.id, a.id));
+        int next = 0;
+        for (int k = 0; k + 1 < bounds.length; k++) {
+            long from = bounds[k], to = bounds[k + 1];
+            if (from == to) continue;
+            while (next < n && byStart[next].startsAt <= from) active.add(byStart[next++]);
+            while (!active.isEmpty() && active.peek().endsAt <= from) active.poll();
+            // Ended overrides below the top are dropped when they surface
+            BasalOverride top = active.peek();
+            if (top == null) continue;
+            int last = out.size() - 1;
+            if (last >= 0 && owners.get(last) == top && out.get(last)[1] == from) {
+                out.get(last)[1] = to;
+            } else {
+                out.add(new long[] { from, to });
+                owners.add(top);
+            }
+        }
+        return owners;
+    }
+
+    private void ensurePeriod(long t) {
+        if (t >= periodStart && t < periodEnd) return;
+        Instant instant = Instant.ofEpochMilli(t);
+        ZoneOffset offset = rules.getOffset(instant);
+        offsetMs = offset.getTotalSeconds() * 1000L;
+
+        ZoneOffsetTransition next = rules.nextTransition(instant);
+        periodEnd = (next == null) ? Long.MAX_VALUE : next.toEpochSecond() * 1000L;
+
+        ZoneOffsetTransition prev = rules.previousTransition(instant);
+        if (prev == null) {
+            periodStart = Long.MIN_VALUE;
+        } else if (prev.getOffsetAfter().equals(offset)) {
+            periodStart = prev.toEpochSecond() * 1000L;
+        } else {
+            periodStart = t; // t sits exactly on a transition; only cache forward
+        }
+    }
+}
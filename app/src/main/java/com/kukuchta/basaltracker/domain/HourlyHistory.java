@@ -0,0 +1,125 @@
+package com.kukuchta.basaltracker.domain;
+
+/**
+ * Per-hour-of-day statistics folded over any number of logged days, in primitive
+ * accumulators only. Values are fixed-point: rates and doses in thousandths (mU/h, mU),
+ * glucose in thousandths of mg/dL. Accumulators from parallel workers combine with
+ * {@link #addAll}; the order of additions does not matter.
+ */
+public final class HourlyHistory {
+    static final long MS_PER_HOUR = 3_600_000L;
+    static final long MS_PER_DAY = 24 * MS_PER_HOUR;
+
+    // Delivered basal: sum of rate * ms and of ms with a known rate
+    final long[] basalWeighted = new long[24];
+    final long[] basalCoveredMs = new long[24];
+
+    // Boluses: total dose and count
+    final long[] bolusMilli = new long[24];
+    final int[] bolusCount = new int[24];
+
+    // Glucose level: sum and count of readings
+    final long[] glucoseSum = new long[24];
+    final int[] glucoseCount = new int[24];
+
+    // Fasting drift: sum of deltas between consecutive readings and of the time between them
+    final long[] driftSum = new long[24];
+    final long[] driftMs = new long[24];
+
+    private long firstDay = Long.MAX_VALUE;
+    private long lastDay = Long.MIN_VALUE;
+
+    /** Basal rate over local [t0, t1), split at hour boundaries. */
+    public void addBasal(long t0, long t1, long rateMilli) {
+        touch(t0);
+        while (t0 < t1) {
+            long end = Math.min(t1, (Math.floorDiv(t0, MS_PER_HOUR) + 1) * MS_PER_HOUR);
+            int h = hourOf(t0);
+            basalWeighted[h] += rateMilli * (end - t0);
+            basalCoveredMs[h] += end - t0;
+            t0 = end;
+        }
+        touch(t1 - 1);
+    }
+
+    public void addBolus(long t, long doseMilli) {
+        touch(t);
+        int h = hourOf(t);
+        bolusMilli[h] += doseMilli;
+        bolusCount[h]++;
+    }
+
+    public void addGlucose(long t, long mgDlMilli) {
+        touch(t);
+        int h = hourOf(t);
+        glucoseSum[h] += mgDlMilli;
+        glucoseCount[h]++;
+    }
+
+    /** Change between two readings with no bolus effect expected, credited to the hour of t0. */
+    public void addDrift(long t0, long t1, long deltaMilli) {
+        int h = hourOf(t0);
+        driftSum[h] += deltaMilli;
+        driftMs[h] += t1 - t0;
+    }
+
+    public void addAll(HourlyHistory o) {
+        for (int h = 0; h < 24; h++) {
+            basalWeighted[h] += o.basalWeighted[h];
+            basalCoveredMs[h] += o.basalCoveredMs[h];
+            bolusMilli[h] += o.bolusMilli[h];
+            bolusCount[h] += o.bolusCount[h];
+            glucoseSum[h] += o.glucoseSum[h];
+            glucoseCount[h] += o.glucoseCount[h];
+            driftSum[h] += o.driftSum[h];
+            driftMs[h] += o.driftMs[h];
+        }
+        firstDay = Math.min(firstDay, o.firstDay);
+        lastDay = Math.max(lastDay, o.lastDay);
+    }
+
+    /** Calendar days between the first and last record, inclusive; 0 when empty. */
+    public int daySpan() {
+        return (lastDay < firstDay) ? 0 : (int) (lastDay - firstDay + 1);
+    }
+
+    /** Mean delivered basal in U/h for hour h, or NaN with no coverage. */
+    public double meanBasalUh(int h) {
+        return basalCoveredMs[h] == 0 ? Double.NaN : basalWeighted[h] / (double) basalCoveredMs[h] / 1000.0;
+    }
+
+    /** Hours of basal data logged for hour h across all days. */
+    public double basalCoveredHours(int h) {
+        return basalCoveredMs[h] / (double) MS_PER_HOUR;
+    }
+
+    /** Mean glucose in mg/dL for hour h, or NaN without readings. */
+    public double meanGlucose(int h) {
+        return glucoseCount[h] == 0 ? Double.NaN : glucoseSum[h] / 1000.0 / glucoseCount[h];
+    }
+
+    /** Fasting glucose trend in mg/dL per hour for hour h, or NaN without drift data. */
+    public double driftPerHour(int h) {
+        return driftMs[h] == 0 ? Double.NaN : driftSum[h] / 1000.0 / driftMs[h] * MS_PER_HOUR;
+    }
+
+    /** Hours of fasting drift data for hour h. */
+    public double driftHours(int h) {
+        return driftMs[h] / (double) MS_PER_HOUR;
+    }
+
+    /** Total bolus insulin in U logged in hour h. */
+    public double bolusUnits(int h) {
+        return bolusMilli[h] / 1000.0;
+    }
+
+    private void touch(long t) {
+        long day = Math.floorDiv(t, MS_PER_DAY);
+        if (day < firstDay) firstDay = day;
+        if (day > lastDay) lastDay = day;
+    }
+
+    private static int hourOf(long t) {
+        return (int) (Math.floorMod(t, MS_PER_DAY) / MS_PER_HOUR);
+    }
+}
@@ -0,0 +1,78 @@
+package com.kukuchta.basaltracker.domain;
+
+/**
+ * Discretised insulin action curve: the fraction of a dose still on board as it ages,
+ * precomputed once per model and step, then shared by every IOB computation.
+ *
+ * A dose delivered during bin i is taken at the bin's midpoint, so at a sample k + 1 bins
+ * later its remaining fraction is remaining[k] = f((k + 0.5) * step), for k in [0, length).
+ * {@link #cumulative} holds the prefix sums that {@link InsulinOnBoard} convolves with.
+ * Immutable.
+ */
+public final class InsulinActionKernel {
+    /** Exponential curve, peak 75 min, duration 6 h, 5 min bins (a rapid-acting analogue). */
+    public static final InsulinActionKernel DEFAULT = exponential(75, 360, 5);
+
+    public final int stepMinutes;
+    public final int durationMinutes;
+    private final double[] remaining;
+    private final double[] cumulative;
+
+    private InsulinActionKernel(int stepMinutes, int durationMinutes, double[] remaining) {
+        this.stepMinutes = stepMinutes;
+        this.durationMinutes = durationMinutes;
+        this.remaining = remaining;
+        this.cumulative = new double[remaining.length];
+        double sum = 0;
+        for (int k = 0; k < remaining.length; k++) {
+            sum += remaining[k];
+            cumulative[k] = sum;
+        }
+    }
+
+    /** Bins until a dose is fully absorbed. */
+    public int length() { return remaining.length; }
+
+    public double remaining(int k) { return remaining[k]; }
+
+    /** remaining[0] + ... + remaining[k]. */
+    public double cumulative(int k) { return cumulative[k]; }
+
+    /**
+     * Exponential insulin activity model (as used by common open-source dosing systems):
+     * activity rises to a peak at {@code peakMinutes} and ends at {@code durationMinutes}.
+     * @throws IllegalArgumentException unless 0 < peak < duration / 2 and step divides 60
+     */
+    public static InsulinActionKernel exponential(int peakMinutes, int durationMinutes, int stepMinutes) {
+        checkStep(stepMinutes, durationMinutes);
+        if (peakMinutes <= 0 || 2 * peakMinutes >= durationMinutes) {
+            throw new IllegalArgumentException("peak must be > 0 and < duration / 2");
+        }
+        double td = durationMinutes, tp = peakMinutes;
+        double tau = tp * (1 - tp / td) / (1 - 2 * tp / td);
+        double a = 2 * tau / td;
+        double s = 1 / (1 - a + (1 + a) * Math.exp(-td / tau));
+        double[] r = new double[durationMinutes / stepMinutes];
+        for (int k = 0; k < r.length; k++) {
+            double t = (k + 0.5) * stepMinutes;
+            double iob = 1 - s * (1 - a) * ((t * t / (tau * td * (1 - a)) - t / tau - 1) * Math.exp(-t / tau) + 1);
+            r[k] = Math.max(0.0, Math.min(1.0, iob));
+        }
+        return new InsulinActionKernel(stepMinutes, durationMinutes, r);
+    }
+
+    /** Linear decay from 1 to 0 over {@code durationMinutes}. */
+    public static InsulinActionKernel linear(int durationMinutes, int stepMinutes) {
+        checkStep(stepMinutes, durationMinutes);
+        double[] r = new double[durationMinutes / stepMinutes];
+        for (int k = 0; k < r.length; k++) r[k] = 1 - (k + 0.5) * stepMinutes / durationMinutes;
+        return new InsulinActionKernel(stepMinutes, durationMinutes, r);
+    }
+
+    private static void checkStep(int stepMinutes, int durationMinutes) {
+        if (stepMinutes <= 0 || 60 % stepMinutes != 0) throw new IllegalArgumentException("step must divide 60");
+        if (durationMinutes < stepMinutes || durationMinutes % stepMinutes != 0) {
+            throw new IllegalArgumentException("duration must be a positive multiple of step");
+        }
+    }
+}
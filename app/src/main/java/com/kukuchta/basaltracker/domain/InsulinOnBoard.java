@@ -0,0 +1,98 @@
+package com.kukuchta.basaltracker.domain;
+
+/**
+ * Basal insulin on board: the delivery schedule convolved with an {@link InsulinActionKernel}.
+ *
+ * Delivery is piecewise constant, so instead of convolving every bin with the whole kernel
+ * the rate is written as a sum of steps (one per rate change) and each step contributes
+ * delta * stepHours * cumulative[age]. A step older than the kernel contributes a constant and
+ * is folded into a running sum; only steps within the last {@code kernel.length()} bins are
+ * evaluated per sample. The cost is O(samples + changes * kernel length), on primitive arrays.
+ */
+public final class InsulinOnBoard {
+    private static final long MS_PER_MINUTE = 60_000L;
+
+    private InsulinOnBoard() {}
+
+    /** IOB over one day of a profile repeated daily; samples at 0, step, ..., 24 h. */
+    public static IobCurve day(BasalProfile profile, InsulinActionKernel kernel) {
+        return day(profile.toHourArray(), kernel);
+    }
+
+    /**
+     * IOB over one day of hourly rates (U/h) repeated daily, e.g. an effective curve.
+     * @throws IllegalArgumentException if rates does not have 24 entries
+     */
+    public static IobCurve day(double[] hourRates, InsulinActionKernel kernel) {
+        if (hourRates.length != 24) throw new IllegalArgumentException("hourRates must have 24 entries");
+        int perHour = 60 / kernel.stepMinutes;
+        int perDay = 24 * perHour;
+        // Enough previous days that nothing before them is still on board
+        int warmupDays = (kernel.length() + perDay - 1) / perDay;
+
+        int capacity = 24 * (warmupDays + 1);
+        int[] bins = new int[capacity];
+        double[] deltas = new double[capacity];
+        int n = 0;
+        double prev = hourRates[0];
+        for (int d = -warmupDays; d <= 0; d++) {
+            for (int h = 0; h < 24; h++) {
+                double delta = hourRates[h] - prev;
+                prev = hourRates[h];
+                if (delta == 0.0) continue;
+                bins[n] = d * perDay + h * perHour;
+                deltas[n++] = delta;
+            }
+        }
+        return new IobCurve(0L, kernel.stepMinutes,
+                convolve(hourRates[0], bins, deltas, n, perDay, kernel));
+    }
+
+    /**
+     * IOB over a delivery timeline, sampled every kernel step from {@code timeline.from}. The
+     * first rate is taken as steady before {@code from}; rate changes are rounded to the
+     * nearest step.
+     */
+    public static IobCurve over(DeliveryTimeline timeline, InsulinActionKernel kernel) {
+        long stepMs = kernel.stepMinutes * MS_PER_MINUTE;
+        int samples = (int) ((timeline.to - timeline.from + stepMs - 1) / stepMs);
+        int n = timeline.size();
+        int[] bins = new int[n];
+        double[] deltas = new double[n];
+        int c = 0;
+        for (int k = 1; k < n; k++) {
+            bins[c] = (int) Math.round((timeline.timeAt(k) - timeline.from) / (double) stepMs);
+            deltas[c++] = timeline.rateAt(k) - timeline.rateAt(k - 1);
+        }
+        double initial = n == 0 ? 0.0 : timeline.rateAt(0);
+        return new IobCurve(timeline.from, kernel.stepMinutes,
+                convolve(initial, bins, deltas, c, samples, kernel));
+    }
+
+    /**
+     * values[s] for s in [0, samples]: IOB at the start of bin s of a rate that is
+     * {@code initial} forever before, then changes by deltas[j] from bin bins[j] on.
+     * @param bins ascending, may be negative
+     */
+    static double[] convolve(double initial, int[] bins, double[] deltas, int count, int samples,
+                             InsulinActionKernel kernel) {
+        double stepHours = kernel.stepMinutes / 60.0;
+        int last = kernel.length() - 1;
+        double full = kernel.cumulative(last) * stepHours;
+
+        double[] out = new double[samples + 1];
+        double saturated = initial * full;
+        int oldest = 0, next = 0;
+        for (int s = 0; s <= samples; s++) {
+            // Steps in bins before s are on board; those older than the kernel are constant
+            while (next < count && bins[next] < s) next++;
+            while (oldest < next && s - 1 - bins[oldest] >= last) saturated += deltas[oldest++] * full;
+            double v = saturated;
+            for (int j = oldest; j < next; j++) {
+                v += deltas[j] * stepHours * kernel.cumulative(s - 1 - bins[j]);
+            }
+            out[s] = Math.max(0.0, v);
+        }
+        return out;
+    }
+}
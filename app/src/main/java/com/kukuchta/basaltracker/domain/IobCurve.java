@@ -0,0 +1,24 @@
+package com.kukuchta.basaltracker.domain;
+
+/**
+ * Basal insulin on board sampled every {@code stepMinutes}: values[s] is the IOB in U at
+ * {@code startEpochMs + s * step} (for a day curve, startEpochMs is 0 and s * step is the
+ * local minute of the day).
+ */
+public final class IobCurve {
+    public final long startEpochMs;
+    public final int stepMinutes;
+    public final double[] values;
+
+    public IobCurve(long startEpochMs, int stepMinutes, double[] values) {
+        this.startEpochMs = startEpochMs;
+        this.stepMinutes = stepMinutes;
+        this.values = values;
+    }
+
+    public double max() {
+        double m = 0;
+        for (double v : values) m = Math.max(m, v);
+        return m;
+    }
+}
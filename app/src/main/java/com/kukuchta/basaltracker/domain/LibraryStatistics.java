@@ -0,0 +1,44 @@
+package com.kukuchta.basaltracker.domain;
+
+/**
+ * Aggregate statistics over a set of hour-grid profiles. All rates in U/h, doses in U.
+ * Arrays indexed by hour are length 24; percentile rows follow {@link #PERCENTILES}.
+ */
+public final class LibraryStatistics {
+    /** Percentiles reported per hour and for the total daily dose */
+    public static final int[] PERCENTILES = { 5, 25, 50, 75, 95 };
+    public static final int MEDIAN_INDEX = 2;
+
+    public final int profileCount;
+
+    public final double[] meanRate;            // [hour]
+    public final double[] stdDevRate;          // [hour], population standard deviation
+    public final double[][] ratePercentiles;   // [PERCENTILES index][hour]
+
+    /** Mean |rate(h+1) - rate(h)|, where the step out of hour 23 wraps to hour 0 */
+    public final double[] meanAbsStep;         // [hour]
+
+    public final double meanTotalDailyDose;
+    public final double[] tddPercentiles;      // [PERCENTILES index]
+    public final double tddHistogramBinWidth;  // U per bin, bins start at 0
+    public final int[] tddHistogram;
+
+    public LibraryStatistics(int profileCount, double[] meanRate, double[] stdDevRate,
+                             double[][] ratePercentiles, double[] meanAbsStep,
+                             double meanTotalDailyDose, double[] tddPercentiles,
+                             double tddHistogramBinWidth, int[] tddHistogram) {
+        this.profileCount = profileCount;
+        this.meanRate = meanRate;
+        this.stdDevRate = stdDevRate;
+        this.ratePercentiles = ratePercentiles;
+        this.meanAbsStep = meanAbsStep;
+        this.meanTotalDailyDose = meanTotalDailyDose;
+        this.tddPercentiles = tddPercentiles;
+        this.tddHistogramBinWidth = tddHistogramBinWidth;
+        this.tddHistogram = tddHistogram;
+    }
+
+    public double[] medianRate() {
+        return ratePercentiles[MEDIAN_INDEX];
+    }
+}
@@ -0,0 +1,205 @@
+package com.kukuchta.basaltracker.domain;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join statistics over primitive grid chunks; no BasalProfile objects involved.
+ *
+ * Usage: {@code Accumulator acc = engine.newAccumulator(n); acc.addChunk(...)...; acc.finish()}.
+ * - addChunk expands units * accuracy into hour-major double columns and computes partial
+ *   moments in parallel (split until SEQUENTIAL_ROWS, then merged pairwise). Per-hour
+ *   variance is carried as (count, mean, M2) and merged with Chan's update, so it does not
+ *   cancel the way sumSq / n - mean² does when the spread is small next to the mean.
+ * - finish sorts the 24 hour columns and the TDD column in parallel for exact percentiles.
+ *
+ * An Accumulator is confined to the thread feeding it; parallelism happens inside each call.
+ */
+public final class LibraryStatisticsEngine {
+    private static final int HOURS = 24;
+    // Well below the repository's 2000-row chunks, so each chunk splits into ~8 leaves
+    private static final int SEQUENTIAL_ROWS = 256;
+    private static final double TDD_BIN_WIDTH = 1.0;
+
+    private final ForkJoinPool pool;
+
+    public LibraryStatisticsEngine(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public LibraryStatisticsEngine() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public Accumulator newAccumulator(int expectedRows) {
+        return new Accumulator(Math.max(16, expectedRows));
+    }
+
+    public final class Accumulator {
+        private double[][] rates = new double[HOURS][];  // hour-major: rates[h][row]
+        private double[] tdd;
+        private int rows;
+        private final Moments total = new Moments();
+
+        private Accumulator(int capacity) {
+            for (int h = 0; h < HOURS; h++) rates[h] = new double[capacity];
+            tdd = new double[capacity];
+        }
+
+        /**
+         * @param accuracy  per-row quantization step (U/h)
+         * @param unitsFlat row-major units, 24 per row
+         * @param count     number of rows to take from the arrays
+         */
+        public void addChunk(double[] accuracy, int[] unitsFlat, int count) {
+            if (accuracy.length < count || unitsFlat.length < count * HOURS)
+                throw new IllegalArgumentException("chunk arrays shorter than count");
+            ensureCapacity(rows + count);
+            Moments m = pool.invoke(new ChunkTask(accuracy, unitsFlat, 0, count, rows));
+            total.merge(m);
+            rows += count;
+        }
+
+        public LibraryStatistics finish() {
+            final int n = rows;
+            double[][] percentiles = new double[LibraryStatistics.PERCENTILES.length][HOURS];
+            double[] tddPercentiles = new double[LibraryStatistics.PERCENTILES.length];
+            pool.invoke(new SortColumnsTask(n));
+
+            double[] mean = new double[HOURS], std = new double[HOURS], step = new double[HOURS];
+            for (int h = 0; h < HOURS; h++) {
+                if (n == 0) continue;
+                mean[h] = total.mean[h];
+                std[h] = Math.sqrt(total.m2[h] / n);
+                step[h] = total.absStep[h] / n;
+                for (int p = 0; p < LibraryStatistics.PERCENTILES.length; p++) {
+                    percentiles[p][h] = percentile(rates[h], n, LibraryStatistics.PERCENTILES[p]);
+                }
+            }
+            for (int p = 0; p < LibraryStatistics.PERCENTILES.length; p++) {
+                tddPercentiles[p] = percentile(tdd, n, LibraryStatistics.PERCENTILES[p]);
+            }
+
+            int bins = (n == 0) ? 0 : (int) (tdd[n - 1] / TDD_BIN_WIDTH) + 1; // tdd is sorted
+            int[] histogram = new int[bins];
+            for (int i = 0; i < n; i++) histogram[(int) (tdd[i] / TDD_BIN_WIDTH)]++;
+
+            return new LibraryStatistics(n, mean, std, percentiles, step,
+                    n == 0 ? 0.0 : total.tddSum / n, tddPercentiles, TDD_BIN_WIDTH, histogram);
+        }
+
+        private void ensureCapacity(int needed) {
+            if (needed <= tdd.length) return;
+            int cap = Math.max(needed, tdd.length * 2);
+            for (int h = 0; h < HOURS; h++) rates[h] = Arrays.copyOf(rates[h], cap);
+            tdd = Arrays.copyOf(tdd, cap);
+        }
+
+        /** Expands a row range into the columns and returns its partial moments. */
+        private final class ChunkTask extends RecursiveTask<Moments> {
+            private final double[] accuracy;
+            private final int[] units;
+            private final int from, to, destOffset;
+
+            ChunkTask(double[] accuracy, int[] units, int from, int to, int destOffset) {
+                this.accuracy = accuracy;
+                this.units = units;
+                this.from = from;
+                this.to = to;
+                this.destOffset = destOffset;
+            }
+
+            @Override
+            protected Moments compute() {
+                if (to - from > SEQUENTIAL_ROWS) {
+                    int mid = (from + to) >>> 1;
+                    ChunkTask left = new ChunkTask(accuracy, units, from, mid, destOffset);
+                    left.fork();
+                    Moments right = new ChunkTask(accuracy, units, mid, to, destOffset).compute();
+                    Moments m = left.join();
+                    m.merge(right);
+                    return m;
+                }
+                Moments m = new Moments();
+                for (int i = from; i < to; i++) {
+                    int base = i * HOURS;
+                    int dest = destOffset + i;
+                    double acc = accuracy[i];
+                    double day = 0.0;
+                    for (int h = 0; h < HOURS; h++) {
+                        double r = units[base + h] * acc;
+                        rates[h][dest] = r;
+                        m.add(h, r);
+                        int next = units[base + (h + 1) % HOURS];
+                        m.absStep[h] += Math.abs(next - units[base + h]) * acc;
+                        day += r;
+                    }
+                    tdd[dest] = day;
+                    m.count++;
+                    m.tddSum += day;
+                }
+                return m;
+            }
+        }
+
+        /** One leaf per column: 24 hour columns plus the TDD column. */
+        private final class SortColumnsTask extends RecursiveAction {
+            private final int n;
+
+            SortColumnsTask(int n) { this.n = n; }
+
+            @Override
+            protected void compute() {
+                RecursiveAction[] leaves = new RecursiveAction[HOURS + 1];
+                for (int h = 0; h <= HOURS; h++) {
+                    final double[] column = (h < HOURS) ? rates[h] : tdd;
+                    leaves[h] = new RecursiveAction() {
+                        @Override protected void compute() { Arrays.sort(column, 0, n); }
+                    };
+                }
+                invokeAll(leaves);
+            }
+        }
+    }
+
+    /**
+     * Partial moments over {@code count} rows; merged pairwise up the fork/join tree.
+     * m2 is the sum of squared deviations from mean (Welford within a leaf, Chan across leaves).
+     */
+    private static final class Moments {
+        int count;
+        final double[] mean = new double[HOURS];
+        final double[] m2 = new double[HOURS];
+        final double[] absStep = new double[HOURS];
+        double tddSum;
+
+        /** Adds hour h of the next row; count is bumped once the whole row is in. */
+        void add(int h, double r) {
+            double delta = r - mean[h];
+            mean[h] += delta / (count + 1);
+            m2[h] += delta * (r - mean[h]);
+        }
+
+        void merge(Moments o) {
+            if (o.count == 0) return;
+            long n = (long) count + o.count;
+            for (int h = 0; h < HOURS; h++) {
+                double delta = o.mean[h] - mean[h];
+                mean[h] += delta * o.count / n;
+                m2[h] += o.m2[h] + delta * delta * ((double) count * o.count / n);
+                absStep[h] += o.absStep[h];
+            }
+            count = (int) n;
+            tddSum += o.tddSum;
+        }
+    }
+
+    /** Nearest-rank percentile of the first n (sorted) values. */
+    private static double percentile(double[] sorted, int n, int p) {
+        if (n == 0) return 0.0;
+        int rank = (int) Math.ceil(p / 100.0 * n);
+        return sorted[Math.max(0, Math.min(n - 1, rank - 1))];
+    }
+}
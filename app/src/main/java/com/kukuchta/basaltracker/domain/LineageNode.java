@@ -0,0 +1,12 @@
+package com.kukuchta.basaltracker.domain;
+
+/** One profile in a lineage tree; depth 0 is the root (the oldest surviving ancestor). */
+public final class LineageNode {
+    public final BasalProfile profile;
+    public final int depth;
+
+    public LineageNode(BasalProfile profile, int depth) {
+        this.profile = profile;
+        this.depth = depth;
+    }
+}
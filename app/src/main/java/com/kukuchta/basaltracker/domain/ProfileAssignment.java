@@ -0,0 +1,19 @@
+package com.kukuchta.basaltracker.domain;
+
+/** Profile {@code profileId} is scheduled over [validFrom, validTo) (epoch millis). */
+public final class ProfileAssignment {
+    public static final long OPEN_END = Long.MAX_VALUE;
+
+    public final long id;
+    public final long profileId;
+    public final long validFrom;
+    public final long validTo;
+
+    public ProfileAssignment(long id, long profileId, long validFrom, long validTo) {
+        if (validTo <= validFrom) throw new IllegalArgumentException("validTo must be > validFrom");
+        this.id = id;
+        this.profileId = profileId;
+        this.validFrom = validFrom;
+        this.validTo = validTo;
+    }
+}
@@ -0,0 +1,59 @@
+package com.kukuchta.basaltracker.domain;
+
+/**
+ * Canonical 64-bit content hash of an hour grid: (accuracy, 24 units).
+ *
+ * - Name, origin, lineage and metadata are deliberately not part of the content.
+ * - FNV-1a over the IEEE bits of accuracy followed by the 24 unit values, so two grids
+ *   that render identically on every screen always hash identically.
+ * - A hash match is only a candidate: callers must confirm with {@link #sameContent}.
+ */
+public final class ProfileContentHash {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ProfileContentHash() {}
+
+    public static long of(double accuracy, int[] unitsByHour) {
+        if (unitsByHour == null || unitsByHour.length != 24)
+            throw new IllegalArgumentException("24 hours required");
+        long h = FNV_OFFSET;
+        h = mix(h, Double.doubleToLongBits(accuracy + 0.0)); // fold -0.0 into 0.0
+        for (int u : unitsByHour) h = mix(h, u);
+        return h;
+    }
+
+    public static long of(BasalProfile p) {
+        return of(p.getAccuracy(), p.copyUnitsByHour());
+    }
+
+    /** Hour-aligned profiles hash like their hour grid; sub-hour ones also mix in the change points. */
+    public static long of(ChangePointProfile p) {
+        long h = of(p.getAccuracy(), p.sampleHourStarts());
+        if (p.getResolutionMinutes() == 60) return h;
+        h = mix(h, p.getResolutionMinutes());
+        int[] starts = p.copyStartMinutes();
+        int[] units = p.copyUnits();
+        for (int i = 0; i < starts.length; i++) {
+            h = mix(h, ((long) starts[i] << 32) | (units[i] & 0xFFFFFFFFL));
+        }
+        return h;
+    }
+
+    /** Exact equality of the hashed content (collision check). */
+    public static boolean sameContent(double accA, int[] unitsA, double accB, int[] unitsB) {
+        if (Double.compare(accA + 0.0, accB + 0.0) != 0) return false;
+        for (int h = 0; h < 24; h++) {
+            if (unitsA[h] != unitsB[h]) return false;
+        }
+        return true;
+    }
+
+    private static long mix(long h, long value) {
+        for (int i = 0; i < 8; i++) {
+            h ^= (value >>> (i * 8)) & 0xFF;
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,107 @@
+package com.kukuchta.basaltracker.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Proposes GENERATED hourly profiles from {@link HourlyHistory}.
+ *
+ * Each hour starts from the mean basal actually delivered in that hour. Candidates then
+ * correct it for the fasting glucose trend {@code lagHours} later (insulin acts with a delay):
+ * a rise of D mg/dL/h with sensitivity ISF mg/dL/U asks for D / ISF more U/h. The correction
+ * is scaled by the variant's strength and capped at {@code maxAdjustment} of the base rate;
+ * hours with too little fasting data are left uncorrected. Results are quantized to the
+ * requested accuracy; a variant identical to the previous one is not repeated.
+ */
+public final class ProfileGenerator {
+
+    public static final class Settings {
+        public final double accuracy;
+        public final double isfMgDlPerU;
+        public final int lagHours;
+        public final double maxAdjustment;
+        public final double minBasalHours;
+        public final double minDriftHours;
+
+        public Settings(double accuracy, double isfMgDlPerU, int lagHours, double maxAdjustment,
+                        double minBasalHours, double minDriftHours) {
+            if (accuracy <= 0.0) throw new IllegalArgumentException("accuracy must be > 0");
+            if (isfMgDlPerU <= 0.0) throw new IllegalArgumentException("isf must be > 0");
+            if (lagHours < 0 || lagHours > 6) throw new IllegalArgumentException("lagHours must be 0..6");
+            if (maxAdjustment < 0.0 || maxAdjustment > 1.0) {
+                throw new IllegalArgumentException("maxAdjustment must be 0..1");
+            }
+            this.accuracy = accuracy;
+            this.isfMgDlPerU = isfMgDlPerU;
+            this.lagHours = lagHours;
+            this.maxAdjustment = maxAdjustment;
+            this.minBasalHours = minBasalHours;
+            this.minDriftHours = minDriftHours;
+        }
+
+        /** ISF 40 mg/dL/U, 2 h lag, corrections capped at 20 %, at least 3 h of data per hour. */
+        public static Settings defaults(double accuracy) {
+            return new Settings(accuracy, 40.0, 2, 0.2, 3.0, 3.0);
+        }
+    }
+
+    private static final double[] STRENGTHS = { 0.0, 0.5, 1.0 };
+    private static final String[] VARIANTS = { "delivered", "half", "full" };
+    private static final String[] NAMES = {
+            "Generowany – średnia podana", "Generowany – korekta 50%", "Generowany – korekta 100%"
+    };
+
+    private ProfileGenerator() {}
+
+    /**
+     * Candidates in order of increasing correction strength; empty when any hour has less than
+     * {@code minBasalHours} of delivered-basal data.
+     * @param sourceName recorded in metadata, may be null
+     */
+    public static List<BasalProfile> generate(HourlyHistory history, Settings s, String sourceName) {
+        double[] base = new double[24];
+        double[] correction = new double[24];
+        for (int h = 0; h < 24; h++) {
+            if (history.basalCoveredHours(h) < s.minBasalHours) return new ArrayList<>();
+            base[h] = history.meanBasalUh(h);
+
+            int effect = (h + s.lagHours) % 24;
+            if (history.driftHours(effect) >= s.minDriftHours) {
+                double c = history.driftPerHour(effect) / s.isfMgDlPerU;
+                double cap = s.maxAdjustment * base[h];
+                correction[h] = Math.max(-cap, Math.min(cap, c));
+            }
+        }
+
+        List<BasalProfile> out = new ArrayList<>(STRENGTHS.length);
+        int[] previous = null;
+        for (int v = 0; v < STRENGTHS.length; v++) {
+            int[] units = new int[24];
+            for (int h = 0; h < 24; h++) {
+                double rate = base[h] + STRENGTHS[v] * correction[h];
+                units[h] = (int) Math.max(0, Math.round(rate / s.accuracy));
+            }
+            if (previous != null && Arrays.equals(previous, units)) continue;
+            previous = units;
+            out.add(new BasalProfile(0, NAMES[v], s.accuracy, ProfileOrigin.GENERATED, null,
+                    metadata(history, s, VARIANTS[v], sourceName), units));
+        }
+        return out;
+    }
+
+    private static Map<String, String> metadata(HourlyHistory history, Settings s, String variant,
+                                                String sourceName) {
+        Map<String, String> m = new HashMap<>();
+        m.put("source", "generator");
+        if (sourceName != null) m.put("file", sourceName);
+        m.put("variant", variant);
+        m.put("days", Integer.toString(history.daySpan()));
+        m.put("isf", String.format(Locale.ROOT, "%.1f", s.isfMgDlPerU));
+        m.put("lagHours", Integer.toString(s.lagHours));
+        return m;
+    }
+}
@@ -0,0 +1,160 @@
+package com.kukuchta.basaltracker.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Moves profiles to a new accuracy (pump rate step) while keeping the daily dose.
+ *
+ * The day is cut into slots of the profile's resolution (24 hours for an hour grid), each
+ * slot's rate is expressed in new steps and rounded down, and the dose lost to rounding is
+ * given back one step each to the slots with the largest remainders (largest-remainder
+ * rounding, {@link #roundKeepingTotal}). Every slot is therefore within one new step of its old
+ * rate, and the new daily dose is the old one rounded to a whole step-slot: within half a step
+ * times the slot length (0.5 step-hour for an hour grid). A long flat run is split where it
+ * gets steps back, e.g. a flat 1.00 U/h moved to 0.3 becomes 8 hours of 1.2 and 16 of 0.9, still
+ * 24 U. Adjacent slots that end up equal are merged by {@link ChangePointProfile}.
+ */
+public final class ProfileRequantizer {
+    private static final double SNAP = 1e-9;
+
+    private ProfileRequantizer() {}
+
+    /** Requantized copy with {@code accuracy}; same id, name, resolution, origin, lineage and metadata. */
+    public static ChangePointProfile requantize(ChangePointProfile p, double accuracy) {
+        if (accuracy <= 0.0) throw new IllegalArgumentException("accuracy must be > 0");
+        int slot = p.getResolutionMinutes();
+        int slots = 1440 / slot;
+        int[] starts = new int[slots];
+        double[] targets = new double[slots];
+        double scale = p.getAccuracy() / accuracy;
+        for (int s = 0; s < slots; s++) {
+            starts[s] = s * slot;
+            targets[s] = p.getUnitsAtMinute(starts[s]) * scale;
+        }
+        int[] units = roundKeepingTotal(targets);
+        return new ChangePointProfile(p.getId(), p.getName(), accuracy, slot,
+                p.getOrigin(), p.getBaseProfileId(), p.getMetadata(), starts, units);
+    }
+
+    /**
+     * Non-negative targets rounded to integers with the same (rounded) sum: floors first, then
+     * +1 for the largest remainders; ties go to the earlier index. Each result is within one
+     * of its target.
+     */
+    static int[] roundKeepingTotal(double[] targets) {
+        int n = targets.length;
+        int[] out = new int[n];
+        double[] remainder = new double[n];
+        double sum = 0;
+        long floors = 0;
+        for (int i = 0; i < n; i++) {
+            double t = targets[i];
+            double nearest = Math.rint(t);
+            if (Math.abs(t - nearest) < SNAP) t = nearest;
+            out[i] = (int) Math.floor(t);
+            remainder[i] = t - out[i];
+            sum += t;
+            floors += out[i];
+        }
+        long missing = Math.round(sum) - floors;
+        int[] order = byRemainderDesc(remainder);
+        for (int k = 0; k < missing && k < n; k++) out[order[k]]++;
+        return out;
+    }
+
+    /** Indices sorted by descending remainder, stable (insertion sort; n is at most 96). */
+    private static int[] byRemainderDesc(double[] remainder) {
+        int n = remainder.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            int j = i;
+            while (j > 0 && remainder[order[j - 1]] < remainder[i]) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        return order;
+    }
+
+    /** Mean rate in U/h of each local hour. */
+    public static double[] hourlyRates(ChangePointProfile p) {
+        double[] out = new double[24];
+        int n = p.getChangePointCount();
+        int[] starts = p.copyStartMinutes();
+        int[] units = p.copyUnits();
+        for (int i = 0; i < n; i++) {
+            double rate = units[i] * p.getAccuracy();
+            for (int m = starts[i], end = p.endOf(i); m < end; ) {
+                int hourEnd = Math.min(end, (m / 60 + 1) * 60);
+                out[m / 60] += rate * (hourEnd - m) / 60.0;
+                m = hourEnd;
+            }
+        }
+        return out;
+    }
+
+    /** One hour of one profile: mean rate before and after. */
+    public static final class Deviation {
+        public final long profileId;
+        public final String profileName;
+        public final int hour;
+        public final double fromRateUh;
+        public final double toRateUh;
+
+        Deviation(long profileId, String profileName, int hour, double fromRateUh, double toRateUh) {
+            this.profileId = profileId;
+            this.profileName = profileName;
+            this.hour = hour;
+            this.fromRateUh = fromRateUh;
+            this.toRateUh = toRateUh;
+        }
+
+        public double magnitude() { return Math.abs(toRateUh - fromRateUh); }
+    }
+
+    /**
+     * Outcome of a library run: counts, the largest daily dose change and the {@code limit}
+     * largest per-hour deviations. Memory is bounded by the limit, not the library size.
+     */
+    public static final class Report {
+        public final double accuracy;
+        public int profilesScanned;
+        public int profilesChanged;
+        public double maxDailyDoseChange;
+        private final int limit;
+        private final PriorityQueue<Deviation> top; // smallest on top
+
+        public Report(double accuracy, int limit) {
+            if (limit <= 0) throw new IllegalArgumentException("limit must be > 0");
+            this.accuracy = accuracy;
+            this.limit = limit;
+            this.top = new PriorityQueue<>(limit + 1, (a, b) -> Double.compare(a.magnitude(), b.magnitude()));
+        }
+
+        /** Accounts one scanned profile; before/after are {@link #hourlyRates}. */
+        public void add(long id, String name, double[] before, double[] after) {
+            profilesScanned++;
+            double dose = 0;
+            for (int h = 0; h < 24; h++) {
+                double d = Math.abs(after[h] - before[h]);
+                dose += after[h] - before[h];
+                if (d < SNAP) continue;
+                if (top.size() == limit && d <= top.peek().magnitude()) continue;
+                top.add(new Deviation(id, name, h, before[h], after[h]));
+                if (top.size() > limit) top.poll();
+            }
+            maxDailyDoseChange = Math.max(maxDailyDoseChange, Math.abs(dose));
+        }
+
+        /** Largest first. */
+        public List<Deviation> largestDeviations() {
+            List<Deviation> out = new ArrayList<>(top);
+            out.sort(Collections.reverseOrder((a, b) -> Double.compare(a.magnitude(), b.magnitude())));
+            return out;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.kukuchta.basaltracker.domain;
+
+/** History entry of a profile's grid; cheap to list (no units decoded). */
+public final class ProfileRevision {
+    public final long profileId;
+    public final int revision;
+    public final long savedAt;          // epoch millis
+    public final double accuracy;
+    public final int changedHours;      // hours changed vs previous revision (24 for the first one)
+    public final boolean keyframe;
+
+    public ProfileRevision(long profileId, int revision, long savedAt, double accuracy,
+                           int changedHours, boolean keyframe) {
+        this.profileId = profileId;
+        this.revision = revision;
+        this.savedAt = savedAt;
+        this.accuracy = accuracy;
+        this.changedHours = changedHours;
+        this.keyframe = keyframe;
+    }
+}
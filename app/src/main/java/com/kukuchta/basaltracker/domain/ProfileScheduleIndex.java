@@ -0,0 +1,136 @@
+package com.kukuchta.basaltracker.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Immutable in-memory index over date-based profile assignments.
+ *
+ * - Overlap queries: an augmented interval tree laid out implicitly over the assignments
+ *   sorted by start (node = midpoint of its range, maxEnd per subtree), O(log n + k).
+ * - "Active at T": overlaps are resolved once at build time into a flat, sorted timeline of
+ *   disjoint segments (newest assignment wins), so a lookup is one binary search, O(log n).
+ *
+ * Rebuild on writes; schedules change rarely compared to how often they are read.
+ */
+public final class ProfileScheduleIndex {
+    private final ProfileAssignment[] byStart;
+    private final long[] starts;
+    private final long[] maxEnd; // maxEnd[mid] = max validTo in the implicit subtree rooted at mid
+
+    // Resolved timeline: segment i covers [segStart[i], segEnd[i]) with winner segOwner[i]
+    private final long[] segStart;
+    private final long[] segEnd;
+    private final ProfileAssignment[] segOwner;
+
+    public ProfileScheduleIndex(List<ProfileAssignment> assignments) {
+        int n = assignments.size();
+        byStart = assignments.toArray(new ProfileAssignment[0]);
+        Arrays.sort(byStart, Comparator.comparingLong((ProfileAssignment a) -> a.validFrom)
+                .thenComparingLong(a -> a.id));
+        starts = new long[n];
+        for (int i = 0; i < n; i++) starts[i] = byStart[i].validFrom;
+        maxEnd = new long[n];
+        buildMaxEnd(0, n - 1);
+
+        List<long[]> segments = resolveTimeline();
+        int m = segments.size();
+        segStart = new long[m];
+        segEnd = new long[m];
+        segOwner = new ProfileAssignment[m];
+        for (int i = 0; i < m; i++) {
+            long[] s = segments.get(i);
+            segStart[i] = s[0];
+            segEnd[i] = s[1];
+            segOwner[i] = byStart[(int) s[2]];
+        }
+    }
+
+    public int size() { return byStart.length; }
+
+    /** The winning assignment at instant {@code t}, or null when nothing is scheduled. */
+    public ProfileAssignment activeAt(long t) {
+        int lo = 0, hi = segStart.length - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (segStart[mid] <= t) { found = mid; lo = mid + 1; } else hi = mid - 1;
+        }
+        return (found >= 0 && t < segEnd[found]) ? segOwner[found] : null;
+    }
+
+    /** All assignments overlapping [from, to), ordered by start. */
+    public List<ProfileAssignment> overlapping(long from, long to) {
+        List<ProfileAssignment> out = new ArrayList<>();
+        if (from < to) collect(0, byStart.length - 1, from, to, out);
+        return out;
+    }
+
+    // ---------- Build / query helpers ----------
+
+    private long buildMaxEnd(int lo, int hi) {
+        if (lo > hi) return Long.MIN_VALUE;
+        int mid = (lo + hi) >>> 1;
+        long m = Math.max(byStart[mid].validTo, Math.max(buildMaxEnd(lo, mid - 1), buildMaxEnd(mid + 1, hi)));
+        maxEnd[mid] = m;
+        return m;
+    }
+
+    /** In-order traversal, pruning subtrees that end before {@code from} or start after {@code to}. */
+    private void collect(int lo, int hi, long from, long to, List<ProfileAssignment> out) {
+        if (lo > hi) return;
+        int mid = (lo + hi) >>> 1;
+        if (maxEnd[mid] <= from) return;           // nothing in this subtree reaches from
+        collect(lo, mid - 1, from, to, out);
+        if (starts[mid] >= to) return;             // this node and its right subtree start too late
+        if (byStart[mid].validTo > from) out.add(byStart[mid]);
+        collect(mid + 1, hi, from, to, out);
+    }
+
+    /**
+     * Sweep over start/end boundaries keeping the live assignments in a max-heap by id
+     * (lazy removal). Emits {start, end, indexIntoByStart} for each maximal run with one winner.
+     */
+    private List<long[]> resolveTimeline() {
+        int n = byStart.length;
+        List<long[]> out = new ArrayList<>();
+        if (n == 0) return out;
+
+        long[] ends = new long[n];
+        Integer[] byEnd = new Integer[n];
+        for (int i = 0; i < n; i++) { ends[i] = byStart[i].validTo; byEnd[i] = i; }
+        Arrays.sort(byEnd, Comparator.comparingLong(i -> ends[i]));
+
+        PriorityQueue<Integer> live = new PriorityQueue<>(
+                (a, b) -> Long.compare(byStart[b].id, byStart[a].id));
+        boolean[] ended = new boolean[n];
+        int si = 0, ei = 0;
+        long cursor = Long.MIN_VALUE;
+        int owner = -1;
+
+        while (si < n || ei < n) {
+            long next = (si < n && starts[si] <= ends[byEnd[ei]]) ? starts[si] : ends[byEnd[ei]];
+            // Close the running segment at this boundary
+            if (owner >= 0 && next > cursor) out.add(new long[] { cursor, next, owner });
+            while (ei < n && ends[byEnd[ei]] == next) ended[byEnd[ei++]] = true;
+            while (si < n && starts[si] == next) live.add(si++);
+            while (!live.isEmpty() && ended[live.peek()]) live.poll();
+            int newOwner = live.isEmpty() ? -1 : live.peek();
+            cursor = next;
+            owner = newOwner;
+        }
+        return mergeAdjacent(out);
+    }
+
+    private static List<long[]> mergeAdjacent(List<long[]> segs) {
+        List<long[]> merged = new ArrayList<>(segs.size());
+        for (long[] s : segs) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && last[2] == s[2] && last[1] == s[0]) last[1] = s[1];
+            else merged.add(s);
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,249 @@
+package com.kukuchta.basaltracker.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory nearest-neighbour index over hour grids.
+ *
+ * Layout (struct-of-arrays, no per-profile objects besides the id map):
+ * - rates: one flat float[] with 24 U/h values per slot (units * accuracy, so profiles with
+ *   different accuracies compare on the same scale).
+ * - l1Norms / l2Norms: per-slot sum and Euclidean norm, precomputed on insert.
+ * - order: slots sorted by norm, packed as (normBits << 32 | slot) longs; rebuilt lazily after writes.
+ *
+ * Query:
+ * - Reverse triangle inequality gives |norm(q) - norm(x)| <= dist(q, x) for both metrics
+ *   (for L1 the norm is the plain sum since rates are non-negative).
+ * - Candidates are visited outward from the query's norm; once both directions' lower bounds
+ *   reach the current k-th best distance, the scan stops.
+ * - Per-candidate distance accumulation exits early as soon as it passes the k-th best.
+ *
+ * Not thread-safe: confine to one thread (the repository's io executor).
+ */
+public final class ProfileSimilarityIndex {
+    private static final int HOURS = 24;
+    private static final double NORM_SLACK = 1e-4;
+
+    private long[] ids = new long[0];
+    private float[] rates = new float[0];
+    private float[] l1Norms = new float[0];
+    private float[] l2Norms = new float[0];
+    private int size;
+    private final Map<Long, Integer> slotById = new HashMap<>();
+
+    private long[] l1Order, l2Order; // null => stale
+
+    public ProfileSimilarityIndex(int expectedSize) {
+        ensureCapacity(Math.max(16, expectedSize));
+    }
+
+    public int size() { return size; }
+
+    /** Inserts or replaces the grid stored for {@code id}. */
+    public void put(long id, double accuracy, int[] unitsByHour) {
+        if (unitsByHour == null || unitsByHour.length != HOURS)
+            throw new IllegalArgumentException("24 hours required");
+        Integer existing = slotById.get(id);
+        int slot;
+        if (existing != null) {
+            slot = existing;
+        } else {
+            ensureCapacity(size + 1);
+            slot = size++;
+            slotById.put(id, slot);
+            ids[slot] = id;
+        }
+        int base = slot * HOURS;
+        double sum = 0.0, sumSq = 0.0;
+        for (int h = 0; h < HOURS; h++) {
+            float r = (float) (unitsByHour[h] * accuracy);
+            rates[base + h] = r;
+            sum += r;
+            sumSq += (double) r * r;
+        }
+        l1Norms[slot] = (float) sum;
+        l2Norms[slot] = (float) Math.sqrt(sumSq);
+        l1Order = l2Order = null;
+    }
+
+    public void remove(long id) {
+        Integer slotBoxed = slotById.remove(id);
+        if (slotBoxed == null) return;
+        int slot = slotBoxed;
+        int last = --size;
+        if (slot != last) {
+            ids[slot] = ids[last];
+            System.arraycopy(rates, last * HOURS, rates, slot * HOURS, HOURS);
+            l1Norms[slot] = l1Norms[last];
+            l2Norms[slot] = l2Norms[last];
+            slotById.put(ids[slot], slot);
+        }
+        l1Order = l2Order = null;
+    }
+
+    public void clear() {
+        size = 0;
+        slotById.clear();
+        l1Order = l2Order = null;
+    }
+
+    /**
+     * Top-k most similar stored grids to {@code queryRates} (24 U/h values), nearest first.
+     * @param excludeId profile id to skip (typically the query profile itself), or 0 for none
+     */
+    public List<SimilarityMatch> nearest(double[] queryRates, int k, DistanceMetric metric, long excludeId) {
+        if (queryRates == null || queryRates.length != HOURS)
+            throw new IllegalArgumentException("24 hourly rates required");
+        if (k <= 0) throw new IllegalArgumentException("k must be > 0");
+        if (size == 0) return new ArrayList<>();
+
+        final boolean l2 = metric == DistanceMetric.L2;
+        double qNorm = 0.0;
+        for (double r : queryRates) qNorm += l2 ? r * r : r;
+        if (l2) qNorm = Math.sqrt(qNorm);
+
+        long[] order = l2 ? l2Order() : l1Order();
+        float[] norms = l2 ? l2Norms : l1Norms;
+
+        // Bounded max-heap on primitive arrays; heap[0] is the current worst of the best k
+        final int cap = Math.min(k, size);
+        double[] heapDist = new double[cap];
+        long[] heapId = new long[cap];
+        int heapSize = 0;
+
+        int hi = lowerBound(order, (float) qNorm);
+        int lo = hi - 1;
+        while (lo >= 0 || hi < size) {
+            double worst = heapSize == cap ? heapDist[0] : Double.POSITIVE_INFINITY;
+            double lbLo = lo >= 0 ? qNorm - norms[slotOf(order[lo])] : Double.POSITIVE_INFINITY;
+            double lbHi = hi < size ? norms[slotOf(order[hi])] - qNorm : Double.POSITIVE_INFINITY;
+            boolean takeLo = lbLo <= lbHi;
+            double lb = takeLo ? lbLo : lbHi;
+            // Every remaining candidate is at least lb away (slack covers float rounding of norms)
+            if (lb - NORM_SLACK >= worst) break;
+
+            int slot = slotOf(order[takeLo ? lo-- : hi++]);
+            if (ids[slot] == excludeId) continue;
+
+            double d = distance(queryRates, slot, l2, worst);
+            if (d >= worst) continue;
+            if (heapSize < cap) {
+                heapDist[heapSize] = d;
+                heapId[heapSize] = ids[slot];
+                siftUp(heapDist, heapId, heapSize++);
+            } else {
+                heapDist[0] = d;
+                heapId[0] = ids[slot];
+                siftDown(heapDist, heapId, heapSize);
+            }
+        }
+
+        // Drain heap worst-first into a nearest-first list
+        SimilarityMatch[] out = new SimilarityMatch[heapSize];
+        for (int n = heapSize; n > 0; n--) {
+            out[n - 1] = new SimilarityMatch(heapId[0], heapDist[0]);
+            heapDist[0] = heapDist[n - 1];
+            heapId[0] = heapId[n - 1];
+            siftDown(heapDist, heapId, n - 1);
+        }
+        return new ArrayList<>(Arrays.asList(out));
+    }
+
+    // ---------- Helpers ----------
+
+    /** Distance with early exit: returns a value >= bound as soon as the bound is exceeded. */
+    private double distance(double[] q, int slot, boolean l2, double bound) {
+        int base = slot * HOURS;
+        if (l2) {
+            double boundSq = bound == Double.POSITIVE_INFINITY ? bound : bound * bound;
+            double acc = 0.0;
+            for (int h = 0; h < HOURS; h++) {
+                double diff = q[h] - rates[base + h];
+                acc += diff * diff;
+                if (acc >= boundSq) return bound;
+            }
+            return Math.sqrt(acc);
+        } else {
+            double acc = 0.0;
+            for (int h = 0; h < HOURS; h++) {
+                acc += Math.abs(q[h] - rates[base + h]);
+                if (acc >= bound) return bound;
+            }
+            return acc;
+        }
+    }
+
+    private long[] l1Order() {
+        if (l1Order == null) l1Order = buildOrder(l1Norms);
+        return l1Order;
+    }
+
+    private long[] l2Order() {
+        if (l2Order == null) l2Order = buildOrder(l2Norms);
+        return l2Order;
+    }
+
+    /** Norms are non-negative floats, so their raw bits sort in numeric order. */
+    private long[] buildOrder(float[] norms) {
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = ((long) Float.floatToRawIntBits(norms[i]) << 32) | i;
+        }
+        Arrays.sort(order);
+        return order;
+    }
+
+    private static int slotOf(long packed) {
+        return (int) packed;
+    }
+
+    /** First position whose norm is >= value. */
+    private int lowerBound(long[] order, float value) {
+        long key = (long) Float.floatToRawIntBits(Math.max(0f, value)) << 32;
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (order[mid] < key) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= ids.length) return;
+        int cap = Math.max(needed, ids.length * 2);
+        ids = Arrays.copyOf(ids, cap);
+        rates = Arrays.copyOf(rates, cap * HOURS);
+        l1Norms = Arrays.copyOf(l1Norms, cap);
+        l2Norms = Arrays.copyOf(l2Norms, cap);
+    }
+
+    private static void siftUp(double[] d, long[] id, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (d[parent] >= d[i]) return;
+            swap(d, id, parent, i);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(double[] d, long[] id, int n) {
+        int i = 0;
+        while (true) {
+            int l = 2 * i + 1, r = l + 1, largest = i;
+            if (l < n && d[l] > d[largest]) largest = l;
+            if (r < n && d[r] > d[largest]) largest = r;
+            if (largest == i) return;
+            swap(d, id, i, largest);
+            i = largest;
+        }
+    }
+
+    private static void swap(double[] d, long[] id, int a, int b) {
+        double td = d[a]; d[a] = d[b]; d[b] = td;
+        long ti = id[a]; id[a] = id[b]; id[b] = ti;
+    }
+}
@@ -0,0 +1,158 @@
+package com.kukuchta.basaltracker.domain;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Columnar (struct-of-arrays) snapshot of the profile library for bulk analytics.
+ *
+ * Layout:
+ * - ids / accuracy / origin: one primitive array each, row-aligned, rows ordered by id.
+ * - units: one flat int[] with 24 consecutive values per row (row r, hour h at r * 24 + h).
+ * - names: interned while building, so repeated names ("Nowy profil", "Import ...") share one String.
+ *
+ * Scans, filters and aggregates touch only these arrays: no BasalProfile, HashMap or int[24]
+ * per row. Immutable once built; safe to share across threads.
+ */
+public final class ProfileTable {
+    public static final int HOURS = 24;
+    private static final ProfileOrigin[] ORIGINS = ProfileOrigin.values();
+
+    /** Row filter over the columns; called with row indices 0..size-1. */
+    public interface RowPredicate {
+        boolean test(ProfileTable table, int row);
+    }
+
+    private final int size;
+    private final long[] ids;
+    private final double[] accuracy;
+    private final byte[] origin;
+    private final String[] names;
+    private final int[] units;
+
+    private ProfileTable(int size, long[] ids, double[] accuracy, byte[] origin, String[] names, int[] units) {
+        this.size = size;
+        this.ids = ids;
+        this.accuracy = accuracy;
+        this.origin = origin;
+        this.names = names;
+        this.units = units;
+    }
+
+    public int size() { return size; }
+    public long id(int row) { return ids[check(row)]; }
+    public String name(int row) { return names[check(row)]; }
+    public double accuracy(int row) { return accuracy[check(row)]; }
+    public ProfileOrigin origin(int row) { return ORIGINS[origin[check(row)]]; }
+    public int units(int row, int hour) { return units[check(row) * HOURS + hour]; }
+    public double rate(int row, int hour) { return units(row, hour) * accuracy[row]; }
+
+    /** Row of a profile id, or -1. Binary search: rows are ordered by id. */
+    public int rowOf(long id) {
+        int r = Arrays.binarySearch(ids, 0, size, id);
+        return r >= 0 ? r : -1;
+    }
+
+    /** Sum of the 24 hourly units of a row; times accuracy gives the TDD in U. */
+    public long totalUnits(int row) {
+        int base = check(row) * HOURS;
+        long sum = 0;
+        for (int h = 0; h < HOURS; h++) sum += units[base + h];
+        return sum;
+    }
+
+    public double totalDailyDose(int row) {
+        return totalUnits(row) * accuracy[row];
+    }
+
+    /** Matching row indices in ascending order. */
+    public int[] select(RowPredicate predicate) {
+        int[] out = new int[size];
+        int n = 0;
+        for (int r = 0; r < size; r++) {
+            if (predicate.test(this, r)) out[n++] = r;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Mean U/h per hour over the given rows (all rows when {@code rows} is null). */
+    public double[] meanRateByHour(int[] rows) {
+        double[] sum = new double[HOURS];
+        int n = (rows == null) ? size : rows.length;
+        for (int i = 0; i < n; i++) {
+            int r = (rows == null) ? i : rows[i];
+            int base = r * HOURS;
+            double acc = accuracy[r];
+            for (int h = 0; h < HOURS; h++) sum[h] += units[base + h] * acc;
+        }
+        if (n > 0) for (int h = 0; h < HOURS; h++) sum[h] /= n;
+        return sum;
+    }
+
+    /** Row-major copy of one row's units into {@code out[offset..offset+24)}. */
+    public void copyUnits(int row, int[] out, int offset) {
+        System.arraycopy(units, check(row) * HOURS, out, offset, HOURS);
+    }
+
+    private int check(int row) {
+        if (row < 0 || row >= size) throw new IndexOutOfBoundsException("row " + row + " of " + size);
+        return row;
+    }
+
+    /** Append-only builder; rows must be appended in ascending id order. */
+    public static final class Builder {
+        private int size;
+        private long[] ids;
+        private double[] accuracy;
+        private byte[] origin;
+        private String[] names;
+        private int[] units;
+        private final Map<String, String> namePool = new HashMap<>();
+
+        public Builder(int expectedRows) {
+            int cap = Math.max(16, expectedRows);
+            ids = new long[cap];
+            accuracy = new double[cap];
+            origin = new byte[cap];
+            names = new String[cap];
+            units = new int[cap * HOURS];
+        }
+
+        /**
+         * Starts a row and returns its offset into the units array, which the caller fills
+         * via {@link #setUnits}; avoids a per-row int[24].
+         */
+        public int appendRow(long id, String name, double rowAccuracy, ProfileOrigin rowOrigin) {
+            if (size > 0 && id <= ids[size - 1])
+                throw new IllegalArgumentException("rows must be appended in ascending id order");
+            if (rowAccuracy <= 0.0) throw new IllegalArgumentException("accuracy must be > 0");
+            ensureCapacity(size + 1);
+            ids[size] = id;
+            accuracy[size] = rowAccuracy;
+            origin[size] = (byte) rowOrigin.ordinal();
+            String pooled = namePool.putIfAbsent(name, name);
+            names[size] = (pooled == null) ? name : pooled;
+            return size++ * HOURS;
+        }
+
+        public void setUnits(int offset, int hour, int value) {
+            if (value < 0) throw new IllegalArgumentException("rate units must be >= 0");
+            units[offset + hour] = value;
+        }
+
+        public ProfileTable build() {
+            return new ProfileTable(size, ids, accuracy, origin, names, units);
+        }
+
+        private void ensureCapacity(int needed) {
+            if (needed <= ids.length) return;
+            int cap = Math.max(needed, ids.length * 2);
+            ids = Arrays.copyOf(ids, cap);
+            accuracy = Arrays.copyOf(accuracy, cap);
+            origin = Arrays.copyOf(origin, cap);
+            names = Arrays.copyOf(names, cap);
+            units = Arrays.copyOf(units, cap * HOURS);
+        }
+    }
+}
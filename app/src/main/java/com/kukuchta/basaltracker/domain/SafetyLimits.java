@@ -0,0 +1,33 @@
+package com.kukuchta.basaltracker.domain;
+
+/**
+ * Clinical limits checked by {@link SafetyRuleEngine}. Each limit is optional:
+ * {@link Double#POSITIVE_INFINITY} switches it off.
+ *
+ * - maxRateUh:       highest allowed rate in any hour (U/h)
+ * - maxStepUh:       highest allowed |rate(h+1) - rate(h)|, including 23 -> 0 (U/h)
+ * - maxDailyDoseU:   highest allowed total daily dose (U)
+ */
+public final class SafetyLimits {
+    public static final SafetyLimits UNRESTRICTED = new SafetyLimits(
+            Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+    /**
+     * Conservative adult defaults until the user sets their own: 3 U/h is the factory max basal
+     * of common pumps, a 1 U/h jump between neighbouring hours is unusual in a tuned profile,
+     * and 50 U a day of basal alone is well above a typical adult need.
+     */
+    public static final SafetyLimits DEFAULT = new SafetyLimits(3.0, 1.0, 50.0);
+
+    public final double maxRateUh;
+    public final double maxStepUh;
+    public final double maxDailyDoseU;
+
+    public SafetyLimits(double maxRateUh, double maxStepUh, double maxDailyDoseU) {
+        if (!(maxRateUh >= 0) || !(maxStepUh >= 0) || !(maxDailyDoseU >= 0))
+            throw new IllegalArgumentException("limits must be >= 0");
+        this.maxRateUh = maxRateUh;
+        this.maxStepUh = maxStepUh;
+        this.maxDailyDoseU = maxDailyDoseU;
+    }
+}
@@ -0,0 +1,164 @@
+package com.kukuchta.basaltracker.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Incremental check of {@link SafetyLimits} against one hour grid.
+ *
+ * State kept between edits:
+ * - a copy of the 24 units and their running sum,
+ * - one bit per hour for the rate rule and one bit per boundary h -> h+1 (wrapping) for the
+ *   step rule, plus a flag for the daily-dose rule.
+ *
+ * Limits are converted once to integer units, so an edit of hour h is three integer
+ * compares (h, boundary h-1 -> h, boundary h -> h+1) and one addition; nothing else is
+ * revisited. The violation list is only rebuilt when a bit flips or the edit moves the value of
+ * a violation that is still reported.
+ *
+ * Not thread-safe: intended for the thread that performs the edits.
+ */
+public final class SafetyRuleEngine {
+    private static final int HOURS = 24;
+
+    private SafetyLimits limits = SafetyLimits.UNRESTRICTED;
+    private double accuracy = 1.0;
+    private final int[] units = new int[HOURS];
+    private long totalUnits;
+
+    // Limits in units; Long.MAX_VALUE = off
+    private long maxUnits = Long.MAX_VALUE;
+    private long maxStepUnits = Long.MAX_VALUE;
+    private long maxTotalUnits = Long.MAX_VALUE;
+
+    private int rateMask;
+    private int stepMask;
+    private boolean totalViolated;
+
+    private List<SafetyViolation> violations = Collections.emptyList();
+    private boolean violationsStale;
+
+    /** Changes the limits and re-evaluates the bound grid. */
+    public void setLimits(SafetyLimits newLimits) {
+        limits = (newLimits == null) ? SafetyLimits.UNRESTRICTED : newLimits;
+        convertLimits();
+        evaluateAll();
+    }
+
+    public SafetyLimits getLimits() { return limits; }
+
+    /** Binds a (new) grid: full evaluation, O(24). */
+    public void reset(double profileAccuracy, int[] unitsByHour) {
+        if (profileAccuracy <= 0.0) throw new IllegalArgumentException("accuracy must be > 0");
+        if (unitsByHour == null || unitsByHour.length != HOURS)
+            throw new IllegalArgumentException("24 hourly units required");
+        boolean accuracyChanged = Double.compare(accuracy, profileAccuracy) != 0;
+        accuracy = profileAccuracy;
+        System.arraycopy(unitsByHour, 0, units, 0, HOURS);
+        if (accuracyChanged) convertLimits();
+        evaluateAll();
+    }
+
+    /**
+     * Hour {@code hour} now holds {@code newUnits}. Re-checks that hour, its two boundaries
+     * and the daily total. Returns true when {@link #getViolations()} may differ from before the
+     * edit: a rule flipped, or a violation that is still reported moved its value.
+     */
+    public boolean onHourChanged(int hour, int newUnits) {
+        if (hour < 0 || hour >= HOURS) throw new IllegalArgumentException("hour 0..23");
+        int old = units[hour];
+        if (old == newUnits) return false;
+        units[hour] = newUnits;
+        totalUnits += newUnits - old;
+
+        int prevRate = rateMask, prevStep = stepMask;
+        boolean prevTotal = totalViolated;
+
+        rateMask = setBit(rateMask, hour, newUnits > maxUnits);
+        int before = (hour + HOURS - 1) % HOURS;
+        stepMask = setBit(stepMask, before, stepViolated(before));
+        stepMask = setBit(stepMask, hour, stepViolated(hour));
+        totalViolated = totalUnits > maxTotalUnits;
+
+        boolean changed = rateMask != prevRate || stepMask != prevStep || totalViolated != prevTotal;
+        // An hour that stays over a limit still shows its old value in the cached list
+        boolean touched = (rateMask & (1 << hour)) != 0
+                || (stepMask & ((1 << before) | (1 << hour))) != 0
+                || totalViolated;
+        if (changed || touched) violationsStale = true;
+        return changed || touched;
+    }
+
+    public boolean hasViolations() {
+        return rateMask != 0 || stepMask != 0 || totalViolated;
+    }
+
+    /** Current violations, hourly rules in hour order, then the daily rule. Cached between flips. */
+    public List<SafetyViolation> getViolations() {
+        if (violationsStale) {
+            violations = buildViolations();
+            violationsStale = false;
+        }
+        return violations;
+    }
+
+    private void evaluateAll() {
+        long total = 0;
+        int rate = 0, step = 0;
+        for (int h = 0; h < HOURS; h++) {
+            total += units[h];
+            if (units[h] > maxUnits) rate |= 1 << h;
+            if (stepViolated(h)) step |= 1 << h;
+        }
+        totalUnits = total;
+        rateMask = rate;
+        stepMask = step;
+        totalViolated = total > maxTotalUnits;
+        violationsStale = true;
+    }
+
+    /** Boundary h -> h+1 (23 wraps to 0). */
+    private boolean stepViolated(int h) {
+        return Math.abs(units[(h + 1) % HOURS] - units[h]) > maxStepUnits;
+    }
+
+    /**
+     * A rate of k units is allowed when k * accuracy <= limit. The small epsilon keeps a limit
+     * that is an exact multiple of accuracy (e.g. 2.00 with 0.05) from losing a step to rounding.
+     */
+    private void convertLimits() {
+        maxUnits = toUnits(limits.maxRateUh);
+        maxStepUnits = toUnits(limits.maxStepUh);
+        maxTotalUnits = toUnits(limits.maxDailyDoseU);
+    }
+
+    private long toUnits(double limit) {
+        if (Double.isInfinite(limit)) return Long.MAX_VALUE;
+        return (long) Math.floor(limit / accuracy + 1e-9);
+    }
+
+    private List<SafetyViolation> buildViolations() {
+        if (!hasViolations()) return Collections.emptyList();
+        List<SafetyViolation> out = new ArrayList<>();
+        for (int h = 0; h < HOURS; h++) {
+            if ((rateMask & (1 << h)) != 0) {
+                out.add(new SafetyViolation(SafetyViolation.Rule.MAX_RATE, h,
+                        units[h] * accuracy, limits.maxRateUh));
+            }
+            if ((stepMask & (1 << h)) != 0) {
+                out.add(new SafetyViolation(SafetyViolation.Rule.MAX_STEP, h,
+                        Math.abs(units[(h + 1) % HOURS] - units[h]) * accuracy, limits.maxStepUh));
+            }
+        }
+        if (totalViolated) {
+            out.add(new SafetyViolation(SafetyViolation.Rule.MAX_DAILY_DOSE, -1,
+                    totalUnits * accuracy, limits.maxDailyDoseU));
+        }
+        return Collections.unmodifiableList(out);
+    }
+
+    private static int setBit(int mask, int bit, boolean on) {
+        return on ? (mask | (1 << bit)) : (mask & ~(1 << bit));
+    }
+}
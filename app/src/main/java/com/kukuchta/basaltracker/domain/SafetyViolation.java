@@ -0,0 +1,36 @@
+package com.kukuchta.basaltracker.domain;
+
+import java.util.Locale;
+
+/** One broken limit. {@code hour} is -1 for the daily-dose rule. */
+public final class SafetyViolation {
+    public enum Rule { MAX_RATE, MAX_STEP, MAX_DAILY_DOSE }
+
+    public final Rule rule;
+    public final int hour;
+    public final double value;
+    public final double limit;
+
+    public SafetyViolation(Rule rule, int hour, double value, double limit) {
+        this.rule = rule;
+        this.hour = hour;
+        this.value = value;
+        this.limit = limit;
+    }
+
+    /** User-facing text. */
+    public String describe() {
+        switch (rule) {
+            case MAX_RATE:
+                return String.format(Locale.getDefault(),
+                        "%02d:00 – dawka %.2f U/h przekracza limit %.2f U/h", hour, value, limit);
+            case MAX_STEP:
+                return String.format(Locale.getDefault(),
+                        "%02d:00→%02d:00 – skok %.2f U/h przekracza limit %.2f U/h",
+                        hour, (hour + 1) % 24, value, limit);
+            default:
+                return String.format(Locale.getDefault(),
+                        "Dawka dobowa %.2f U przekracza limit %.2f U", value, limit);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.kukuchta.basaltracker.domain;
+
+/** Result of a nearest-neighbour query: a stored profile id and its distance (U/h based). */
+public final class SimilarityMatch {
+    public final long profileId;
+    public final double distance;
+
+    public SimilarityMatch(long profileId, double distance) {
+        this.profileId = profileId;
+        this.distance = distance;
+    }
+}
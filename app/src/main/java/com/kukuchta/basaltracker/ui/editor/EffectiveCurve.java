@@ -0,0 +1,18 @@
+package com.kukuchta.basaltracker.ui.editor;
+
+/**
+ * Effective basal rate over one local day as a step function for the editor chart:
+ * rate rates[i] (U/h) starts at local hour hours[i] (fractional), i < count.
+ * Rebuilt only when the profile or the day's overrides change, never per clock tick.
+ */
+public final class EffectiveCurve {
+    public final float[] hours;
+    public final float[] rates;
+    public final int count;
+
+    public EffectiveCurve(float[] hours, float[] rates, int count) {
+        this.hours = hours;
+        this.rates = rates;
+        this.count = count;
+    }
+}
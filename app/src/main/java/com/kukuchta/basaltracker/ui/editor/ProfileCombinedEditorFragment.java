@@ -19,15 +19,21 @@ import com.github.mikephil.charting.components.Description;
 import com.github.mikephil.charting.components.LimitLine;
 import com.github.mikephil.charting.components.XAxis;
 import com.github.mikephil.charting.components.YAxis;
+import com.github.mikephil.charting.components.YAxis.AxisDependency;
 import com.github.mikephil.charting.data.Entry;
 import com.github.mikephil.charting.data.LineData;
 import com.github.mikephil.charting.data.LineDataSet;
 import com.google.android.material.button.MaterialButton;
 import com.kukuchta.basaltracker.R;
 import com.kukuchta.basaltracker.domain.BasalProfile;
+import com.kukuchta.basaltracker.domain.IobCurve;
+import com.kukuchta.basaltracker.domain.SafetyViolation;
 import com.kukuchta.basaltracker.viewmodel.ProfileViewModel;
 
+import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 public class ProfileCombinedEditorFragment extends Fragment {
@@ -45,7 +51,7 @@ public class ProfileCombinedEditorFragment extends Fragment {
     private ProfileViewModel viewModel;
 
     // Shared
-    private TextView tvProfileName, tvAccuracy, tvTotalDailyDose, tvError;
+    private TextView tvProfileName, tvAccuracy, tvTotalDailyDose, tvError, tvSafetyViolations;
     private MaterialButton btnSaveProfile, btnDiscardChanges;
 
     // Toggle & panels
@@ -59,6 +65,24 @@ public class ProfileCombinedEditorFragment extends Fragment {
     private MaterialButton btnLeft, btnRight, btnMinus, btnPlus;
     private int selectedHour = 0;
 
+    // Effective rate with temporary overrides; only the "now" line moves on each tick
+    private static final long NOW_TICK_MS = 60_000L;
+    private EffectiveCurve effectiveCurve;
+    private IobCurve iobCurve;
+    private LocalDate tickerDay;
+    private final Runnable nowTicker = new Runnable() {
+        @Override
+        public void run() {
+            LocalDate today = LocalDate.now();
+            if (!today.equals(tickerDay)) {
+                tickerDay = today;
+                viewModel.refreshOverrides();
+            }
+            highlightSelectedHour();
+            chart.postDelayed(this, NOW_TICK_MS);
+        }
+    };
+
     // Compressed list (formerly "segments")
     private androidx.recyclerview.widget.RecyclerView rvSegments;
     private UiSegmentsAdapter uiSegmentsAdapter;
@@ -80,6 +104,7 @@ public class ProfileCombinedEditorFragment extends Fragment {
         tvAccuracy = v.findViewById(R.id.tvAccuracy);
         tvTotalDailyDose = v.findViewById(R.id.tvTotalDailyDose);
         tvError = v.findViewById(R.id.tvError);
+        tvSafetyViolations = v.findViewById(R.id.tvSafetyViolations);
         btnSaveProfile = v.findViewById(R.id.btnSaveProfile);
         btnDiscardChanges = v.findViewById(R.id.btnDiscardChanges);
 
@@ -107,10 +132,15 @@ public class ProfileCombinedEditorFragment extends Fragment {
         setupModeButtons();
         setupActions();
 
+        // Seeded synchronously from the list when possible, so the observer below fires with
+        // real data before the first frame. On recreation (including after process death) the
+        // ViewModel already holds the working copy with its unsaved edits.
         Bundle args = getArguments();
         if (args != null && args.containsKey(ARG_PROFILE_ID)) {
             long id = args.getLong(ARG_PROFILE_ID, 0);
-            if (id > 0) viewModel.loadProfile(id);
+            BasalProfile working = viewModel.getCurrentProfile().getValue();
+            boolean restored = savedInstanceState != null && working != null && working.getId() == id;
+            if (id > 0 && !restored) viewModel.openProfile(id);
         }
 
         viewModel.getCurrentProfile().observe(getViewLifecycleOwner(), profile -> {
@@ -147,9 +177,45 @@ public class ProfileCombinedEditorFragment extends Fragment {
             uiSegmentsAdapter.submitList(segs);
         });
 
+        viewModel.getSafetyViolations().observe(getViewLifecycleOwner(), this::bindSafetyViolations);
+
+        viewModel.getEffectiveCurve().observe(getViewLifecycleOwner(), curve -> {
+            effectiveCurve = curve;
+            BasalProfile p = viewModel.getCurrentProfile().getValue();
+            if (p != null) renderChart(p);
+        });
+        viewModel.getIobCurve().observe(getViewLifecycleOwner(), curve -> {
+            iobCurve = curve;
+            BasalProfile p = viewModel.getCurrentProfile().getValue();
+            if (p != null) renderChart(p);
+        });
+        tickerDay = LocalDate.now();
+        viewModel.refreshOverrides();
+        chart.postDelayed(nowTicker, NOW_TICK_MS);
+
         switchMode(EditMode.HOURLY);
     }
 
+    @Override
+    public void onDestroyView() {
+        chart.removeCallbacks(nowTicker);
+        super.onDestroyView();
+    }
+
+    private void bindSafetyViolations(List<SafetyViolation> violations) {
+        if (violations == null || violations.isEmpty()) {
+            tvSafetyViolations.setVisibility(View.GONE);
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (SafetyViolation sv : violations) {
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(sv.describe());
+        }
+        tvSafetyViolations.setText(sb);
+        tvSafetyViolations.setVisibility(View.VISIBLE);
+    }
+
     private void setupModeButtons() {
         btnModeHourly.setOnClickListener(v -> switchMode(EditMode.HOURLY));
         btnModeCircadian.setOnClickListener(v -> switchMode(EditMode.CIRCADIAN));
@@ -294,7 +360,7 @@ public class ProfileCombinedEditorFragment extends Fragment {
         chart.setNoDataTextColor(Color.GRAY);
 
         Description desc = new Description();
-        desc.setText("Dawki bazalne (U/h)");
+        desc.setText("Dawki bazalne (U/h), aktywna insulina bazalna (U)");
         desc.setTextSize(12f);
         chart.setDescription(desc);
 
@@ -310,7 +376,12 @@ public class ProfileCombinedEditorFragment extends Fragment {
         chart.setExtraRightOffset(12f);
 
         chart.getLegend().setEnabled(false);
-        chart.getAxisRight().setEnabled(false);
+        // Right axis: basal insulin on board (U)
+        YAxis rightAxis = chart.getAxisRight();
+        rightAxis.setAxisMinimum(0f);
+        rightAxis.setDrawGridLines(false);
+        rightAxis.setTextSize(11f);
+        rightAxis.setTextColor(0xFF4CAF50);
 
         YAxis leftAxis = chart.getAxisLeft();
         leftAxis.setAxisMinimum(0f);
@@ -350,7 +421,38 @@ public class ProfileCombinedEditorFragment extends Fragment {
         ds.setDrawValues(false);
         ds.setHighlightEnabled(false);
 
-        chart.setData(new LineData(ds));
+        LineData data = new LineData(ds);
+        EffectiveCurve curve = effectiveCurve;
+        if (curve != null && curve.count > 0) {
+            ArrayList<Entry> eff = new ArrayList<>(curve.count + 1);
+            for (int i = 0; i < curve.count; i++) eff.add(new Entry(curve.hours[i], curve.rates[i]));
+            eff.add(new Entry(24f, curve.rates[curve.count - 1]));
+            LineDataSet effDs = new LineDataSet(eff, null);
+            effDs.setMode(LineDataSet.Mode.STEPPED);
+            effDs.setLineWidth(1.5f);
+            effDs.setColor(0xFFFF5722);
+            effDs.enableDashedLine(10f, 6f, 0f);
+            effDs.setDrawCircles(false);
+            effDs.setDrawValues(false);
+            effDs.setHighlightEnabled(false);
+            data.addDataSet(effDs);
+        }
+        IobCurve iob = iobCurve;
+        if (iob != null) {
+            ArrayList<Entry> pts = new ArrayList<>(iob.values.length);
+            float stepHours = iob.stepMinutes / 60f;
+            for (int s = 0; s < iob.values.length; s++) pts.add(new Entry(s * stepHours, (float) iob.values[s]));
+            LineDataSet iobDs = new LineDataSet(pts, null);
+            iobDs.setAxisDependency(AxisDependency.RIGHT);
+            iobDs.setLineWidth(1.5f);
+            iobDs.setColor(0xFF4CAF50);
+            iobDs.setDrawCircles(false);
+            iobDs.setDrawValues(false);
+            iobDs.setHighlightEnabled(false);
+            data.addDataSet(iobDs);
+        }
+
+        chart.setData(data);
         chart.invalidate();
     }
 
@@ -364,6 +466,13 @@ public class ProfileCombinedEditorFragment extends Fragment {
         hourBand.setTextSize(0f);
         hourBand.enableDashedLine(0f, 0f, 0f);
         xAxis.addLimitLine(hourBand);
+
+        LocalTime now = LocalTime.now();
+        LimitLine nowLine = new LimitLine(now.toSecondOfDay() / 3600f, "");
+        nowLine.setLineColor(0xFFE53935);
+        nowLine.setLineWidth(1f);
+        nowLine.setTextSize(0f);
+        xAxis.addLimitLine(nowLine);
         chart.invalidate();
     }
 
@@ -1,9 +1,11 @@
 package com.kukuchta.basaltracker.ui.editor;
 
+import com.kukuchta.basaltracker.domain.ChangePointProfile;
+
 import java.util.ArrayList;
 import java.util.List;
 
-/** Pure projector: 24 hourly units -> compressed list of UiSegments (runs). */
+/** Pure projector: 24 hourly units or change points -> compressed list of UiSegments (runs). */
 public final class SegmentProjector {
     private SegmentProjector() {}
 
@@ -25,4 +27,15 @@ public final class SegmentProjector {
         out.add(new UiSegment(start, 24, currentUnits, currentUnits * accuracy));
         return out;
     }
+
+    /** Change points are already run-length encoded: one segment per change point. */
+    public static List<UiSegment> project(ChangePointProfile p) {
+        int[] starts = p.copyStartMinutes();
+        int[] units = p.copyUnits();
+        List<UiSegment> out = new ArrayList<>(starts.length);
+        for (int i = 0; i < starts.length; i++) {
+            out.add(UiSegment.ofMinutes(starts[i], p.endOf(i), units[i], units[i] * p.getAccuracy()));
+        }
+        return out;
+    }
 }
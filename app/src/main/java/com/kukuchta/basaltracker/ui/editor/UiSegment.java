@@ -1,16 +1,36 @@
 package com.kukuchta.basaltracker.ui.editor;
 
-/** UI-facing compressed segment: contiguous run of equal hourly units. */
+/** UI-facing compressed segment: contiguous run of equal units (hour or sub-hour grid). */
 public final class UiSegment {
-    public final int startHour;           // inclusive, 0..23
-    public final int endHourExclusive;    // exclusive, 1..24, > startHour
+    public final int startHour;           // inclusive, 0..23 (hour containing startMinutes)
+    public final int endHourExclusive;    // exclusive, 1..24, > startHour (hour containing the end, rounded up)
+    public final int startMinutes;        // inclusive, 0..1439
+    public final int endMinutesExclusive; // exclusive, 1..1440, > startMinutes
     public final int units;               // integer units for the whole run
     public final double rateUh;           // derived = units * accuracy
 
     public UiSegment(int startHour, int endHourExclusive, int units, double rateUh) {
+        this(startHour, endHourExclusive, startHour * 60, endHourExclusive * 60, units, rateUh);
+    }
+
+    private UiSegment(int startHour, int endHourExclusive, int startMinutes, int endMinutesExclusive,
+                      int units, double rateUh) {
         this.startHour = startHour;
         this.endHourExclusive = endHourExclusive;
+        this.startMinutes = startMinutes;
+        this.endMinutesExclusive = endMinutesExclusive;
         this.units = units;
         this.rateUh = rateUh;
     }
+
+    /** Sub-hour segment; the hour fields are the enclosing hours. */
+    public static UiSegment ofMinutes(int startMinutes, int endMinutesExclusive, int units, double rateUh) {
+        return new UiSegment(startMinutes / 60, (endMinutesExclusive + 59) / 60,
+                startMinutes, endMinutesExclusive, units, rateUh);
+    }
+
+    /** True when both bounds fall on full hours. */
+    public boolean isHourAligned() {
+        return startMinutes % 60 == 0 && endMinutesExclusive % 60 == 0;
+    }
 }
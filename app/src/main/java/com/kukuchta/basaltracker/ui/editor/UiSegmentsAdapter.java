@@ -60,9 +60,9 @@ public class UiSegmentsAdapter extends RecyclerView.Adapter<UiSegmentsAdapter.VH
     }
 
     @Override public long getItemId(int position) {
-        // A stable-ish key: startHour*100 + endHour; ok because there are <=24 runs.
+        // A stable-ish key from the minute bounds; unique because runs do not overlap.
         UiSegment s = segments.get(position);
-        return s.startHour * 100L + s.endHourExclusive;
+        return s.startMinutes * 1441L + s.endMinutesExclusive;
     }
 
     @Override public int getItemCount() { return segments.size(); }
@@ -76,8 +76,9 @@ public class UiSegmentsAdapter extends RecyclerView.Adapter<UiSegmentsAdapter.VH
     @Override
     public void onBindViewHolder(@NonNull VH h, int pos) {
         UiSegment seg = segments.get(pos);
-        h.tvRange.setText(String.format(Locale.getDefault(), "%02d:00–%02d:00",
-                seg.startHour, seg.endHourExclusive));
+        h.tvRange.setText(String.format(Locale.getDefault(), "%02d:%02d–%02d:%02d",
+                seg.startMinutes / 60, seg.startMinutes % 60,
+                seg.endMinutesExclusive / 60, seg.endMinutesExclusive % 60));
         h.tvRate.setText(String.format(Locale.getDefault(), "Dawka: %.2f U/h", seg.rateUh));
         h.btnEdit.setOnClickListener(v -> showEditDialog(seg));
     }
@@ -145,7 +146,7 @@ public class UiSegmentsAdapter extends RecyclerView.Adapter<UiSegmentsAdapter.VH
         @Override public int getNewListSize() { return newList.size(); }
         @Override public boolean areItemsTheSame(int o, int n) {
             UiSegment a = oldList.get(o), b = newList.get(n);
-            return a.startHour == b.startHour && a.endHourExclusive == b.endHourExclusive;
+            return a.startMinutes == b.startMinutes && a.endMinutesExclusive == b.endMinutesExclusive;
         }
         @Override public boolean areContentsTheSame(int o, int n) {
             UiSegment a = oldList.get(o), b = newList.get(n);
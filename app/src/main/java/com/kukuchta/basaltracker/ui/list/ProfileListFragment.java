@@ -7,15 +7,19 @@ import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.widget.SearchView;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentTransaction;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
+import com.google.android.material.appbar.MaterialToolbar;
 import com.google.android.material.floatingactionbutton.ExtendedFloatingActionButton;
 import com.kukuchta.basaltracker.R;
-import com.kukuchta.basaltracker.domain.BasalProfile;
+import com.kukuchta.basaltracker.data.repo.BasalProfileRepository;
 import com.kukuchta.basaltracker.ui.editor.ProfileCombinedEditorFragment;
+import com.kukuchta.basaltracker.ui.timeline.DeliveryTimelineFragment;
 import com.kukuchta.basaltracker.viewmodel.ProfileViewModel;
 import com.google.android.material.snackbar.Snackbar;
 
@@ -24,8 +28,9 @@ import java.util.List;
 public class ProfileListFragment extends Fragment {
 
     private ProfileViewModel viewModel;
-    private androidx.recyclerview.widget.RecyclerView rvProfiles;
+    private RecyclerView rvProfiles;
     private ExtendedFloatingActionButton fabAdd;
+    private SearchView svProfiles;
     private ProfilesListAdapter adapter;
 
     @Nullable
@@ -44,46 +49,93 @@ public class ProfileListFragment extends Fragment {
 
         rvProfiles = v.findViewById(R.id.rvProfiles);
         fabAdd = v.findViewById(R.id.fabAdd);
+        svProfiles = v.findViewById(R.id.svProfiles);
+
+        MaterialToolbar toolbar = v.findViewById(R.id.toolbarList);
+        toolbar.inflateMenu(R.menu.menu_profile_list);
+        toolbar.setOnMenuItemClickListener(item -> {
+            if (item.getItemId() == R.id.action_timeline) {
+                open(new DeliveryTimelineFragment());
+                return true;
+            }
+            return false;
+        });
 
         rvProfiles.setLayoutManager(new LinearLayoutManager(requireContext()));
         adapter = new ProfilesListAdapter(new ProfilesListAdapter.ActionListener() {
             @Override
-            public void onEdit(BasalProfile profile) {
-                openEditor(profile.getId());
+            public void onEdit(ProfileRowModel row) {
+                openEditor(row.id);
             }
 
             @Override
-            public void onDuplicate(BasalProfile profile) {
-                viewModel.duplicateProfile(profile.getId(), " (kopia)", newProfileId -> {});
+            public void onDuplicate(ProfileRowModel row) {
+                viewModel.duplicateProfile(row.id, " (kopia)", newProfileId -> {});
             }
 
 
             @Override
-            public void onDelete(BasalProfile profile) {
-                viewModel.deleteProfile(profile.getId(), () ->
+            public void onDelete(ProfileRowModel row) {
+                viewModel.deleteProfile(row.id, () ->
                         Snackbar.make(rvProfiles, "Profil usunięty.", Snackbar.LENGTH_SHORT).show());
             }
         });
         rvProfiles.setAdapter(adapter);
 
+        // Editor copies for rows near the viewport are prepared while the user scrolls
+        LinearLayoutManager lm = (LinearLayoutManager) rvProfiles.getLayoutManager();
+        rvProfiles.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(@NonNull RecyclerView rv, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) prefetchVisible(lm);
+            }
+        });
+
         // Load list data
-        viewModel.getProfiles().observe(getViewLifecycleOwner(), this::bindProfiles);
+        viewModel.getProfileRows().observe(getViewLifecycleOwner(), this::bindProfiles);
+        viewModel.isSearchTruncated().observe(getViewLifecycleOwner(), truncated ->
+                toolbar.setSubtitle(Boolean.TRUE.equals(truncated)
+                        ? "Pokazano " + BasalProfileRepository.SEARCH_LIMIT + " najnowszych profili – zawęź wyszukiwanie"
+                        : null));
         viewModel.loadAllProfiles();
 
+        svProfiles.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                viewModel.searchProfiles(query);
+                svProfiles.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                viewModel.searchProfiles(newText);
+                return true;
+            }
+        });
+
         fabAdd.setOnClickListener(x -> {
             // Create empty profile and open editor with the returned ID
             viewModel.createEmptyProfile("Nowy profil", 0.05, this::openEditor);
         });
     }
 
-    private void bindProfiles(List<BasalProfile> profiles) {
-        adapter.submitList(profiles);
+    private void bindProfiles(List<ProfileRowModel> rows) {
+        adapter.submitList(rows);
+        rvProfiles.post(() -> prefetchVisible((LinearLayoutManager) rvProfiles.getLayoutManager()));
+    }
+
+    private void prefetchVisible(LinearLayoutManager lm) {
+        viewModel.prefetchAround(lm.findFirstVisibleItemPosition(), lm.findLastVisibleItemPosition());
     }
 
     private void openEditor(long profileId) {
-        ProfileCombinedEditorFragment editor = ProfileCombinedEditorFragment.newInstance(profileId);
+        open(ProfileCombinedEditorFragment.newInstance(profileId));
+    }
+
+    private void open(Fragment screen) {
         FragmentTransaction ft = getParentFragmentManager().beginTransaction();
-        ft.replace(android.R.id.content, editor);
+        ft.replace(android.R.id.content, screen);
         ft.addToBackStack(null);
         ft.commit();
     }
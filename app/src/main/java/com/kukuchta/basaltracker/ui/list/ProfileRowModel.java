@@ -0,0 +1,36 @@
+package com.kukuchta.basaltracker.ui.list;
+
+import com.kukuchta.basaltracker.domain.BasalProfile;
+
+import java.util.Locale;
+
+/**
+ * Ready-to-display list row. Built off the main thread; binding only assigns these strings.
+ */
+public final class ProfileRowModel {
+    public final long id;
+    public final String idText;
+    public final String name;
+    public final String doseText;
+
+    private ProfileRowModel(long id, String idText, String name, String doseText) {
+        this.id = id;
+        this.idText = idText;
+        this.name = name;
+        this.doseText = doseText;
+    }
+
+    public static ProfileRowModel of(BasalProfile p, Locale locale) {
+        return new ProfileRowModel(
+                p.getId(),
+                String.format(locale, "ID: %d", p.getId()),
+                p.getName(),
+                String.format(locale, "Całkowita dawka: %s U", p.getTotalDailyDose().toPlainString())
+        );
+    }
+
+    /** Same visible content; ids are compared separately by the diff. */
+    boolean sameContent(ProfileRowModel o) {
+        return name.equals(o.name) && doseText.equals(o.doseText);
+    }
+}
@@ -10,22 +10,20 @@ import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.kukuchta.basaltracker.R;
-import com.kukuchta.basaltracker.domain.BasalProfile;
 import com.google.android.material.button.MaterialButton;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
 
 public class ProfilesListAdapter extends RecyclerView.Adapter<ProfilesListAdapter.VH> {
 
     public interface ActionListener {
-        void onEdit(BasalProfile profile);
-        void onDuplicate(BasalProfile profile);
-        void onDelete(BasalProfile profile);
+        void onEdit(ProfileRowModel row);
+        void onDuplicate(ProfileRowModel row);
+        void onDelete(ProfileRowModel row);
     }
 
-    private final List<BasalProfile> items = new ArrayList<>();
+    private final List<ProfileRowModel> items = new ArrayList<>();
     private final ActionListener actions;
 
     public ProfilesListAdapter(ActionListener actions) {
@@ -33,34 +31,49 @@ public class ProfilesListAdapter extends RecyclerView.Adapter<ProfilesListAdapte
         setHasStableIds(true);
     }
 
-    public void submitList(List<BasalProfile> newItems) {
+    public void submitList(List<ProfileRowModel> newItems) {
         DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new Diff(items, newItems));
         items.clear();
         items.addAll(newItems);
         diff.dispatchUpdatesTo(this);
     }
 
-    @Override public long getItemId(int position) { return items.get(position).getId(); }
+    @Override public long getItemId(int position) { return items.get(position).id; }
     @Override public int getItemCount() { return items.size(); }
 
     @NonNull @Override
     public VH onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View v = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_profile_row, parent, false);
-        return new VH(v);
+        VH h = new VH(v);
+        // Listeners live as long as the holder and resolve the row at click time
+        h.btnEdit.setOnClickListener(x -> {
+            ProfileRowModel row = rowAt(h);
+            if (row != null) actions.onEdit(row);
+        });
+        h.btnDuplicate.setOnClickListener(x -> {
+            ProfileRowModel row = rowAt(h);
+            if (row != null) actions.onDuplicate(row);
+        });
+        h.btnDelete.setOnClickListener(x -> {
+            ProfileRowModel row = rowAt(h);
+            if (row != null) actions.onDelete(row);
+        });
+        return h;
     }
 
+    /** Binding only assigns precomputed text: no formatting or allocation per bind. */
     @Override
     public void onBindViewHolder(@NonNull VH h, int pos) {
-        BasalProfile p = items.get(pos);
-        h.tvId.setText(String.format(Locale.getDefault(), "ID: %d", p.getId()));
-        h.tvName.setText(p.getName());
-        h.tvTotalDose.setText(String.format(Locale.getDefault(),
-                "Całkowita dawka: %s U", p.getTotalDailyDose().toPlainString()));
-
-        h.btnEdit.setOnClickListener(v -> actions.onEdit(p));
-        h.btnDuplicate.setOnClickListener(v -> actions.onDuplicate(p));
-        h.btnDelete.setOnClickListener(v -> actions.onDelete(p));
+        ProfileRowModel row = items.get(pos);
+        h.tvId.setText(row.idText);
+        h.tvName.setText(row.name);
+        h.tvTotalDose.setText(row.doseText);
+    }
+
+    private ProfileRowModel rowAt(VH h) {
+        int pos = h.getBindingAdapterPosition();
+        return (pos == RecyclerView.NO_POSITION) ? null : items.get(pos);
     }
 
     static class VH extends RecyclerView.ViewHolder {
@@ -79,18 +92,15 @@ public class ProfilesListAdapter extends RecyclerView.Adapter<ProfilesListAdapte
     }
 
     static class Diff extends DiffUtil.Callback {
-        private final List<BasalProfile> oldList, newList;
-        Diff(List<BasalProfile> o, List<BasalProfile> n) { oldList = o; newList = n; }
+        private final List<ProfileRowModel> oldList, newList;
+        Diff(List<ProfileRowModel> o, List<ProfileRowModel> n) { oldList = o; newList = n; }
         @Override public int getOldListSize() { return oldList.size(); }
         @Override public int getNewListSize() { return newList.size(); }
         @Override public boolean areItemsTheSame(int o, int n) {
-            return oldList.get(o).getId() == newList.get(n).getId();
+            return oldList.get(o).id == newList.get(n).id;
         }
         @Override public boolean areContentsTheSame(int o, int n) {
-            BasalProfile a = oldList.get(o), b = newList.get(n);
-            // Compare by name + total dose string (cheap)
-            return a.getName().equals(b.getName())
-                    && a.getTotalDailyDose().compareTo(b.getTotalDailyDose()) == 0;
+            return oldList.get(o).sameContent(newList.get(n));
         }
     }
 }
@@ -0,0 +1,233 @@
+package com.kukuchta.basaltracker.ui.timeline;
+
+import android.graphics.Color;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
+
+import com.github.mikephil.charting.charts.LineChart;
+import com.github.mikephil.charting.components.AxisBase;
+import com.github.mikephil.charting.components.Description;
+import com.github.mikephil.charting.components.LimitLine;
+import com.github.mikephil.charting.components.XAxis;
+import com.github.mikephil.charting.components.YAxis;
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.data.LineDataSet;
+import com.github.mikephil.charting.formatter.ValueFormatter;
+import com.github.mikephil.charting.listener.ChartTouchListener;
+import com.github.mikephil.charting.listener.OnChartGestureListener;
+import com.google.android.material.appbar.MaterialToolbar;
+import com.google.android.material.button.MaterialButtonToggleGroup;
+import com.kukuchta.basaltracker.R;
+import com.kukuchta.basaltracker.domain.DeliveryTimeline;
+import com.kukuchta.basaltracker.viewmodel.DeliveryTimelineViewModel;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Scheduled basal delivery over weeks or months. The chart never holds the full series: each
+ * zoom or pan asks {@link ViewportDownsampler} for about one point per pixel column of the
+ * visible range, and the resulting frame is copied into a reused list of entries.
+ */
+public class DeliveryTimelineFragment extends Fragment {
+
+    private static final float MS_PER_HOUR = 3_600_000f;
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("dd.MM");
+    private static final DateTimeFormatter DAY_TIME = DateTimeFormatter.ofPattern("dd.MM HH:mm");
+
+    private DeliveryTimelineViewModel viewModel;
+    private LineChart chart;
+    private TextView tvInfo;
+
+    private ViewportDownsampler downsampler;
+    private DeliveryTimeline timeline;
+    private final ArrayList<Entry> entries = new ArrayList<>();
+    private Entry[] pool = new Entry[0];
+    private LineDataSet dataSet;
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater,
+                             @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
+        return inflater.inflate(R.layout.fragment_delivery_timeline, container, false);
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View v, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(v, savedInstanceState);
+
+        viewModel = new ViewModelProvider(this).get(DeliveryTimelineViewModel.class);
+
+        MaterialToolbar toolbar = v.findViewById(R.id.toolbarTimeline);
+        toolbar.setNavigationOnClickListener(x -> getParentFragmentManager().popBackStack());
+        tvInfo = v.findViewById(R.id.tvTimelineInfo);
+        chart = v.findViewById(R.id.chartTimeline);
+        setupChart();
+
+        downsampler = new ViewportDownsampler(this::applyFrame);
+        viewModel.getTimeline().observe(getViewLifecycleOwner(), this::bindTimeline);
+
+        MaterialButtonToggleGroup group = v.findViewById(R.id.groupRange);
+        group.addOnButtonCheckedListener((g, checkedId, isChecked) -> {
+            if (isChecked) viewModel.load(daysFor(checkedId));
+        });
+        if (viewModel.getTimeline().getValue() == null) {
+            viewModel.load(daysFor(group.getCheckedButtonId()));
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        downsampler.close();
+        super.onDestroyView();
+    }
+
+    private static int daysFor(int buttonId) {
+        if (buttonId == R.id.btnRange7) return 7;
+        if (buttonId == R.id.btnRange90) return 90;
+        if (buttonId == R.id.btnRange365) return 365;
+        return 30;
+    }
+
+    // --- Chart ---
+
+    private void setupChart() {
+        chart.setNoDataText("Brak zaplanowanych profili w tym okresie.");
+        chart.setNoDataTextColor(Color.GRAY);
+
+        Description desc = new Description();
+        desc.setText("Zaplanowana dawka bazalna (U/h)");
+        desc.setTextSize(12f);
+        chart.setDescription(desc);
+
+        chart.setDrawGridBackground(false);
+        chart.setDrawBorders(false);
+        chart.setPinchZoom(false);
+        chart.setScaleYEnabled(false);
+        chart.setDragEnabled(true);
+        chart.setDoubleTapToZoomEnabled(true);
+        chart.setHighlightPerTapEnabled(false);
+        chart.setHighlightPerDragEnabled(false);
+        chart.getLegend().setEnabled(false);
+        chart.getAxisRight().setEnabled(false);
+
+        YAxis leftAxis = chart.getAxisLeft();
+        leftAxis.setAxisMinimum(0f);
+        leftAxis.setGranularityEnabled(true);
+        leftAxis.setGranularity(0.1f);
+        leftAxis.setGridLineWidth(0.5f);
+
+        XAxis xAxis = chart.getXAxis();
+        xAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
+        xAxis.setGranularityEnabled(true);
+        xAxis.setGranularity(1f);
+        xAxis.setLabelCount(5);
+        xAxis.setGridLineWidth(0.5f);
+        xAxis.setValueFormatter(new ValueFormatter() {
+            @Override
+            public String getAxisLabel(float value, AxisBase axis) {
+                DeliveryTimeline t = timeline;
+                if (t == null) return "";
+                long ms = t.from + (long) (value * MS_PER_HOUR);
+                boolean zoomedIn = chart.getVisibleXRange() <= 72f;
+                return (zoomedIn ? DAY_TIME : DAY).format(Instant.ofEpochMilli(ms).atZone(ZoneId.systemDefault()));
+            }
+        });
+
+        // Every zoom or pan step requests a new frame; the downsampler coalesces them
+        chart.setOnChartGestureListener(new OnChartGestureListener() {
+            @Override public void onChartScale(MotionEvent me, float scaleX, float scaleY) { requestVisible(); }
+            @Override public void onChartTranslate(MotionEvent me, float dX, float dY) { requestVisible(); }
+            @Override public void onChartGestureEnd(MotionEvent me, ChartTouchListener.ChartGesture g) { requestVisible(); }
+            @Override public void onChartDoubleTapped(MotionEvent me) { requestVisible(); }
+            @Override public void onChartGestureStart(MotionEvent me, ChartTouchListener.ChartGesture g) {}
+            @Override public void onChartLongPressed(MotionEvent me) {}
+            @Override public void onChartSingleTapped(MotionEvent me) {}
+            @Override public void onChartFling(MotionEvent me1, MotionEvent me2, float vX, float vY) {}
+        });
+    }
+
+    private void bindTimeline(DeliveryTimeline t) {
+        timeline = t;
+        chart.fitScreen();
+        if (t == null || t.size() == 0) {
+            chart.clear();
+            tvInfo.setText("");
+            return;
+        }
+
+        double maxRate = 0;
+        for (int k = 0; k < t.size(); k++) maxRate = Math.max(maxRate, t.rateAt(k));
+        float totalHours = (t.to - t.from) / MS_PER_HOUR;
+        XAxis xAxis = chart.getXAxis();
+        xAxis.setAxisMinimum(0f);
+        xAxis.setAxisMaximum(totalHours);
+        // Fixed bounds: frames only cover the viewport, the axes must not follow them
+        chart.getAxisLeft().setAxisMaximum((float) Math.max(0.5, maxRate * 1.1));
+        chart.setVisibleXRangeMinimum(6f);
+
+        xAxis.removeAllLimitLines();
+        LimitLine nowLine = new LimitLine((System.currentTimeMillis() - t.from) / MS_PER_HOUR, "");
+        nowLine.setLineColor(0xFFE53935);
+        nowLine.setLineWidth(1f);
+        xAxis.addLimitLine(nowLine);
+
+        tvInfo.setText(String.format(Locale.getDefault(), "%d zmian dawki w okresie", t.size()));
+
+        // Placeholder frame (first and last point) until the first downsampled one arrives
+        entries.clear();
+        entries.add(new Entry(0f, (float) t.rateAt(0)));
+        entries.add(new Entry(totalHours, (float) t.rateAt(t.size() - 1)));
+        dataSet = new LineDataSet(entries, null);
+        dataSet.setLineWidth(1.5f);
+        dataSet.setColor(0xFF2196F3);
+        dataSet.setDrawCircles(false);
+        dataSet.setDrawValues(false);
+        dataSet.setHighlightEnabled(false);
+        chart.setData(new LineData(dataSet));
+        chart.post(this::requestVisible); // content width is known after layout
+    }
+
+    private void requestVisible() {
+        DeliveryTimeline t = timeline;
+        if (t == null || chart.getData() == null) return;
+        int widthPx = (int) chart.getViewPortHandler().contentWidth();
+        downsampler.request(t, chart.getLowestVisibleX(), chart.getHighestVisibleX(), widthPx);
+    }
+
+    /** Copies a frame into the reused entries; main thread. */
+    private void applyFrame(ViewportDownsampler.Frame frame) {
+        if (frame.source == timeline && dataSet != null) {
+            int n = frame.count;
+            if (pool.length < n) pool = Arrays.copyOf(pool, Math.max(n, pool.length * 2));
+            entries.clear(); // keeps the list's capacity
+            for (int i = 0; i < n; i++) {
+                Entry e = pool[i];
+                if (e == null) pool[i] = e = new Entry();
+                e.setX(frame.x[i]);
+                e.setY(frame.y[i]);
+                entries.add(e);
+            }
+            dataSet.notifyDataSetChanged();
+            chart.getData().notifyDataChanged();
+            chart.notifyDataSetChanged();
+            chart.invalidate();
+        }
+        downsampler.recycle(frame);
+    }
+}
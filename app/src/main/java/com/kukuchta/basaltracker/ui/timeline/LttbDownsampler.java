@@ -0,0 +1,71 @@
+package com.kukuchta.basaltracker.ui.timeline;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling on primitive arrays.
+ *
+ * Keeps the first and last point; every bucket in between contributes the point forming the
+ * largest triangle with the previously kept point and the average of the next bucket. O(n),
+ * no allocation: the caller owns and reuses the output arrays.
+ */
+public final class LttbDownsampler {
+
+    private LttbDownsampler() {}
+
+    /**
+     * Downsamples xs/ys[0, n) to at most {@code threshold} points written to outX/outY.
+     * With n <= threshold (or threshold < 3) the input is copied unchanged.
+     * @return number of points written
+     */
+    public static int downsample(float[] xs, float[] ys, int n, int threshold, float[] outX, float[] outY) {
+        if (threshold >= n || threshold < 3) {
+            System.arraycopy(xs, 0, outX, 0, n);
+            System.arraycopy(ys, 0, outY, 0, n);
+            return n;
+        }
+
+        double every = (double) (n - 2) / (threshold - 2);
+        int a = 0;
+        int out = 0;
+        outX[out] = xs[0];
+        outY[out++] = ys[0];
+
+        for (int i = 0; i < threshold - 2; i++) {
+            // Average of the next bucket (the last point for the final bucket)
+            int nextStart = (int) ((i + 1) * every) + 1;
+            int nextEnd = Math.min(n, (int) ((i + 2) * every) + 1);
+            double avgX = 0, avgY = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                avgX += xs[j];
+                avgY += ys[j];
+            }
+            int len = nextEnd - nextStart;
+            if (len > 0) {
+                avgX /= len;
+                avgY /= len;
+            } else {
+                avgX = xs[n - 1];
+                avgY = ys[n - 1];
+            }
+
+            int start = (int) (i * every) + 1;
+            int end = (int) ((i + 1) * every) + 1;
+            double ax = xs[a], ay = ys[a];
+            double maxArea = -1;
+            int chosen = start;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((ax - avgX) * (ys[j] - ay) - (ax - xs[j]) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = j;
+                }
+            }
+            outX[out] = xs[chosen];
+            outY[out++] = ys[chosen];
+            a = chosen;
+        }
+
+        outX[out] = xs[n - 1];
+        outY[out++] = ys[n - 1];
+        return out;
+    }
+}
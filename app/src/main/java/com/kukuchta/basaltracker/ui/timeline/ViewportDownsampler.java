@@ -0,0 +1,139 @@
+package com.kukuchta.basaltracker.ui.timeline;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.kukuchta.basaltracker.domain.DeliveryTimeline;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Turns the visible part of a {@link DeliveryTimeline} into at most one point per pixel column,
+ * off the main thread.
+ *
+ * - Only the viewport plus one viewport width of margin on each side is expanded into step
+ *   vertices, then reduced with {@link LttbDownsampler}; a small pan stays covered until the
+ *   next frame arrives.
+ * - Requests coalesce: while one is computing, newer ones overwrite a single pending slot, so
+ *   a fling produces a handful of frames, not one per touch event.
+ * - Buffers are reused: vertex arrays belong to the worker, and output frames cycle between
+ *   the worker and the caller through {@link #recycle}.
+ *
+ * X values are hours since {@link DeliveryTimeline#from}.
+ */
+public final class ViewportDownsampler {
+
+    /** Output of one pass; valid until handed back with {@link #recycle}. */
+    public static final class Frame {
+        public float[] x = new float[0];
+        public float[] y = new float[0];
+        public int count;
+        public DeliveryTimeline source;
+
+        void ensureCapacity(int n) {
+            if (x.length < n) {
+                x = new float[n];
+                y = new float[n];
+            }
+        }
+    }
+
+    /** Main thread. Call {@link #recycle} once the frame has been copied into chart entries. */
+    public interface FrameListener { void onFrame(Frame frame); }
+
+    private static final float MS_PER_HOUR = 3_600_000f;
+
+    private static final class Request {
+        final DeliveryTimeline timeline;
+        final float fromX, toX;
+        final int widthPx;
+
+        Request(DeliveryTimeline timeline, float fromX, float toX, int widthPx) {
+            this.timeline = timeline;
+            this.fromX = fromX;
+            this.toX = toX;
+            this.widthPx = widthPx;
+        }
+    }
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final AtomicReference<Request> pending = new AtomicReference<>();
+    private final AtomicReference<Frame> spare = new AtomicReference<>(new Frame());
+    private final FrameListener listener;
+    private volatile boolean closed;
+
+    // Worker-only vertex buffers
+    private float[] vx = new float[0];
+    private float[] vy = new float[0];
+
+    public ViewportDownsampler(FrameListener listener) {
+        this.listener = listener;
+    }
+
+    /** Any thread. [fromX, toX] is the visible range in hours, widthPx the chart content width. */
+    public void request(DeliveryTimeline timeline, float fromX, float toX, int widthPx) {
+        if (closed || timeline == null || timeline.size() == 0) return;
+        if (pending.getAndSet(new Request(timeline, fromX, toX, widthPx)) == null) {
+            worker.execute(this::drain);
+        }
+    }
+
+    public void recycle(Frame frame) {
+        spare.set(frame);
+    }
+
+    public void close() {
+        closed = true;
+        worker.shutdownNow();
+        main.removeCallbacksAndMessages(null);
+    }
+
+    private void drain() {
+        Request r = pending.getAndSet(null);
+        if (r == null || closed) return;
+
+        int n = expand(r);
+        int threshold = Math.max(3, r.widthPx);
+        Frame frame = spare.getAndSet(null);
+        if (frame == null) frame = new Frame(); // caller still holds the other one
+        frame.ensureCapacity(Math.min(n, threshold));
+        frame.count = LttbDownsampler.downsample(vx, vy, n, threshold, frame.x, frame.y);
+        frame.source = r.timeline;
+
+        Frame ready = frame;
+        main.post(() -> {
+            if (!closed) listener.onFrame(ready);
+        });
+    }
+
+    /** Step vertices (start and end of each step) over the viewport plus margins into vx/vy. */
+    private int expand(Request r) {
+        DeliveryTimeline t = r.timeline;
+        float span = Math.max(r.toX - r.fromX, 1f);
+        long from = Math.max(t.from, t.from + (long) ((r.fromX - span) * MS_PER_HOUR));
+        long to = Math.min(t.to, t.from + (long) ((r.toX + span) * MS_PER_HOUR));
+        int k0 = t.indexAt(from);
+        int k1 = t.indexAt(to);
+
+        int need = 2 * (k1 - k0 + 1);
+        if (vx.length < need) {
+            vx = new float[need];
+            vy = new float[need];
+        }
+        int n = 0;
+        for (int k = k0; k <= k1; k++) {
+            long start = Math.max(t.timeAt(k), from);
+            long end = (k + 1 < t.size()) ? Math.min(t.timeAt(k + 1), to) : to;
+            if (end <= start && k != k1) continue;
+            float rate = (float) t.rateAt(k);
+            vx[n] = (start - t.from) / MS_PER_HOUR;
+            vy[n++] = rate;
+            vx[n] = (Math.max(end, start) - t.from) / MS_PER_HOUR;
+            vy[n++] = rate;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,25 @@
+package com.kukuchta.basaltracker.ui.widget;
+
+/**
+ * What the widget and notification show, and until when it stays true.
+ * {@code nextChangeAt} is Long.MAX_VALUE when nothing will change (flat profile, open schedule).
+ */
+public final class CurrentRate {
+    public final String profileName;  // null when no profile is scheduled
+    public final double rateUh;
+    public final long nextChangeAt;   // epoch millis
+    public final double nextRateUh;   // rate from nextChangeAt on; NaN if unknown (schedule or override change)
+
+    public CurrentRate(String profileName, double rateUh, long nextChangeAt, double nextRateUh) {
+        this.profileName = profileName;
+        this.rateUh = rateUh;
+        this.nextChangeAt = nextChangeAt;
+        this.nextRateUh = nextRateUh;
+    }
+
+    public static CurrentRate none(long nextChangeAt) {
+        return new CurrentRate(null, 0.0, nextChangeAt, Double.NaN);
+    }
+
+    public boolean hasProfile() { return profileName != null; }
+}
@@ -0,0 +1,86 @@
+package com.kukuchta.basaltracker.ui.widget;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import com.kukuchta.basaltracker.MainActivity;
+import com.kukuchta.basaltracker.R;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/** Ongoing, silent notification with the scheduled rate; removed when nothing is scheduled. */
+final class CurrentRateNotifier {
+    static final String CHANNEL_ID = "current_rate";
+    static final int NOTIFICATION_ID = 45;
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm");
+
+    private final Context context;
+    private final ZoneId zone;
+
+    CurrentRateNotifier(Context context, ZoneId zone) {
+        this.context = context;
+        this.zone = zone;
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                context.getString(R.string.current_rate_channel), NotificationManager.IMPORTANCE_LOW);
+        channel.setShowBadge(false);
+        context.getSystemService(NotificationManager.class).createNotificationChannel(channel);
+    }
+
+    void show(CurrentRate rate) {
+        NotificationManagerCompat nm = NotificationManagerCompat.from(context);
+        if (!rate.hasProfile()) {
+            nm.cancel(NOTIFICATION_ID);
+            return;
+        }
+        if (!nm.areNotificationsEnabled()) return;
+
+        NotificationCompat.Builder b = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_stat_basal)
+                .setContentTitle(rateText(context, rate))
+                .setContentText(rate.profileName)
+                .setSubText(nextText(context, rate, zone))
+                .setContentIntent(openApp(context))
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setSilent(true)
+                .setShowWhen(false)
+                .setCategory(NotificationCompat.CATEGORY_STATUS);
+        try {
+            nm.notify(NOTIFICATION_ID, b.build());
+        } catch (SecurityException ignored) {
+            // POST_NOTIFICATIONS revoked between the check and the post
+        }
+    }
+
+    static String rateText(Context context, CurrentRate rate) {
+        if (!rate.hasProfile()) return context.getString(R.string.current_rate_none);
+        return String.format(Locale.getDefault(), context.getString(R.string.current_rate_format), rate.rateUh);
+    }
+
+    static String nextText(Context context, CurrentRate rate, ZoneId zone) {
+        if (rate.nextChangeAt == Long.MAX_VALUE) return context.getString(R.string.current_rate_no_change);
+        String at = TIME.format(Instant.ofEpochMilli(rate.nextChangeAt).atZone(zone));
+        if (Double.isNaN(rate.nextRateUh)) {
+            return context.getString(R.string.current_rate_change_at, at);
+        }
+        return String.format(Locale.getDefault(),
+                context.getString(R.string.current_rate_next_format), at, rate.nextRateUh);
+    }
+
+    static PendingIntent openApp(Context context) {
+        Intent i = new Intent(context, MainActivity.class)
+                .setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        return PendingIntent.getActivity(context, 0, i,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+}
@@ -0,0 +1,114 @@
+package com.kukuchta.basaltracker.ui.widget;
+
+import com.kukuchta.basaltracker.domain.BasalOverride;
+import com.kukuchta.basaltracker.ui.editor.UiSegment;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * Pure planner: the run structure from {@link com.kukuchta.basaltracker.ui.editor.SegmentProjector}
+ * (adjacent runs always differ) gives the next real rate change directly, so the scheduler needs
+ * one alarm per change instead of polling. Runs are in local wall-clock minutes.
+ */
+public final class CurrentRatePlanner {
+    private static final int MINUTES_PER_DAY = 1440;
+
+    private CurrentRatePlanner() {}
+
+    /**
+     * Rate at {@code nowMs} and the next instant it changes.
+     * {@code scheduleBoundary} (epoch ms, Long.MAX_VALUE for none) is when the schedule may
+     * switch profiles; the earlier of the two wins.
+     */
+    public static CurrentRate plan(String profileName, List<UiSegment> runs, long nowMs,
+                                   ZoneId zone, long scheduleBoundary) {
+        if (runs.isEmpty()) throw new IllegalArgumentException("runs required");
+        ZonedDateTime local = Instant.ofEpochMilli(nowMs).atZone(zone);
+        int minute = local.getHour() * 60 + local.getMinute();
+
+        int i = 0;
+        while (i < runs.size() - 1 && runs.get(i).endMinutesExclusive <= minute) i++;
+        UiSegment run = runs.get(i);
+
+        long change = Long.MAX_VALUE;
+        double nextRate = Double.NaN;
+        if (runs.size() > 1) {
+            LocalDate date = local.toLocalDate();
+            int endMinute = run.endMinutesExclusive;
+            UiSegment next;
+            if (endMinute < MINUTES_PER_DAY) {
+                next = runs.get(i + 1);
+            } else {
+                // The last run continues into tomorrow's first run when their units match
+                date = date.plusDays(1);
+                UiSegment first = runs.get(0);
+                if (first.units == run.units) {
+                    endMinute = first.endMinutesExclusive;
+                    next = runs.get(1);
+                } else {
+                    endMinute = 0;
+                    next = first;
+                }
+            }
+            change = toEpochAfter(date, endMinute, zone, nowMs);
+            nextRate = next.rateUh;
+        }
+
+        if (scheduleBoundary < change) {
+            return new CurrentRate(profileName, run.rateUh, scheduleBoundary, Double.NaN);
+        }
+        return new CurrentRate(profileName, run.rateUh, change, nextRate);
+    }
+
+    /**
+     * Layers temporary overrides over a planned rate: the newest active override rescales or
+     * replaces it, and any override start or end before the planned change becomes the next change.
+     * An absolute override hides profile run boundaries, so those no longer count as changes.
+     */
+    public static CurrentRate applyOverrides(CurrentRate base, List<BasalOverride> overrides, long nowMs) {
+        if (!base.hasProfile() || overrides.isEmpty()) return base;
+        BasalOverride active = null;
+        long boundary = Long.MAX_VALUE;
+        for (BasalOverride o : overrides) {
+            if (o.startsAt <= nowMs && nowMs < o.endsAt && (active == null || o.id > active.id)) active = o;
+            if (o.startsAt > nowMs) boundary = Math.min(boundary, o.startsAt);
+            if (o.endsAt > nowMs) boundary = Math.min(boundary, o.endsAt);
+        }
+        double rate = base.rateUh;
+        long next = base.nextChangeAt;
+        double nextRate = base.nextRateUh;
+        if (active != null) {
+            rate = active.apply(rate);
+            if (active.kind == BasalOverride.Kind.ABSOLUTE) {
+                next = Long.MAX_VALUE;
+                nextRate = Double.NaN;
+            } else if (!Double.isNaN(nextRate)) {
+                nextRate = active.apply(nextRate);
+            }
+        }
+        if (boundary < next) {
+            next = boundary;
+            nextRate = Double.NaN;
+        }
+        return new CurrentRate(base.profileName, rate, next, nextRate);
+    }
+
+    /**
+     * Local (date, minute) as an instant strictly after {@code nowMs}. In a DST overlap the
+     * later occurrence is taken if the earlier one has already passed; a gap resolves forward.
+     */
+    private static long toEpochAfter(LocalDate date, int minuteOfDay, ZoneId zone, long nowMs) {
+        ZonedDateTime at = LocalDateTime.of(date, LocalTime.MIDNIGHT)
+                .plusMinutes(minuteOfDay)
+                .atZone(zone);
+        long ms = at.toInstant().toEpochMilli();
+        if (ms <= nowMs) ms = at.withLaterOffsetAtOverlap().toInstant().toEpochMilli();
+        return (ms <= nowMs) ? nowMs + 60_000L : ms;
+    }
+}
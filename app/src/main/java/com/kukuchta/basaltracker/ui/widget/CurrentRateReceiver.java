@@ -0,0 +1,22 @@
+package com.kukuchta.basaltracker.ui.widget;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/** Rate-change alarm, reboot and clock changes all come down to one refresh. */
+public class CurrentRateReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        if (!CurrentRateScheduler.ACTION_RATE_CHANGE.equals(action)
+                && !Intent.ACTION_BOOT_COMPLETED.equals(action)
+                && !Intent.ACTION_TIME_CHANGED.equals(action)
+                && !Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+            return;
+        }
+        PendingResult pending = goAsync();
+        CurrentRateScheduler.get(context).refresh(rate -> pending.finish());
+    }
+}
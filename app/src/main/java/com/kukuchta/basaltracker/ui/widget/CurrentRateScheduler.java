@@ -0,0 +1,130 @@
+package com.kukuchta.basaltracker.ui.widget;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+
+import com.kukuchta.basaltracker.data.db.AppDatabase;
+import com.kukuchta.basaltracker.data.db.DatabaseProvider;
+import com.kukuchta.basaltracker.data.repo.BasalOverrideRepository;
+import com.kukuchta.basaltracker.data.repo.BasalProfileRepository;
+import com.kukuchta.basaltracker.data.repo.ProfileScheduleRepository;
+import com.kukuchta.basaltracker.domain.ProfileAssignment;
+import com.kukuchta.basaltracker.ui.editor.SegmentProjector;
+
+import java.time.Clock;
+import java.util.List;
+
+/**
+ * Keeps the home-screen widget and the ongoing notification on the scheduled basal rate.
+ * Instead of polling, every refresh computes when the rate actually changes next (profile run
+ * boundary, schedule switch, temporary override start or end) and sets a single exact alarm for that instant; the alarm's
+ * receiver refreshes again. Flat days with an open-ended schedule set no alarm at all.
+ */
+public final class CurrentRateScheduler {
+    static final String ACTION_RATE_CHANGE = "com.kukuchta.basaltracker.action.RATE_CHANGE";
+
+    // How far ahead a not-yet-started assignment or override can cut the current rate short
+    private static final long SCHEDULE_LOOKAHEAD_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private static volatile CurrentRateScheduler INSTANCE;
+
+    private final Context context;
+    private final Clock clock;
+    private final BasalProfileRepository profiles;
+    private final ProfileScheduleRepository schedule;
+    private final BasalOverrideRepository overrides;
+    private final CurrentRateNotifier notifier;
+
+    public static CurrentRateScheduler get(Context context) {
+        if (INSTANCE == null) {
+            synchronized (CurrentRateScheduler.class) {
+                if (INSTANCE == null) {
+                    Context app = context.getApplicationContext();
+                    INSTANCE = new CurrentRateScheduler(app, DatabaseProvider.getDatabase(app),
+                            Clock.systemDefaultZone());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /** Tests pass an in-memory database and a fixed clock. */
+    public CurrentRateScheduler(Context context, AppDatabase db, Clock clock) {
+        this.context = context.getApplicationContext();
+        this.clock = clock;
+        this.profiles = new BasalProfileRepository(db);
+        this.schedule = new ProfileScheduleRepository(db);
+        this.overrides = new BasalOverrideRepository(db);
+        this.notifier = new CurrentRateNotifier(this.context, clock.getZone());
+    }
+
+    public interface RateCallback { void onResult(CurrentRate rate); }
+
+    /** Re-reads schedule, profile and overrides, republishes and re-arms the alarm. {@code cb} may be null. */
+    public void refresh(RateCallback cb) {
+        long now = clock.millis();
+        schedule.getAssignments(now, now + SCHEDULE_LOOKAHEAD_MS, upcoming ->
+                schedule.getActiveAssignment(now, active -> {
+                    long boundary = nextScheduleBoundary(upcoming, active, now);
+                    if (active == null) {
+                        publish(CurrentRate.none(boundary), cb);
+                        return;
+                    }
+                    profiles.getChangePointProfile(active.profileId, p -> {
+                        if (p == null) {
+                            publish(CurrentRate.none(boundary), cb);
+                            return;
+                        }
+                        CurrentRate base = CurrentRatePlanner.plan(p.getName(), SegmentProjector.project(p),
+                                now, clock.getZone(), boundary);
+                        overrides.getOverrides(now, now + SCHEDULE_LOOKAHEAD_MS, list ->
+                                publish(CurrentRatePlanner.applyOverrides(base, list, now), cb));
+                    });
+                }));
+    }
+
+    /** Earliest instant after {@code now} at which a different assignment could win. */
+    private static long nextScheduleBoundary(List<ProfileAssignment> upcoming,
+                                             ProfileAssignment active, long now) {
+        long boundary = Long.MAX_VALUE;
+        if (active != null && active.validTo != ProfileAssignment.OPEN_END) boundary = active.validTo;
+        for (ProfileAssignment a : upcoming) {
+            if (a.validFrom > now && a.validFrom < boundary) boundary = a.validFrom;
+            if (a.validTo > now && a.validTo != ProfileAssignment.OPEN_END && a.validTo < boundary) {
+                boundary = a.validTo;
+            }
+        }
+        return boundary;
+    }
+
+    private void publish(CurrentRate rate, RateCallback cb) {
+        notifier.show(rate);
+        CurrentRateWidgetProvider.render(context, rate, clock.getZone());
+        arm(rate.nextChangeAt);
+        if (cb != null) cb.onResult(rate);
+    }
+
+    private void arm(long triggerAt) {
+        AlarmManager am = context.getSystemService(AlarmManager.class);
+        PendingIntent pi = alarmIntent();
+        if (triggerAt == Long.MAX_VALUE) {
+            am.cancel(pi);
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && !am.canScheduleExactAlarms()) {
+            // Without the exact-alarm grant the update may land a few minutes late
+            am.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pi);
+        } else {
+            am.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerAt, pi);
+        }
+    }
+
+    private PendingIntent alarmIntent() {
+        Intent i = new Intent(context, CurrentRateReceiver.class).setAction(ACTION_RATE_CHANGE);
+        return PendingIntent.getBroadcast(context, 0, i,
+                PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+}
@@ -0,0 +1,39 @@
+package com.kukuchta.basaltracker.ui.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.widget.RemoteViews;
+
+import com.kukuchta.basaltracker.R;
+
+import java.time.ZoneId;
+
+/**
+ * Home-screen widget showing the scheduled rate. It has no update period of its own;
+ * {@link CurrentRateScheduler} pushes new content when the rate changes.
+ */
+public class CurrentRateWidgetProvider extends AppWidgetProvider {
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager manager, int[] appWidgetIds) {
+        PendingResult pending = goAsync();
+        CurrentRateScheduler.get(context).refresh(rate -> pending.finish());
+    }
+
+    /** Redraws every placed instance; a no-op when no widget is on the home screen. */
+    static void render(Context context, CurrentRate rate, ZoneId zone) {
+        AppWidgetManager manager = AppWidgetManager.getInstance(context);
+        int[] ids = manager.getAppWidgetIds(new ComponentName(context, CurrentRateWidgetProvider.class));
+        if (ids == null || ids.length == 0) return;
+
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_current_rate);
+        views.setTextViewText(R.id.tvWidgetRate, CurrentRateNotifier.rateText(context, rate));
+        views.setTextViewText(R.id.tvWidgetProfile,
+                rate.hasProfile() ? rate.profileName : context.getString(R.string.current_rate_no_profile));
+        views.setTextViewText(R.id.tvWidgetNext, CurrentRateNotifier.nextText(context, rate, zone));
+        views.setOnClickPendingIntent(R.id.widgetRoot, CurrentRateNotifier.openApp(context));
+        manager.updateAppWidget(ids, views);
+    }
+}
@@ -0,0 +1,93 @@
+package com.kukuchta.basaltracker.viewmodel;
+
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.kukuchta.basaltracker.data.repo.BasalOverrideRepository;
+import com.kukuchta.basaltracker.data.repo.BasalProfileRepository;
+import com.kukuchta.basaltracker.data.repo.ProfileScheduleRepository;
+import com.kukuchta.basaltracker.domain.BasalProfile;
+import com.kukuchta.basaltracker.domain.DeliveryTimeline;
+import com.kukuchta.basaltracker.domain.ProfileAssignment;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scheduled delivery across weeks or months: schedule, profiles and overrides for the range
+ * are read through their repositories and combined into one {@link DeliveryTimeline}.
+ */
+public class DeliveryTimelineViewModel extends AndroidViewModel {
+    /** Days shown after today, so upcoming schedule switches are visible too. */
+    public static final int DAYS_AHEAD = 7;
+
+    private final BasalProfileRepository profiles;
+    private final ProfileScheduleRepository schedule;
+    private final BasalOverrideRepository overrides;
+
+    private final MutableLiveData<DeliveryTimeline> timeline = new MutableLiveData<>();
+
+    // Last request wins: a range picked while an earlier one is loading supersedes it
+    private final AtomicLong generation = new AtomicLong();
+
+    public DeliveryTimelineViewModel(@NonNull Application app) {
+        super(app);
+        this.profiles = new BasalProfileRepository(app);
+        this.schedule = new ProfileScheduleRepository(app);
+        this.overrides = new BasalOverrideRepository(app);
+    }
+
+    public LiveData<DeliveryTimeline> getTimeline() { return timeline; }
+
+    /** Loads [today - daysBack, today + DAYS_AHEAD] in local days. */
+    public void load(int daysBack) {
+        if (daysBack <= 0) throw new IllegalArgumentException("Zakres musi obejmować co najmniej jeden dzień.");
+        long gen = generation.incrementAndGet();
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate today = LocalDate.now(zone);
+        long from = today.minusDays(daysBack).atStartOfDay(zone).toInstant().toEpochMilli();
+        long to = today.plusDays(DAYS_AHEAD + 1).atStartOfDay(zone).toInstant().toEpochMilli();
+
+        schedule.getAssignments(from, to, assignments -> {
+            if (gen != generation.get()) return;
+            Set<Long> ids = new LinkedHashSet<>();
+            for (ProfileAssignment a : assignments) ids.add(a.profileId);
+            List<CompletableFuture<BasalProfile>> reads = new ArrayList<>(ids.size());
+            for (long id : ids) reads.add(profiles.getProfileAsync(id));
+
+            CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).thenRun(() ->
+                    overrides.getOverrides(from, to, list -> {
+                        if (gen != generation.get()) return;
+                        Map<Long, BasalProfile> byId = new HashMap<>();
+                        for (CompletableFuture<BasalProfile> f : reads) {
+                            BasalProfile p = f.join();
+                            if (p != null) byId.put(p.getId(), p);
+                        }
+                        // Built on the override lane: a year of hourly steps is a few ms
+                        DeliveryTimeline t = DeliveryTimeline.build(assignments, byId, list, zone, from, to);
+                        if (gen == generation.get()) timeline.postValue(t);
+                    }));
+        });
+    }
+
+    @Override
+    protected void onCleared() {
+        generation.incrementAndGet();
+        profiles.close();
+        schedule.close();
+        overrides.close();
+        super.onCleared();
+    }
+}
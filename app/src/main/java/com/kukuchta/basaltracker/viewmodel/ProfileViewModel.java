@@ -1,59 +1,203 @@
 package com.kukuchta.basaltracker.viewmodel;
 
 import android.app.Application;
+import android.os.Bundle;
+import android.util.LruCache;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.SavedStateHandle;
 
+import com.kukuchta.basaltracker.data.repo.BasalOverrideRepository;
 import com.kukuchta.basaltracker.data.repo.BasalProfileRepository;
+import com.kukuchta.basaltracker.domain.BasalOverride;
 import com.kukuchta.basaltracker.domain.BasalProfile;
+import com.kukuchta.basaltracker.domain.EffectiveBasalSchedule;
+import com.kukuchta.basaltracker.domain.InsulinActionKernel;
+import com.kukuchta.basaltracker.domain.InsulinOnBoard;
+import com.kukuchta.basaltracker.domain.IobCurve;
 import com.kukuchta.basaltracker.domain.ProfileOrigin;
+import com.kukuchta.basaltracker.domain.SafetyLimits;
+import com.kukuchta.basaltracker.domain.SafetyRuleEngine;
+import com.kukuchta.basaltracker.domain.SafetyViolation;
+import com.kukuchta.basaltracker.ui.editor.EffectiveCurve;
 import com.kukuchta.basaltracker.ui.editor.SegmentProjector;
 import com.kukuchta.basaltracker.ui.editor.UiSegment;
+import com.kukuchta.basaltracker.ui.list.ProfileRowModel;
+import com.kukuchta.basaltracker.ui.widget.CurrentRateScheduler;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
 public class ProfileViewModel extends AndroidViewModel {
 
     private final BasalProfileRepository repo;
+    private final SavedStateHandle savedState;
 
     private final MutableLiveData<List<BasalProfile>> profiles = new MutableLiveData<>();
-    private final MutableLiveData<BasalProfile> currentProfile = new MutableLiveData<>();
+    private final MutableLiveData<BasalProfile> currentProfile;
+
+    // List rows formatted on the loading thread, published together with profiles
+    private final MutableLiveData<List<ProfileRowModel>> profileRows = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> searchTruncated = new MutableLiveData<>(false);
 
     // Compressed, UI-facing representation of contiguous runs of equal hourly units
     private final MediatorLiveData<List<UiSegment>> uiSegments = new MediatorLiveData<>();
 
     private long currentProfileId = 0;
 
-    public ProfileViewModel(@NonNull Application app) {
+    // Active list filter; refreshes after writes keep honouring it
+    private volatile String currentQuery = "";
+
+    // Last request wins: every editor load or local replacement bumps the generation and
+    // cancels the pending load, so a slow earlier load can never overwrite currentProfile.
+    private long profileGeneration;
+    private CompletableFuture<BasalProfile> pendingProfile;
+    private volatile boolean cleared;
+
+    // Editor seeding: the published list indexed by id, plus working copies prepared ahead
+    // for rows around the viewport. A seed is only used if it was copied from the profile
+    // object still in the list, so a refreshed list invalidates older seeds implicitly.
+    private static final int PREFETCH_MARGIN = 6;
+    private volatile Map<Long, BasalProfile> listIndex = Collections.emptyMap();
+    private final LruCache<Long, EditorSeed> editorSeeds = new LruCache<>(4 * PREFETCH_MARGIN + 16);
+    private final ExecutorService prefetch = Executors.newSingleThreadExecutor();
+
+    private static final class EditorSeed {
+        final BasalProfile source;
+        final BasalProfile copy;
+        EditorSeed(BasalProfile source) {
+            this.source = source;
+            this.copy = workingCopyOf(source);
+        }
+    }
+
+    // Safety rules over the working copy; main thread only. A new profile instance is
+    // evaluated in full, edits to the bound instance only re-check the touched hours.
+    private final SafetyRuleEngine safety = new SafetyRuleEngine();
+    private BasalProfile safetyBound;
+    private final MutableLiveData<List<SafetyViolation>> safetyViolations =
+            new MutableLiveData<>(Collections.emptyList());
+    // The user's limits survive recreation as {maxRateUh, maxStepUh, maxDailyDoseU}
+    private static final String STATE_SAFETY_LIMITS = "editor.safetyLimits";
+
+    // Temporary overrides for the displayed day, layered over the working copy for the chart.
+    // Null curve = no override touches the day, the plain profile is the effective one.
+    private BasalOverrideRepository overrideRepo;
+    private final MutableLiveData<List<BasalOverride>> dayOverrides =
+            new MutableLiveData<>(Collections.emptyList());
+    private final MediatorLiveData<EffectiveCurve> effectiveCurve = new MediatorLiveData<>();
+    private LocalDate overrideDay;
+
+    // Basal insulin on board of the working copy, recomputed per edit (tens of microseconds)
+    private final MediatorLiveData<IobCurve> iobCurve = new MediatorLiveData<>();
+    private InsulinActionKernel insulinKernel = InsulinActionKernel.DEFAULT;
+
+    // The working copy survives process death through the saved state; dirty = unsaved edits
+    private static final String STATE_WORKING_COPY = "editor.workingCopy";
+    private volatile boolean dirty;
+
+    public ProfileViewModel(@NonNull Application app, @NonNull SavedStateHandle savedState) {
+        this(app, savedState, new BasalProfileRepository(app));
+    }
+
+    /** Direct wiring, e.g. a repository over an in-memory database in JVM stress tests. */
+    public ProfileViewModel(@NonNull Application app, @NonNull SavedStateHandle savedState,
+                            @NonNull BasalProfileRepository repo) {
         super(app);
-        repo = new BasalProfileRepository(app);
+        this.repo = repo;
+        this.savedState = savedState;
+        double[] limits = savedState.get(STATE_SAFETY_LIMITS);
+        safety.setLimits(limits == null
+                ? SafetyLimits.DEFAULT
+                : new SafetyLimits(limits[0], limits[1], limits[2]));
 
-        // Recompute segments whenever the profile changes
+        // Restored synchronously: the recreated editor binds this before any DB work
+        Bundle saved = savedState.get(STATE_WORKING_COPY);
+        BasalProfile restored = WorkingCopyState.read(saved);
+        if (restored != null) {
+            currentProfileId = restored.getId();
+            dirty = WorkingCopyState.isDirty(saved);
+            currentProfile = new MutableLiveData<>(restored);
+        } else {
+            currentProfile = new MutableLiveData<>();
+        }
+        // Encoded only when the state is actually saved, not on every edit
+        savedState.setSavedStateProvider(STATE_WORKING_COPY, () -> {
+            BasalProfile p = currentProfile.getValue();
+            return (p == null) ? new Bundle() : WorkingCopyState.write(p, dirty);
+        });
+
+        // Recompute segments whenever the profile changes. Mediator sources are dispatched on
+        // the main thread, so setValue keeps segments in the same frame as the profile.
         uiSegments.addSource(currentProfile, p -> {
+            bindSafety(p);
             if (p == null) {
-                uiSegments.postValue(Collections.emptyList());
+                uiSegments.setValue(Collections.emptyList());
             } else {
                 int[] units = p.copyUnitsByHour();
-                uiSegments.postValue(SegmentProjector.project(units, p.getAccuracy()));
+                uiSegments.setValue(SegmentProjector.project(units, p.getAccuracy()));
             }
         });
+
+        effectiveCurve.addSource(currentProfile, p -> rebuildEffectiveCurve());
+        effectiveCurve.addSource(dayOverrides, list -> rebuildEffectiveCurve());
+        iobCurve.addSource(currentProfile, p -> rebuildIobCurve());
     }
 
     // --- Exposed LiveData ---
     public LiveData<List<BasalProfile>> getProfiles() { return profiles; }
+    public LiveData<List<ProfileRowModel>> getProfileRows() { return profileRows; }
+    /** True while the list shows only the newest {@link BasalProfileRepository#SEARCH_LIMIT} rows. */
+    public LiveData<Boolean> isSearchTruncated() { return searchTruncated; }
     public LiveData<BasalProfile> getCurrentProfile() { return currentProfile; }
     public LiveData<List<UiSegment>> getUiSegments() { return uiSegments; }
+    public LiveData<List<SafetyViolation>> getSafetyViolations() { return safetyViolations; }
+    public LiveData<EffectiveCurve> getEffectiveCurve() { return effectiveCurve; }
+    public LiveData<IobCurve> getIobCurve() { return iobCurve; }
 
     // --- List & persistence ---
-    public void loadAllProfiles() { repo.getAllProfiles(profiles::postValue); }
+    /** Goes through the search lane even without a query, so it is ordered against keystrokes. */
+    public void loadAllProfiles() {
+        if (cleared) return;
+        repo.searchProfiles(currentQuery, this::publishProfiles);
+    }
+
+    /** Search-as-you-type: call on every keystroke, stale results are dropped by the repository. */
+    public void searchProfiles(String query) {
+        if (cleared) return;
+        currentQuery = (query == null) ? "" : query.trim();
+        repo.searchProfiles(currentQuery, this::publishProfiles);
+    }
+
+    /** Runs on the repository thread, so row formatting never touches the main thread. */
+    private void publishProfiles(List<BasalProfile> list, boolean truncated) {
+        Locale locale = Locale.getDefault();
+        List<ProfileRowModel> rows = new ArrayList<>(list.size());
+        Map<Long, BasalProfile> index = new HashMap<>(list.size() * 2);
+        for (BasalProfile p : list) {
+            rows.add(ProfileRowModel.of(p, locale));
+            index.put(p.getId(), p);
+        }
+        listIndex = index;
+        profiles.postValue(list);
+        profileRows.postValue(rows);
+        searchTruncated.postValue(truncated);
+    }
 
     public void createEmptyProfile(String name, double accuracy, Consumer<Long> onSuccessWithId) {
         repo.createEmptyProfile(name, accuracy, id -> {
@@ -78,29 +222,101 @@ public class ProfileViewModel extends AndroidViewModel {
     public void deleteProfile(long id, Runnable onDone) {
         repo.deleteProfile(id, () -> {
             loadAllProfiles();
+            // The deleted profile may have been the scheduled one (its assignments cascade away)
+            CurrentRateScheduler.get(getApplication()).refresh(null);
             if (onDone != null) onDone.run();
         });
     }
 
+    /**
+     * Prepares editor working copies for list rows [first - margin, last + margin] in the
+     * background. Call from the list's scroll listener with the visible adapter positions.
+     */
+    public void prefetchAround(int firstVisible, int lastVisible) {
+        List<BasalProfile> list = profiles.getValue();
+        if (cleared || list == null || list.isEmpty() || firstVisible < 0) return;
+        final int from = Math.max(0, firstVisible - PREFETCH_MARGIN);
+        final int to = Math.min(list.size() - 1, lastVisible + PREFETCH_MARGIN);
+        prefetch.execute(() -> {
+            for (int i = from; i <= to; i++) {
+                BasalProfile p = list.get(i);
+                EditorSeed seed = editorSeeds.get(p.getId());
+                if (seed == null || seed.source != p) editorSeeds.put(p.getId(), new EditorSeed(p));
+            }
+        });
+    }
+
     // --- Editor ---
+
+    /**
+     * Opens the editor on {@code id}. Main thread only. When the profile is in the current list
+     * the editor is seeded synchronously (first frame shows real data); otherwise it falls back
+     * to an asynchronous load.
+     */
+    public void openProfile(long id) {
+        BasalProfile source = listIndex.get(id);
+        if (source == null) {
+            loadProfile(id);
+            return;
+        }
+        EditorSeed seed = editorSeeds.remove(id);
+        BasalProfile working = (seed != null && seed.source == source) ? seed.copy : workingCopyOf(source);
+        synchronized (this) {
+            currentProfileId = id;
+            supersedePendingLoad();
+            dirty = false;
+            currentProfile.setValue(working);
+        }
+    }
+
+    /** The editor mutates its profile in place, so it never gets the list's instance. */
+    private static BasalProfile workingCopyOf(BasalProfile p) {
+        return new BasalProfile(p.getId(), p.getName(), p.getAccuracy(), p.getOrigin(),
+                p.getBaseProfileId(), p.getMetadata(), p.copyUnitsByHour());
+    }
+
     public void loadProfile(long id) {
         loadProfile(id, null);
     }
 
     private void loadProfile(long id, Consumer<BasalProfile> onLoaded) {
-        currentProfileId = id;
-        repo.getProfile(id, p -> {
-            currentProfile.postValue(p);
+        if (cleared) return;
+        final long generation;
+        final CompletableFuture<BasalProfile> load;
+        synchronized (this) {
+            currentProfileId = id;
+            generation = supersedePendingLoad();
+            load = repo.getProfileAsync(id);
+            pendingProfile = load;
+        }
+        load.thenAccept(p -> {
+            synchronized (this) {
+                if (generation != profileGeneration) return;
+                pendingProfile = null;
+                dirty = false;
+                currentProfile.postValue(p);
+            }
             if (onLoaded != null) {
                 onLoaded.accept(p);
             }
         });
     }
 
-
     public void setCurrentProfile(BasalProfile p) {
-        currentProfileId = p.getId();
-        currentProfile.postValue(p);
+        synchronized (this) {
+            currentProfileId = p.getId();
+            supersedePendingLoad();
+            currentProfile.postValue(p);
+        }
+    }
+
+    /** Caller holds the lock. Returns the new generation. */
+    private long supersedePendingLoad() {
+        if (pendingProfile != null) {
+            pendingProfile.cancel(false);
+            pendingProfile = null;
+        }
+        return ++profileGeneration;
     }
 
     /** Hour-grid bump (+/- one accuracy unit). */
@@ -108,6 +324,8 @@ public class ProfileViewModel extends AndroidViewModel {
         BasalProfile p = currentProfile.getValue();
         if (p == null) throw new IllegalStateException("Profil niezaładowany.");
         p.adjustRateForHour(hour, increase);
+        recheckHours(p, hour, hour + 1);
+        dirty = true;
         currentProfile.postValue(p);
     }
 
@@ -116,6 +334,8 @@ public class ProfileViewModel extends AndroidViewModel {
         BasalProfile p = currentProfile.getValue();
         if (p == null) throw new IllegalStateException("Profil niezaładowany.");
         p.setRateAtHour(hour, newRate);
+        recheckHours(p, hour, hour + 1);
+        dirty = true;
         currentProfile.postValue(p);
     }
 
@@ -156,6 +376,8 @@ public class ProfileViewModel extends AndroidViewModel {
             }
         }
 
+        recheckHours(p, start, Math.max(origEnd, newEndHourExclusive));
+        dirty = true;
         setCurrentProfile(p);
     }
 
@@ -166,16 +388,164 @@ public class ProfileViewModel extends AndroidViewModel {
         BasalProfile p = getCurrentProfile().getValue();
         if (p == null) throw new IllegalStateException("Profil niezaładowany.");
         for (int h = 0; h < 24; h++) p.setRateAtHour(h, ratesUh[h]);
+        recheckHours(p, 0, 24);
+        dirty = true;
         setCurrentProfile(p);
     }
 
+    // --- Temporary overrides ---
+
+    /** Reloads the overrides touching today (local). Call on editor start and after midnight. */
+    public void refreshOverrides() {
+        if (cleared) return;
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate day = LocalDate.now(zone);
+        long from = day.atStartOfDay(zone).toInstant().toEpochMilli();
+        long to = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        overrides().getOverrides(from, to, list -> {
+            synchronized (this) {
+                overrideDay = day;
+            }
+            dayOverrides.postValue(list);
+        });
+    }
+
+    /** Starts a temporary override now, for {@code durationMinutes}. */
+    public void addTemporaryOverride(BasalOverride.Kind kind, double value, int durationMinutes) {
+        if (durationMinutes <= 0) throw new IllegalArgumentException("Czas trwania musi być > 0.");
+        long now = System.currentTimeMillis();
+        overrides().addOverride(kind, value, now, now + durationMinutes * 60_000L, id -> onOverridesChanged());
+    }
+
+    public void removeTemporaryOverride(long id) {
+        overrides().removeOverride(id, this::onOverridesChanged);
+    }
+
+    private void onOverridesChanged() {
+        refreshOverrides();
+        CurrentRateScheduler.get(getApplication()).refresh(null);
+    }
+
+    private synchronized BasalOverrideRepository overrides() {
+        if (overrideRepo == null) overrideRepo = new BasalOverrideRepository(getApplication());
+        return overrideRepo;
+    }
+
+    /**
+     * Main thread (mediator). Walks only the day's change points through the lazy schedule:
+     * O(24 + k log k) for k overrides, once per profile edit or override change.
+     */
+    private void rebuildEffectiveCurve() {
+        BasalProfile p = currentProfile.getValue();
+        List<BasalOverride> list = dayOverrides.getValue();
+        LocalDate day;
+        synchronized (this) {
+            day = overrideDay;
+        }
+        if (p == null || list == null || list.isEmpty() || day == null) {
+            effectiveCurve.setValue(null);
+            return;
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        long from = day.atStartOfDay(zone).toInstant().toEpochMilli();
+        long to = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        EffectiveBasalSchedule schedule = new EffectiveBasalSchedule(p, list, zone);
+
+        int max = 26 + 2 * list.size(); // hour edges (+1 on a 25 h day) and override edges
+        long[] times = new long[max];
+        double[] rates = new double[max];
+        int n = schedule.stepCurve(from, to, times, rates);
+        float[] hours = new float[n];
+        float[] ratesF = new float[n];
+        for (int i = 0; i < n; i++) {
+            // Chart x is local wall-clock hours, like the hour grid itself; the repeated hour
+            // of a DST fall-back day is folded so x stays sorted
+            int second = Instant.ofEpochMilli(times[i]).atZone(zone).toLocalTime().toSecondOfDay();
+            hours[i] = (i == 0) ? 0f : Math.max(second / 3600f, hours[i - 1]);
+            ratesF[i] = (float) rates[i];
+        }
+        effectiveCurve.setValue(new EffectiveCurve(hours, ratesF, n));
+    }
+
+    /** Replaces the insulin action model; the IOB curve is recomputed immediately. Main thread. */
+    public void setInsulinKernel(@NonNull InsulinActionKernel kernel) {
+        insulinKernel = kernel;
+        rebuildIobCurve();
+    }
+
+    /** Main thread (mediator); the working copy repeated daily, ignoring overrides. */
+    private void rebuildIobCurve() {
+        BasalProfile p = currentProfile.getValue();
+        iobCurve.setValue(p == null ? null : InsulinOnBoard.day(p, insulinKernel));
+    }
+
+    // --- Safety rules ---
+
+    /**
+     * Replaces the clinical limits ({@link SafetyLimits#DEFAULT} until called); the working copy
+     * is re-evaluated immediately. Main thread.
+     */
+    public void setSafetyLimits(@NonNull SafetyLimits limits) {
+        safety.setLimits(limits);
+        savedState.set(STATE_SAFETY_LIMITS,
+                new double[]{limits.maxRateUh, limits.maxStepUh, limits.maxDailyDoseU});
+        safetyViolations.setValue(safety.getViolations());
+    }
+
+    public SafetyLimits getSafetyLimits() { return safety.getLimits(); }
+
+    private void bindSafety(BasalProfile p) {
+        if (p == safetyBound) return; // in-place edit, already checked incrementally
+        safetyBound = p;
+        if (p == null) {
+            safety.reset(1.0, new int[24]);
+        } else {
+            safety.reset(p.getAccuracy(), p.copyUnitsByHour());
+        }
+        safetyViolations.setValue(safety.getViolations());
+    }
+
+    /** Feeds edited hours [from, toExclusive) of the bound profile to the engine. */
+    private void recheckHours(BasalProfile p, int from, int toExclusive) {
+        if (p != safetyBound) return; // not bound yet: the mediator evaluates it in full
+        boolean changed = false;
+        for (int h = from; h < toExclusive; h++) {
+            changed |= safety.onHourChanged(h, p.getUnitsAtHour(h));
+        }
+        if (changed) safetyViolations.setValue(safety.getViolations());
+    }
+
+    /** True while the working copy has edits not yet written to the database. */
+    public boolean hasUnsavedChanges() { return dirty; }
+
     public void saveCurrentProfile() {
+        saveCurrentProfile(null);
+    }
+
+    /** {@code onSaved} runs on the repository thread once the row is written and reloads are queued. */
+    public void saveCurrentProfile(Consumer<Long> onSaved) {
         BasalProfile p = currentProfile.getValue();
         if (p == null) throw new IllegalStateException("Brak profilu do zapisu.");
         repo.upsert(p, id -> {
             currentProfileId = id;
             loadProfile(id);
             loadAllProfiles();
+            CurrentRateScheduler.get(getApplication()).refresh(null); // rate or next change may differ now
+            if (onSaved != null) onSaved.accept(id);
         });
     }
+
+    @Override
+    protected void onCleared() {
+        cleared = true;
+        synchronized (this) {
+            supersedePendingLoad();
+        }
+        prefetch.shutdownNow();
+        repo.close();
+        synchronized (this) {
+            if (overrideRepo != null) overrideRepo.close();
+        }
+        super.onCleared();
+    }
 }
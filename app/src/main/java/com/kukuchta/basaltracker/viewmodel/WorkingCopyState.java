@@ -0,0 +1,77 @@
+package com.kukuchta.basaltracker.viewmodel;
+
+import android.os.Bundle;
+
+import com.kukuchta.basaltracker.domain.BasalProfile;
+import com.kukuchta.basaltracker.domain.ProfileOrigin;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact saved-state form of the editor's working copy: primitives and one int[24] in a flat
+ * Bundle (a few hundred bytes), no Parcelable or JSON. Decoding is synchronous and touches
+ * no database.
+ */
+final class WorkingCopyState {
+    private static final String ID = "id";
+    private static final String NAME = "name";
+    private static final String ACCURACY = "accuracy";
+    private static final String ORIGIN = "origin";
+    private static final String BASE_ID = "baseId";
+    private static final String UNITS = "units";
+    private static final String META_KEYS = "metaKeys";
+    private static final String META_VALUES = "metaValues";
+    private static final String DIRTY = "dirty";
+
+    private WorkingCopyState() {}
+
+    static Bundle write(BasalProfile p, boolean dirty) {
+        Bundle b = new Bundle();
+        b.putLong(ID, p.getId());
+        b.putString(NAME, p.getName());
+        b.putDouble(ACCURACY, p.getAccuracy());
+        b.putString(ORIGIN, p.getOrigin().name());
+        if (p.getBaseProfileId() != null) b.putLong(BASE_ID, p.getBaseProfileId());
+        b.putIntArray(UNITS, p.copyUnitsByHour());
+        Map<String, String> meta = p.getMetadata();
+        if (!meta.isEmpty()) {
+            String[] keys = new String[meta.size()];
+            String[] values = new String[meta.size()];
+            int i = 0;
+            for (Map.Entry<String, String> e : meta.entrySet()) {
+                keys[i] = e.getKey();
+                values[i++] = e.getValue();
+            }
+            b.putStringArray(META_KEYS, keys);
+            b.putStringArray(META_VALUES, values);
+        }
+        b.putBoolean(DIRTY, dirty);
+        return b;
+    }
+
+    /** Null when nothing was saved (empty or foreign bundle). */
+    static BasalProfile read(Bundle b) {
+        if (b == null || !b.containsKey(UNITS)) return null;
+        Map<String, String> meta = new HashMap<>();
+        String[] keys = b.getStringArray(META_KEYS);
+        String[] values = b.getStringArray(META_VALUES);
+        if (keys != null && values != null) {
+            for (int i = 0; i < keys.length; i++) meta.put(keys[i], values[i]);
+        }
+        String origin = b.getString(ORIGIN);
+        return new BasalProfile(
+                b.getLong(ID),
+                b.getString(NAME, ""),
+                b.getDouble(ACCURACY),
+                origin == null ? null : ProfileOrigin.valueOf(origin),
+                b.containsKey(BASE_ID) ? b.getLong(BASE_ID) : null,
+                meta,
+                b.getIntArray(UNITS)
+        );
+    }
+
+    static boolean isDirty(Bundle b) {
+        return b != null && b.getBoolean(DIRTY, false);
+    }
+}
@@ -0,0 +1,209 @@
+package com.kukuchta.basaltracker.data.backup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.app.Application;
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.kukuchta.basaltracker.data.db.AppDatabase;
+import com.kukuchta.basaltracker.data.db.entities.BasalProfileEntity;
+import com.kukuchta.basaltracker.data.db.entities.ProfileAssignmentEntity;
+import com.kukuchta.basaltracker.data.mapper.BasalProfileMapper;
+import com.kukuchta.basaltracker.data.repo.BasalProfileRepository;
+import com.kukuchta.basaltracker.domain.BasalProfile;
+import com.kukuchta.basaltracker.domain.ChangePointProfile;
+import com.kukuchta.basaltracker.domain.ProfileOrigin;
+import com.kukuchta.basaltracker.testutil.ProfileFixtures;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Export / restore of {@link ProfileSnapshotWriter} / {@link ProfileSnapshotReader} files
+ * through {@link BasalProfileRepository} on an in-memory database: every column of profiles,
+ * assignments and revisions must come back unchanged, and a damaged file must be rejected
+ * before the library is touched.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ProfileSnapshotRoundTripTest {
+
+    private static final long TIMEOUT_S = 10;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private AppDatabase db;
+    private BasalProfileRepository repo;
+
+    @Before
+    public void setUp() throws Exception {
+        Application app = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(app, AppDatabase.class)
+                .allowMainThreadQueries()
+                .build();
+        repo = new BasalProfileRepository(db);
+        seed();
+    }
+
+    @After
+    public void tearDown() {
+        repo.close();
+        db.close();
+    }
+
+    @Test
+    public void restoreReproducesEveryTable() throws Exception {
+        List<String> profiles = dump("basal_profiles");
+        List<String> assignments = dump("profile_assignments");
+        List<String> revisions = dump("basal_profile_revisions");
+        File file = tmp.newFile("library.snap");
+        assertEquals(profiles.size(), export(file));
+
+        // Diverge from the snapshot: one profile (and its assignment) gone, one added
+        long removed = db.basalProfileDao().getProfileChunk(0, 1).get(0).id;
+        db.basalProfileDao().deleteProfile(removed);
+        db.basalProfileDao().insertProfile(new ProfileFixtures(7).nextEntity(99));
+
+        assertEquals(profiles.size(), restore(file));
+        assertEquals(profiles, dump("basal_profiles"));
+        assertEquals(assignments, dump("profile_assignments"));
+        assertEquals(revisions, dump("basal_profile_revisions"));
+    }
+
+    @Test
+    public void damagedBlockIsRejectedBeforeAnythingIsDeleted() throws Exception {
+        File file = tmp.newFile("library.snap");
+        export(file);
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+            long at = ProfileSnapshotFormat.HEADER_SIZE + 17; // inside block 0
+            f.seek(at);
+            int b = f.read();
+            f.seek(at);
+            f.write(b ^ 0x40);
+        }
+        db.basalProfileDao().insertProfile(new ProfileFixtures(7).nextEntity(99));
+        List<String> profiles = dump("basal_profiles");
+        List<String> assignments = dump("profile_assignments");
+        List<String> revisions = dump("basal_profile_revisions");
+
+        try {
+            restore(file);
+            fail("damaged snapshot was restored");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(profiles, dump("basal_profiles"));
+        assertEquals(assignments, dump("profile_assignments"));
+        assertEquals(revisions, dump("basal_profile_revisions"));
+    }
+
+    /** Hour-grid rows with revisions, a row with null strings and blobs, a sub-hour row, assignments. */
+    private void seed() throws Exception {
+        ProfileFixtures fixtures = new ProfileFixtures(42);
+        long first = 0;
+        for (int i = 0; i < 20; i++) {
+            BasalProfile p = fixtures.nextProfile(i);
+            long id = upsert(p);
+            if (first == 0) first = id;
+            if (i % 3 == 0) {
+                // Second save: a delta revision
+                int[] units = p.copyUnitsByHour();
+                units[5]++;
+                upsert(new BasalProfile(id, p.getName(), p.getAccuracy(), p.getOrigin(),
+                        p.getBaseProfileId(), p.getMetadata(), units));
+            }
+        }
+
+        BasalProfileEntity bare = BasalProfileMapper.toEntity(new BasalProfile(0, "x", 0.1,
+                ProfileOrigin.IMPORTED, first, new HashMap<>(), new int[24]));
+        bare.name = null;
+        bare.metadataJson = null;
+        bare.metadataSearchText = null;
+        db.basalProfileDao().insertProfile(bare);
+
+        CompletableFuture<Long> subHour = new CompletableFuture<>();
+        repo.upsertChangePointProfile(new ChangePointProfile(0, "Podgodzinowy", 0.05, 15,
+                ProfileOrigin.USER_MODIFIED, null, null,
+                new int[] { 0, 15, 390, 1425 }, new int[] { 10, 12, 8, 9 }), subHour::complete);
+        long subHourId = subHour.get(TIMEOUT_S, TimeUnit.SECONDS);
+
+        assign(first, 1_000L, 2_000L);
+        assign(subHourId, 1_500L, Long.MAX_VALUE);
+    }
+
+    private long upsert(BasalProfile p) throws Exception {
+        CompletableFuture<Long> id = new CompletableFuture<>();
+        repo.upsert(p, id::complete);
+        return id.get(TIMEOUT_S, TimeUnit.SECONDS);
+    }
+
+    private void assign(long profileId, long from, long to) {
+        ProfileAssignmentEntity a = new ProfileAssignmentEntity();
+        a.profileId = profileId;
+        a.validFrom = from;
+        a.validTo = to;
+        a.createdAt = 3_000L;
+        db.profileAssignmentDao().insertAssignment(a);
+    }
+
+    private int export(File file) throws Exception {
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+        repo.exportSnapshot(file, callback(done));
+        return done.get(TIMEOUT_S, TimeUnit.SECONDS);
+    }
+
+    private int restore(File file) throws Exception {
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+        repo.restoreSnapshot(file, callback(done));
+        return done.get(TIMEOUT_S, TimeUnit.SECONDS);
+    }
+
+    private static BasalProfileRepository.SnapshotCallback callback(CompletableFuture<Integer> done) {
+        return new BasalProfileRepository.SnapshotCallback() {
+            @Override public void onDone(int profileCount) { done.complete(profileCount); }
+            @Override public void onError(IOException error) { done.completeExceptionally(error); }
+        };
+    }
+
+    /** Every row of a table in id order, every column rendered (blobs as byte lists, nulls as "null"). */
+    private List<String> dump(String table) {
+        List<String> rows = new ArrayList<>();
+        try (Cursor c = db.getOpenHelper().getReadableDatabase().query("SELECT * FROM " + table + " ORDER BY id")) {
+            while (c.moveToNext()) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < c.getColumnCount(); i++) {
+                    sb.append(c.getColumnName(i)).append('=');
+                    switch (c.getType(i)) {
+                        case Cursor.FIELD_TYPE_NULL: sb.append("null"); break;
+                        case Cursor.FIELD_TYPE_BLOB: sb.append(Arrays.toString(c.getBlob(i))); break;
+                        default: sb.append(c.getString(i)); break;
+                    }
+                    sb.append(';');
+                }
+                rows.add(sb.toString());
+            }
+        }
+        return rows;
+    }
+}
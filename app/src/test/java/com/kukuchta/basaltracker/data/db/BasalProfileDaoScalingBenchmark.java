@@ -0,0 +1,200 @@
+package com.kukuchta.basaltracker.data.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.kukuchta.basaltracker.data.db.entities.BasalProfileEntity;
+import com.kukuchta.basaltracker.data.mapper.BasalProfileMapper;
+import com.kukuchta.basaltracker.data.repo.BasalProfileRepository;
+import com.kukuchta.basaltracker.domain.BasalProfile;
+import com.kukuchta.basaltracker.testutil.LatencyRecorder;
+import com.kukuchta.basaltracker.testutil.ProfileFixtures;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Data-size scaling benchmark for {@link BasalProfileDao} and the repository on top of it.
+ *
+ * Opt-in, because the 100k tier takes minutes under Robolectric:
+ *   ./gradlew :app:testDebugUnitTest --tests '*DaoScalingBenchmark' -Pbenchmark.enabled=true
+ *
+ * Knobs (all optional, passed as -P gradle properties):
+ * - benchmark.sizes   comma-separated library sizes, default 1000,10000,100000
+ * - benchmark.lookups random getProfile/updateProfile calls per size, default 2000
+ * - benchmark.output  CSV path (relative to the app module), default benchmarks/dao-scaling.csv
+ *
+ * The CSV is meant to be committed, so schema changes show their cost in review.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BasalProfileDaoScalingBenchmark {
+
+    private static final int LIST_ITERATIONS = 5;
+    private static final long CALLBACK_TIMEOUT_S = 120;
+
+    private final List<String> rows = new ArrayList<>();
+
+    @Before
+    public void requireOptIn() {
+        assumeTrue("set -Pbenchmark.enabled=true to run",
+                Boolean.parseBoolean(System.getProperty("benchmark.enabled", "false")));
+    }
+
+    @After
+    public void writeResults() throws IOException {
+        if (rows.isEmpty()) return;
+        File out = new File(System.getProperty("benchmark.output", "benchmarks/dao-scaling.csv"));
+        File dir = out.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        try (PrintWriter w = new PrintWriter(new FileWriter(out, false))) {
+            w.println("schema_version,library_size,operation," + LatencyRecorder.Summary.csvHeader());
+            for (String r : rows) w.println(r);
+        }
+        System.out.println("DAO scaling results written to " + out.getAbsolutePath());
+    }
+
+    @Test
+    public void scaling() throws Exception {
+        int lookups = Integer.parseInt(System.getProperty("benchmark.lookups", "2000"));
+        for (String s : System.getProperty("benchmark.sizes", "1000,10000,100000").split(",")) {
+            runTier(Integer.parseInt(s.trim()), lookups);
+        }
+    }
+
+    private void runTier(int size, int lookups) throws Exception {
+        Context ctx = ApplicationProvider.getApplicationContext();
+        AppDatabase db = Room.inMemoryDatabaseBuilder(ctx, AppDatabase.class)
+                .allowMainThreadQueries()
+                .build();
+        try {
+            BasalProfileDao dao = db.basalProfileDao();
+            int schemaVersion = db.getOpenHelper().getReadableDatabase().getVersion();
+            ProfileFixtures fixtures = new ProfileFixtures(size);
+
+            // --- insertProfile: one autocommit insert per row, as the repository does today
+            LatencyRecorder insert = new LatencyRecorder(size);
+            long[] ids = new long[size];
+            for (int i = 0; i < size; i++) {
+                BasalProfileEntity e = fixtures.nextEntity(i);
+                long t0 = System.nanoTime();
+                ids[i] = dao.insertProfile(e);
+                insert.record(System.nanoTime() - t0);
+            }
+            report(schemaVersion, size, "dao.insertProfile", insert);
+
+            // --- getAllProfiles: full scan incl. ORDER BY createdAt
+            LatencyRecorder all = new LatencyRecorder(LIST_ITERATIONS);
+            for (int i = 0; i < LIST_ITERATIONS; i++) {
+                long t0 = System.nanoTime();
+                List<BasalProfileEntity> rowsRead = dao.getAllProfiles();
+                all.record(System.nanoTime() - t0);
+                assertEquals(size, rowsRead.size());
+            }
+            report(schemaVersion, size, "dao.getAllProfiles", all);
+
+            // --- getProfile: random primary-key lookups
+            LatencyRecorder get = new LatencyRecorder(lookups);
+            for (int i = 0; i < lookups; i++) {
+                long id = ids[fixtures.nextInt(size)];
+                long t0 = System.nanoTime();
+                BasalProfileEntity e = dao.getProfile(id);
+                get.record(System.nanoTime() - t0);
+                assertNotNull(e);
+            }
+            report(schemaVersion, size, "dao.getProfile", get);
+
+            // --- updateProfile: random rows rewritten with a fresh grid
+            LatencyRecorder update = new LatencyRecorder(lookups);
+            for (int i = 0; i < lookups; i++) {
+                BasalProfileEntity e = fixtures.nextEntity(i);
+                e.id = ids[fixtures.nextInt(size)];
+                long t0 = System.nanoTime();
+                dao.updateProfile(e);
+                update.record(System.nanoTime() - t0);
+            }
+            report(schemaVersion, size, "dao.updateProfile", update);
+
+            runRepositoryTier(db, schemaVersion, size, lookups, ids, fixtures);
+        } finally {
+            db.close();
+        }
+    }
+
+    /** End-to-end: executor hop + DAO + mapping + callback, measured until the callback fires. */
+    private void runRepositoryTier(AppDatabase db, int schemaVersion, int size, int lookups,
+                                   long[] ids, ProfileFixtures fixtures) throws Exception {
+        BasalProfileRepository repo = new BasalProfileRepository(db);
+
+        LatencyRecorder all = new LatencyRecorder(LIST_ITERATIONS);
+        for (int i = 0; i < LIST_ITERATIONS; i++) {
+            CountDownLatch done = new CountDownLatch(1);
+            long t0 = System.nanoTime();
+            repo.getAllProfiles(profiles -> done.countDown());
+            await(done);
+            all.record(System.nanoTime() - t0);
+        }
+        report(schemaVersion, size, "repo.getAllProfiles", all);
+
+        LatencyRecorder get = new LatencyRecorder(lookups);
+        BasalProfile[] last = new BasalProfile[1];
+        for (int i = 0; i < lookups; i++) {
+            CountDownLatch done = new CountDownLatch(1);
+            long id = ids[fixtures.nextInt(size)];
+            long t0 = System.nanoTime();
+            repo.getProfile(id, p -> {
+                last[0] = p;
+                done.countDown();
+            });
+            await(done);
+            get.record(System.nanoTime() - t0);
+        }
+        report(schemaVersion, size, "repo.getProfile", get);
+
+        LatencyRecorder upsert = new LatencyRecorder(lookups);
+        for (int i = 0; i < lookups; i++) {
+            BasalProfileEntity e = fixtures.nextEntity(i);
+            e.id = ids[fixtures.nextInt(size)];
+            BasalProfile p = BasalProfileMapper.toDomain(e);
+            CountDownLatch done = new CountDownLatch(1);
+            long t0 = System.nanoTime();
+            repo.upsert(p, id -> done.countDown());
+            await(done);
+            upsert.record(System.nanoTime() - t0);
+        }
+        report(schemaVersion, size, "repo.upsert(update)", upsert);
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(CALLBACK_TIMEOUT_S, TimeUnit.SECONDS)) {
+            throw new AssertionError("Repository callback timed out");
+        }
+    }
+
+    private void report(int schemaVersion, int size, String op, LatencyRecorder recorder) {
+        LatencyRecorder.Summary s = recorder.summarize();
+        String row = String.format(Locale.ROOT, "%d,%d,%s,%s", schemaVersion, size, op, s.toCsvColumns());
+        rows.add(row);
+        System.out.println(row);
+    }
+}
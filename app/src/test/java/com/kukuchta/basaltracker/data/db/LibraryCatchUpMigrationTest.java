@@ -0,0 +1,149 @@
+package com.kukuchta.basaltracker.data.db;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.app.Application;
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.kukuchta.basaltracker.data.db.entities.BasalOverrideEntity;
+import com.kukuchta.basaltracker.data.db.entities.BasalProfileEntity;
+import com.kukuchta.basaltracker.data.db.entities.BasalProfileRevisionEntity;
+import com.kukuchta.basaltracker.data.db.entities.ProfileAssignmentEntity;
+import com.kukuchta.basaltracker.data.mapper.BasalProfileMapper;
+import com.kukuchta.basaltracker.domain.ProfileContentHash;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A library written by the first release (schema 1, created with the SQL Room generated for
+ * it) opened by the current schema: every row survives, the added columns are backfilled, the
+ * new tables work and the FTS index covers old and new rows. Room validates the migrated
+ * schema against the entities on open, so a mismatch fails the test.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LibraryCatchUpMigrationTest {
+
+    private static final String NAME = "catch-up-test.db";
+
+    private Application app;
+    private AppDatabase db;
+
+    @Before
+    public void setUp() {
+        app = ApplicationProvider.getApplicationContext();
+        app.deleteDatabase(NAME);
+    }
+
+    @After
+    public void tearDown() {
+        if (db != null) db.close();
+        app.deleteDatabase(NAME);
+    }
+
+    @Test
+    public void firstReleaseLibrarySurvivesTheUpgrade() {
+        writeVersion1(new Object[][] {
+                { "Weekend", 0.05, "USER_MODIFIED", null, "{\"note\":\"nocna zmiana\"}", 20 },
+                { "Sport", 0.1, "GENERATED", 1L, "{}", 7 },
+                { "Bez metadanych", 0.025, "IMPORTED", null, null, 40 }
+        });
+
+        db = Room.databaseBuilder(app, AppDatabase.class, NAME)
+                .addMigrations(AppDatabase.MIGRATIONS)
+                .allowMainThreadQueries()
+                .build();
+        BasalProfileDao dao = db.basalProfileDao();
+
+        List<BasalProfileEntity> rows = dao.getAllProfiles();
+        assertEquals(3, rows.size());
+        for (BasalProfileEntity e : rows) {
+            int[] units = BasalProfileMapper.unitsOf(e);
+            assertEquals(e.name, ProfileContentHash.of(e.accuracy, units), e.contentHash);
+            assertEquals(60, e.resolutionMinutes);
+            assertNull(e.changePoints);
+
+            Integer latest = db.basalProfileRevisionDao().getLatestRevision(e.id);
+            assertEquals(Integer.valueOf(0), latest);
+            List<BasalProfileRevisionEntity> first = db.basalProfileRevisionDao().getRevisions(e.id, 0, 0);
+            assertEquals(1, first.size());
+            assertEquals(true, first.get(0).keyframe);
+        }
+        BasalProfileEntity weekend = dao.getProfile(1);
+        assertEquals("nocna zmiana", weekend.metadataSearchText);
+        assertArrayEquals(hours(20), BasalProfileMapper.unitsOf(weekend));
+        assertNull(dao.getProfile(3).metadataSearchText);
+
+        // Old rows are in the rebuilt index, new rows reach it through the sync triggers
+        assertEquals(1, dao.searchProfiles("nocn*", 10).size());
+        assertEquals(1, dao.searchProfiles("spor*", 10).size());
+        BasalProfileEntity added = new BasalProfileEntity();
+        added.name = "Dyzur";
+        added.accuracy = 0.05;
+        added.origin = "USER_MODIFIED";
+        dao.insertProfile(added);
+        assertEquals(1, dao.searchProfiles("dyzu*", 10).size());
+
+        // Tables added after the first release accept rows
+        ProfileAssignmentEntity a = new ProfileAssignmentEntity();
+        a.profileId = 1;
+        a.validFrom = 0;
+        a.validTo = Long.MAX_VALUE;
+        db.profileAssignmentDao().insertAssignment(a);
+        BasalOverrideEntity o = new BasalOverrideEntity();
+        o.kind = "PERCENT";
+        o.value = 120;
+        o.startsAt = 0;
+        o.endsAt = 3_600_000L;
+        db.basalOverrideDao().insertOverride(o);
+        assertEquals(1, db.basalOverrideDao().getOverlapping(0, 1).size());
+    }
+
+    /** Schema 1 as Room created it, with rows of {name, accuracy, origin, baseProfileId, metadataJson, units}. */
+    private void writeVersion1(Object[][] rows) {
+        File file = app.getDatabasePath(NAME);
+        file.getParentFile().mkdirs();
+        try (SQLiteDatabase raw = SQLiteDatabase.openOrCreateDatabase(file, null)) {
+            StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS `basal_profiles` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `name` TEXT, `accuracy` REAL NOT NULL, "
+                    + "`origin` TEXT, `baseProfileId` INTEGER, `metadataJson` TEXT, `createdAt` INTEGER NOT NULL");
+            for (int h = 0; h < 24; h++) {
+                sql.append(String.format(Locale.ROOT, ", `units_h%02d` INTEGER NOT NULL", h));
+            }
+            raw.execSQL(sql.append(')').toString());
+            for (Object[] r : rows) {
+                ContentValues v = new ContentValues();
+                v.put("name", (String) r[0]);
+                v.put("accuracy", (Double) r[1]);
+                v.put("origin", (String) r[2]);
+                v.put("baseProfileId", (Long) r[3]);
+                v.put("metadataJson", (String) r[4]);
+                v.put("createdAt", 1_700_000_000_000L);
+                for (int h = 0; h < 24; h++) {
+                    v.put(String.format(Locale.ROOT, "units_h%02d", h), (Integer) r[5] + h % 3);
+                }
+                raw.insertOrThrow("basal_profiles", null, v);
+            }
+            raw.setVersion(1);
+        }
+    }
+
+    private static int[] hours(int base) {
+        int[] units = new int[24];
+        for (int h = 0; h < 24; h++) units[h] = base + h % 3;
+        return units;
+    }
+}
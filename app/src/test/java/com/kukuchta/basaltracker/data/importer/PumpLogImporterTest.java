@@ -0,0 +1,203 @@
+package com.kukuchta.basaltracker.data.importer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.kukuchta.basaltracker.data.db.entities.BasalProfileEntity;
+import com.kukuchta.basaltracker.data.mapper.BasalProfileMapper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link PumpLogImporter} on small generated logs: per-hour rates of fully logged days, and the
+ * same rows and tallies whatever the chunk size and thread count, so records are stitched
+ * correctly across chunk boundaries.
+ */
+public class PumpLogImporterTest {
+
+    private static final double ACCURACY = 0.05;
+    private static final LocalDate FIRST = LocalDate.of(2024, 3, 1);
+    private static final long[] CHUNK_SIZES = { 17, 64, 100, 333, 1000 };
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /** Rows written by one run, in write order, with the batch sizes. */
+    private static final class Run {
+        final List<BasalProfileEntity> rows = new ArrayList<>();
+        final List<Integer> batches = new ArrayList<>();
+        PumpLogImporter.Report report;
+    }
+
+    @Test
+    public void importsEveryFullyLoggedDay() throws IOException {
+        File log = write(log(3, 30, null));
+        Run run = run(log, Long.MAX_VALUE, 1);
+
+        assertEquals(3, run.report.daysImported);
+        assertEquals(0, run.report.daysIncomplete);
+        assertEquals(3 * 48 + 1, run.report.basalRecords);
+        assertEquals(0, run.report.malformedLines);
+        assertEquals(0, run.report.unorderedRecords);
+        for (int d = 0; d < 3; d++) {
+            BasalProfileEntity row = run.rows.get(d);
+            assertEquals("Import " + FIRST.plusDays(d), row.name);
+            assertEquals(ACCURACY, row.accuracy, 0.0);
+            assertArrayEquals(expectedUnits(d), BasalProfileMapper.unitsOf(row));
+        }
+    }
+
+    @Test
+    public void chunkBoundariesDoNotChangeTheResult() throws IOException {
+        File log = write(log(4, 20, null));
+        Run whole = run(log, Long.MAX_VALUE, 1);
+        assertEquals(4, whole.report.daysImported);
+
+        for (long chunkBytes : CHUNK_SIZES) {
+            for (int threads : new int[] { 1, 3 }) {
+                String where = chunkBytes + " bytes x " + threads;
+                Run split = run(log, chunkBytes, threads);
+                assertSameRows(where, whole, split);
+                assertEquals(where, whole.report.lines, split.report.lines);
+                assertEquals(where, whole.report.basalRecords, split.report.basalRecords);
+                assertEquals(where, whole.report.ignoredLines, split.report.ignoredLines);
+                assertEquals(where, 0, split.report.unorderedRecords);
+            }
+        }
+    }
+
+    @Test
+    public void recordGoingBackInTimeIsCountedOnce() throws IOException {
+        // After 2024-03-03 12:00 the pump clock jumps back by a day for one record
+        String stray = "2024-03-02 12:00,BASAL,9.000\n";
+        File log = write(log(3, 30, stray));
+
+        for (long chunkBytes : new long[] { Long.MAX_VALUE, 17, 64, 100, 333 }) {
+            Run run = run(log, chunkBytes, 2);
+            String where = chunkBytes + " bytes";
+            assertEquals(where, 1, run.report.unorderedRecords);
+            // Days before the disorder are untouched
+            assertEquals(where, "Import " + FIRST, run.rows.get(0).name);
+            assertArrayEquals(where, expectedUnits(0), BasalProfileMapper.unitsOf(run.rows.get(0)));
+        }
+    }
+
+    @Test
+    public void partlyLoggedDaysAreSkipped() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        // 2024-03-01 starts at noon; 2024-03-02 is complete; the log ends at 2024-03-03 06:00
+        for (long t = 12 * 60; t <= (2 * 24 + 6) * 60; t += 30) sb.append(line(t, 0, 0));
+        Run run = run(write(sb.toString()), Long.MAX_VALUE, 1);
+
+        assertEquals(1, run.report.daysImported);
+        assertEquals(2, run.report.daysIncomplete);
+        assertEquals("Import " + FIRST.plusDays(1), run.rows.get(0).name);
+    }
+
+    @Test
+    public void rowsAreWrittenInBatches() throws IOException {
+        int days = PumpLogImporter.BATCH_SIZE + 44;
+        Run run = run(write(log(days, 60, null)), 4096, 2);
+
+        assertEquals(days, run.report.daysImported);
+        assertEquals(List.of(PumpLogImporter.BATCH_SIZE, 44), run.batches);
+        assertEquals("Import " + FIRST.plusDays(days - 1), run.rows.get(days - 1).name);
+    }
+
+    // ---------- Helpers ----------
+
+    /**
+     * {@code days} fully logged days from 2024-03-01 plus a closing record at the next midnight,
+     * one BASAL record every {@code stepMinutes}. Delimiters and quoting rotate between ',',
+     * ';' (decimal comma, quoted value) and tab; a header and GLUCOSE lines are mixed in.
+     * {@code stray}, if given, is inserted after day 2 noon.
+     */
+    private static String log(int days, int stepMinutes, String stray) {
+        StringBuilder sb = new StringBuilder("timestamp,kind,value\n");
+        int i = 0;
+        for (long t = 0; t <= days * 24 * 60L; t += stepMinutes, i++) {
+            int day = (int) (t / (24 * 60));
+            int hour = (int) (t / 60 % 24);
+            sb.append(line(t, day, hour, i % 3));
+            if (i % 7 == 0) sb.append(glucose(t));
+            if (stray != null && t == (2 * 24 + 12) * 60) sb.append(stray);
+        }
+        return sb.toString();
+    }
+
+    private static String line(long minutes, int day, int hour) {
+        return line(minutes, day, hour, 0);
+    }
+
+    private static String line(long minutes, int day, int hour, int style) {
+        long milli = Math.round(rateUnits(day, hour) * ACCURACY * 1000);
+        String value = String.format(Locale.ROOT, "%d.%03d", milli / 1000, milli % 1000);
+        switch (style) {
+            case 1:
+                return "\"" + timestamp(minutes) + "\";basal;\"" + value.replace('.', ',') + "\"\n";
+            case 2:
+                return timestamp(minutes).replace(' ', 'T') + ":00\tBASAL\t" + value + "\tpump\r\n";
+            default:
+                return timestamp(minutes) + ",BASAL," + value + "\n";
+        }
+    }
+
+    private static String glucose(long minutes) {
+        return timestamp(minutes) + ",GLUCOSE,120\n";
+    }
+
+    private static String timestamp(long minutes) {
+        LocalDate date = FIRST.plusDays(minutes / (24 * 60));
+        long m = minutes % (24 * 60);
+        return String.format(Locale.ROOT, "%s %02d:%02d", date, m / 60, m % 60);
+    }
+
+    private static int rateUnits(int day, int hour) {
+        return 10 + hour + day % 5;
+    }
+
+    private static int[] expectedUnits(int day) {
+        int[] units = new int[24];
+        for (int h = 0; h < 24; h++) units[h] = rateUnits(day, h);
+        return units;
+    }
+
+    private File write(String text) throws IOException {
+        File f = tmp.newFile();
+        Files.write(f.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+        return f;
+    }
+
+    private static Run run(File log, long chunkBytes, int threads) throws IOException {
+        Run run = new Run();
+        try (FileChannel ch = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+            run.report = new PumpLogImporter(ACCURACY, log.getName(), threads, chunkBytes).run(ch, batch -> {
+                run.batches.add(batch.size());
+                run.rows.addAll(batch);
+            });
+        }
+        return run;
+    }
+
+    private static void assertSameRows(String where, Run expected, Run actual) {
+        assertEquals(where, expected.rows.size(), actual.rows.size());
+        for (int i = 0; i < expected.rows.size(); i++) {
+            assertEquals(where, expected.rows.get(i).name, actual.rows.get(i).name);
+            assertArrayEquals(where, BasalProfileMapper.unitsOf(expected.rows.get(i)),
+                    BasalProfileMapper.unitsOf(actual.rows.get(i)));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.kukuchta.basaltracker.data.importer;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Field and line handling of {@link PumpLogScanner}: delimiters, quotes, decimals, bad lines. */
+public class PumpLogScannerTest {
+
+    private static final long DAY_2024_03_01 = PumpLogScanner.epochDay(2024, 3, 1) * PumpLogScanner.MS_PER_DAY;
+
+    private final PumpLogScanner.Counts counts = new PumpLogScanner.Counts();
+
+    @Test
+    public void commaDelimitedRecords() {
+        List<String> records = scan("2024-03-01 06:00:00,BASAL,0.850\n"
+                + "2024-03-01 06:12,GLUCOSE,142\n"
+                + "2024-03-01T07:30:00,BOLUS,4.5\n");
+        assertEquals(List.of(
+                record(6, 0, 0, PumpLogScanner.KIND_BASAL, 850),
+                record(6, 12, 0, PumpLogScanner.KIND_GLUCOSE, 142_000),
+                record(7, 30, 0, PumpLogScanner.KIND_BOLUS, 4_500)), records);
+        assertEquals(3, counts.lines);
+        assertEquals(3, counts.records);
+    }
+
+    @Test
+    public void quotedFields() {
+        List<String> records = scan("\"2024-03-01 06:00:15\",\"BASAL\",\"1.250\"\n"
+                + "\"2024-03-01 06:30\",\" basal \",\" 0.9\"\n");
+        assertEquals(List.of(
+                record(6, 0, 15, PumpLogScanner.KIND_BASAL, 1_250),
+                record(6, 30, 0, PumpLogScanner.KIND_BASAL, 900)), records);
+    }
+
+    @Test
+    public void semicolonDelimiterAllowsDecimalComma() {
+        List<String> records = scan("2024-03-01 06:00;basal;0,85\n"
+                + "2024-03-01 07:00;Bolus;\"2,125\";note\n");
+        assertEquals(List.of(
+                record(6, 0, 0, PumpLogScanner.KIND_BASAL, 850),
+                record(7, 0, 0, PumpLogScanner.KIND_BOLUS, 2_125)), records);
+    }
+
+    @Test
+    public void tabDelimiterWithExtraColumns() {
+        List<String> records = scan("2024-03-01 06:00\tBASAL\t1.2\tpump A\r\n"
+                + "2024-03-01 23:59:59\tGLUCOSE\t98\t\r\n");
+        assertEquals(List.of(
+                record(6, 0, 0, PumpLogScanner.KIND_BASAL, 1_200),
+                record(23, 59, 59, PumpLogScanner.KIND_GLUCOSE, 98_000)), records);
+    }
+
+    @Test
+    public void headerUnknownKindsAndBadLinesAreCounted() {
+        List<String> records = scan("timestamp,kind,value\n"
+                + "# exported 2024-03-02\n"
+                + "\n"
+                + "2024-03-01 06:00,ALARM,1\n"
+                + "2024-13-01 06:00,BASAL,1.0\n"
+                + "2024-03-01 06:00,BASAL,abc\n"
+                + "2024-03-01 06:00,BASAL\n"
+                + "2024-03-01 06:00 BASAL 1.0\n"
+                + "2024-03-01 06:00,BASAL,0.1234");  // no final newline; decimals past 3 dropped
+        assertEquals(List.of(record(6, 0, 0, PumpLogScanner.KIND_BASAL, 123)), records);
+        assertEquals(8, counts.lines);
+        assertEquals(1, counts.records);
+        assertEquals(3, counts.ignored);
+        assertEquals(4, counts.malformed);
+    }
+
+    @Test
+    public void scansOnlyTheGivenRange() {
+        byte[] buf = ("2024-03-01 05:00,BASAL,1\n"
+                + "2024-03-01 06:00,BASAL,2\n"
+                + "2024-03-01 07:00,BASAL,3\n").getBytes(StandardCharsets.US_ASCII);
+        int from = 25, to = 50;
+        List<String> records = new ArrayList<>();
+        PumpLogScanner.scan(buf, from, to, sink(records), counts);
+        assertEquals(List.of(record(6, 0, 0, PumpLogScanner.KIND_BASAL, 2_000)), records);
+    }
+
+    @Test
+    public void epochDayMatchesJavaTime() {
+        for (int y = 1999; y <= 2041; y += 3) {
+            for (int m = 1; m <= 12; m++) {
+                assertEquals(java.time.LocalDate.of(y, m, 28).toEpochDay(),
+                        PumpLogScanner.epochDay(y, m, 28));
+            }
+        }
+    }
+
+    private List<String> scan(String text) {
+        byte[] buf = text.getBytes(StandardCharsets.US_ASCII);
+        List<String> records = new ArrayList<>();
+        PumpLogScanner.scan(buf, 0, buf.length, sink(records), counts);
+        return records;
+    }
+
+    private static PumpLogScanner.RecordSink sink(List<String> out) {
+        return (localMs, kind, valueMilli) -> out.add(localMs + "/" + kind + "/" + valueMilli);
+    }
+
+    private static String record(int hour, int minute, int second, int kind, long valueMilli) {
+        long localMs = DAY_2024_03_01 + hour * 3_600_000L + minute * 60_000L + second * 1000L;
+        return localMs + "/" + kind + "/" + valueMilli;
+    }
+}
@@ -0,0 +1,110 @@
+package com.kukuchta.basaltracker.data.mapper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * {@link RevisionCodec}: masked varint packing round-trips, and a chain of deltas applied in
+ * order reproduces every grid, including hours that go down and values of several bytes.
+ */
+public class RevisionCodecTest {
+
+    @Test
+    public void fullGridRoundTrips() {
+        Random random = new Random(31);
+        for (int trial = 0; trial < 200; trial++) {
+            int[] units = randomGrid(random);
+            int[] decoded = new int[24];
+            RevisionCodec.applyTo(decoded, RevisionCodec.ALL_HOURS,
+                    RevisionCodec.encode(units, RevisionCodec.ALL_HOURS));
+            assertArrayEquals(units, decoded);
+        }
+    }
+
+    @Test
+    public void deltaChainReproducesEveryGrid() {
+        Random random = new Random(32);
+        int[] current = randomGrid(random);
+        int[] decoded = new int[24];
+        RevisionCodec.applyTo(decoded, RevisionCodec.ALL_HOURS,
+                RevisionCodec.encode(current, RevisionCodec.ALL_HOURS));
+
+        for (int step = 0; step < 500; step++) {
+            int[] next = current.clone();
+            for (int k = random.nextInt(4); k >= 0; k--) {
+                int h = random.nextInt(24);
+                // Up or down, sometimes across a varint byte boundary or back to zero
+                next[h] = random.nextInt(5) == 0 ? 0 : Math.max(0, next[h] + random.nextInt(301) - 150);
+            }
+            int mask = RevisionCodec.diffMask(current, next);
+            byte[] packed = RevisionCodec.encode(next, mask);
+            assertEquals(Integer.bitCount(mask) == 0, packed.length == 0);
+
+            RevisionCodec.applyTo(decoded, mask, packed);
+            assertArrayEquals("step " + step, next, decoded);
+            current = next;
+        }
+    }
+
+    @Test
+    public void singleSmallHourCostsOneByte() {
+        int[] units = new int[24];
+        units[7] = 127;
+        assertEquals(1, RevisionCodec.encode(units, 1 << 7).length);
+        units[7] = 128;
+        assertEquals(2, RevisionCodec.encode(units, 1 << 7).length);
+    }
+
+    @Test
+    public void largestValueRoundTrips() {
+        int[] units = new int[24];
+        Arrays.fill(units, Integer.MAX_VALUE);
+        int[] decoded = new int[24];
+        RevisionCodec.applyTo(decoded, RevisionCodec.ALL_HOURS,
+                RevisionCodec.encode(units, RevisionCodec.ALL_HOURS));
+        assertArrayEquals(units, decoded);
+    }
+
+    @Test
+    public void diffMaskMarksChangedHoursOnly() {
+        int[] a = new int[24];
+        int[] b = a.clone();
+        b[0] = 3;
+        b[23] = 1;
+        assertEquals(1 | (1 << 23), RevisionCodec.diffMask(a, b));
+        assertEquals(0, RevisionCodec.diffMask(a, a.clone()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeUnitsAreRejected() {
+        int[] units = new int[24];
+        units[4] = -1;
+        RevisionCodec.encode(units, RevisionCodec.ALL_HOURS);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void truncatedPayloadIsRejected() {
+        int[] units = new int[24];
+        Arrays.fill(units, 200);
+        byte[] packed = RevisionCodec.encode(units, RevisionCodec.ALL_HOURS);
+        RevisionCodec.applyTo(new int[24], RevisionCodec.ALL_HOURS, Arrays.copyOf(packed, packed.length - 1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void trailingBytesAreRejected() {
+        int[] units = new int[24];
+        byte[] packed = RevisionCodec.encode(units, 1);
+        RevisionCodec.applyTo(new int[24], 1, Arrays.copyOf(packed, packed.length + 1));
+    }
+
+    private static int[] randomGrid(Random random) {
+        int[] units = new int[24];
+        for (int h = 0; h < 24; h++) units[h] = random.nextInt(400);
+        return units;
+    }
+}
@@ -0,0 +1,264 @@
+package com.kukuchta.basaltracker.data.repo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Application;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.kukuchta.basaltracker.data.db.AppDatabase;
+import com.kukuchta.basaltracker.data.db.entities.ProfileAssignmentEntity;
+import com.kukuchta.basaltracker.domain.BasalProfile;
+import com.kukuchta.basaltracker.domain.ChangePointProfile;
+import com.kukuchta.basaltracker.domain.DistanceMetric;
+import com.kukuchta.basaltracker.domain.LibraryStatistics;
+import com.kukuchta.basaltracker.domain.LineageNode;
+import com.kukuchta.basaltracker.domain.ProfileOrigin;
+import com.kukuchta.basaltracker.domain.ProfileRequantizer;
+import com.kukuchta.basaltracker.domain.ProfileTable;
+import com.kukuchta.basaltracker.domain.SimilarityMatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/** {@link BasalProfileRepository} operations on an in-memory database. */
+@RunWith(RobolectricTestRunner.class)
+public class BasalProfileRepositoryTest {
+
+    private static final long TIMEOUT_S = 10;
+
+    private AppDatabase db;
+    private BasalProfileRepository repo;
+
+    @Before
+    public void setUp() {
+        Application app = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(app, AppDatabase.class).allowMainThreadQueries().build();
+        repo = new BasalProfileRepository(db);
+    }
+
+    @After
+    public void tearDown() {
+        repo.close();
+        if (db.isOpen()) db.close();
+    }
+
+    @Test
+    public void lineageIsTheWholeTreeFromTheRoot() throws Exception {
+        long root = save(flat("Korzeń", 10, null));
+        long child = save(flat("Dziecko", 11, root));
+        long grandchild = save(flat("Wnuk", 12, child));
+        long sibling = save(flat("Rodzeństwo", 13, root));
+        save(flat("Obcy", 14, null));
+
+        CompletableFuture<List<LineageNode>> lineage = new CompletableFuture<>();
+        repo.getLineage(grandchild, lineage::complete);
+
+        List<String> nodes = new ArrayList<>();
+        for (LineageNode n : get(lineage)) nodes.add(n.profile.getId() + "@" + n.depth);
+        assertEquals(Arrays.asList(root + "@0", child + "@1", sibling + "@1", grandchild + "@2"), nodes);
+    }
+
+    @Test
+    public void collapseKeepsTheOldestCopyAndMovesItsDependants() throws Exception {
+        long keep = save(flat("Pierwszy", 10, null));
+        long dup = save(flat("Drugi", 10, null));
+        long other = save(flat("Inny", 11, null));
+        long child = save(flat("Dziecko kopii", 12, dup));
+        // Same hourly means as keep, but its own change points: not a duplicate
+        CompletableFuture<Long> subHour = new CompletableFuture<>();
+        repo.upsertChangePointProfile(new ChangePointProfile(0, "Podgodzinowy", 0.05, 30,
+                ProfileOrigin.USER_MODIFIED, null, null, new int[] { 0, 30, 60 }, new int[] { 9, 11, 10 }),
+                subHour::complete);
+        long subHourId = get(subHour);
+        ProfileAssignmentEntity a = new ProfileAssignmentEntity();
+        a.profileId = dup;
+        a.validFrom = 1_000L;
+        a.validTo = 2_000L;
+        db.profileAssignmentDao().insertAssignment(a);
+
+        CompletableFuture<Integer> removed = new CompletableFuture<>();
+        repo.collapseDuplicates(removed::complete);
+
+        assertEquals(1, (int) get(removed));
+        assertNull(db.basalProfileDao().getProfile(dup));
+        assertNotNull(db.basalProfileDao().getProfile(other));
+        assertNotNull(db.basalProfileDao().getProfile(subHourId));
+        assertEquals(Long.valueOf(keep), db.basalProfileDao().getProfile(child).baseProfileId);
+        assertEquals(keep, db.profileAssignmentDao().getAllAssignments().get(0).profileId);
+    }
+
+    @Test
+    public void similarProfilesFollowWritesAndDeletes() throws Exception {
+        long low = save(flat("0,50", 10, null));
+        long high = save(flat("0,60", 12, null));
+        long far = save(flat("1,00", 20, null));
+        int[] units = filled(52);
+        BasalProfile reference = new BasalProfile(0, "Wzorzec", 0.01, ProfileOrigin.USER_MODIFIED, null, null, units);
+
+        List<SimilarityMatch> matches = similar(reference, 2, DistanceMetric.L1);
+        assertEquals(2, matches.size());
+        assertEquals(low, matches.get(0).profileId);
+        assertEquals(24 * 0.02, matches.get(0).distance, 1e-5);
+        assertEquals(high, matches.get(1).profileId);
+
+        // The loaded index sees later writes and deletes
+        long exact = save(new BasalProfile(0, "0,52", 0.01, ProfileOrigin.USER_MODIFIED, null, null, units));
+        assertEquals(exact, similar(reference, 1, DistanceMetric.L2).get(0).profileId);
+        CompletableFuture<Void> deleted = new CompletableFuture<>();
+        repo.deleteProfile(exact, () -> deleted.complete(null));
+        get(deleted);
+        assertEquals(low, similar(reference, 1, DistanceMetric.L2).get(0).profileId);
+
+        // A stored profile never finds itself
+        BasalProfile stored = new BasalProfile(far, "1,00", 0.05, ProfileOrigin.USER_MODIFIED, null, null,
+                filled(20));
+        assertEquals(high, similar(stored, 1, DistanceMetric.L1).get(0).profileId);
+    }
+
+    @Test
+    public void libraryStatisticsPerOriginAndAfterWrites() throws Exception {
+        save(flat("A", 10, null));
+        save(flat("B", 20, null));
+        save(new BasalProfile(0, "C", 0.05, ProfileOrigin.IMPORTED, null, null, filled(30)));
+
+        LibraryStatistics all = statistics(null);
+        assertEquals(3, all.profileCount);
+        assertEquals(1.0, all.meanRate[7], 1e-9);
+        assertEquals(24.0, all.meanTotalDailyDose, 1e-9);
+        LibraryStatistics imported = statistics(ProfileOrigin.IMPORTED);
+        assertEquals(1, imported.profileCount);
+        assertEquals(1.5, imported.meanRate[0], 1e-9);
+
+        save(flat("D", 40, null));
+        assertEquals(4, statistics(null).profileCount); // cache dropped by the write
+    }
+
+    @Test
+    public void profileTableHoldsEveryRow() throws Exception {
+        Map<Long, BasalProfile> saved = new HashMap<>();
+        for (int i = 0; i < 5; i++) {
+            int[] units = new int[24];
+            for (int h = 0; h < 24; h++) units[h] = i * 24 + h;
+            BasalProfile p = new BasalProfile(0, "Profil " + i, 0.05 * (i + 1),
+                    ProfileOrigin.values()[i % ProfileOrigin.values().length], null, null, units);
+            saved.put(save(p), p);
+        }
+
+        CompletableFuture<ProfileTable> loaded = new CompletableFuture<>();
+        repo.loadProfileTable(loaded::complete);
+        ProfileTable table = get(loaded);
+
+        assertEquals(saved.size(), table.size());
+        for (Map.Entry<Long, BasalProfile> e : saved.entrySet()) {
+            int row = table.rowOf(e.getKey());
+            assertTrue(row >= 0);
+            BasalProfile p = e.getValue();
+            assertEquals(p.getName(), table.name(row));
+            assertEquals(p.getAccuracy(), table.accuracy(row), 0.0);
+            assertEquals(p.getOrigin(), table.origin(row));
+            int[] units = new int[24];
+            table.copyUnits(row, units, 0);
+            assertArrayEquals(p.copyUnitsByHour(), units);
+        }
+    }
+
+    @Test
+    public void emptyQueryListsOnlyTheNewestRows() throws Exception {
+        for (int i = 0; i <= BasalProfileRepository.SEARCH_LIMIT; i++) save(flat("Profil " + i, 10, null));
+
+        CompletableFuture<Boolean> truncated = new CompletableFuture<>();
+        CompletableFuture<List<BasalProfile>> listed = new CompletableFuture<>();
+        repo.searchProfiles("", (profiles, more) -> {
+            truncated.complete(more);
+            listed.complete(profiles);
+        });
+
+        assertTrue(get(truncated));
+        assertEquals(BasalProfileRepository.SEARCH_LIMIT, get(listed).size());
+    }
+
+    @Test
+    public void querySyntaxIsSearchedAsText() throws Exception {
+        long night = save(flat("Nocna zmiana", 10, null));
+        save(flat("Sport", 10, null));
+
+        CompletableFuture<List<BasalProfile>> withOr = new CompletableFuture<>();
+        repo.searchProfiles("\"-noc* OR", (profiles, more) -> withOr.complete(profiles));
+        assertEquals(0, get(withOr).size()); // "or" is a required prefix term here, not an operator
+
+        CompletableFuture<List<BasalProfile>> byPrefix = new CompletableFuture<>();
+        repo.searchProfiles("-\"NOC zmi", (profiles, more) -> byPrefix.complete(profiles));
+        List<BasalProfile> matches = get(byPrefix);
+        assertEquals(1, matches.size());
+        assertEquals(night, matches.get(0).getId());
+    }
+
+    @Test
+    public void failedRequantizationIsReportedAndKeepsTheLane() throws Exception {
+        db.close(); // every read now throws
+        for (int attempt = 0; attempt < 2; attempt++) {
+            assertNotNull(requantizeError());
+        }
+    }
+
+    private long save(BasalProfile p) throws Exception {
+        CompletableFuture<Long> id = new CompletableFuture<>();
+        repo.upsert(p, id::complete);
+        return get(id);
+    }
+
+    private List<SimilarityMatch> similar(BasalProfile reference, int k, DistanceMetric metric) throws Exception {
+        CompletableFuture<List<SimilarityMatch>> matches = new CompletableFuture<>();
+        repo.findSimilar(reference, k, metric, matches::complete);
+        return get(matches);
+    }
+
+    private LibraryStatistics statistics(ProfileOrigin origin) throws Exception {
+        CompletableFuture<LibraryStatistics> stats = new CompletableFuture<>();
+        repo.getLibraryStatistics(origin, stats::complete);
+        return get(stats);
+    }
+
+    /** All 24 hours at {@code units} steps of 0.05 U/h. */
+    private static BasalProfile flat(String name, int units, Long baseProfileId) {
+        return new BasalProfile(0, name, 0.05, ProfileOrigin.USER_MODIFIED, baseProfileId, null, filled(units));
+    }
+
+    private static int[] filled(int units) {
+        int[] out = new int[24];
+        Arrays.fill(out, units);
+        return out;
+    }
+
+    private static <T> T get(CompletableFuture<T> future) throws Exception {
+        return future.get(TIMEOUT_S, TimeUnit.SECONDS);
+    }
+
+    private RuntimeException requantizeError() throws Exception {
+        CompletableFuture<RuntimeException> error = new CompletableFuture<>();
+        repo.requantizeProfiles(null, 0.05, new BasalProfileRepository.RequantizeCallback() {
+            @Override public void onResult(ProfileRequantizer.Report report) {
+                error.completeExceptionally(new AssertionError("requantized a closed database"));
+            }
+            @Override public void onError(RuntimeException e) { error.complete(e); }
+        });
+        return get(error);
+    }
+}
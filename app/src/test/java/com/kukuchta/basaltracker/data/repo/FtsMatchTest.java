@@ -0,0 +1,80 @@
+package com.kukuchta.basaltracker.data.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+/**
+ * {@link BasalProfileRepository#toFtsMatch}: user text becomes lower-case prefix terms joined by
+ * spaces (implicit AND), and nothing of the FTS4 query syntax (phrases, NOT, prefix stars,
+ * OR / NEAR operators, column filters, grouping) gets through.
+ */
+public class FtsMatchTest {
+
+    @Test
+    public void wordsBecomePrefixTerms() {
+        assertEquals("nocna*", BasalProfileRepository.toFtsMatch("nocna"));
+        assertEquals("nocna* zmiana*", BasalProfileRepository.toFtsMatch("  Nocna   ZMIANA "));
+        assertEquals("dzień* 2*", BasalProfileRepository.toFtsMatch("dzień 2"));
+    }
+
+    @Test
+    public void blankQueryHasNoMatch() {
+        assertNull(BasalProfileRepository.toFtsMatch(null));
+        assertNull(BasalProfileRepository.toFtsMatch(""));
+        assertNull(BasalProfileRepository.toFtsMatch("   "));
+        assertNull(BasalProfileRepository.toFtsMatch("\"-*()"));
+    }
+
+    @Test
+    public void quotesAreDropped() {
+        assertEquals("nocna* zmiana*", BasalProfileRepository.toFtsMatch("\"nocna zmiana\""));
+        assertEquals("noc*", BasalProfileRepository.toFtsMatch("noc\""));
+    }
+
+    @Test
+    public void minusIsASeparatorNotAnExclusion() {
+        assertEquals("sport*", BasalProfileRepository.toFtsMatch("-sport"));
+        assertEquals("noc* zmiana*", BasalProfileRepository.toFtsMatch("noc-zmiana"));
+    }
+
+    @Test
+    public void starsAreNotDoubled() {
+        assertEquals("wee*", BasalProfileRepository.toFtsMatch("wee*"));
+        assertEquals("wee* kend*", BasalProfileRepository.toFtsMatch("wee*kend"));
+    }
+
+    @Test
+    public void operatorsAreLowerCasedIntoPlainTerms() {
+        // FTS4 only treats upper-case OR / AND / NOT / NEAR as operators
+        assertEquals("noc* or* dzień*", BasalProfileRepository.toFtsMatch("noc OR dzień"));
+        assertEquals("noc* near* sport*", BasalProfileRepository.toFtsMatch("noc NEAR sport"));
+        assertEquals("not* sport*", BasalProfileRepository.toFtsMatch("NOT sport"));
+    }
+
+    @Test
+    public void columnFiltersAndGroupingAreDropped() {
+        assertEquals("name* noc*", BasalProfileRepository.toFtsMatch("name:noc"));
+        assertEquals("noc* sport*", BasalProfileRepository.toFtsMatch("(noc) {sport}"));
+    }
+
+    @Test
+    public void polishLettersSurviveAndLowerCase() {
+        assertEquals("żółć* łódź*", BasalProfileRepository.toFtsMatch("ŻÓŁĆ Łódź"));
+        assertEquals("dyżur* ś*", BasalProfileRepository.toFtsMatch("Dyżur-Ś"));
+    }
+
+    @Test
+    public void turkishDefaultLocaleKeepsTheDottedI() {
+        Locale saved = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertEquals("impuls*", BasalProfileRepository.toFtsMatch("IMPULS"));
+        } finally {
+            Locale.setDefault(saved);
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.kukuchta.basaltracker.data.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.lifecycle.SavedStateHandle;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.kukuchta.basaltracker.data.db.AppDatabase;
+import com.kukuchta.basaltracker.data.db.entities.BasalProfileEntity;
+import com.kukuchta.basaltracker.data.mapper.BasalProfileMapper;
+import com.kukuchta.basaltracker.domain.BasalProfile;
+import com.kukuchta.basaltracker.domain.ProfileContentHash;
+import com.kukuchta.basaltracker.domain.ProfileOrigin;
+import com.kukuchta.basaltracker.testutil.LatencyRecorder;
+import com.kukuchta.basaltracker.viewmodel.ProfileViewModel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent load generator for {@link BasalProfileRepository} and {@link ProfileViewModel}
+ * over one in-memory database.
+ *
+ * Opt-in, since it runs for a fixed wall-clock time:
+ *   ./gradlew :app:testDebugUnitTest --tests '*ConcurrencyStressTest' -Pstress.enabled=true
+ *
+ * Knobs (all optional, passed as -P gradle properties):
+ * - stress.readers      reader threads (getProfile / getAllProfiles), default 4
+ * - stress.writers      repository writer threads (upsert / duplicate / delete), default 2
+ * - stress.viewModels   ViewModel threads (load, edit, save), each with its own repository, default 2
+ * - stress.seconds      run time, default 10
+ * - stress.profiles     seeded library size, default 200
+ * - stress.output       CSV path (relative to the app module), default benchmarks/stress.csv
+ *
+ * Every write stores a uniform grid (all 24 hours equal to the writer's sequence number), and
+ * each writer or ViewModel owns a disjoint set of profiles. That makes two anomalies checkable:
+ * - torn profile: any read (or the final row) whose hours are not all equal, or whose stored
+ *   contentHash does not match its grid;
+ * - lost update: an owned profile whose final grid is not the last acknowledged write.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ProfileConcurrencyStressTest {
+
+    private static final double ACCURACY = 0.05;
+    private static final int OWNED_PER_ACTOR = 4;
+    private static final long CALLBACK_TIMEOUT_S = 30;
+
+    private int readers, writers, viewModels, seconds, profiles;
+    private AppDatabase db;
+    private Application app;
+    private Handler main;
+
+    private final Map<Long, Integer> expected = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String> anomalies = new ConcurrentLinkedQueue<>();
+    private final Map<String, LatencyRecorder> results = new TreeMap<>();
+
+    @Before
+    public void setUp() {
+        assumeTrue("set -Pstress.enabled=true to run",
+                Boolean.parseBoolean(System.getProperty("stress.enabled", "false")));
+        readers = Integer.getInteger("stress.readers", 4);
+        writers = Integer.getInteger("stress.writers", 2);
+        viewModels = Integer.getInteger("stress.viewModels", 2);
+        seconds = Integer.getInteger("stress.seconds", 10);
+        profiles = Math.max(Integer.getInteger("stress.profiles", 200),
+                (writers + viewModels) * OWNED_PER_ACTOR);
+
+        app = ApplicationProvider.getApplicationContext();
+        main = new Handler(Looper.getMainLooper());
+        db = Room.inMemoryDatabaseBuilder(app, AppDatabase.class)
+                .allowMainThreadQueries()
+                .build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (db != null) db.close();
+        if (results.isEmpty()) return;
+        File out = new File(System.getProperty("stress.output", "benchmarks/stress.csv"));
+        File dir = out.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        try (PrintWriter w = new PrintWriter(new FileWriter(out, false))) {
+            w.println("readers,writers,view_models,seconds,operation," + LatencyRecorder.Summary.csvHeader());
+            for (Map.Entry<String, LatencyRecorder> e : results.entrySet()) {
+                w.println(String.format(Locale.ROOT, "%d,%d,%d,%d,%s,%s", readers, writers, viewModels,
+                        seconds, e.getKey(), e.getValue().summarize().toCsvColumns()));
+            }
+        }
+        System.out.println("Stress results written to " + out.getAbsolutePath());
+    }
+
+    @Test
+    public void mixedLoad() throws Exception {
+        long[] ids = seed();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        BasalProfileRepository shared = new BasalProfileRepository(db);
+        List<BasalProfileRepository> vmRepos = new ArrayList<>();
+        List<Callable<Map<String, LatencyRecorder>>> actors = new ArrayList<>();
+        int owner = 0;
+        for (int i = 0; i < readers; i++) {
+            actors.add(reader(shared, ids, deadline, 1000 + i));
+        }
+        for (int i = 0; i < writers; i++, owner++) {
+            actors.add(writer(shared, owned(ids, owner), deadline, 2000 + i));
+        }
+        for (int i = 0; i < viewModels; i++, owner++) {
+            // ViewModels are built here: LiveData wiring belongs to the main thread
+            BasalProfileRepository repo = new BasalProfileRepository(db);
+            vmRepos.add(repo);
+            ProfileViewModel vm = new ProfileViewModel(app, new SavedStateHandle(), repo);
+            actors.add(viewModelActor(vm, owned(ids, owner), deadline, 3000 + i));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(actors.size());
+        List<Future<Map<String, LatencyRecorder>>> running = new ArrayList<>();
+        long t0 = System.nanoTime();
+        for (Callable<Map<String, LatencyRecorder>> a : actors) running.add(pool.submit(a));
+
+        // This is the main thread: run the posted ViewModel calls and postValue() while the actors run
+        while (!allDone(running)) {
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.sleep(1);
+        }
+        long wallNanos = System.nanoTime() - t0;
+        pool.shutdown();
+
+        long totalOps = 0;
+        for (Future<Map<String, LatencyRecorder>> f : running) {
+            for (Map.Entry<String, LatencyRecorder> e : f.get().entrySet()) {
+                results.computeIfAbsent(e.getKey(), k -> new LatencyRecorder(1024)).merge(e.getValue());
+                totalOps += e.getValue().count();
+            }
+        }
+
+        // Everything acknowledged must be on disk before the final check
+        drain(shared);
+        for (BasalProfileRepository r : vmRepos) drain(r);
+        int lost = verifyFinalState();
+
+        System.out.println(String.format(Locale.ROOT,
+                "stress: %d ops in %.1f s (%.0f ops/s), lost updates=%d, torn profiles=%d",
+                totalOps, wallNanos / 1e9, totalOps * 1e9 / wallNanos, lost, anomalies.size() - lost));
+        for (Map.Entry<String, LatencyRecorder> e : results.entrySet()) {
+            System.out.println(e.getKey() + ": " + e.getValue().summarize().toCsvColumns());
+        }
+        assertEquals("anomalies: " + anomalies, Collections.emptyList(), new ArrayList<>(anomalies));
+    }
+
+    // ---------- Actors ----------
+
+    private Callable<Map<String, LatencyRecorder>> reader(BasalProfileRepository repo, long[] ids,
+                                                          long deadline, long seed) {
+        return () -> {
+            Random rnd = new Random(seed);
+            LatencyRecorder get = new LatencyRecorder(4096);
+            LatencyRecorder list = new LatencyRecorder(256);
+            while (System.nanoTime() < deadline) {
+                long t0 = System.nanoTime();
+                if (rnd.nextInt(20) == 0) {
+                    List<BasalProfile> all = await(repo.getAllProfilesAsync());
+                    list.record(System.nanoTime() - t0);
+                    for (BasalProfile p : all) checkUniform(p, "repo.getAllProfiles");
+                } else {
+                    BasalProfile p = await(repo.getProfileAsync(ids[rnd.nextInt(ids.length)]));
+                    get.record(System.nanoTime() - t0);
+                    if (p != null) checkUniform(p, "repo.getProfile");
+                }
+            }
+            return recorders("repo.getProfile", get, "repo.getAllProfiles", list);
+        };
+    }
+
+    private Callable<Map<String, LatencyRecorder>> writer(BasalProfileRepository repo, long[] owned,
+                                                          long deadline, long seed) {
+        return () -> {
+            Random rnd = new Random(seed);
+            LatencyRecorder upsert = new LatencyRecorder(4096);
+            LatencyRecorder duplicate = new LatencyRecorder(1024);
+            LatencyRecorder delete = new LatencyRecorder(1024);
+            Deque<Long> copies = new ArrayDeque<>();
+            int seq = 0;
+            while (System.nanoTime() < deadline) {
+                int op = rnd.nextInt(10);
+                long id = owned[rnd.nextInt(owned.length)];
+                long t0 = System.nanoTime();
+                if (op < 7) {
+                    final int value = ++seq;
+                    CompletableFuture<Long> ack = new CompletableFuture<>();
+                    repo.upsert(uniform(id, value), ack::complete);
+                    await(ack);
+                    upsert.record(System.nanoTime() - t0);
+                    expected.put(id, value);
+                } else if (op < 9 || copies.isEmpty()) {
+                    CompletableFuture<Long> ack = new CompletableFuture<>();
+                    repo.duplicateProfile(id, " (kopia)", ack::complete);
+                    copies.push(await(ack));
+                    duplicate.record(System.nanoTime() - t0);
+                } else {
+                    CompletableFuture<Void> ack = new CompletableFuture<>();
+                    repo.deleteProfile(copies.pop(), () -> ack.complete(null));
+                    await(ack);
+                    delete.record(System.nanoTime() - t0);
+                }
+            }
+            return recorders("repo.upsert", upsert, "repo.duplicateProfile", duplicate,
+                    "repo.deleteProfile", delete);
+        };
+    }
+
+    /**
+     * Load another owned profile, replace its grid, save, wait for the save acknowledgement.
+     * ViewModel calls are main-thread API, so each one is posted to the main looper (idled by
+     * the test thread) and the actor only waits.
+     */
+    private Callable<Map<String, LatencyRecorder>> viewModelActor(ProfileViewModel vm, long[] owned,
+                                                                  long deadline, long seed) {
+        return () -> {
+            Random rnd = new Random(seed);
+            LatencyRecorder load = new LatencyRecorder(2048);
+            LatencyRecorder save = new LatencyRecorder(2048);
+            long current = 0;
+            int seq = 0;
+            while (System.nanoTime() < deadline) {
+                long pick;
+                do { pick = owned[rnd.nextInt(owned.length)]; } while (pick == current);
+                final long id = current = pick;
+
+                long t0 = System.nanoTime();
+                onMain(() -> vm.loadProfile(id));
+                BasalProfile p = awaitCurrent(vm, id);
+                load.record(System.nanoTime() - t0);
+                checkUniform(p, "vm.loadProfile");
+
+                final int value = ++seq;
+                double[] rates = new double[24];
+                for (int h = 0; h < 24; h++) rates[h] = value * ACCURACY;
+                t0 = System.nanoTime();
+                CompletableFuture<Long> ack = new CompletableFuture<>();
+                onMain(() -> {
+                    vm.applyHourlyRates(rates);
+                    vm.saveCurrentProfile(ack::complete);
+                });
+                await(ack);
+                save.record(System.nanoTime() - t0);
+                expected.put(id, value);
+            }
+            return recorders("vm.loadProfile", load, "vm.editAndSave", save);
+        };
+    }
+
+    // ---------- Checks ----------
+
+    private void checkUniform(BasalProfile p, String where) {
+        int first = p.getUnitsAtHour(0);
+        for (int h = 1; h < 24; h++) {
+            if (p.getUnitsAtHour(h) != first) {
+                anomalies.add("torn profile " + p.getId() + " via " + where);
+                return;
+            }
+        }
+    }
+
+    /** Returns the number of lost updates; torn final rows are recorded as anomalies too. */
+    private int verifyFinalState() {
+        int lost = 0;
+        for (BasalProfileEntity e : db.basalProfileDao().getAllProfiles()) {
+            int[] units = BasalProfileMapper.unitsOf(e);
+            if (ProfileContentHash.of(e.accuracy, units) != e.contentHash) {
+                anomalies.add("stale contentHash on profile " + e.id);
+            }
+            checkUniform(BasalProfileMapper.toDomain(e), "final state");
+            Integer want = expected.get(e.id);
+            if (want != null && units[0] != want) {
+                anomalies.add("lost update on profile " + e.id + ": " + units[0] + " != " + want);
+                lost++;
+            }
+        }
+        return lost;
+    }
+
+    // ---------- Helpers ----------
+
+    private long[] seed() {
+        long[] ids = new long[profiles];
+        for (int i = 0; i < profiles; i++) {
+            ids[i] = db.basalProfileDao().insertProfile(BasalProfileMapper.toEntity(uniform(0, 0)));
+            expected.put(ids[i], 0);
+        }
+        // Only owned profiles are tracked for lost updates; the rest are read-only
+        for (int i = (writers + viewModels) * OWNED_PER_ACTOR; i < profiles; i++) expected.remove(ids[i]);
+        return ids;
+    }
+
+    private static long[] owned(long[] ids, int owner) {
+        long[] out = new long[OWNED_PER_ACTOR];
+        System.arraycopy(ids, owner * OWNED_PER_ACTOR, out, 0, OWNED_PER_ACTOR);
+        return out;
+    }
+
+    private static BasalProfile uniform(long id, int units) {
+        int[] grid = new int[24];
+        java.util.Arrays.fill(grid, units);
+        return new BasalProfile(id, "stress", ACCURACY, ProfileOrigin.USER_MODIFIED, null, null, grid);
+    }
+
+    /** Spins until the ViewModel exposes profile {@code id}; postValue is delivered by the main loop. */
+    private BasalProfile awaitCurrent(ProfileViewModel vm, long id) throws Exception {
+        long limit = System.nanoTime() + TimeUnit.SECONDS.toNanos(CALLBACK_TIMEOUT_S);
+        while (System.nanoTime() < limit) {
+            BasalProfile p = onMain(() -> vm.getCurrentProfile().getValue());
+            if (p != null && p.getId() == id) return p;
+            Thread.sleep(0, 100_000);
+        }
+        throw new AssertionError("ViewModel never showed profile " + id);
+    }
+
+    /** Runs {@code action} on the main looper and waits until it has run. */
+    private void onMain(Runnable action) throws Exception {
+        onMain(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private <T> T onMain(Callable<T> call) throws Exception {
+        CompletableFuture<T> done = new CompletableFuture<>();
+        main.post(() -> {
+            try {
+                done.complete(call.call());
+            } catch (Throwable t) {
+                done.completeExceptionally(t);
+            }
+        });
+        return await(done);
+    }
+
+    private static <T> T await(CompletableFuture<T> f) throws Exception {
+        return f.get(CALLBACK_TIMEOUT_S, TimeUnit.SECONDS);
+    }
+
+    private static void drain(BasalProfileRepository repo) throws Exception {
+        await(repo.getProfileAsync(-1)); // io lane is FIFO: everything queued before is done
+    }
+
+    private static boolean allDone(List<? extends Future<?>> futures) {
+        for (Future<?> f : futures) if (!f.isDone()) return false;
+        return true;
+    }
+
+    private static Map<String, LatencyRecorder> recorders(Object... nameThenRecorder) {
+        Map<String, LatencyRecorder> out = new TreeMap<>();
+        for (int i = 0; i < nameThenRecorder.length; i += 2) {
+            out.put((String) nameThenRecorder[i], (LatencyRecorder) nameThenRecorder[i + 1]);
+        }
+        return out;
+    }
+}
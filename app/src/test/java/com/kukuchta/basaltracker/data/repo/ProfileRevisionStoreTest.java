@@ -0,0 +1,167 @@
+package com.kukuchta.basaltracker.data.repo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Application;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.kukuchta.basaltracker.data.db.AppDatabase;
+import com.kukuchta.basaltracker.data.db.entities.BasalProfileEntity;
+import com.kukuchta.basaltracker.data.mapper.BasalProfileMapper;
+import com.kukuchta.basaltracker.domain.BasalProfile;
+import com.kukuchta.basaltracker.domain.ChangePointProfile;
+import com.kukuchta.basaltracker.domain.ProfileOrigin;
+import com.kukuchta.basaltracker.domain.ProfileRevision;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link ProfileRevisionStore} on an in-memory database: which saves become revisions (unchanged
+ * saves are skipped, accuracy changes and every 16th revision are keyframes) and what
+ * {@link ProfileRevisionStore#versionAt} reconstructs from them.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ProfileRevisionStoreTest {
+
+    private AppDatabase db;
+    private ProfileRevisionStore store;
+
+    @Before
+    public void setUp() {
+        Application app = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(app, AppDatabase.class).allowMainThreadQueries().build();
+        store = new ProfileRevisionStore(db.basalProfileRevisionDao());
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void everyRevisionIsReconstructedAcrossKeyframes() {
+        Random random = new Random(7);
+        int[] units = new int[24];
+        for (int h = 0; h < 24; h++) units[h] = 5 + random.nextInt(30);
+        long id = insert(units);
+        List<int[]> saved = new ArrayList<>();
+
+        for (int save = 0; save < 60; save++) {
+            if (save > 0 && random.nextInt(5) == 0) {
+                // Unchanged save: must not produce a revision
+                store.record(id, grid(id, 0.05, units));
+                continue;
+            }
+            if (save > 0) {
+                for (int k = random.nextInt(3); k >= 0; k--) {
+                    int h = random.nextInt(24);
+                    units[h] = Math.max(0, units[h] + random.nextInt(21) - 10); // up or down
+                }
+                if (!saved.isEmpty() && Arrays.equals(saved.get(saved.size() - 1), units)) continue;
+            }
+            store.record(id, grid(id, 0.05, units));
+            saved.add(units.clone());
+        }
+
+        assertTrue("too few revisions: " + saved.size(),
+                saved.size() > 2 * ProfileRevisionStore.KEYFRAME_INTERVAL);
+        assertEquals(saved.size(), store.history(id).size());
+        for (int r = 0; r < saved.size(); r++) {
+            ProfileRevisionStore.Snapshot v = store.versionAt(id, r);
+            assertEquals(r, v.revision);
+            assertArrayEquals("revision " + r, saved.get(r), v.units);
+        }
+        assertNull(store.versionAt(id, saved.size()));
+    }
+
+    @Test
+    public void keyframesEverySixteenthRevisionAndOnAccuracyChange() {
+        int[] units = new int[24];
+        long id = insert(units);
+        store.record(id, grid(id, 0.05, units));
+        for (int r = 1; r < 40; r++) {
+            units[r % 24]++;
+            // Revision 21 moves to a coarser grid with the same units
+            store.record(id, grid(id, r >= 21 ? 0.1 : 0.05, units));
+        }
+
+        List<ProfileRevision> history = store.history(id);
+        assertEquals(40, history.size());
+        for (ProfileRevision rev : history) {
+            boolean expected = rev.revision % ProfileRevisionStore.KEYFRAME_INTERVAL == 0 || rev.revision == 21;
+            assertEquals("revision " + rev.revision, expected, rev.keyframe);
+            assertEquals(rev.revision == 0 ? 24 : 1, rev.changedHours);
+        }
+        assertEquals(0.05, store.versionAt(id, 20).accuracy, 0.0);
+        assertEquals(0.1, store.versionAt(id, 21).accuracy, 0.0);
+    }
+
+    @Test
+    public void accuracyChangeAloneIsARevision() {
+        int[] units = new int[24];
+        units[3] = 4;
+        long id = insert(units);
+        store.record(id, grid(id, 0.05, units));
+        store.record(id, grid(id, 0.05, units));
+        assertEquals(1, store.history(id).size());
+
+        store.record(id, grid(id, 0.1, units));
+        List<ProfileRevision> history = store.history(id);
+        assertEquals(2, history.size());
+        assertTrue(history.get(0).keyframe); // newest first
+        assertEquals(0, history.get(0).changedHours);
+        assertEquals(0.1, store.versionAt(id, 1).accuracy, 0.0);
+    }
+
+    @Test
+    public void subHourEditKeepingHourMeansIsRecorded() {
+        // 10 and 12 U over the two halves of hour 0, then swapped: same hourly mean of 11
+        BasalProfileEntity before = subHour(0, new int[] { 10, 12, 11 });
+        long id = db.basalProfileDao().insertProfile(before);
+        store.record(id, before);
+        BasalProfileEntity after = subHour(id, new int[] { 12, 10, 11 });
+        assertArrayEquals(BasalProfileMapper.unitsOf(before), BasalProfileMapper.unitsOf(after));
+
+        store.record(id, after);
+        store.record(id, after); // unchanged save
+
+        assertEquals(2, store.history(id).size());
+        ProfileRevisionStore.Snapshot first = store.versionAt(id, 0);
+        ProfileRevisionStore.Snapshot second = store.versionAt(id, 1);
+        assertEquals(30, second.resolutionMinutes);
+        assertArrayEquals(before.changePoints, first.changePoints);
+        assertArrayEquals(after.changePoints, second.changePoints);
+    }
+
+    private long insert(int[] units) {
+        return db.basalProfileDao().insertProfile(grid(0, 0.05, units));
+    }
+
+    private static BasalProfileEntity grid(long id, double accuracy, int[] units) {
+        BasalProfileEntity e = BasalProfileMapper.toEntity(new BasalProfile(id, "Dobowy", accuracy,
+                ProfileOrigin.USER_MODIFIED, null, null, units));
+        e.createdAt = 1_000L;
+        return e;
+    }
+
+    private static BasalProfileEntity subHour(long id, int[] units) {
+        BasalProfileEntity e = BasalProfileMapper.toEntity(new ChangePointProfile(id, "Półgodzinny",
+                0.05, 30, ProfileOrigin.USER_MODIFIED, null, null, new int[] { 0, 30, 60 }, units));
+        e.createdAt = 1_000L;
+        return e;
+    }
+}
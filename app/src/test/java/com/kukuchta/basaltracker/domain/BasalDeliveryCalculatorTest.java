@@ -0,0 +1,132 @@
+package com.kukuchta.basaltracker.domain;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.Random;
+
+/**
+ * {@link BasalDeliveryCalculator} against naive per-minute integration in Europe/Warsaw: on the
+ * spring-forward day (23 h, 02:00 never happens) and the fall-back day (25 h, 02:00 happens
+ * twice), for ranges under an hour, and for ranges spanning several days and transitions.
+ */
+public class BasalDeliveryCalculatorTest {
+
+    private static final ZoneId WARSAW = ZoneId.of("Europe/Warsaw");
+    private static final LocalDate SPRING_FORWARD = LocalDate.of(2024, 3, 31);
+    private static final LocalDate FALL_BACK = LocalDate.of(2024, 10, 27);
+    private static final long MINUTE = 60_000L;
+
+    private final int[] units = new int[24];
+    private final BasalDeliveryCalculator calculator;
+
+    public BasalDeliveryCalculatorTest() {
+        for (int h = 0; h < 24; h++) units[h] = 5 + h * 3; // distinct, so a wrong hour shows
+        calculator = new BasalDeliveryCalculator(
+                new BasalProfile(1, "Test", 0.05, ProfileOrigin.USER_MODIFIED, null, null, units), WARSAW);
+    }
+
+    @Test
+    public void springForwardDaySkipsTwoOClock() {
+        long start = midnight(SPRING_FORWARD);
+        long end = midnight(SPRING_FORWARD.plusDays(1));
+        assertEquals(23 * BasalDeliveryCalculator.MS_PER_HOUR, end - start);
+        assertEquals((calculator.unitsPerDay() - units[2]) * BasalDeliveryCalculator.MS_PER_HOUR,
+                calculator.deliveredUnitMillis(start, end));
+        assertEquals(naive(start, end), calculator.deliveredUnitMillis(start, end));
+    }
+
+    @Test
+    public void fallBackDayRepeatsTwoOClock() {
+        long start = midnight(FALL_BACK);
+        long end = midnight(FALL_BACK.plusDays(1));
+        assertEquals(25 * BasalDeliveryCalculator.MS_PER_HOUR, end - start);
+        assertEquals((calculator.unitsPerDay() + units[2]) * BasalDeliveryCalculator.MS_PER_HOUR,
+                calculator.deliveredUnitMillis(start, end));
+        assertEquals(naive(start, end), calculator.deliveredUnitMillis(start, end));
+    }
+
+    @Test
+    public void shortRangesAroundTransitionsMatchNaive() {
+        Random random = new Random(32);
+        for (LocalDate day : new LocalDate[] { SPRING_FORWARD, FALL_BACK }) {
+            long from = midnight(day);
+            for (int trial = 0; trial < 500; trial++) {
+                long start = from + random.nextInt(26 * 60) * MINUTE;
+                long end = start + random.nextInt(60) * MINUTE; // 0..59 min
+                assertEquals(day + " " + start + ".." + end,
+                        naive(start, end), calculator.deliveredUnitMillis(start, end));
+            }
+        }
+    }
+
+    @Test
+    public void multiDayRangesMatchNaive() {
+        Random random = new Random(33);
+        long from = midnight(SPRING_FORWARD.minusDays(10));
+        long span = midnight(FALL_BACK.plusDays(10)) - from;
+        for (int trial = 0; trial < 60; trial++) {
+            long start = from + random.nextInt((int) (span / MINUTE)) * MINUTE;
+            long end = start + (long) random.nextInt(8 * 24 * 60) * MINUTE; // up to 8 days
+            assertEquals(start + ".." + end, naive(start, end), calculator.deliveredUnitMillis(start, end));
+        }
+        // Both transitions in one range
+        long start = midnight(SPRING_FORWARD.minusDays(1)) + 17 * MINUTE;
+        long end = midnight(FALL_BACK.plusDays(1)) + 43 * MINUTE;
+        assertEquals(naive(start, end), calculator.deliveredUnitMillis(start, end));
+    }
+
+    @Test
+    public void batchMatchesSingleQueries() {
+        Random random = new Random(34);
+        long from = midnight(FALL_BACK.minusDays(2));
+        int n = 200;
+        long[] starts = new long[n];
+        long[] ends = new long[n];
+        long[] expected = new long[n];
+        for (int i = 0; i < n; i++) {
+            starts[i] = from + random.nextInt(5 * 24 * 60) * MINUTE;
+            ends[i] = starts[i] + random.nextInt(3 * 24 * 60) * MINUTE;
+            expected[i] = naive(starts[i], ends[i]);
+        }
+        long[] out = new long[n];
+        calculator.deliveredUnitMillis(starts, ends, out, n);
+        assertArrayEquals(expected, out);
+    }
+
+    @Test
+    public void insulinIsUnitMillisTimesAccuracy() {
+        long start = midnight(FALL_BACK);
+        long unitMillis = calculator.deliveredUnitMillis(start, start + BasalDeliveryCalculator.MS_PER_HOUR);
+        assertEquals(units[0] * BasalDeliveryCalculator.MS_PER_HOUR, unitMillis);
+        assertEquals(new BigDecimal("0.250000"), calculator.toInsulin(unitMillis));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reversedRangeIsRejected() {
+        calculator.deliveredUnitMillis(1_000L, 999L);
+    }
+
+    /** One minute at a time at the local wall-clock hour the minute starts in. */
+    private long naive(long start, long end) {
+        ZoneRules rules = WARSAW.getRules();
+        long total = 0;
+        for (long t = start; t < end; t += MINUTE) {
+            long local = t + rules.getOffset(Instant.ofEpochMilli(t)).getTotalSeconds() * 1000L;
+            int hour = (int) Math.floorMod(local / BasalDeliveryCalculator.MS_PER_HOUR, 24L);
+            total += units[hour] * MINUTE;
+        }
+        return total;
+    }
+
+    private static long midnight(LocalDate day) {
+        return day.atStartOfDay(WARSAW).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,106 @@
+package com.kukuchta.basaltracker.domain;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * {@link InsulinOnBoard}: a flat rate r settles at r * Σremaining * step, and stepped rates,
+ * daily and arbitrary, match a naive O(n·k) convolution of every bin with the whole kernel.
+ */
+public class InsulinOnBoardTest {
+
+    private static final double EPS = 1e-9;
+    private static final InsulinActionKernel[] KERNELS = {
+            InsulinActionKernel.DEFAULT,
+            InsulinActionKernel.exponential(55, 300, 15),
+            InsulinActionKernel.linear(240, 10)
+    };
+
+    @Test
+    public void flatProfileIsRateTimesKernelArea() {
+        double[] rates = new double[24];
+        Arrays.fill(rates, 0.8);
+        for (InsulinActionKernel kernel : KERNELS) {
+            double stepHours = kernel.stepMinutes / 60.0;
+            double expected = 0.8 * kernel.cumulative(kernel.length() - 1) * stepHours;
+            IobCurve curve = InsulinOnBoard.day(rates, kernel);
+            assertEquals(24 * 60 / kernel.stepMinutes + 1, curve.values.length);
+            for (int s = 0; s < curve.values.length; s++) {
+                assertEquals("sample " + s, expected, curve.values[s], EPS);
+            }
+        }
+        // Linear decay over 4 h keeps half of 4 h of delivery on board
+        assertEquals(0.8 * 2.0, InsulinOnBoard.day(rates, KERNELS[2]).values[0], EPS);
+    }
+
+    @Test
+    public void steppedDayMatchesNaiveConvolution() {
+        Random random = new Random(49);
+        for (InsulinActionKernel kernel : KERNELS) {
+            for (int trial = 0; trial < 20; trial++) {
+                double[] rates = new double[24];
+                for (int h = 0; h < 24; h++) rates[h] = random.nextInt(4) == 0 ? 0.0 : random.nextInt(60) * 0.05;
+                int perHour = 60 / kernel.stepMinutes;
+                int perDay = 24 * perHour;
+                double[] bins = new double[perDay];
+                for (int b = 0; b < perDay; b++) bins[b] = rates[b / perHour];
+
+                IobCurve curve = InsulinOnBoard.day(rates, kernel);
+                for (int s = 0; s <= perDay; s++) {
+                    // The day repeats, so bins before midnight wrap to the previous day
+                    double expected = naive(b -> bins[Math.floorMod(b, perDay)], s, kernel);
+                    assertEquals("trial " + trial + ", sample " + s, expected, curve.values[s], EPS);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void arbitraryStepsMatchNaiveConvolution() {
+        Random random = new Random(50);
+        for (InsulinActionKernel kernel : KERNELS) {
+            for (int trial = 0; trial < 50; trial++) {
+                int samples = 1 + random.nextInt(300);
+                int count = random.nextInt(40);
+                int[] steps = new int[count];
+                double[] deltas = new double[count];
+                double initial = random.nextInt(40) * 0.05;
+                double rate = initial;
+                for (int j = 0; j < count; j++) {
+                    // Ascending, starting before the kernel window, some in the same bin
+                    steps[j] = (j == 0 ? -kernel.length() - 20 : steps[j - 1]) + random.nextInt(30);
+                    double next = random.nextInt(40) * 0.05;
+                    deltas[j] = next - rate;
+                    rate = next;
+                }
+
+                double[] actual = InsulinOnBoard.convolve(initial, steps, deltas, count, samples, kernel);
+                assertEquals(samples + 1, actual.length);
+                for (int s = 0; s <= samples; s++) {
+                    double expected = naive(b -> {
+                        double r = initial;
+                        for (int j = 0; j < count && steps[j] <= b; j++) r += deltas[j];
+                        return r;
+                    }, s, kernel);
+                    assertEquals("trial " + trial + ", sample " + s, expected, actual[s], EPS);
+                }
+            }
+        }
+    }
+
+    private interface RateAtBin { double rate(int bin); }
+
+    /** IOB at the start of bin s: every earlier bin's delivery times the fraction left of it. */
+    private static double naive(RateAtBin rates, int s, InsulinActionKernel kernel) {
+        double stepHours = kernel.stepMinutes / 60.0;
+        double iob = 0.0;
+        for (int k = 0; k < kernel.length(); k++) {
+            iob += rates.rate(s - 1 - k) * stepHours * kernel.remaining(k);
+        }
+        return Math.max(0.0, iob);
+    }
+}
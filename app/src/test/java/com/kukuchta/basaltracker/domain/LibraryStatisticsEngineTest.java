@@ -0,0 +1,97 @@
+package com.kukuchta.basaltracker.domain;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * {@link LibraryStatisticsEngine} fed in several chunks on a multi-threaded pool against a
+ * sequential two-pass computation (mean first, then squared deviations): on random libraries,
+ * and on rates around 1000 U/h that differ only in the sixth decimal, where sumSq / n - mean²
+ * would cancel to noise.
+ */
+public class LibraryStatisticsEngineTest {
+
+    private static final int CHUNK = 2000;
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final LibraryStatisticsEngine engine = new LibraryStatisticsEngine(pool);
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void randomLibrariesMatchTwoPass() {
+        Random random = new Random(34);
+        double[] accuracies = { 0.01, 0.05, 0.1 };
+        for (int trial = 0; trial < 20; trial++) {
+            int n = 1 + random.nextInt(5000);
+            double[] accuracy = new double[n];
+            int[] units = new int[n * 24];
+            for (int i = 0; i < n; i++) {
+                accuracy[i] = accuracies[random.nextInt(accuracies.length)];
+                for (int h = 0; h < 24; h++) units[i * 24 + h] = random.nextInt(200);
+            }
+            check("trial " + trial, accuracy, units, n, 1e-9);
+        }
+    }
+
+    @Test
+    public void smallSpreadAroundALargeMeanKeepsItsVariance() {
+        Random random = new Random(35);
+        int n = 7000;
+        double[] accuracy = new double[n];
+        int[] units = new int[n * 24];
+        for (int i = 0; i < n; i++) {
+            accuracy[i] = 1e-6;
+            for (int h = 0; h < 24; h++) units[i * 24 + h] = 1_000_000_000 + random.nextInt(5);
+        }
+        check("large mean", accuracy, units, n, 1e-6);
+    }
+
+    @Test
+    public void emptyLibraryIsAllZero() {
+        LibraryStatistics s = engine.newAccumulator(0).finish();
+        assertEquals(0, s.profileCount);
+        for (int h = 0; h < 24; h++) {
+            assertEquals(0.0, s.meanRate[h], 0.0);
+            assertEquals(0.0, s.stdDevRate[h], 0.0);
+        }
+    }
+
+    /** Feeds the rows in CHUNK-sized pieces and compares mean and std per hour, relative to two-pass. */
+    private void check(String where, double[] accuracy, int[] units, int n, double relTol) {
+        LibraryStatisticsEngine.Accumulator acc = engine.newAccumulator(CHUNK);
+        double[] chunkAccuracy = new double[CHUNK];
+        int[] chunkUnits = new int[CHUNK * 24];
+        for (int from = 0; from < n; from += CHUNK) {
+            int count = Math.min(CHUNK, n - from);
+            System.arraycopy(accuracy, from, chunkAccuracy, 0, count);
+            System.arraycopy(units, from * 24, chunkUnits, 0, count * 24);
+            acc.addChunk(chunkAccuracy, chunkUnits, count);
+        }
+        LibraryStatistics s = acc.finish();
+
+        assertEquals(where, n, s.profileCount);
+        for (int h = 0; h < 24; h++) {
+            double mean = 0.0;
+            for (int i = 0; i < n; i++) mean += units[i * 24 + h] * accuracy[i];
+            mean /= n;
+            double m2 = 0.0;
+            for (int i = 0; i < n; i++) {
+                double d = units[i * 24 + h] * accuracy[i] - mean;
+                m2 += d * d;
+            }
+            double std = Math.sqrt(m2 / n);
+
+            assertEquals(where + " mean h" + h, mean, s.meanRate[h], Math.abs(mean) * 1e-12);
+            assertEquals(where + " std h" + h, std, s.stdDevRate[h], std * relTol);
+        }
+    }
+}
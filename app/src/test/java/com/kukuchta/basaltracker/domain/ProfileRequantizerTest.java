@@ -0,0 +1,161 @@
+package com.kukuchta.basaltracker.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link ProfileRequantizer}: the documented bounds (every slot within one new step, the daily
+ * dose within half a step-slot) on random profiles, and the deviation report.
+ */
+public class ProfileRequantizerTest {
+
+    private static final double EPS = 1e-9;
+    private static final double[] ACCURACIES = { 0.01, 0.025, 0.05, 0.1, 0.3 };
+    private static final int[] RESOLUTIONS = { 15, 30, 60 };
+
+    @Test
+    public void flatRateKeepsItsDailyDose() {
+        int[] starts = { 0 };
+        ChangePointProfile flat = new ChangePointProfile(1, "Płaski", 0.05, 60,
+                ProfileOrigin.USER_MODIFIED, null, null, starts, new int[] { 20 });
+
+        ChangePointProfile moved = ProfileRequantizer.requantize(flat, 0.3);
+
+        assertEquals(24.0, dailyDose(moved), EPS);
+        int raised = 0;
+        for (int h = 0; h < 24; h++) {
+            double rate = moved.getBasalRateAtMinute(h * 60);
+            assertTrue("hour " + h + ": " + rate, Math.abs(rate - 0.9) < EPS || Math.abs(rate - 1.2) < EPS);
+            if (rate > 1.0) raised++;
+        }
+        assertEquals(8, raised);
+    }
+
+    @Test
+    public void randomProfilesStayWithinTheBounds() {
+        Random random = new Random(50L);
+        for (int i = 0; i < 2000; i++) {
+            ChangePointProfile p = randomProfile(random);
+            double to = ACCURACIES[random.nextInt(ACCURACIES.length)];
+            ChangePointProfile q = ProfileRequantizer.requantize(p, to);
+            String where = "profile " + i + " " + p.getAccuracy() + " -> " + to
+                    + " at " + p.getResolutionMinutes() + " min";
+
+            assertEquals(where, to, q.getAccuracy(), 0.0);
+            assertEquals(where, p.getResolutionMinutes(), q.getResolutionMinutes());
+            for (int m = 0; m < 1440; m += p.getResolutionMinutes()) {
+                double diff = Math.abs(q.getBasalRateAtMinute(m) - p.getBasalRateAtMinute(m));
+                assertTrue(where + ", minute " + m + ": moved by " + diff, diff < to - EPS || diff < EPS);
+            }
+            double slotHours = p.getResolutionMinutes() / 60.0;
+            double doseChange = Math.abs(dailyDose(q) - dailyDose(p));
+            assertTrue(where + ": dose moved by " + doseChange, doseChange <= 0.5 * to * slotHours + EPS);
+        }
+    }
+
+    @Test
+    public void finerGridKeepsEveryRate() {
+        Random random = new Random(7L);
+        for (int i = 0; i < 200; i++) {
+            ChangePointProfile p = randomProfile(random, 0.1);
+            ChangePointProfile q = ProfileRequantizer.requantize(p, 0.025);
+            assertTrue(Arrays.equals(p.copyStartMinutes(), q.copyStartMinutes()));
+            for (int k = 0; k < p.getChangePointCount(); k++) {
+                assertEquals(p.copyUnits()[k] * 4, q.copyUnits()[k]);
+            }
+        }
+    }
+
+    @Test
+    public void reportKeepsTheLargestDeviationsLargestFirst() {
+        ProfileRequantizer.Report report = new ProfileRequantizer.Report(0.1, 3);
+        double[] before = new double[24];
+        double[] afterA = new double[24];
+        double[] afterB = new double[24];
+        Arrays.fill(before, 1.0);
+        Arrays.fill(afterA, 1.0);
+        Arrays.fill(afterB, 1.0);
+        afterA[2] = 1.05;   // +0.05
+        afterA[9] = 0.8;    // -0.20
+        afterB[0] = 1.1;    // +0.10
+        afterB[23] = 1.3;   // +0.30
+        afterB[12] = 0.99;  // -0.01, below the top three
+
+        report.add(1, "A", before, afterA);
+        report.add(2, "B", before, afterB);
+
+        List<ProfileRequantizer.Deviation> top = report.largestDeviations();
+        assertEquals(3, top.size());
+        assertDeviation(top.get(0), 2, 23, 0.3);
+        assertDeviation(top.get(1), 1, 9, 0.2);
+        assertDeviation(top.get(2), 2, 0, 0.1);
+        assertEquals(2, report.profilesScanned);
+        // A: -0.15 U, B: +0.39 U
+        assertEquals(0.39, report.maxDailyDoseChange, EPS);
+    }
+
+    @Test
+    public void reportOfUnchangedProfilesIsEmpty() {
+        ProfileRequantizer.Report report = new ProfileRequantizer.Report(0.05, 10);
+        ChangePointProfile p = randomProfile(new Random(3L), 0.05);
+        double[] rates = ProfileRequantizer.hourlyRates(p);
+        report.add(p.getId(), p.getName(), rates, ProfileRequantizer.hourlyRates(ProfileRequantizer.requantize(p, 0.05)));
+
+        assertEquals(0, report.largestDeviations().size());
+        assertEquals(0.0, report.maxDailyDoseChange, EPS);
+        assertEquals(1, report.profilesScanned);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reportNeedsAPositiveLimit() {
+        new ProfileRequantizer.Report(0.05, 0);
+    }
+
+    // ---------- Helpers ----------
+
+    private static void assertDeviation(ProfileRequantizer.Deviation d, long id, int hour, double magnitude) {
+        assertEquals(id, d.profileId);
+        assertEquals(hour, d.hour);
+        assertEquals(magnitude, d.magnitude(), EPS);
+    }
+
+    private static double dailyDose(ChangePointProfile p) {
+        double total = 0;
+        for (double rate : ProfileRequantizer.hourlyRates(p)) total += rate;
+        return total;
+    }
+
+    private static ChangePointProfile randomProfile(Random random) {
+        return randomProfile(random, ACCURACIES[random.nextInt(ACCURACIES.length)]);
+    }
+
+    /** Random resolution, 1..12 change points on that grid, rates up to about 3 U/h. */
+    private static ChangePointProfile randomProfile(Random random, double accuracy) {
+        int resolution = RESOLUTIONS[random.nextInt(RESOLUTIONS.length)];
+        int slots = 1440 / resolution;
+        int n = 1 + random.nextInt(12);
+        boolean[] cut = new boolean[slots];
+        cut[0] = true;
+        for (int i = 1; i < n; i++) cut[1 + random.nextInt(slots - 1)] = true;
+        int count = 0;
+        for (boolean c : cut) if (c) count++;
+        int[] starts = new int[count];
+        int[] units = new int[count];
+        int maxUnits = (int) Math.round(3.0 / accuracy);
+        for (int s = 0, k = 0; s < slots; s++) {
+            if (!cut[s]) continue;
+            starts[k] = s * resolution;
+            int u;
+            do { u = random.nextInt(maxUnits + 1); } while (k > 0 && u == units[k - 1]);
+            units[k++] = u;
+        }
+        return new ChangePointProfile(random.nextInt(1000), "Losowy", accuracy, resolution,
+                ProfileOrigin.USER_MODIFIED, null, null, starts, units);
+    }
+}
@@ -0,0 +1,140 @@
+package com.kukuchta.basaltracker.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link ProfileScheduleIndex}: nested, overlapping and adjacent assignments, open ends and
+ * lookups exactly on validFrom / validTo (start inclusive, end exclusive, newest id wins), then
+ * random schedules against a brute-force scan.
+ */
+public class ProfileScheduleIndexTest {
+
+    private static final long OPEN = ProfileAssignment.OPEN_END;
+
+    @Test
+    public void newerNestedAssignmentWinsInsideOnly() {
+        ProfileScheduleIndex index = index(a(1, 0, 100), a(2, 20, 50));
+        assertNull(index.activeAt(-1));
+        assertEquals(1, winner(index, 0));
+        assertEquals(1, winner(index, 19));
+        assertEquals(2, winner(index, 20));
+        assertEquals(2, winner(index, 49));
+        assertEquals(1, winner(index, 50));
+        assertEquals(1, winner(index, 99));
+        assertNull(index.activeAt(100));
+    }
+
+    @Test
+    public void olderNestedAssignmentIsHidden() {
+        ProfileScheduleIndex index = index(a(2, 0, 100), a(1, 20, 50));
+        for (long t = 0; t < 100; t++) assertEquals("t=" + t, 2, winner(index, t));
+    }
+
+    @Test
+    public void overlapGoesToTheNewerAssignment() {
+        ProfileScheduleIndex index = index(a(1, 0, 60), a(2, 40, 100));
+        assertEquals(1, winner(index, 39));
+        assertEquals(2, winner(index, 40));
+        assertEquals(2, winner(index, 59));
+        assertEquals(2, winner(index, 60));
+        assertNull(index.activeAt(100));
+
+        // Same intervals, ids swapped: the first one keeps the overlap
+        index = index(a(2, 0, 60), a(1, 40, 100));
+        assertEquals(2, winner(index, 59));
+        assertEquals(1, winner(index, 60));
+    }
+
+    @Test
+    public void adjacentAssignmentsHandOverOnTheBoundary() {
+        ProfileScheduleIndex index = index(a(2, 0, 50), a(1, 50, 100));
+        assertEquals(2, winner(index, 49));
+        assertEquals(1, winner(index, 50));
+        assertEquals(List.of(2L), ids(index.overlapping(0, 50)));
+        assertEquals(List.of(1L), ids(index.overlapping(50, 51)));
+        assertEquals(List.of(2L, 1L), ids(index.overlapping(49, 51)));
+    }
+
+    @Test
+    public void openEndRunsToTheEndOfTime() {
+        ProfileScheduleIndex index = index(a(1, 100, OPEN), a(2, 200, 300));
+        assertNull(index.activeAt(99));
+        assertEquals(1, winner(index, 100));
+        assertEquals(2, winner(index, 200));
+        assertEquals(1, winner(index, 300));
+        assertEquals(1, winner(index, OPEN - 1));
+        assertNull(index.activeAt(OPEN));
+        assertEquals(List.of(1L), ids(index.overlapping(OPEN - 1, OPEN)));
+    }
+
+    @Test
+    public void emptyScheduleHasNothingActive() {
+        ProfileScheduleIndex index = index();
+        assertEquals(0, index.size());
+        assertNull(index.activeAt(0));
+        assertEquals(List.of(), index.overlapping(Long.MIN_VALUE, OPEN));
+    }
+
+    @Test
+    public void randomSchedulesMatchBruteForce() {
+        Random random = new Random(33);
+        for (int trial = 0; trial < 300; trial++) {
+            int n = 1 + random.nextInt(12);
+            List<ProfileAssignment> list = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                long from = random.nextInt(40);
+                long to = random.nextInt(6) == 0 ? OPEN : from + 1 + random.nextInt(15);
+                // Shuffled ids, so insertion order and id order differ
+                list.add(new ProfileAssignment(1 + (i * 7L) % 13, random.nextInt(5), from, to));
+            }
+            ProfileScheduleIndex index = new ProfileScheduleIndex(list);
+
+            for (long t = -1; t <= 60; t++) {
+                ProfileAssignment expected = null;
+                for (ProfileAssignment x : list) {
+                    if (x.validFrom <= t && t < x.validTo && (expected == null || x.id > expected.id)) expected = x;
+                }
+                assertEquals("trial " + trial + ", t=" + t, expected, index.activeAt(t));
+            }
+            for (int q = 0; q < 30; q++) {
+                long from = random.nextInt(60) - 5;
+                long to = from + random.nextInt(20);
+                List<ProfileAssignment> expected = new ArrayList<>();
+                for (ProfileAssignment x : list) {
+                    if (from < to && x.validFrom < to && from < x.validTo) expected.add(x);
+                }
+                expected.sort(Comparator.comparingLong((ProfileAssignment x) -> x.validFrom)
+                        .thenComparingLong(x -> x.id));
+                assertEquals("trial " + trial + ", [" + from + ", " + to + ")",
+                        ids(expected), ids(index.overlapping(from, to)));
+            }
+        }
+    }
+
+    private static ProfileAssignment a(long id, long from, long to) {
+        return new ProfileAssignment(id, 100 + id, from, to);
+    }
+
+    private static ProfileScheduleIndex index(ProfileAssignment... assignments) {
+        return new ProfileScheduleIndex(Arrays.asList(assignments));
+    }
+
+    private static long winner(ProfileScheduleIndex index, long t) {
+        return index.activeAt(t).id;
+    }
+
+    private static List<Long> ids(List<ProfileAssignment> assignments) {
+        List<Long> out = new ArrayList<>(assignments.size());
+        for (ProfileAssignment x : assignments) out.add(x.id);
+        return out;
+    }
+}
@@ -0,0 +1,127 @@
+package com.kukuchta.basaltracker.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * {@link ProfileSimilarityIndex#nearest} against brute-force k-NN on random libraries, for
+ * every {@link DistanceMetric}, including replaced and removed profiles. Ties may come back in
+ * any order, so the k best distances are compared, and each returned id must really be at the
+ * distance reported for it.
+ */
+public class ProfileSimilarityIndexTest {
+
+    private static final double[] ACCURACIES = { 0.01, 0.05, 0.1 };
+    private static final double EPS = 1e-9;
+
+    @Test
+    public void nearestMatchesBruteForce() {
+        Random random = new Random(30);
+        for (DistanceMetric metric : DistanceMetric.values()) {
+            for (int trial = 0; trial < 40; trial++) {
+                ProfileSimilarityIndex index = new ProfileSimilarityIndex(4);
+                Map<Long, double[]> library = new LinkedHashMap<>();
+                int n = 1 + random.nextInt(300);
+                for (long id = 1; id <= n; id++) put(index, library, id, random);
+
+                // Writes after the first query invalidate the norm order
+                query(index, library, metric, random, "before writes");
+                for (int w = 0; w < n / 4; w++) {
+                    long id = 1 + random.nextInt(n);
+                    if (random.nextBoolean()) {
+                        put(index, library, id, random);
+                    } else {
+                        index.remove(id);
+                        library.remove(id);
+                    }
+                }
+                assertEquals(library.size(), index.size());
+                if (!library.isEmpty()) query(index, library, metric, random, metric + " trial " + trial);
+            }
+        }
+    }
+
+    @Test
+    public void excludedProfileIsNeverReturned() {
+        ProfileSimilarityIndex index = new ProfileSimilarityIndex(2);
+        int[] units = new int[24];
+        Arrays.fill(units, 10);
+        index.put(1, 0.05, units);
+        index.put(2, 0.05, units);
+        double[] rates = new double[24];
+        Arrays.fill(rates, 0.5);
+
+        List<SimilarityMatch> matches = index.nearest(rates, 5, DistanceMetric.L1, 1);
+        assertEquals(1, matches.size());
+        assertEquals(2, matches.get(0).profileId);
+        assertEquals(0.0, matches.get(0).distance, EPS);
+    }
+
+    private static void query(ProfileSimilarityIndex index, Map<Long, double[]> library,
+                              DistanceMetric metric, Random random, String where) {
+        List<Long> ids = new ArrayList<>(library.keySet());
+        for (int q = 0; q < 20; q++) {
+            double[] rates;
+            long exclude;
+            if (random.nextBoolean()) {
+                // A stored profile looking for its neighbours
+                exclude = ids.get(random.nextInt(ids.size()));
+                rates = library.get(exclude);
+            } else {
+                rates = new double[24];
+                for (int h = 0; h < 24; h++) rates[h] = random.nextInt(300) * 0.01;
+                exclude = 0;
+            }
+            int k = 1 + random.nextInt(library.size() + 3);
+
+            List<Double> expected = new ArrayList<>();
+            for (Map.Entry<Long, double[]> e : library.entrySet()) {
+                if (e.getKey() != exclude) expected.add(distance(rates, e.getValue(), metric));
+            }
+            expected.sort(null);
+            expected = expected.subList(0, Math.min(k, expected.size()));
+
+            List<SimilarityMatch> actual = index.nearest(rates, k, metric, exclude);
+            assertEquals(where, expected.size(), actual.size());
+            for (int i = 0; i < actual.size(); i++) {
+                SimilarityMatch m = actual.get(i);
+                assertNotEquals(where, exclude, m.profileId);
+                assertEquals(where + " rank " + i, expected.get(i), m.distance, EPS);
+                assertEquals(where + " id " + m.profileId,
+                        distance(rates, library.get(m.profileId), metric), m.distance, EPS);
+                if (i > 0) assertTrue(where, actual.get(i - 1).distance <= m.distance);
+            }
+        }
+    }
+
+    /** Stores a random grid; the brute-force copy holds the same float-rounded rates as the index. */
+    private static void put(ProfileSimilarityIndex index, Map<Long, double[]> library, long id, Random random) {
+        double accuracy = ACCURACIES[random.nextInt(ACCURACIES.length)];
+        int[] units = new int[24];
+        int base = random.nextInt(60);
+        for (int h = 0; h < 24; h++) units[h] = Math.max(0, base + random.nextInt(21) - 10);
+        index.put(id, accuracy, units);
+        double[] rates = new double[24];
+        for (int h = 0; h < 24; h++) rates[h] = (float) (units[h] * accuracy);
+        library.put(id, rates);
+    }
+
+    private static double distance(double[] a, double[] b, DistanceMetric metric) {
+        double acc = 0.0;
+        for (int h = 0; h < 24; h++) {
+            double d = a[h] - b[h];
+            acc += metric == DistanceMetric.L2 ? d * d : Math.abs(d);
+        }
+        return metric == DistanceMetric.L2 ? Math.sqrt(acc) : acc;
+    }
+}
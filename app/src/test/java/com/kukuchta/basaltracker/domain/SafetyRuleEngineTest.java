@@ -0,0 +1,95 @@
+package com.kukuchta.basaltracker.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * {@link SafetyRuleEngine#onHourChanged} against a full {@link SafetyRuleEngine#reset}: after
+ * every edit of a random sequence both engines must report the same violations (with current
+ * values), and the return value must be true whenever the reported list changed.
+ */
+public class SafetyRuleEngineTest {
+
+    private static final double[] ACCURACIES = { 0.01, 0.025, 0.05, 0.1 };
+
+    @Test
+    public void incrementalEditsMatchFullEvaluation() {
+        Random random = new Random(20261019L);
+        for (int sequence = 0; sequence < 200; sequence++) {
+            double accuracy = ACCURACIES[random.nextInt(ACCURACIES.length)];
+            SafetyLimits limits = randomLimits(random);
+            int[] units = new int[24];
+            for (int h = 0; h < 24; h++) units[h] = random.nextInt((int) Math.round(2.0 / accuracy));
+
+            SafetyRuleEngine incremental = new SafetyRuleEngine();
+            incremental.setLimits(limits);
+            incremental.reset(accuracy, units);
+
+            for (int edit = 0; edit < 100; edit++) {
+                List<String> before = describe(incremental);
+                int hour = random.nextInt(24);
+                // Mostly small nudges so limits are crossed in both directions, now and then a jump
+                int delta = random.nextInt(10) == 0
+                        ? random.nextInt(200) - 100
+                        : random.nextInt(7) - 3;
+                units[hour] = Math.max(0, units[hour] + delta);
+
+                boolean changed = incremental.onHourChanged(hour, units[hour]);
+
+                SafetyRuleEngine full = new SafetyRuleEngine();
+                full.setLimits(limits);
+                full.reset(accuracy, units);
+                String where = "sequence " + sequence + ", edit " + edit + ", hour " + hour;
+                assertEquals(where, describe(full), describe(incremental));
+                assertEquals(where, full.hasViolations(), incremental.hasViolations());
+                if (!before.equals(describe(incremental))) {
+                    assertTrue(where + ": change not reported", changed);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void limitChangeMidSequenceMatchesFullEvaluation() {
+        Random random = new Random(7L);
+        int[] units = new int[24];
+        for (int h = 0; h < 24; h++) units[h] = 10 + random.nextInt(30);
+        SafetyRuleEngine incremental = new SafetyRuleEngine();
+        incremental.reset(0.05, units);
+
+        for (int edit = 0; edit < 500; edit++) {
+            if (edit % 25 == 0) incremental.setLimits(randomLimits(random));
+            int hour = random.nextInt(24);
+            units[hour] = Math.max(0, units[hour] + random.nextInt(11) - 5);
+            incremental.onHourChanged(hour, units[hour]);
+
+            SafetyRuleEngine full = new SafetyRuleEngine();
+            full.setLimits(incremental.getLimits());
+            full.reset(0.05, units);
+            assertEquals("edit " + edit, describe(full), describe(incremental));
+        }
+    }
+
+    /** Each limit is off one time in four; otherwise near the rates the grids produce. */
+    private static SafetyLimits randomLimits(Random random) {
+        return new SafetyLimits(
+                random.nextInt(4) == 0 ? Double.POSITIVE_INFINITY : 0.5 + random.nextInt(30) * 0.05,
+                random.nextInt(4) == 0 ? Double.POSITIVE_INFINITY : random.nextInt(20) * 0.05,
+                random.nextInt(4) == 0 ? Double.POSITIVE_INFINITY : 10 + random.nextInt(30));
+    }
+
+    /** Rule, hour, value and limit of every violation. */
+    private static List<String> describe(SafetyRuleEngine engine) {
+        List<String> out = new ArrayList<>();
+        for (SafetyViolation v : engine.getViolations()) {
+            out.add(v.rule + "@" + v.hour + "=" + v.value + "/" + v.limit);
+        }
+        return out;
+    }
+}
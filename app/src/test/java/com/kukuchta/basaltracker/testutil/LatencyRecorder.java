@@ -0,0 +1,83 @@
+package com.kukuchta.basaltracker.testutil;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Append-only latency sample buffer (nanoseconds) with percentile reporting.
+ * Not thread-safe; use one recorder per thread and {@link #merge} at the end.
+ */
+public final class LatencyRecorder {
+    private long[] samples;
+    private int size;
+
+    public LatencyRecorder(int expectedSamples) {
+        this.samples = new long[Math.max(16, expectedSamples)];
+    }
+
+    public void record(long nanos) {
+        if (size == samples.length) samples = Arrays.copyOf(samples, size * 2);
+        samples[size++] = nanos;
+    }
+
+    public void merge(LatencyRecorder other) {
+        for (int i = 0; i < other.size; i++) record(other.samples[i]);
+    }
+
+    public int count() { return size; }
+
+    public long totalNanos() {
+        long total = 0;
+        for (int i = 0; i < size; i++) total += samples[i];
+        return total;
+    }
+
+    public Summary summarize() {
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        return new Summary(
+                size,
+                totalNanos(),
+                percentile(sorted, 0.50),
+                percentile(sorted, 0.90),
+                percentile(sorted, 0.99),
+                size == 0 ? 0 : sorted[size - 1]
+        );
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int idx = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(idx, sorted.length - 1))];
+    }
+
+    /** Immutable snapshot; latencies in nanoseconds. */
+    public static final class Summary {
+        public final int count;
+        public final long totalNanos;
+        public final long p50, p90, p99, max;
+
+        Summary(int count, long totalNanos, long p50, long p90, long p99, long max) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        /** Operations per second over the summed sample time (serial throughput). */
+        public double opsPerSecond() {
+            return totalNanos == 0 ? 0.0 : count * 1_000_000_000.0 / totalNanos;
+        }
+
+        public String toCsvColumns() {
+            return String.format(Locale.ROOT, "%d,%.1f,%.3f,%.3f,%.3f,%.3f",
+                    count, opsPerSecond(), p50 / 1e6, p90 / 1e6, p99 / 1e6, max / 1e6);
+        }
+
+        public static String csvHeader() {
+            return "ops,ops_per_s,p50_ms,p90_ms,p99_ms,max_ms";
+        }
+    }
+}
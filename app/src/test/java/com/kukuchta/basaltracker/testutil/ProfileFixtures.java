@@ -0,0 +1,56 @@
+package com.kukuchta.basaltracker.testutil;
+
+import com.kukuchta.basaltracker.data.db.entities.BasalProfileEntity;
+import com.kukuchta.basaltracker.data.mapper.BasalProfileMapper;
+import com.kukuchta.basaltracker.domain.BasalProfile;
+import com.kukuchta.basaltracker.domain.ProfileOrigin;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/** Deterministic generator of realistic-looking hour-grid profiles for JVM tests. */
+public final class ProfileFixtures {
+    private static final double[] ACCURACIES = { 0.01, 0.025, 0.05, 0.1 };
+    private static final ProfileOrigin[] ORIGINS = ProfileOrigin.values();
+
+    private final Random random;
+
+    public ProfileFixtures(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /** Circadian-ish shape: a base rate with a dawn bump and random +/- steps. */
+    public BasalProfile nextProfile(int index) {
+        double accuracy = ACCURACIES[random.nextInt(ACCURACIES.length)];
+        int baseUnits = (int) Math.round((0.4 + random.nextDouble() * 0.8) / accuracy);
+        int[] units = new int[24];
+        for (int h = 0; h < 24; h++) {
+            int dawn = (h >= 3 && h < 8) ? (int) Math.round(0.3 / accuracy) : 0;
+            int jitter = random.nextInt(3) - 1;
+            units[h] = Math.max(0, baseUnits + dawn + jitter);
+        }
+
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("source", "fixture");
+        metadata.put("seq", Integer.toString(index));
+
+        return new BasalProfile(
+                0,
+                "Profil " + index,
+                accuracy,
+                ORIGINS[random.nextInt(ORIGINS.length)],
+                null,
+                metadata,
+                units
+        );
+    }
+
+    public BasalProfileEntity nextEntity(int index) {
+        return BasalProfileMapper.toEntity(nextProfile(index));
+    }
+
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+}
@@ -0,0 +1,95 @@
+package com.kukuchta.basaltracker.ui.timeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * {@link LttbDownsampler}: exactly min(n, threshold) points come back, the first and last input
+ * points are always among them, every output point is an input point in input order, and an
+ * isolated spike survives.
+ */
+public class LttbDownsamplerTest {
+
+    @Test
+    public void randomSeriesKeepEndpointsAndThreshold() {
+        Random random = new Random(46);
+        for (int trial = 0; trial < 500; trial++) {
+            int n = random.nextInt(400);
+            float[] xs = new float[n];
+            float[] ys = new float[n];
+            float x = random.nextFloat() * 1000;
+            for (int i = 0; i < n; i++) {
+                x += 1 + random.nextInt(10); // strictly increasing, like timestamps
+                xs[i] = x;
+                ys[i] = random.nextFloat() * 5;
+            }
+            int threshold = 3 + random.nextInt(n + 5);
+            float[] outX = new float[n];
+            float[] outY = new float[n];
+
+            int m = LttbDownsampler.downsample(xs, ys, n, threshold, outX, outY);
+
+            String where = "trial " + trial + ", n=" + n + ", threshold=" + threshold;
+            assertEquals(where, Math.min(n, threshold), m);
+            if (n == 0) continue;
+            assertEquals(where, xs[0], outX[0], 0f);
+            assertEquals(where, ys[0], outY[0], 0f);
+            assertEquals(where, xs[n - 1], outX[m - 1], 0f);
+            assertEquals(where, ys[n - 1], outY[m - 1], 0f);
+            int from = 0;
+            for (int k = 0; k < m; k++) {
+                int i = indexOf(xs, n, outX[k], from);
+                assertTrue(where + ": point " + k + " is not a later input point", i >= 0);
+                assertEquals(where, ys[i], outY[k], 0f);
+                from = i + 1;
+            }
+        }
+    }
+
+    @Test
+    public void belowThreeOrAtThresholdCopiesTheInput() {
+        float[] xs = { 0, 1, 2, 3, 4 };
+        float[] ys = { 5, 1, 4, 2, 3 };
+        for (int threshold : new int[] { 0, 2, 5, 9 }) {
+            float[] outX = new float[5];
+            float[] outY = new float[5];
+            assertEquals(5, LttbDownsampler.downsample(xs, ys, 5, threshold, outX, outY));
+            for (int i = 0; i < 5; i++) {
+                assertEquals(xs[i], outX[i], 0f);
+                assertEquals(ys[i], outY[i], 0f);
+            }
+        }
+    }
+
+    @Test
+    public void isolatedSpikeIsKept() {
+        int n = 1000;
+        float[] xs = new float[n];
+        float[] ys = new float[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = i;
+            ys[i] = 1f;
+        }
+        ys[617] = 9f;
+        float[] outX = new float[n];
+        float[] outY = new float[n];
+
+        int m = LttbDownsampler.downsample(xs, ys, n, 20, outX, outY);
+
+        boolean found = false;
+        for (int k = 0; k < m; k++) found |= outX[k] == 617f && outY[k] == 9f;
+        assertTrue(found);
+    }
+
+    /** Index of x in xs[from, n), or -1. */
+    private static int indexOf(float[] xs, int n, float x, int from) {
+        for (int i = from; i < n; i++) {
+            if (xs[i] == x) return i;
+        }
+        return -1;
+    }
+}
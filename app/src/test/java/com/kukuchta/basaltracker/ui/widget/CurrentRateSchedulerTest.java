@@ -0,0 +1,134 @@
+package com.kukuchta.basaltracker.ui.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.AlarmManager;
+import android.app.Application;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.kukuchta.basaltracker.data.db.AppDatabase;
+import com.kukuchta.basaltracker.data.db.entities.BasalOverrideEntity;
+import com.kukuchta.basaltracker.data.db.entities.ProfileAssignmentEntity;
+import com.kukuchta.basaltracker.data.mapper.BasalProfileMapper;
+import com.kukuchta.basaltracker.domain.BasalOverride;
+import com.kukuchta.basaltracker.domain.BasalProfile;
+import com.kukuchta.basaltracker.domain.ProfileAssignment;
+import com.kukuchta.basaltracker.domain.ProfileOrigin;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowAlarmManager;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Alarm placement for the current-rate widget under a fixed clock: one alarm at the next real
+ * rate change, not at every hour boundary.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CurrentRateSchedulerTest {
+    private static final ZoneId ZONE = ZoneId.of("Europe/Warsaw");
+    private static final double ACCURACY = 0.05;
+
+    private Application app;
+    private AppDatabase db;
+    private AlarmManager alarms;
+
+    @Before
+    public void setUp() {
+        app = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(app, AppDatabase.class).allowMainThreadQueries().build();
+        alarms = app.getSystemService(AlarmManager.class);
+        ShadowAlarmManager.setCanScheduleExactAlarms(true);
+
+        // 0.50 U/h until 06:00, then 1.00 U/h for the rest of the day
+        int[] units = new int[24];
+        for (int h = 0; h < 24; h++) units[h] = (h < 6) ? 10 : 20;
+        BasalProfile p = new BasalProfile(0, "Dzień roboczy", ACCURACY, ProfileOrigin.USER_MODIFIED,
+                null, new HashMap<>(), units);
+        long profileId = db.basalProfileDao().insertProfile(BasalProfileMapper.toEntity(p));
+
+        ProfileAssignmentEntity a = new ProfileAssignmentEntity();
+        a.profileId = profileId;
+        a.validFrom = 0;
+        a.validTo = ProfileAssignment.OPEN_END;
+        db.profileAssignmentDao().insertAssignment(a);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void alarmIsSetForNextRunBoundary() throws Exception {
+        CurrentRate rate = refreshAt(at(2026, 3, 10, 3, 30));
+
+        assertEquals(0.5, rate.rateUh, 1e-9);
+        assertEquals(1.0, rate.nextRateUh, 1e-9);
+        assertEquals(at(2026, 3, 10, 6, 0), nextAlarm());
+    }
+
+    @Test
+    public void lastRunWrapsToMidnight() throws Exception {
+        CurrentRate rate = refreshAt(at(2026, 3, 10, 6, 0));
+
+        assertEquals(1.0, rate.rateUh, 1e-9);
+        assertEquals(at(2026, 3, 11, 0, 0), nextAlarm());
+    }
+
+    @Test
+    public void dstShortDayKeepsWallClockBoundary() throws Exception {
+        // 2026-03-29 02:00 does not exist in Warsaw; the 06:00 change is still at local 06:00
+        refreshAt(at(2026, 3, 29, 1, 30));
+
+        assertEquals(at(2026, 3, 29, 6, 0), nextAlarm());
+    }
+
+    @Test
+    public void overrideScalesRateAndEndsEarlier() throws Exception {
+        long now = at(2026, 3, 10, 3, 30);
+        BasalOverrideEntity o = new BasalOverrideEntity();
+        o.kind = BasalOverride.Kind.PERCENT.name();
+        o.value = 50;
+        o.startsAt = at(2026, 3, 10, 3, 0);
+        o.endsAt = at(2026, 3, 10, 4, 0);
+        db.basalOverrideDao().insertOverride(o);
+
+        CurrentRate rate = refreshAt(now);
+
+        assertEquals(0.25, rate.rateUh, 1e-9);
+        assertEquals(at(2026, 3, 10, 4, 0), nextAlarm());
+    }
+
+    private CurrentRate refreshAt(long nowMs) throws Exception {
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(nowMs), ZONE);
+        CurrentRateScheduler scheduler = new CurrentRateScheduler(app, db, clock);
+        CompletableFuture<CurrentRate> result = new CompletableFuture<>();
+        scheduler.refresh(result::complete);
+        return result.get(10, TimeUnit.SECONDS);
+    }
+
+    private long nextAlarm() {
+        ShadowAlarmManager.ScheduledAlarm alarm = shadowOf(alarms).peekNextScheduledAlarm();
+        assertNotNull("no alarm scheduled", alarm);
+        return alarm.getTriggerAtMs();
+    }
+
+    private static long at(int year, int month, int day, int hour, int minute) {
+        return LocalDateTime.of(year, month, day, hour, minute).atZone(ZONE).toInstant().toEpochMilli();
+    }
+}
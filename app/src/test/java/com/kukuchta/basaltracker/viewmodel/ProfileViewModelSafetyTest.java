@@ -0,0 +1,106 @@
+package com.kukuchta.basaltracker.viewmodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.os.Looper;
+
+import androidx.lifecycle.SavedStateHandle;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.kukuchta.basaltracker.data.db.AppDatabase;
+import com.kukuchta.basaltracker.data.repo.BasalProfileRepository;
+import com.kukuchta.basaltracker.domain.BasalProfile;
+import com.kukuchta.basaltracker.domain.ProfileOrigin;
+import com.kukuchta.basaltracker.domain.SafetyLimits;
+import com.kukuchta.basaltracker.domain.SafetyViolation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Violations published by {@link ProfileViewModel} after in-place edits: a violation that stays
+ * violated must still show the value after the edit, not the one from when the profile was bound.
+ * Also the limits themselves: defaults until set, then kept in the saved state.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ProfileViewModelSafetyTest {
+
+    private Application app;
+    private AppDatabase db;
+    private SavedStateHandle savedState;
+    private ProfileViewModel vm;
+
+    @Before
+    public void setUp() {
+        app = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(app, AppDatabase.class).allowMainThreadQueries().build();
+        savedState = new SavedStateHandle();
+        vm = new ProfileViewModel(app, savedState, new BasalProfileRepository(db));
+        // Mediator sources are only dispatched while the mediator is observed
+        vm.getUiSegments().observeForever(segments -> { });
+    }
+
+    @After
+    public void tearDown() {
+        vm.onCleared();
+        db.close();
+    }
+
+    @Test
+    public void editInsideViolatedRangeRepublishesValues() {
+        vm.setSafetyLimits(new SafetyLimits(0.4, Double.POSITIVE_INFINITY, 10.0));
+        int[] units = new int[24];
+        Arrays.fill(units, 5); // 0.5 U/h, 12.0 U a day
+        vm.setCurrentProfile(new BasalProfile(
+                1, "Test", 0.1, ProfileOrigin.USER_MODIFIED, null, null, units));
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(12.0, find(SafetyViolation.Rule.MAX_DAILY_DOSE, -1).value, 1e-9);
+        assertEquals(0.5, find(SafetyViolation.Rule.MAX_RATE, 3).value, 1e-9);
+
+        // Same rules stay violated; only the reported values move
+        vm.adjustRateForHour(3, true);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(12.1, find(SafetyViolation.Rule.MAX_DAILY_DOSE, -1).value, 1e-9);
+        assertEquals(0.6, find(SafetyViolation.Rule.MAX_RATE, 3).value, 1e-9);
+        assertEquals(0.5, find(SafetyViolation.Rule.MAX_RATE, 4).value, 1e-9);
+    }
+
+    @Test
+    public void limitsDefaultUntilSetAndSurviveRecreation() {
+        assertSame(SafetyLimits.DEFAULT, vm.getSafetyLimits());
+
+        vm.setSafetyLimits(new SafetyLimits(2.0, Double.POSITIVE_INFINITY, 40.0));
+        ProfileViewModel recreated =
+                new ProfileViewModel(app, savedState, new BasalProfileRepository(db));
+        try {
+            SafetyLimits restored = recreated.getSafetyLimits();
+            assertEquals(2.0, restored.maxRateUh, 0.0);
+            assertEquals(Double.POSITIVE_INFINITY, restored.maxStepUh, 0.0);
+            assertEquals(40.0, restored.maxDailyDoseU, 0.0);
+        } finally {
+            recreated.onCleared();
+        }
+    }
+
+    private SafetyViolation find(SafetyViolation.Rule rule, int hour) {
+        List<SafetyViolation> violations = vm.getSafetyViolations().getValue();
+        assertNotNull(violations);
+        for (SafetyViolation v : violations) {
+            if (v.rule == rule && v.hour == hour) return v;
+        }
+        throw new AssertionError("no " + rule + " violation at hour " + hour);
+    }
+}